@@ -67,6 +67,11 @@ public abstract class AbstractDictionaryRegistry implements DictionaryRegistry
     private List<String> urisCache = new ArrayList<String>(20);
     private Map<String, String> prefixesCache = new ConcurrentHashMap<String, String>(0);
 
+    // class hierarchy, compiled on demand and discarded when models change
+    private final Object classHierarchyLock = new Object();
+    private volatile ClassHierarchy classHierarchy;
+    private long classHierarchyVersion;
+
     public AbstractDictionaryRegistry(DictionaryDAO dictionaryDAO)
     {
     	this.dictionaryDAO = dictionaryDAO;
@@ -77,6 +82,7 @@ public abstract class AbstractDictionaryRegistry implements DictionaryRegistry
     {
     	setCompiledModels(new HashMap<QName,CompiledModel>());
     	setUriToModels(new HashMap<String, List<CompiledModel>>());
+    	invalidateClassHierarchy();
     }
 
     public Map<String, List<CompiledModel>> getUriToModels()
@@ -165,6 +171,7 @@ public abstract class AbstractDictionaryRegistry implements DictionaryRegistry
 	        }
 	
 			compiledModels.remove(modelName);
+			invalidateClassHierarchy();
 	    }
 
 	    return compiledModel;
@@ -254,6 +261,7 @@ public abstract class AbstractDictionaryRegistry implements DictionaryRegistry
         }
 
 		compiledModels.put(modelName, model);
+		invalidateClassHierarchy();
 
 		return modelName;
     }
@@ -700,6 +708,7 @@ public abstract class AbstractDictionaryRegistry implements DictionaryRegistry
         	urisCacheRWLock.writeLock().unlock();
         }
 	    prefixesCache.clear();
+	    invalidateClassHierarchy();
 
 		removeImpl();
 	}
@@ -711,6 +720,50 @@ public abstract class AbstractDictionaryRegistry implements DictionaryRegistry
     	return (model != null);
     }
 
+    @Override
+    public ClassHierarchy getClassHierarchy()
+    {
+        return getClassHierarchyImpl(null);
+    }
+
+    /**
+     * Get the class hierarchy, compiling it if models have changed since it was last compiled
+     * 
+     * @param inherited         the current hierarchy of the parent registry, if any
+     */
+    protected ClassHierarchy getClassHierarchyImpl(ClassHierarchy inherited)
+    {
+        ClassHierarchy hierarchy = classHierarchy;
+        if (hierarchy != null && hierarchy.getInherited() == inherited)
+        {
+            return hierarchy;
+        }
+        long version;
+        synchronized (classHierarchyLock)
+        {
+            version = classHierarchyVersion;
+        }
+        hierarchy = new ClassHierarchy(getCompiledModels(true).values(), inherited);
+        synchronized (classHierarchyLock)
+        {
+            // Don't publish a hierarchy compiled from models that have since changed
+            if (version == classHierarchyVersion)
+            {
+                classHierarchy = hierarchy;
+            }
+        }
+        return hierarchy;
+    }
+
+    protected void invalidateClassHierarchy()
+    {
+        synchronized (classHierarchyLock)
+        {
+            classHierarchyVersion++;
+            classHierarchy = null;
+        }
+    }
+
     @Override
     public String getNamespaceURI(String prefix)
     {
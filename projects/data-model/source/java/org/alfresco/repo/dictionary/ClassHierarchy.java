@@ -0,0 +1,212 @@
+/*
+ * #%L
+ * Alfresco Data model classes
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.dictionary;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.service.cmr.dictionary.AspectDefinition;
+import org.alfresco.service.cmr.dictionary.ClassDefinition;
+import org.alfresco.service.cmr.dictionary.TypeDefinition;
+import org.alfresco.service.namespace.QName;
+
+/**
+ * Immutable index of the type and aspect hierarchies of a {@link DictionaryRegistry}, compiled from
+ * all of its models (including inherited models).
+ * <p>
+ * Each class is given a dense integer ID.  The ancestors of a class (including the class itself)
+ * are held as a bitset of IDs, and its immediate and transitive subclasses are precomputed, so
+ * sub-class checks and sub-type/sub-aspect lookups do not visit the models.
+ * <p>
+ * The registry discards its hierarchy whenever a model is added or removed and compiles a new one
+ * on next use.
+ * 
+ * @since 5.2
+ */
+public class ClassHierarchy
+{
+    private final ClassHierarchy inherited;
+    private final Map<QName, Integer> ids;
+    private final boolean[] aspects;
+    private final BitSet[] ancestors;
+    private final List<Set<QName>> children;
+    private final List<Set<QName>> descendants;
+
+    /**
+     * @param models        all models visible to the registry
+     * @param inherited     the hierarchy of the parent registry that the models were taken from,
+     *                      or <tt>null</tt> if none
+     */
+    public ClassHierarchy(Collection<CompiledModel> models, ClassHierarchy inherited)
+    {
+        this.inherited = inherited;
+
+        // Assign IDs
+        List<ClassDefinition> classDefs = new ArrayList<ClassDefinition>(256);
+        for (CompiledModel model : models)
+        {
+            for (TypeDefinition typeDef : model.getTypes())
+            {
+                classDefs.add(typeDef);
+            }
+            for (AspectDefinition aspectDef : model.getAspects())
+            {
+                classDefs.add(aspectDef);
+            }
+        }
+        int size = classDefs.size();
+        ids = new HashMap<QName, Integer>(size * 2);
+        QName[] names = new QName[size];
+        QName[] parentNames = new QName[size];
+        aspects = new boolean[size];
+        for (ClassDefinition classDef : classDefs)
+        {
+            Integer id = ids.get(classDef.getName());
+            if (id == null)
+            {
+                id = ids.size();
+                ids.put(classDef.getName(), id);
+            }
+            // As for name lookups, the last model wins if a class is defined twice
+            names[id] = classDef.getName();
+            parentNames[id] = classDef.getParentName();
+            aspects[id] = classDef.isAspect();
+        }
+        int count = ids.size();
+
+        // Resolve parents
+        int[] parents = new int[count];
+        for (int id = 0; id < count; id++)
+        {
+            Integer parentId = (parentNames[id] == null) ? null : ids.get(parentNames[id]);
+            // Types only extend types and aspects only extend aspects
+            parents[id] = (parentId == null || aspects[parentId] != aspects[id]) ? -1 : parentId;
+        }
+
+        // Ancestors, children and descendants
+        ancestors = new BitSet[count];
+        List<Set<QName>> childSets = new ArrayList<Set<QName>>(count);
+        List<Set<QName>> descendantSets = new ArrayList<Set<QName>>(count);
+        for (int id = 0; id < count; id++)
+        {
+            childSets.add(new HashSet<QName>(4));
+            descendantSets.add(new HashSet<QName>(4));
+        }
+        for (int id = 0; id < count; id++)
+        {
+            BitSet classAncestors = new BitSet(count);
+            // Guard against cycles, which the model compiler should have rejected anyway
+            for (int current = id; current != -1 && !classAncestors.get(current); current = parents[current])
+            {
+                classAncestors.set(current);
+                descendantSets.get(current).add(names[id]);
+            }
+            ancestors[id] = classAncestors;
+            if (parents[id] != -1)
+            {
+                childSets.get(parents[id]).add(names[id]);
+            }
+        }
+        for (int id = 0; id < count; id++)
+        {
+            childSets.set(id, Collections.unmodifiableSet(childSets.get(id)));
+            descendantSets.set(id, Collections.unmodifiableSet(descendantSets.get(id)));
+        }
+        children = childSets;
+        descendants = descendantSets;
+    }
+
+    /**
+     * @return              the hierarchy of the parent registry this hierarchy was compiled against
+     */
+    public ClassHierarchy getInherited()
+    {
+        return inherited;
+    }
+
+    /**
+     * @return              the number of classes in the hierarchy
+     */
+    public int size()
+    {
+        return ids.size();
+    }
+
+    /**
+     * @see DictionaryDAO#getSubTypes(QName, boolean)
+     */
+    public Set<QName> getSubTypes(QName superType, boolean follow)
+    {
+        return getSubClasses(superType, follow, false);
+    }
+
+    /**
+     * @see DictionaryDAO#getSubAspects(QName, boolean)
+     */
+    public Set<QName> getSubAspects(QName superAspect, boolean follow)
+    {
+        return getSubClasses(superAspect, follow, true);
+    }
+
+    /**
+     * Determine whether a class is a sub-class of another.  A class is a sub-class of itself, but a
+     * type is never a sub-class of an aspect or vice versa.
+     * 
+     * @return              <tt>true</tt> if both classes exist and the first is a sub-class of the second
+     */
+    public boolean isSubClass(QName className, QName ofClassName)
+    {
+        Integer id = ids.get(className);
+        Integer ofId = ids.get(ofClassName);
+        if (id == null || ofId == null)
+        {
+            return false;
+        }
+        return ancestors[id].get(ofId);
+    }
+
+    /**
+     * @param follow        <tt>true</tt> for all sub-classes including the class itself or <tt>false</tt>
+     *                      for the immediate sub-classes only
+     * @return              an unmodifiable set of sub-classes
+     */
+    private Set<QName> getSubClasses(QName superClass, boolean follow, boolean aspect)
+    {
+        Integer id = (superClass == null) ? null : ids.get(superClass);
+        if (id == null || aspects[id] != aspect)
+        {
+            return Collections.emptySet();
+        }
+        return follow ? descendants.get(id) : children.get(id);
+    }
+}
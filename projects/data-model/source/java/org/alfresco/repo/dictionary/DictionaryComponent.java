@@ -235,35 +235,8 @@ public class DictionaryComponent implements DictionaryService, TenantDeployer
         // Validate arguments
         ParameterCheck.mandatory("className", className);
         ParameterCheck.mandatory("ofClassName", ofClassName);
-        ClassDefinition classDef = getClass(className);
-        if (classDef == null)
-        {
-            return false;
-        }
-        ClassDefinition ofClassDef = getClass(ofClassName);
-        if (ofClassDef == null)
-        {
-            return false;
-        }
-        
-        // Only check if both ends are either a type or an aspect
-        boolean subClassOf = false;
-        if (classDef.isAspect() == ofClassDef.isAspect())
-        {
-            while (classDef != null)
-            {
-                if (classDef.equals(ofClassDef))
-                {
-                    subClassOf = true;
-                    break;
-                }
-                
-                // No match yet, so go to parent class
-                QName parentClassName = classDef.getParentName();
-                classDef = (parentClassName == null) ? null : getClass(parentClassName);
-            }
-        }        
-        return subClassOf;
+        // Only true if both ends are either a type or an aspect
+        return dictionaryDAO.isSubClass(className, ofClassName);
     }
     
     /* (non-Javadoc)
@@ -99,7 +99,7 @@ public interface DictionaryDAO extends ModelQuery
      * @param follow
      *            true => follow up the super-class hierarchy, false =>
      *            immediate sub types only
-     * @return Collection<QName>
+     * @return an unmodifiable collection of the sub types
      */
     Collection<QName> getSubTypes(QName superType, boolean follow);
 
@@ -122,10 +122,20 @@ public interface DictionaryDAO extends ModelQuery
      * @param follow
      *            true => follow up the super-class hierarchy, false =>
      *            immediate sub aspects only
-     * @return Collection<QName>
+     * @return an unmodifiable collection of the sub aspects
      */
     Collection<QName> getSubAspects(QName superAspect, boolean follow);
 
+    /**
+     * @param className
+     *            the class to test
+     * @param ofClassName
+     *            the potential super-class
+     * @return true if both classes exist and the first is the same as, or a
+     *         sub-class of, the second
+     */
+    boolean isSubClass(QName className, QName ofClassName);
+
     /**
      * @param model
      *            the model for which to get properties for
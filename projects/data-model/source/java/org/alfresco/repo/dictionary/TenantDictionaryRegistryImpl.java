@@ -132,6 +132,13 @@ public class TenantDictionaryRegistryImpl extends AbstractDictionaryRegistry
 		return aspect;
     }
 
+    @Override
+    public ClassHierarchy getClassHierarchy()
+    {
+        // Recompiled if the core models have changed, too
+        return getClassHierarchyImpl(getParent().getClassHierarchy());
+    }
+
     @Override
     public boolean isModelInherited(QName modelName)
     {
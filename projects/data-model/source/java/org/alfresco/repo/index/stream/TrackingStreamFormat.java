@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.index.stream;
+
+/**
+ * Constants for the compact binary format that the SOLR tracking web scripts can use instead of JSON.
+ * <p>
+ * The format is negotiated: clients that send the {@link #MIMETYPE} in the <tt>Accept</tt> header receive it
+ * with that <tt>Content-Type</tt>; all other clients, and servers that don't support it, use JSON.
+ * <p>
+ * A stream starts with the {@link #MAGIC} number, the {@link #VERSION} and the content type byte.  It is followed
+ * by any number of records, each introduced by {@link #RECORD} and ended by {@link #END}, after which a content type
+ * may append trailing values.  Numbers are variable-length zig-zag encoded, strings are length-prefixed UTF-8 and
+ * frequently repeated strings such as qualified names are sent once and referenced by index afterwards.
+ * 
+ * @see TrackingStreamWriter
+ * @see TrackingStreamReader
+ * @since 5.2
+ */
+public final class TrackingStreamFormat
+{
+    public static final String MIMETYPE = "application/x-alfresco-tracking";
+    
+    /** "ALTR" */
+    public static final int MAGIC = 0x414C5452;
+    public static final int VERSION = 1;
+    
+    /** Node metadata records, see {@link #FIELD_TENANT_DOMAIN} etc. */
+    public static final int TYPE_NODES_METADATA = 1;
+    /** Transaction records (id, commit time, updates, deletes) followed by the max commit time and max ID */
+    public static final int TYPE_TRANSACTIONS = 2;
+    /**
+     * Text content records (node ID, status, transform exception, transform duration) each ending with
+     * the extracted text as a block of UTF-8 bytes
+     */
+    public static final int TYPE_TEXT_CONTENTS = 3;
+    
+    public static final int END = 0;
+    public static final int RECORD = 1;
+    
+    /*
+     * Node metadata records hold the node ID, a mask of the fields present and then the fields in this order
+     */
+    public static final int FIELD_TENANT_DOMAIN = 1;
+    public static final int FIELD_NODE_REF = 1 << 1;
+    public static final int FIELD_TYPE = 1 << 2;
+    public static final int FIELD_ACL_ID = 1 << 3;
+    public static final int FIELD_TXN_ID = 1 << 4;
+    public static final int FIELD_PROPERTIES = 1 << 5;
+    public static final int FIELD_ASPECTS = 1 << 6;
+    public static final int FIELD_PATHS = 1 << 7;
+    public static final int FIELD_ANCESTORS = 1 << 8;
+    public static final int FIELD_NAME_PATHS = 1 << 9;
+    public static final int FIELD_PARENT_ASSOCS = 1 << 10;
+    public static final int FIELD_CHILD_ASSOCS = 1 << 11;
+    public static final int FIELD_CHILD_IDS = 1 << 12;
+    public static final int FIELD_OWNER = 1 << 13;
+    
+    /** A property value sent as plain text */
+    public static final int PROPERTY_TEXT = 0;
+    /** A property value sent as JSON text, as it would appear in the JSON format */
+    public static final int PROPERTY_JSON = 1;
+    
+    /*
+     * Text content statuses, as sent in the X-Alfresco-transformStatus header of single text content requests
+     */
+    public static final String TEXT_STATUS_OK = "ok";
+    public static final String TEXT_STATUS_NO_CONTENT = "noContent";
+    public static final String TEXT_STATUS_NO_TRANSFORM = "noTransform";
+    public static final String TEXT_STATUS_TRANSFORM_FAILED = "transformFailed";
+    
+    private TrackingStreamFormat()
+    {
+    }
+    
+    /**
+     * @param accept            the value of the <tt>Accept</tt> request header (may be <tt>null</tt>)
+     * @return                  <tt>true</tt> if the client accepts the binary format
+     */
+    public static boolean isAccepted(String accept)
+    {
+        return accept != null && accept.contains(MIMETYPE);
+    }
+    
+    /**
+     * @param contentType       the value of the <tt>Content-Type</tt> response header (may be <tt>null</tt>)
+     * @return                  <tt>true</tt> if the response uses the binary format
+     */
+    public static boolean isContentType(String contentType)
+    {
+        return contentType != null && contentType.startsWith(MIMETYPE);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.index.stream;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the {@link TrackingStreamFormat binary tracking format} as it arrives.
+ * <p>
+ * Not thread-safe.
+ * 
+ * @since 5.2
+ */
+public class TrackingStreamReader
+{
+    private final DataInputStream in;
+    private final List<String> symbols;
+    private byte[] buffer;
+    private BytesInputStream bytes;
+    
+    /**
+     * Read and check the stream header
+     * 
+     * @param is                the stream to read from; it is not closed by this instance
+     * @param type              the expected content type e.g. {@link TrackingStreamFormat#TYPE_NODES_METADATA}
+     * @throws IOException      if the stream is not in the expected format
+     */
+    public TrackingStreamReader(InputStream is, int type) throws IOException
+    {
+        this.in = new DataInputStream(new BufferedInputStream(is, 8192));
+        this.symbols = new ArrayList<String>(256);
+        this.buffer = new byte[256];
+        int magic = in.readInt();
+        if (magic != TrackingStreamFormat.MAGIC)
+        {
+            throw new IOException("Not a tracking stream: " + Integer.toHexString(magic));
+        }
+        int version = in.readUnsignedByte();
+        if (version != TrackingStreamFormat.VERSION)
+        {
+            throw new IOException("Unsupported tracking stream version: " + version);
+        }
+        int actualType = in.readUnsignedByte();
+        if (actualType != type)
+        {
+            throw new IOException("Expected tracking stream type " + type + " but got " + actualType);
+        }
+    }
+    
+    /**
+     * @return                  <tt>true</tt> if a record follows or <tt>false</tt> if the end of the records was reached
+     */
+    public boolean nextRecord() throws IOException
+    {
+        skipBytes();
+        int marker = in.readUnsignedByte();
+        switch (marker)
+        {
+            case TrackingStreamFormat.RECORD:
+                return true;
+            case TrackingStreamFormat.END:
+                return false;
+            default:
+                throw new IOException("Corrupt tracking stream: unexpected marker " + marker);
+        }
+    }
+    
+    public boolean readBoolean() throws IOException
+    {
+        return in.readBoolean();
+    }
+    
+    public int readInt() throws IOException
+    {
+        return (int) readLong();
+    }
+    
+    public long readLong() throws IOException
+    {
+        long v = 0L;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("Corrupt tracking stream: number too long");
+    }
+    
+    /**
+     * @return                  the value written by {@link TrackingStreamWriter#writeNullableLong(Long)}
+     */
+    public Long readNullableLong() throws IOException
+    {
+        return in.readBoolean() ? Long.valueOf(readLong()) : null;
+    }
+    
+    public String readString() throws IOException
+    {
+        int length = readInt() - 1;
+        if (length < 0)
+        {
+            return null;
+        }
+        if (length > buffer.length)
+        {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        in.readFully(buffer, 0, length);
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Read a block of bytes as it arrives.  The block must be the last value of its record: anything that is
+     * not read from it is skipped when the next record is read.
+     * 
+     * @return                  the block written by {@link TrackingStreamWriter#writeBytes(InputStream, long)} or
+     *                          <tt>null</tt> if there is none; closing it has no effect on this reader
+     */
+    public InputStream readBytes() throws IOException
+    {
+        skipBytes();
+        long length = readLong();
+        if (length < 0)
+        {
+            return null;
+        }
+        bytes = new BytesInputStream(length);
+        return bytes;
+    }
+    
+    private void skipBytes() throws IOException
+    {
+        if (bytes != null)
+        {
+            while (bytes.remaining > 0)
+            {
+                long skipped = in.skip(bytes.remaining);
+                if (skipped <= 0)
+                {
+                    // skip may legitimately return 0, so check for the end of the stream
+                    if (in.read() < 0)
+                    {
+                        throw new EOFException("Corrupt tracking stream: truncated block of bytes");
+                    }
+                    skipped = 1;
+                }
+                bytes.remaining -= skipped;
+            }
+            bytes = null;
+        }
+    }
+    
+    /**
+     * A view onto a block of bytes in the underlying stream
+     */
+    private class BytesInputStream extends InputStream
+    {
+        private long remaining;
+        
+        private BytesInputStream(long length)
+        {
+            this.remaining = length;
+        }
+        
+        @Override
+        public int read() throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0)
+            {
+                throw new EOFException("Corrupt tracking stream: truncated block of bytes");
+            }
+            remaining--;
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read < 0)
+            {
+                throw new EOFException("Corrupt tracking stream: truncated block of bytes");
+            }
+            remaining -= read;
+            return read;
+        }
+        
+        @Override
+        public int available() throws IOException
+        {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+    
+    /**
+     * @return                  the value written by {@link TrackingStreamWriter#writeSymbol(String)}; repeated
+     *                          values are the same instance
+     */
+    public String readSymbol() throws IOException
+    {
+        int code = readInt();
+        if (code == 0)
+        {
+            return null;
+        }
+        else if (code == 1)
+        {
+            String value = readString();
+            symbols.add(value);
+            return value;
+        }
+        else
+        {
+            int index = code - 2;
+            if (index >= symbols.size())
+            {
+                throw new IOException("Corrupt tracking stream: unknown symbol " + index);
+            }
+            return symbols.get(index);
+        }
+    }
+}
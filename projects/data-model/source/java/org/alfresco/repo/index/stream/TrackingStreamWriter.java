@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.index.stream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the {@link TrackingStreamFormat binary tracking format}.  Records are written as they are produced,
+ * so nothing needs to be held in memory apart from the table of repeated strings.
+ * <p>
+ * Not thread-safe.
+ * 
+ * @since 5.2
+ */
+public class TrackingStreamWriter
+{
+    private final DataOutputStream out;
+    private final Map<String, Integer> symbols;
+    
+    /**
+     * Write the stream header
+     * 
+     * @param os                the stream to write to; it is not closed by this instance
+     * @param type              the content type e.g. {@link TrackingStreamFormat#TYPE_NODES_METADATA}
+     */
+    public TrackingStreamWriter(OutputStream os, int type) throws IOException
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(os, 8192));
+        this.symbols = new HashMap<String, Integer>(256);
+        out.writeInt(TrackingStreamFormat.MAGIC);
+        out.writeByte(TrackingStreamFormat.VERSION);
+        out.writeByte(type);
+    }
+    
+    public void startRecord() throws IOException
+    {
+        out.writeByte(TrackingStreamFormat.RECORD);
+    }
+    
+    /**
+     * Mark the end of the records
+     */
+    public void endRecords() throws IOException
+    {
+        out.writeByte(TrackingStreamFormat.END);
+    }
+    
+    public void writeBoolean(boolean value) throws IOException
+    {
+        out.writeBoolean(value);
+    }
+    
+    public void writeInt(int value) throws IOException
+    {
+        writeLong(value);
+    }
+    
+    public void writeLong(long value) throws IOException
+    {
+        // Zig-zag encoding keeps small negative values short
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+    
+    /**
+     * Write a <tt>Long</tt> that may be <tt>null</tt>.  It is encoded differently from {@link #writeLong(long)}
+     * and must be read back with {@link TrackingStreamReader#readNullableLong()}.
+     */
+    public void writeNullableLong(Long value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+        {
+            writeLong(value.longValue());
+        }
+    }
+    
+    /**
+     * Write a string of any length; <tt>null</tt> is allowed
+     */
+    public void writeString(String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length + 1);
+        out.write(bytes);
+    }
+    
+    /**
+     * Write a string that is likely to be repeated within the stream, such as a qualified name.
+     * Only the first occurrence is written out in full.
+     */
+    public void writeSymbol(String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeInt(0);
+            return;
+        }
+        Integer index = symbols.get(value);
+        if (index == null)
+        {
+            symbols.put(value, symbols.size());
+            writeInt(1);
+            writeString(value);
+        }
+        else
+        {
+            writeInt(index + 2);
+        }
+    }
+    
+    /**
+     * Copy a block of bytes of a known length, such as a file, without holding it in memory.
+     * 
+     * @param is                the bytes to copy or <tt>null</tt> for no block; it is not closed by this instance
+     * @param length            the number of bytes to copy from the stream
+     * @throws EOFException     if the stream ends before the given length
+     */
+    public void writeBytes(InputStream is, long length) throws IOException
+    {
+        if (is == null)
+        {
+            writeLong(-1L);
+            return;
+        }
+        writeLong(length);
+        byte[] buffer = new byte[8192];
+        long remaining = length;
+        while (remaining > 0)
+        {
+            int read = is.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0)
+            {
+                throw new EOFException("Expected " + length + " bytes but the stream ended after " + (length - remaining));
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+    
+    /**
+     * Flush buffered data to the underlying stream
+     */
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+}
@@ -529,6 +529,69 @@ public class DictionaryDAOTest
         boolean test5 = service.isSubClass(base, folder);  // reversed test
         assertFalse(test5);
     }
+
+    @Test
+    public void testSubTypesAndSubAspects()
+    {
+        QName base = QName.createQName(TEST_URL, "base");
+        QName file = QName.createQName(TEST_URL, "file");
+        QName fileDerived = QName.createQName(TEST_URL, "file-derived");
+        QName fileDerivedNoArchive = QName.createQName(TEST_URL, "file-derived-no-archive");
+        QName aspectBase = QName.createQName(TEST_URL, "aspect-base");
+        QName aspectOne = QName.createQName(TEST_URL, "aspect-one");
+        QName aspectThree = QName.createQName(TEST2_URL, "aspect-three");
+
+        // Immediate sub-classes only
+        Collection<QName> subTypes = service.getSubTypes(file, false);
+        assertEquals(2, subTypes.size());
+        assertTrue(subTypes.contains(fileDerived));
+        assertTrue(subTypes.contains(fileDerivedNoArchive));
+
+        // All sub-classes, including the class itself
+        subTypes = service.getSubTypes(base, true);
+        assertTrue(subTypes.contains(base));
+        assertTrue(subTypes.contains(file));
+        assertTrue(subTypes.contains(fileDerived));
+        assertFalse(subTypes.contains(aspectBase));
+
+        Collection<QName> subAspects = service.getSubAspects(aspectBase, true);
+        assertEquals(4, subAspects.size());
+        assertTrue(subAspects.contains(aspectOne));
+        assertTrue(subAspects.contains(aspectThree));
+
+        // Types and aspects are kept apart; unknown classes have no sub-classes
+        assertTrue(service.getSubAspects(base, true).isEmpty());
+        assertTrue(service.getSubTypes(aspectBase, true).isEmpty());
+        assertTrue(service.getSubTypes(QName.createQName(TEST_URL, "invalid"), true).isEmpty());
+        assertTrue(service.isSubClass(fileDerived, base));
+        assertFalse(service.isSubClass(aspectOne, base));
+    }
+
+    @Test
+    public void testClassHierarchyFollowsModelChanges()
+    {
+        QName file = QName.createQName(TEST_URL, "file");
+        String testNamespace = "http://www.alfresco.org/test/classhierarchy";
+        QName subFile = QName.createQName(testNamespace, "subfile");
+
+        M2Model model = M2Model.createModel("hier:model");
+        model.createNamespace(testNamespace, "hier");
+        model.createImport(TEST_URL, "test");
+        M2Type subFileType = model.createType("hier:subfile");
+        subFileType.setParentName("test:file");
+        QName modelName = dictionaryDAO.putModel(model);
+        try
+        {
+            assertTrue(service.getSubTypes(file, false).contains(subFile));
+            assertTrue(service.isSubClass(subFile, file));
+        }
+        finally
+        {
+            dictionaryDAO.removeModel(modelName);
+        }
+        assertFalse(service.getSubTypes(file, true).contains(subFile));
+        assertFalse(service.isSubClass(subFile, file));
+    }
     
     @Test
     public void testPropertyOverride()
@@ -0,0 +1,219 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.index.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+/**
+ * @see TrackingStreamWriter
+ * @see TrackingStreamReader
+ * @since 5.2
+ */
+public class TrackingStreamTest
+{
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingStreamWriter writer = new TrackingStreamWriter(bytes, TrackingStreamFormat.TYPE_NODES_METADATA);
+        String longText = buildString(1000);
+        for (int i = 0; i < 3; i++)
+        {
+            writer.startRecord();
+            writer.writeLong(Long.MAX_VALUE - i);
+            writer.writeLong(-1L - i);
+            writer.writeInt(i);
+            writer.writeBoolean(i % 2 == 0);
+            writer.writeNullableLong(i == 1 ? null : Long.valueOf(i));
+            writer.writeString("été " + i);
+            writer.writeString(null);
+            writer.writeString(longText);
+            writer.writeSymbol("{http://www.alfresco.org/model/content/1.0}content");
+            writer.writeSymbol(null);
+            writer.writeSymbol("tenant" + (i % 2));
+        }
+        writer.endRecords();
+        writer.writeLong(Long.MIN_VALUE);
+        writer.flush();
+        
+        TrackingStreamReader reader = new TrackingStreamReader(
+                new ByteArrayInputStream(bytes.toByteArray()), TrackingStreamFormat.TYPE_NODES_METADATA);
+        String firstType = null;
+        for (int i = 0; i < 3; i++)
+        {
+            assertTrue(reader.nextRecord());
+            assertEquals(Long.MAX_VALUE - i, reader.readLong());
+            assertEquals(-1L - i, reader.readLong());
+            assertEquals(i, reader.readInt());
+            assertEquals(i % 2 == 0, reader.readBoolean());
+            assertEquals(i == 1 ? null : Long.valueOf(i), reader.readNullableLong());
+            assertEquals("été " + i, reader.readString());
+            assertNull(reader.readString());
+            assertEquals(longText, reader.readString());
+            String type = reader.readSymbol();
+            assertEquals("{http://www.alfresco.org/model/content/1.0}content", type);
+            if (firstType == null)
+            {
+                firstType = type;
+            }
+            assertSame("Repeated symbols must be shared", firstType, type);
+            assertNull(reader.readSymbol());
+            assertEquals("tenant" + (i % 2), reader.readSymbol());
+        }
+        assertFalse(reader.nextRecord());
+        assertEquals(Long.MIN_VALUE, reader.readLong());
+    }
+    
+    @Test
+    public void testBytes() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingStreamWriter writer = new TrackingStreamWriter(bytes, TrackingStreamFormat.TYPE_TEXT_CONTENTS);
+        byte[] text = buildString(20000).getBytes("UTF-8");
+        for (int i = 0; i < 3; i++)
+        {
+            writer.startRecord();
+            writer.writeLong(i);
+            writer.writeBytes(i == 1 ? null : new ByteArrayInputStream(text), text.length);
+        }
+        writer.endRecords();
+        writer.flush();
+        
+        TrackingStreamReader reader = new TrackingStreamReader(
+                new ByteArrayInputStream(bytes.toByteArray()), TrackingStreamFormat.TYPE_TEXT_CONTENTS);
+        
+        // Read the first block in full
+        assertTrue(reader.nextRecord());
+        assertEquals(0, reader.readLong());
+        InputStream is = reader.readBytes();
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        while ((count = is.read(buffer)) >= 0)
+        {
+            read.write(buffer, 0, count);
+        }
+        assertArrayEquals(text, read.toByteArray());
+        
+        assertTrue(reader.nextRecord());
+        assertEquals(1, reader.readLong());
+        assertNull(reader.readBytes());
+        
+        // Only read the start of the last block, the rest must be skipped
+        assertTrue(reader.nextRecord());
+        assertEquals(2, reader.readLong());
+        is = reader.readBytes();
+        assertEquals(text[0], (byte) is.read());
+        assertFalse(reader.nextRecord());
+        
+        try
+        {
+            writer.writeBytes(new ByteArrayInputStream(text), text.length + 1);
+            fail("Expected a short stream to be detected");
+        }
+        catch (EOFException e)
+        {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void testSymbolsAreSentOnce() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingStreamWriter writer = new TrackingStreamWriter(bytes, TrackingStreamFormat.TYPE_TRANSACTIONS);
+        String symbol = buildString(100);
+        for (int i = 0; i < 100; i++)
+        {
+            writer.writeSymbol(symbol);
+        }
+        writer.flush();
+        // header, one literal (marker, length and text) and then a one byte reference for each repeat
+        assertEquals(6 + 1 + 2 + 100 + 99, bytes.size());
+    }
+    
+    @Test
+    public void testWrongType() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrackingStreamWriter writer = new TrackingStreamWriter(bytes, TrackingStreamFormat.TYPE_TRANSACTIONS);
+        writer.endRecords();
+        writer.flush();
+        try
+        {
+            new TrackingStreamReader(new ByteArrayInputStream(bytes.toByteArray()), TrackingStreamFormat.TYPE_NODES_METADATA);
+            fail("Expected the type to be checked");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+        try
+        {
+            new TrackingStreamReader(new ByteArrayInputStream("{\"nodes\":[]}".getBytes("UTF-8")), TrackingStreamFormat.TYPE_NODES_METADATA);
+            fail("Expected JSON to be rejected");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void testNegotiation()
+    {
+        assertTrue(TrackingStreamFormat.isAccepted(TrackingStreamFormat.MIMETYPE + ", application/json"));
+        assertFalse(TrackingStreamFormat.isAccepted("application/json"));
+        assertFalse(TrackingStreamFormat.isAccepted(null));
+        assertTrue(TrackingStreamFormat.isContentType(TrackingStreamFormat.MIMETYPE + ";charset=UTF-8"));
+        assertFalse(TrackingStreamFormat.isContentType("application/json;charset=UTF-8"));
+        assertFalse(TrackingStreamFormat.isContentType(null));
+    }
+    
+    private static String buildString(int length)
+    {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+}
@@ -27,10 +27,17 @@ package org.alfresco.repo.web.scripts;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
+import org.alfresco.repo.content.ContentLimitViolationException;
+import org.alfresco.util.TempFileProvider;
 import org.apache.chemistry.opencmis.server.shared.ThresholdOutputStream;
 import org.apache.chemistry.opencmis.server.shared.ThresholdOutputStreamFactory;
 import org.springframework.extensions.surf.util.Content;
@@ -43,11 +50,16 @@ import org.springframework.util.FileCopyUtils;
 
 public class BufferedRequest implements WrappingWebScriptRequest
 {
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+
 	private ThresholdOutputStreamFactory streamFactory;
     private WebScriptRequest req;
     private File requestBody;
     private InputStream contentStream;
     private BufferedReader contentReader;
+    private File spoolDirectory;
+    private long spoolThreshold;
+    private long maxContentSize;
     
     public BufferedRequest(WebScriptRequest req, ThresholdOutputStreamFactory streamFactory)
     {
@@ -55,8 +67,41 @@ public class BufferedRequest implements WrappingWebScriptRequest
         this.streamFactory = streamFactory;
     }
 
+    /**
+     * Request bodies that declare a length greater than <tt>spoolThreshold</tt> are spooled
+     * into a plain temp file in the given directory, instead of via the stream factory.  The
+     * request stream is still read through the JDK's buffers on the way to the file.  The content
+     * is then read back as a <code>FileInputStream</code>, which a <code>ContentWriter</code> can
+     * transfer file to file, and which can be read again if the transaction is retried.
+     * 
+     * @param req               the request to buffer
+     * @param streamFactory     buffers request bodies that are not spooled
+     * @param spoolDirectory    the directory for spooled bodies
+     * @param spoolThreshold    the minimum declared length of a spooled body
+     * @param maxContentSize    the maximum size of a spooled body
+     */
+    public BufferedRequest(WebScriptRequest req, ThresholdOutputStreamFactory streamFactory, File spoolDirectory,
+                long spoolThreshold, long maxContentSize)
+    {
+        this(req, streamFactory);
+        this.spoolDirectory = spoolDirectory;
+        this.spoolThreshold = spoolThreshold;
+        this.maxContentSize = maxContentSize;
+    }
+
     private InputStream bufferInputStream() throws IOException
     {
+        if (requestBody != null)
+        {
+            // Already spooled (e.g. the transaction is being retried)
+            return new FileInputStream(requestBody);
+        }
+        if (spoolDirectory != null && req.getContent().getSize() > spoolThreshold)
+        {
+            requestBody = spoolRequestBody();
+            return new FileInputStream(requestBody);
+        }
+
         ThresholdOutputStream bufferStream = streamFactory.newOutputStream();
 
         try
@@ -72,6 +117,31 @@ public class BufferedRequest implements WrappingWebScriptRequest
         return bufferStream.getInputStream();
     }
 
+    private File spoolRequestBody() throws IOException
+    {
+        File file = TempFileProvider.createTempFile("request_", ".bin", spoolDirectory);
+        try (ReadableByteChannel in = Channels.newChannel(req.getContent().getInputStream());
+             FileChannel out = new FileOutputStream(file).getChannel())
+        {
+            long size = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(in, size, TRANSFER_CHUNK_SIZE)) > 0)
+            {
+                size += transferred;
+                if (maxContentSize > 0 && size > maxContentSize)
+                {
+                    throw new ContentLimitViolationException("Content size violation, limit = " + maxContentSize);
+                }
+            }
+            return file;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            file.delete(); // remove temp file
+            throw e;
+        }
+    }
+
     public void reset()
     {
         if (contentStream != null)
@@ -42,6 +42,7 @@ import org.alfresco.model.ContentModel;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.events.EventPublisher;
+import org.alfresco.repo.web.util.FileChannelStreamer;
 import org.alfresco.repo.web.util.HttpRangeProcessor;
 import org.alfresco.rest.framework.resource.content.CacheDirective;
 import org.alfresco.service.cmr.repository.ContentIOException;
@@ -62,6 +63,7 @@ import org.springframework.extensions.webscripts.Cache;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
 import org.springframework.extensions.webscripts.WebScriptResponse;
+import org.springframework.extensions.webscripts.servlet.WebScriptServletRuntime;
 import org.springframework.util.FileCopyUtils;
 
 
@@ -102,6 +104,7 @@ public class ContentStreamer implements ResourceLoaderAware
     protected ResourceLoader resourceLoader;
     protected EventPublisher eventPublisher;
     protected SiteService siteService;
+    protected boolean useContainerSendFile = false;
 
     /**
      * @param mimetypeService MimetypeService
@@ -150,6 +153,21 @@ public class ContentStreamer implements ResourceLoaderAware
         this.contentService = contentService;
     }
 
+    /**
+     * Hand complete file-backed content and single ranges of it over to the servlet container's
+     * <tt>sendfile</tt> support, where the container advertises it.  Otherwise file-backed content
+     * is copied from its file channel through a heap buffer.
+     * 
+     * @param useContainerSendFile <tt>true</tt> to let the container send the file
+     * 
+     * @see FileChannelStreamer#sendFile(javax.servlet.http.HttpServletRequest, ContentReader, long, long)
+     * @since 5.2
+     */
+    public void setUseContainerSendFile(boolean useContainerSendFile)
+    {
+        this.useContainerSendFile = useContainerSendFile;
+    }
+
 
     /**
      * Streams content back to client from a given File.
@@ -415,6 +433,10 @@ public class ContentStreamer implements ResourceLoaderAware
                   }
                   else {
                       HttpRangeProcessor rangeProcessor = new HttpRangeProcessor(contentService);
+                      if (useContainerSendFile)
+                      {
+                          rangeProcessor.setSendFileRequest(WebScriptServletRuntime.getHttpServletRequest(req));
+                      }
                       processedRange = rangeProcessor.processRange(
                             res, reader, range.substring(6), nodeRef, propertyQName,
                             mimetype, req.getHeader(HEADER_USER_AGENT));
@@ -440,7 +462,12 @@ public class ContentStreamer implements ResourceLoaderAware
                // get the content and stream directly to the response output stream
                // assuming the repository is capable of streaming in chunks, this should allow large files
                // to be streamed directly to the browser response stream.
-               reader.getContent( res.getOutputStream() );
+               // File-backed content is copied from the file channel or sent by the container.
+               if (!useContainerSendFile ||
+                   !FileChannelStreamer.sendFile(WebScriptServletRuntime.getHttpServletRequest(req), reader, 0L, size))
+               {
+                   FileChannelStreamer.streamContent(reader, res.getOutputStream());
+               }
             }
         }
         catch (SocketException e1)
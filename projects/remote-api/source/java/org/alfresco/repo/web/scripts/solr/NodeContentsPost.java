@@ -0,0 +1,266 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.content.transform.ContentTransformer;
+import org.alfresco.repo.content.transform.TransformerDebug;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.index.stream.TrackingStreamFormat;
+import org.alfresco.repo.index.stream.TrackingStreamWriter;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.TransformationOptions;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.extensions.surf.util.Content;
+import org.springframework.extensions.webscripts.AbstractWebScript;
+import org.springframework.extensions.webscripts.Status;
+import org.springframework.extensions.webscripts.WebScriptException;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
+
+/**
+ * A web service to return the text content (transformed if required) of the content property of
+ * several nodes in one response, so that the index does not pay for a request per node.
+ * <p>
+ * The request body is <tt>{"nodeIds": [...], "propertyQName": "..."}</tt>, where the property defaults to
+ * <b>cm:content</b>.  The response is in the {@link TrackingStreamFormat binary tracking format}, with a
+ * {@link TrackingStreamFormat#TYPE_TEXT_CONTENTS text content} record per node in the order requested:
+ * the node ID, the status (as for {@link NodeContentGet}), the transform exception, the transform duration
+ * and the text, if any.  Each text is streamed from its transformation output as soon as it is available.
+ * 
+ * @since 5.2
+ */
+public class NodeContentsPost extends AbstractWebScript
+{
+    private static final Log logger = LogFactory.getLog(NodeContentsPost.class);
+    
+    private NodeDAO nodeDAO;
+    private ContentService contentService;
+    private TransformerDebug transformerDebug;
+    private int maxNodeIds = 100;
+    
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+    
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+    
+    public void setTransformerDebug(TransformerDebug transformerDebug)
+    {
+        this.transformerDebug = transformerDebug;
+    }
+    
+    /**
+     * @param maxNodeIds            the maximum number of nodes that can be requested at once (default 100)
+     */
+    public void setMaxNodeIds(int maxNodeIds)
+    {
+        this.maxNodeIds = maxNodeIds;
+    }
+    
+    @Override
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
+    {
+        Content content = req.getContent();
+        if (content == null)
+        {
+            throw new WebScriptException("Failed to convert request to String");
+        }
+        List<Long> nodeIds;
+        QName propertyName = ContentModel.PROP_CONTENT;
+        try
+        {
+            JSONObject o = new JSONObject(content.getContent());
+            JSONArray jsonNodeIds = o.getJSONArray("nodeIds");
+            nodeIds = new ArrayList<Long>(jsonNodeIds.length());
+            for (int i = 0; i < jsonNodeIds.length(); i++)
+            {
+                nodeIds.add(jsonNodeIds.getLong(i));
+            }
+            if (o.has("propertyQName"))
+            {
+                propertyName = QName.createQName(o.getString("propertyQName"));
+            }
+        }
+        catch (JSONException e)
+        {
+            throw new WebScriptException(Status.STATUS_BAD_REQUEST, "Invalid JSON", e);
+        }
+        if (nodeIds.size() > maxNodeIds)
+        {
+            throw new WebScriptException(Status.STATUS_BAD_REQUEST,
+                    "Too many nodes requested: " + nodeIds.size() + " (max " + maxNodeIds + ")");
+        }
+        
+        long start = System.currentTimeMillis();
+        
+        res.setContentType(TrackingStreamFormat.MIMETYPE);
+        TrackingStreamWriter writer = new TrackingStreamWriter(res.getOutputStream(), TrackingStreamFormat.TYPE_TEXT_CONTENTS);
+        for (Long nodeId : nodeIds)
+        {
+            writeTextContent(writer, nodeId, propertyName);
+        }
+        writer.endRecords();
+        writer.flush();
+        
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Returned text content of " + nodeIds.size() + " nodes in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+    
+    private void writeTextContent(TrackingStreamWriter writer, long nodeId, QName propertyName) throws IOException
+    {
+        writer.startRecord();
+        writer.writeLong(nodeId);
+        
+        // A failure is reported in the record of the node, so that the other nodes of the request are still returned
+        ContentReader textReader = null;
+        Exception transformException = null;
+        Long transformDuration = null;
+        boolean available = false;
+        try
+        {
+            Pair<Long, NodeRef> pair = nodeDAO.getNodePair(nodeId);
+            // If the node does not exist we treat it as if it has no content
+            ContentReader reader = (pair == null ? null : contentService.getReader(pair.getSecond(), propertyName));
+            if (reader == null)
+            {
+                writeStatus(writer, TrackingStreamFormat.TEXT_STATUS_NO_CONTENT, null, null);
+                return;
+            }
+            NodeRef nodeRef = pair.getSecond();
+            
+            // get the transformer
+            TransformationOptions options = new TransformationOptions();
+            options.setUse("index");
+            options.setSourceNodeRef(nodeRef);
+            transformerDebug.pushAvailable(reader.getContentUrl(), reader.getMimetype(), MimetypeMap.MIMETYPE_TEXT_PLAIN, options);
+            available = true;
+            long sourceSize = reader.getSize();
+            List<ContentTransformer> transformers = contentService.getActiveTransformers(reader.getMimetype(), sourceSize, MimetypeMap.MIMETYPE_TEXT_PLAIN, options);
+            transformerDebug.availableTransformers(transformers, sourceSize, options, "SolrIndexer");
+            
+            if (transformers.isEmpty())
+            {
+                writeStatus(writer, TrackingStreamFormat.TEXT_STATUS_NO_TRANSFORM, null, null);
+                return;
+            }
+            ContentTransformer transformer = transformers.get(0);
+            
+            // Perform transformation catering for mimetype AND encoding
+            ContentWriter contentWriter = contentService.getTempWriter();
+            contentWriter.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+            contentWriter.setEncoding("UTF-8");                            // Expect transformers to produce UTF-8
+            
+            try
+            {
+                long start = System.currentTimeMillis();
+                transformer.transform(reader, contentWriter);
+                transformDuration = System.currentTimeMillis() - start;
+            }
+            catch (Exception e)
+            {
+                transformException = e;
+            }
+            
+            if (transformException == null)
+            {
+                // point the reader to the new-written content
+                textReader = contentWriter.getReader();
+                // Check that the reader is a view onto something concrete
+                if (textReader == null || !textReader.exists())
+                {
+                    transformException = new ContentIOException(
+                            "The transformation did not write any content, yet: \n"
+                            + "   transformer:     " + transformer + "\n" + "   temp writer:     " + contentWriter);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // Writing the response failed
+            throw e;
+        }
+        catch (Exception e)
+        {
+            transformException = e;
+        }
+        finally
+        {
+            if (available)
+            {
+                transformerDebug.popAvailable();
+            }
+        }
+        
+        if (transformException != null)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Failed to get the text content of node " + nodeId, transformException);
+            }
+            writeStatus(writer, TrackingStreamFormat.TEXT_STATUS_TRANSFORM_FAILED, transformException.getMessage(), transformDuration);
+            return;
+        }
+        
+        writer.writeSymbol(TrackingStreamFormat.TEXT_STATUS_OK);
+        writer.writeString(null);
+        writer.writeNullableLong(transformDuration);
+        try (InputStream is = textReader.getContentInputStream())
+        {
+            writer.writeBytes(is, textReader.getSize());
+        }
+    }
+    
+    private void writeStatus(TrackingStreamWriter writer, String status, String transformException, Long transformDuration) throws IOException
+    {
+        writer.writeSymbol(status);
+        writer.writeString(transformException);
+        writer.writeNullableLong(transformDuration);
+        writer.writeBytes(null, 0L);
+    }
+}
@@ -37,6 +37,8 @@ import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.index.stream.TrackingStreamFormat;
+import org.alfresco.repo.index.stream.TrackingStreamWriter;
 import org.alfresco.repo.search.IndexerException;
 import org.alfresco.repo.solr.MetaDataResultsFilter;
 import org.alfresco.repo.solr.NodeMetaData;
@@ -60,11 +62,14 @@ import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 // todo url parameter to remove whitespace in results - make it the default?
 /**
  * Support for SOLR: Get metadata for nodes given IDs, ranges of IDs, etc.
  * <p/>
+ * Clients that accept the {@link TrackingStreamFormat binary tracking format} have the results streamed
+ * to them as they are found; all others receive JSON.
  * 
  * @since 4.0
  */
@@ -87,6 +92,57 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         this.solrSerializer = solrSerializer;
     }
 
+    /**
+     * Streams the results in the binary format if the client accepts it or renders the JSON template otherwise
+     */
+    @Override
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
+    {
+        if (!TrackingStreamFormat.isAccepted(req.getHeader("Accept")))
+        {
+            super.execute(req, res);
+            return;
+        }
+        Content content = req.getContent();
+        if(content == null)
+        {
+            throw new WebScriptException("Failed to convert request to String");
+        }
+        NodeMetaDataParameters params;
+        MetaDataResultsFilter filter;
+        try
+        {
+            JSONObject o = new JSONObject(content.getContent());
+            params = getParameters(o);
+            filter = getFilter(o);
+        }
+        catch(JSONException e)
+        {
+            throw new WebScriptException("Invalid JSON", e);
+        }
+        
+        res.setContentType(TrackingStreamFormat.MIMETYPE);
+        final TrackingStreamWriter writer = new TrackingStreamWriter(res.getOutputStream(), TrackingStreamFormat.TYPE_NODES_METADATA);
+        solrTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
+        {
+            @Override
+            public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+            {
+                try
+                {
+                    writeNodeMetaData(writer, nodeMetaData);
+                }
+                catch(Exception e)
+                {
+                    throw new AlfrescoRuntimeException("Problem streaming node " + nodeMetaData.getNodeRef(), e);
+                }
+                return true;
+            }
+        });
+        writer.endRecords();
+        writer.flush();
+    }
+
     @Override
     protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
     {
@@ -99,23 +155,11 @@ public class NodesMetaDataGet extends DeclarativeWebScript
             }
             JSONObject o = new JSONObject(content.getContent());
             
-            List<Long> nodeIds = null;
-            if(o.has("nodeIds"))
-            {
-                JSONArray jsonNodeIds =  o.getJSONArray("nodeIds");
-                nodeIds = new ArrayList<Long>(jsonNodeIds.length());
-                for(int i = 0; i < jsonNodeIds.length(); i++)
-                {
-                    Long nodeId = jsonNodeIds.getLong(i);
-                    nodeIds.add(nodeId);
-                }
-            }
-            
-            Long fromNodeId = o.has("fromNodeId") ? o.getLong("fromNodeId") : null;
-            Long toNodeId = o.has("toNodeId") ? o.getLong("toNodeId") : null;
-            
-            // 0 or Integer.MAX_VALUE => ignore
-            int maxResults = o.has("maxResults") ? o.getInt("maxResults") : 0;
+            NodeMetaDataParameters params = getParameters(o);
+            List<Long> nodeIds = params.getNodeIds();
+            Long fromNodeId = params.getFromNodeId();
+            Long toNodeId = params.getToNodeId();
+            int maxResults = params.getMaxResults();
 
             int size = 0;
             if(maxResults != 0 && maxResults != Integer.MAX_VALUE)
@@ -137,56 +181,10 @@ public class NodesMetaDataGet extends DeclarativeWebScript
 
             final boolean noSizeCalculated = (size == 0);
 
-            // filters, defaults are 'true'
-            MetaDataResultsFilter filter = new MetaDataResultsFilter();
-            if(o.has("includeAclId"))
-            {
-                filter.setIncludeAclId(o.getBoolean("includeAclId"));
-            }
-            if(o.has("includeAspects"))
-            {
-                filter.setIncludeAspects(o.getBoolean("includeAspects"));
-            }
-            if(o.has("includeNodeRef"))
-            {
-                filter.setIncludeNodeRef(o.getBoolean("includeNodeRef"));
-            }
-            if(o.has("includeOwner"))
-            {
-                filter.setIncludeOwner(o.getBoolean("includeOwner"));
-            }
-            if(o.has("includeProperties"))
-            {
-                filter.setIncludeProperties(o.getBoolean("includeProperties"));
-            }
-            if(o.has("includePaths"))
-            {
-                filter.setIncludePaths(o.getBoolean("includePaths"));
-            }
-            if(o.has("includeType"))
-            {
-                filter.setIncludeType(o.getBoolean("includeType"));
-            }
-            if(o.has("includeParentAssociations"))
-            {
-                filter.setIncludeParentAssociations(o.getBoolean("includeParentAssociations"));
-            }
-            if(o.has("includeChildIds"))
-            {
-                filter.setIncludeChildIds(o.getBoolean("includeChildIds"));
-            }
-            if(o.has("includeTxnId"))
-            {
-                filter.setIncludeTxnId(o.getBoolean("includeTxnId"));
-            }
+            MetaDataResultsFilter filter = getFilter(o);
             
             final ArrayList<FreemarkerNodeMetaData> nodesMetaData = 
                 new ArrayList<FreemarkerNodeMetaData>(size > 0 ? size : INITIAL_DEFAULT_SIZE);
-            NodeMetaDataParameters params = new NodeMetaDataParameters();
-            params.setNodeIds(nodeIds);
-            params.setFromNodeId(fromNodeId);
-            params.setToNodeId(toNodeId);
-            params.setMaxResults(maxResults);
 
             solrTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
             {
@@ -238,6 +236,232 @@ public class NodesMetaDataGet extends DeclarativeWebScript
             throw new WebScriptException("Invalid JSON", e);
         }
     }
+    
+    private NodeMetaDataParameters getParameters(JSONObject o) throws JSONException
+    {
+        List<Long> nodeIds = null;
+        if(o.has("nodeIds"))
+        {
+            JSONArray jsonNodeIds =  o.getJSONArray("nodeIds");
+            nodeIds = new ArrayList<Long>(jsonNodeIds.length());
+            for(int i = 0; i < jsonNodeIds.length(); i++)
+            {
+                Long nodeId = jsonNodeIds.getLong(i);
+                nodeIds.add(nodeId);
+            }
+        }
+        
+        Long fromNodeId = o.has("fromNodeId") ? o.getLong("fromNodeId") : null;
+        Long toNodeId = o.has("toNodeId") ? o.getLong("toNodeId") : null;
+        
+        // 0 or Integer.MAX_VALUE => ignore
+        int maxResults = o.has("maxResults") ? o.getInt("maxResults") : 0;
+
+        NodeMetaDataParameters params = new NodeMetaDataParameters();
+        params.setNodeIds(nodeIds);
+        params.setFromNodeId(fromNodeId);
+        params.setToNodeId(toNodeId);
+        params.setMaxResults(maxResults);
+        return params;
+    }
+    
+    private MetaDataResultsFilter getFilter(JSONObject o) throws JSONException
+    {
+        // filters, defaults are 'true'
+        MetaDataResultsFilter filter = new MetaDataResultsFilter();
+        if(o.has("includeAclId"))
+        {
+            filter.setIncludeAclId(o.getBoolean("includeAclId"));
+        }
+        if(o.has("includeAspects"))
+        {
+            filter.setIncludeAspects(o.getBoolean("includeAspects"));
+        }
+        if(o.has("includeNodeRef"))
+        {
+            filter.setIncludeNodeRef(o.getBoolean("includeNodeRef"));
+        }
+        if(o.has("includeOwner"))
+        {
+            filter.setIncludeOwner(o.getBoolean("includeOwner"));
+        }
+        if(o.has("includeProperties"))
+        {
+            filter.setIncludeProperties(o.getBoolean("includeProperties"));
+        }
+        if(o.has("includePaths"))
+        {
+            filter.setIncludePaths(o.getBoolean("includePaths"));
+        }
+        if(o.has("includeType"))
+        {
+            filter.setIncludeType(o.getBoolean("includeType"));
+        }
+        if(o.has("includeParentAssociations"))
+        {
+            filter.setIncludeParentAssociations(o.getBoolean("includeParentAssociations"));
+        }
+        if(o.has("includeChildIds"))
+        {
+            filter.setIncludeChildIds(o.getBoolean("includeChildIds"));
+        }
+        if(o.has("includeTxnId"))
+        {
+            filter.setIncludeTxnId(o.getBoolean("includeTxnId"));
+        }
+        return filter;
+    }
+    
+    /**
+     * Write a node in the binary format, including the same fields as the JSON template would
+     */
+    private void writeNodeMetaData(final TrackingStreamWriter writer, final NodeMetaData nodeMetaData) throws Exception
+    {
+        final String tenantDomain = nodeMetaData.getTenantDomain();
+        final Map<QName, Serializable> props = nodeMetaData.getProperties();
+        Collection<Pair<Path, QName>> paths = nodeMetaData.getPaths();
+        Collection<Collection<String>> namePaths = nodeMetaData.getNamePaths();
+        Set<String> ancestors = new HashSet<String>();
+        if (paths != null)
+        {
+            for (Pair<Path, QName> pair : paths)
+            {
+                for (NodeRef ancestor : FreemarkerNodeMetaData.getAncestors(pair.getFirst()))
+                {
+                    ancestors.add(ancestor.toString());
+                }
+            }
+        }
+        List<ChildAssociationRef> parentAssocs = nodeMetaData.getParentAssocs();
+        List<ChildAssociationRef> childAssocs = nodeMetaData.getChildAssocs();
+        List<Long> childIds = nodeMetaData.getChildIds();
+        
+        int fields = TrackingStreamFormat.FIELD_PATHS | TrackingStreamFormat.FIELD_NAME_PATHS;
+        fields |= tenantDomain != null ? TrackingStreamFormat.FIELD_TENANT_DOMAIN : 0;
+        fields |= nodeMetaData.getNodeRef() != null ? TrackingStreamFormat.FIELD_NODE_REF : 0;
+        fields |= nodeMetaData.getNodeType() != null ? TrackingStreamFormat.FIELD_TYPE : 0;
+        fields |= nodeMetaData.getAclId() != null ? TrackingStreamFormat.FIELD_ACL_ID : 0;
+        fields |= nodeMetaData.getTxnId() != null ? TrackingStreamFormat.FIELD_TXN_ID : 0;
+        fields |= props != null ? TrackingStreamFormat.FIELD_PROPERTIES : 0;
+        fields |= nodeMetaData.getAspects() != null ? TrackingStreamFormat.FIELD_ASPECTS : 0;
+        fields |= ancestors.size() > 0 ? TrackingStreamFormat.FIELD_ANCESTORS : 0;
+        fields |= parentAssocs != null && parentAssocs.size() > 0 ? TrackingStreamFormat.FIELD_PARENT_ASSOCS : 0;
+        fields |= childAssocs != null && childAssocs.size() > 0 ? TrackingStreamFormat.FIELD_CHILD_ASSOCS : 0;
+        fields |= childIds != null && childIds.size() > 0 ? TrackingStreamFormat.FIELD_CHILD_IDS : 0;
+        fields |= nodeMetaData.getOwner() != null ? TrackingStreamFormat.FIELD_OWNER : 0;
+        
+        writer.startRecord();
+        writer.writeLong(nodeMetaData.getNodeId().longValue());
+        writer.writeInt(fields);
+        if ((fields & TrackingStreamFormat.FIELD_TENANT_DOMAIN) != 0)
+        {
+            writer.writeSymbol(tenantDomain);
+        }
+        if ((fields & TrackingStreamFormat.FIELD_NODE_REF) != 0)
+        {
+            writer.writeString(nodeMetaData.getNodeRef().toString());
+        }
+        if ((fields & TrackingStreamFormat.FIELD_TYPE) != 0)
+        {
+            writer.writeSymbol(solrSerializer.serializeValue(String.class, nodeMetaData.getNodeType()));
+        }
+        if ((fields & TrackingStreamFormat.FIELD_ACL_ID) != 0)
+        {
+            writer.writeLong(nodeMetaData.getAclId().longValue());
+        }
+        if ((fields & TrackingStreamFormat.FIELD_TXN_ID) != 0)
+        {
+            writer.writeLong(nodeMetaData.getTxnId().longValue());
+        }
+        if ((fields & TrackingStreamFormat.FIELD_PROPERTIES) != 0)
+        {
+            writer.writeInt(props.size());
+            // need to run this in tenant context because types may be in a tenant-specific
+            // dictionary registry
+            TenantUtil.runAsTenant(new TenantRunAsWork<Void>()
+            {
+                @Override
+                public Void doWork() throws Exception
+                {
+                    for (Map.Entry<QName, Serializable> entry : props.entrySet())
+                    {
+                        PropertyValue value = solrSerializer.serialize(entry.getKey(), entry.getValue(), false);
+                        writer.writeSymbol(solrSerializer.serializeValue(String.class, entry.getKey()));
+                        writer.writeInt(value.isString() ? TrackingStreamFormat.PROPERTY_TEXT : TrackingStreamFormat.PROPERTY_JSON);
+                        writer.writeString(value.getValue());
+                    }
+                    return null;
+                }
+            }, tenantDomain);
+        }
+        if ((fields & TrackingStreamFormat.FIELD_ASPECTS) != 0)
+        {
+            writer.writeInt(nodeMetaData.getAspects().size());
+            for (QName aspect : nodeMetaData.getAspects())
+            {
+                writer.writeSymbol(solrSerializer.serializeValue(String.class, aspect));
+            }
+        }
+        // paths and name paths are always present, if only empty
+        writer.writeInt(paths == null ? 0 : paths.size());
+        if (paths != null)
+        {
+            for (Pair<Path, QName> pair : paths)
+            {
+                writer.writeString(solrSerializer.serializeValue(String.class, pair.getFirst()));
+                writer.writeSymbol(solrSerializer.serializeValue(String.class, pair.getSecond()));
+            }
+        }
+        if ((fields & TrackingStreamFormat.FIELD_ANCESTORS) != 0)
+        {
+            writer.writeInt(ancestors.size());
+            for (String ancestor : ancestors)
+            {
+                writer.writeString(ancestor);
+            }
+        }
+        writer.writeInt(namePaths == null ? 0 : namePaths.size());
+        if (namePaths != null)
+        {
+            for (Collection<String> namePath : namePaths)
+            {
+                writer.writeInt(namePath.size());
+                for (String element : namePath)
+                {
+                    writer.writeString(solrSerializer.serializeValue(String.class, element));
+                }
+            }
+        }
+        if ((fields & TrackingStreamFormat.FIELD_PARENT_ASSOCS) != 0)
+        {
+            writer.writeInt(parentAssocs.size());
+            for (ChildAssociationRef assoc : parentAssocs)
+            {
+                writer.writeString(assoc.toString());
+            }
+            writer.writeNullableLong(nodeMetaData.getParentAssocsCrc());
+        }
+        if ((fields & TrackingStreamFormat.FIELD_CHILD_ASSOCS) != 0)
+        {
+            writer.writeInt(childAssocs.size());
+            for (ChildAssociationRef assoc : childAssocs)
+            {
+                writer.writeString(assoc.toString());
+            }
+        }
+        if ((fields & TrackingStreamFormat.FIELD_CHILD_IDS) != 0)
+        {
+            writer.writeInt(childIds.size());
+            for (Long childId : childIds)
+            {
+                writer.writeLong(childId.longValue());
+            }
+        }
+        if ((fields & TrackingStreamFormat.FIELD_OWNER) != 0)
+        {
+            writer.writeSymbol(nodeMetaData.getOwner());
+        }
+    }
 
     /**
      * Bean to store node meta data for use by FreeMarker templates
@@ -412,7 +636,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         {
             return tenantDomain;
         }
-        private ArrayList<NodeRef> getAncestors(Path path)
+        static ArrayList<NodeRef> getAncestors(Path path)
         {
             ArrayList<NodeRef> ancestors = new ArrayList<NodeRef>(8);
             for (Iterator<Path.Element> elit = path.iterator(); elit.hasNext(); /**/)
@@ -121,8 +121,17 @@ import org.springframework.extensions.webscripts.json.JSONUtils;
         return typeConverter.INSTANCE.convert(targetClass, value);
     }
     
-    @SuppressWarnings("unchecked")
     public PropertyValue serialize(QName propName, Serializable value) throws IOException, JSONException
+    {
+        return serialize(propName, value, true);
+    }
+    
+    /**
+     * @param encodeStrings         <tt>true</tt> to JSON-encode single text values or <tt>false</tt> to
+     *                              leave them as they are, e.g. for the binary tracking format
+     */
+    @SuppressWarnings("unchecked")
+    public PropertyValue serialize(QName propName, Serializable value, boolean encodeStrings) throws IOException, JSONException
     {
         if(value == null)
         {
@@ -192,7 +201,7 @@ import org.springframework.extensions.webscripts.json.JSONUtils;
             }
 
             String sValue = null;
-            if (value instanceof String && encodeString) {
+            if (value instanceof String && encodeString && encodeStrings) {
             	sValue = (String)jsonUtils.encodeJSONString(value);
             } else {
             	sValue = serializeToJSONString(value);
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.web.scripts.solr;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +33,8 @@ import java.util.Map;
 import org.alfresco.repo.index.shard.ShardMethodEnum;
 import org.alfresco.repo.index.shard.ShardState;
 import org.alfresco.repo.index.shard.ShardStateBuilder;
+import org.alfresco.repo.index.stream.TrackingStreamFormat;
+import org.alfresco.repo.index.stream.TrackingStreamWriter;
 import org.alfresco.repo.solr.SOLRTrackingComponent;
 import org.alfresco.repo.solr.Transaction;
 import org.alfresco.service.cmr.repository.StoreRef;
@@ -40,9 +43,12 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 /**
  * Support for SOLR: Get a list of transactions with a commit time greater than or equal to the given parameter.
+ * <p/>
+ * Clients that accept the {@link TrackingStreamFormat binary tracking format} receive it instead of JSON.
  *
  * @since 4.0
  */
@@ -57,6 +63,37 @@ public class TransactionsGet extends DeclarativeWebScript
         this.solrTrackingComponent = solrTrackingComponent;
     }
 
+    /**
+     * Writes the results in the binary format if the client accepts it or renders the JSON template otherwise
+     */
+    @Override
+    public void execute(WebScriptRequest req, WebScriptResponse res) throws IOException
+    {
+        if (!TrackingStreamFormat.isAccepted(req.getHeader("Accept")))
+        {
+            super.execute(req, res);
+            return;
+        }
+        Map<String, Object> model = executeImpl(req, new Status());
+        @SuppressWarnings("unchecked")
+        List<Transaction> transactions = (List<Transaction>) model.get("transactions");
+        
+        res.setContentType(TrackingStreamFormat.MIMETYPE);
+        TrackingStreamWriter writer = new TrackingStreamWriter(res.getOutputStream(), TrackingStreamFormat.TYPE_TRANSACTIONS);
+        for (Transaction txn : transactions)
+        {
+            writer.startRecord();
+            writer.writeLong(txn.getId().longValue());
+            writer.writeLong(txn.getCommitTimeMs().longValue());
+            writer.writeInt(txn.getUpdates());
+            writer.writeInt(txn.getDeletes());
+        }
+        writer.endRecords();
+        writer.writeNullableLong((Long) model.get("maxTxnCommitTime"));
+        writer.writeNullableLong((Long) model.get("maxTxnId"));
+        writer.flush();
+    }
+
     protected Map<String, Object> executeImpl(WebScriptRequest req, Status status)
     {
         String minTxnIdParam = req.getParameter("minTxnId");
@@ -0,0 +1,288 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.FileContentReader;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Streams content, or a byte range of content, to an HTTP response.
+ * <p>
+ * Readers backed by local files are read from their file channel with positional reads into a large buffer
+ * that is reused by the thread, rather than through the reader's stream with a new buffer per request.  This
+ * is not zero-copy: the bytes are still copied through the heap buffer into the response stream, as the servlet
+ * API only gives an {@link OutputStream}, and {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+ * only avoids the copy when the target is itself a file or socket channel, so it is only used for a
+ * {@link FileOutputStream}.  Content from other stores is copied through a stream as before.
+ * <p>
+ * Only the container's own <tt>sendfile</tt> support avoids the copy, see
+ * {@link #sendFile(HttpServletRequest, ContentReader, long, long)}.  It is used for complete content and
+ * single ranges when <tt>webscripts.content.containerSendFile</tt> is enabled and the connector supports it;
+ * it is disabled by default.
+ * 
+ * @since 5.2
+ */
+public class FileChannelStreamer
+{
+    /** Request attribute set by Tomcat when the connector is able to send files */
+    public static final String ATTR_SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    /** Request attribute holding the absolute path of the file to send */
+    public static final String ATTR_SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    /** Request attribute holding the (inclusive) offset of the first byte to send */
+    public static final String ATTR_SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    /** Request attribute holding the (exclusive) offset after the last byte to send */
+    public static final String ATTR_SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    
+    /** size of the buffer used when copying through streams */
+    private static final int CHUNKSIZE = 64*1024;
+    /** size of the buffer used when copying from a file channel */
+    private static final int CHANNEL_BUFFER_SIZE = 256*1024;
+    
+    private static final ThreadLocal<ByteBuffer> channelBuffer = new ThreadLocal<ByteBuffer>()
+    {
+        @Override
+        protected ByteBuffer initialValue()
+        {
+            return ByteBuffer.allocate(CHANNEL_BUFFER_SIZE);
+        }
+    };
+    
+    private static final Log logger = LogFactory.getLog(FileChannelStreamer.class);
+    
+    private FileChannelStreamer()
+    {
+    }
+    
+    /**
+     * Stream all the content to the output stream.  This is a drop-in replacement for
+     * {@link ContentReader#getContent(OutputStream)}, which is used directly for content
+     * that is not file-backed: the output stream is closed.
+     * 
+     * @param reader        the content to stream
+     * @param os            the stream to write to
+     * @throws ContentIOException if the content could not be copied
+     */
+    public static void streamContent(ContentReader reader, OutputStream os) throws ContentIOException
+    {
+        if (!(reader instanceof FileContentReader))
+        {
+            reader.getContent(os);
+            return;
+        }
+        try
+        {
+            try
+            {
+                streamRange(reader, os, 0L, reader.getSize());
+            }
+            finally
+            {
+                os.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to copy content to output stream: \n" +
+                    "   accessor: " + reader,
+                    e);
+        }
+    }
+    
+    /**
+     * Stream a range of the content to the output stream.  The output stream is not closed.
+     * 
+     * @param reader        the content to stream
+     * @param os            the stream to write to
+     * @param start         the offset of the first byte to write
+     * @param length        the number of bytes to write
+     */
+    public static void streamRange(ContentReader reader, OutputStream os, long start, long length) throws IOException
+    {
+        if (reader instanceof FileContentReader)
+        {
+            ReadableByteChannel channel = reader.getReadableChannel();
+            try
+            {
+                if (channel instanceof FileChannel)
+                {
+                    transferRange((FileChannel) channel, os, start, length);
+                }
+                else
+                {
+                    copyRange(Channels.newInputStream(channel), os, start, length);
+                }
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+        else
+        {
+            InputStream is = reader.getContentInputStream();
+            try
+            {
+                copyRange(is, os, start, length);
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+    }
+    
+    /**
+     * Hands the sending of a file-backed range of content over to the servlet container.  This
+     * is only possible if the container has advertised its support through the
+     * {@link #ATTR_SENDFILE_SUPPORT} request attribute.  If the range has been handed over, the
+     * caller must set the response headers and must not write anything to the response body.
+     * 
+     * @param req           the servlet request
+     * @param reader        the content to send
+     * @param start         the offset of the first byte to send
+     * @param length        the number of bytes to send
+     * @return              <tt>true</tt> if the container will send the range or <tt>false</tt> if the
+     *                      caller must stream it
+     */
+    public static boolean sendFile(HttpServletRequest req, ContentReader reader, long start, long length)
+    {
+        if (req == null || !Boolean.TRUE.equals(req.getAttribute(ATTR_SENDFILE_SUPPORT)))
+        {
+            return false;
+        }
+        if (!(reader instanceof FileContentReader))
+        {
+            return false;
+        }
+        File file = ((FileContentReader) reader).getFile();
+        if (file == null || !file.isFile() || file.length() < start + length)
+        {
+            return false;
+        }
+        req.setAttribute(ATTR_SENDFILE_FILENAME, file.getAbsolutePath());
+        req.setAttribute(ATTR_SENDFILE_START, Long.valueOf(start));
+        req.setAttribute(ATTR_SENDFILE_END, Long.valueOf(start + length));
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Handed content to container sendfile: " + file + " [" + start + ", " + (start + length) + ")");
+        }
+        return true;
+    }
+    
+    /**
+     * Copy bytes from the file channel.  A file target gets the bytes with a channel to channel
+     * transfer.  Any other output stream is written from the heap buffer of the thread, which the
+     * channel reads into at the given position, so the range needs no skipping.
+     */
+    private static void transferRange(FileChannel channel, OutputStream os, long start, long length) throws IOException
+    {
+        long position = start;
+        long bytesLeft = Math.min(length, channel.size() - start);
+        if (os instanceof FileOutputStream)
+        {
+            // The target is not closed by the transfer
+            FileChannel target = ((FileOutputStream) os).getChannel();
+            while (bytesLeft > 0L)
+            {
+                long transferred = channel.transferTo(position, bytesLeft, target);
+                if (transferred <= 0L)
+                {
+                    // Nothing left to download!
+                    break;
+                }
+                position += transferred;
+                bytesLeft -= transferred;
+            }
+        }
+        else
+        {
+            ByteBuffer buffer = channelBuffer.get();
+            while (bytesLeft > 0L)
+            {
+                buffer.clear();
+                if (bytesLeft < buffer.capacity())
+                {
+                    buffer.limit((int) bytesLeft);
+                }
+                int read = channel.read(buffer, position);
+                if (read <= 0)
+                {
+                    // Nothing left to download!
+                    break;
+                }
+                os.write(buffer.array(), 0, read);
+                position += read;
+                bytesLeft -= read;
+            }
+        }
+        if (logger.isTraceEnabled())
+        {
+            logger.trace("...copied " + (position - start) + " bytes from file channel");
+        }
+    }
+    
+    /**
+     * Stream a range of bytes from the given InputStream to the OutputStream
+     */
+    private static void copyRange(InputStream is, OutputStream os, long start, long length) throws IOException
+    {
+        long skipped = 0L;
+        while (skipped < start)
+        {
+            long skip = is.skip(start - skipped);
+            if (skip <= 0L)
+            {
+                // Nothing left to download!
+                return;
+            }
+            skipped += skip;
+        }
+        long bytesLeft = length;
+        byte[] buf = new byte[(int) Math.max(1L, Math.min(bytesLeft, CHUNKSIZE))];
+        int read;
+        while (bytesLeft > 0L && (read = is.read(buf, 0, (int) Math.min(bytesLeft, buf.length))) > 0)
+        {
+            os.write(buf, 0, read);
+            bytesLeft -= read;
+        }
+    }
+}
@@ -26,7 +26,6 @@
 package org.alfresco.repo.web.util;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -34,6 +33,7 @@ import java.util.List;
 import java.util.StringTokenizer;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.alfresco.service.cmr.repository.ContentReader;
@@ -57,9 +57,8 @@ public class HttpRangeProcessor
     private static final String MULTIPART_BYTERANGES_HEADER  = "multipart/byteranges; boundary=" + MULTIPART_BYTERANGES_BOUNDRY;
     private static final String MULTIPART_BYTERANGES_BOUNDRY_SEP = "--" + MULTIPART_BYTERANGES_BOUNDRY;
     private static final String MULTIPART_BYTERANGES_BOUNDRY_END = MULTIPART_BYTERANGES_BOUNDRY_SEP + "--";
-    /** size of a multi-part byte range output buffer */
-    private static final int CHUNKSIZE = 64*1024;
     private ContentService contentService;
+    private HttpServletRequest sendFileRequest;
     
     
     /**
@@ -72,6 +71,17 @@ public class HttpRangeProcessor
         this.contentService = contentService;
     }
 
+    /**
+     * Let the servlet container send single ranges of file-backed content, if it supports it.
+     * 
+     * @param sendFileRequest the servlet request the ranges are sent for (may be <tt>null</tt>)
+     * @see FileChannelStreamer#sendFile(HttpServletRequest, ContentReader, long, long)
+     */
+    public void setSendFileRequest(HttpServletRequest sendFileRequest)
+    {
+        this.sendFileRequest = sendFileRequest;
+    }
+
     /**
      * Process a range header for a HttpServletResponse - handles single and multiple range requests.
      * 
@@ -217,7 +227,12 @@ public class HttpRangeProcessor
        if (getLogger().isDebugEnabled())
           getLogger().debug("Processing: Content-Range: " + contentRange);
        
-       InputStream is = null;
+       if (sendFileRequest != null && FileChannelStreamer.sendFile(sendFileRequest, reader, r.start, (r.end - r.start) + 1L))
+       {
+          // The container sends the body
+          return true;
+       }
+       
        try
        {
           // output the binary data for the range
@@ -230,9 +245,8 @@ public class HttpRangeProcessor
           {
              os = webScriptResponse.getOutputStream();
           }
-          is = reader.getContentInputStream();
           
-          streamRangeBytes(r, is, os, 0L);
+          streamRangeBytes(r, reader, os);
           
           os.close();
           processedRange = true;
@@ -243,10 +257,6 @@ public class HttpRangeProcessor
              getLogger().debug("Unable to process single range due to IO Exception: " + err.getMessage());
           throw err;
        }
-       finally
-       {
-          if (is != null) is.close();
-       }
        
        return processedRange;
     }
@@ -391,45 +401,31 @@ public class HttpRangeProcessor
              os =webScriptResponse.getOutputStream();
           }
           
-          InputStream is = null;
-          try
+          for (Range r : ranges)
           {
-             for (Range r : ranges)
+             if (logger.isDebugEnabled())
+                logger.debug("Processing: " + r.getContentRange());
+             
+             try
              {
-                if (logger.isDebugEnabled())
-                   logger.debug("Processing: " + r.getContentRange());
+                // output the header bytes for the range
+                if (os instanceof ServletOutputStream)
+                    r.outputHeader((ServletOutputStream) os);
                 
-                try
-                {
-                   // output the header bytes for the range
-                   if (os instanceof ServletOutputStream)
-                       r.outputHeader((ServletOutputStream) os);
-                   
-                   // output the binary data for the range
-                   // need a new reader for each new InputStream
-                   is = contentService.getReader(ref, property).getContentInputStream();
-                   streamRangeBytes(r, is, os, 0L);
-                   is.close();
-                   is = null;
-                   
-                   // section marker and flush stream
-                   if (os instanceof ServletOutputStream)
-                       ((ServletOutputStream) os).println();
-                   os.flush();
-                }
-                catch (IOException err)
-                {
-                   if (getLogger().isDebugEnabled())
-                      getLogger().debug("Unable to process multiple range due to IO Exception: " + err.getMessage());
-                   throw err;
-                }
+                // output the binary data for the range
+                // need a new reader for each range
+                streamRangeBytes(r, contentService.getReader(ref, property), os);
+                
+                // section marker and flush stream
+                if (os instanceof ServletOutputStream)
+                    ((ServletOutputStream) os).println();
+                os.flush();
              }
-          }
-          finally
-          {
-             if (is != null)
+             catch (IOException err)
              {
-                is.close();
+                if (getLogger().isDebugEnabled())
+                   getLogger().debug("Unable to process multiple range due to IO Exception: " + err.getMessage());
+                throw err;
              }
           }
           
@@ -444,71 +440,22 @@ public class HttpRangeProcessor
     }
     
     /**
-     * Stream a range of bytes from the given InputStream to the ServletOutputStream
+     * Stream a range of bytes from the given content to the OutputStream.  File-backed content is
+     * read from its file channel.
      * 
      * @param r       Byte Range to process
-     * @param is      InputStream
-     * @param os      ServletOutputStream
-     * @param offset  Assumed InputStream position - to calculate skip bytes from
+     * @param reader  ContentReader for the content
+     * @param os      OutputStream
      * 
+     * @see FileChannelStreamer#streamRange(ContentReader, OutputStream, long, long)
      */
-    private void streamRangeBytes(final Range r, final InputStream is, final OutputStream os, long offset)
+    private void streamRangeBytes(final Range r, final ContentReader reader, final OutputStream os)
        throws IOException
     {
-       final Log logger = getLogger();
-       final boolean trace = logger.isTraceEnabled();
-       
-       // TODO: investigate using getFileChannel() on ContentReader
-       
-       if (r.start != 0L && r.start > offset)
-       {
-          long skipped = offset + is.skip(r.start - offset);
-          if (skipped < r.start)
-          {
-              // Nothing left to download!
-              return;
-          }
-       }
        long span = (r.end - r.start) + 1L;
-       long bytesLeft = span;
-       int read = 0;
-       
-       // Check that bytesLeft isn't greater than int can hold
-       int bufSize;
-       if (bytesLeft >= Integer.MAX_VALUE - 8)
-       {
-          bufSize = CHUNKSIZE;
-       }
-       else
-       {
-          bufSize = ((int)bytesLeft) < CHUNKSIZE ? (int)bytesLeft : CHUNKSIZE;
-       }
-       byte[] buf = new byte[bufSize];
+       FileChannelStreamer.streamRange(reader, os, r.start, span);
        
-       while ((read = is.read(buf)) > 0 && bytesLeft != 0L)
-       {
-          os.write(buf, 0, read);
-          
-          bytesLeft -= (long)read;
-          
-          if (bytesLeft != 0L)
-          {
-             int resize;
-             if (bytesLeft >= Integer.MAX_VALUE - 8)
-             {
-                resize = CHUNKSIZE;
-             }
-             else
-             {
-                resize = ((int)bytesLeft) < CHUNKSIZE ? (int)bytesLeft : CHUNKSIZE;
-             }
-             if (resize != buf.length)
-             {
-                buf = new byte[resize];
-             }
-          }
-          if (trace) logger.trace("...wrote " + read + " bytes, with " + bytesLeft + " to go...");
-       }
+       if (getLogger().isTraceEnabled()) getLogger().trace("...wrote " + span + " bytes of range " + r);
     }
     
     
@@ -105,6 +105,7 @@ import org.alfresco.service.cmr.model.FileNotFoundException;
 import org.alfresco.service.cmr.repository.AssociationExistsException;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.CyclicChildRelationshipException;
@@ -142,10 +143,12 @@ import org.springframework.http.MediaType;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.AbstractList;
 import java.util.ArrayList;
@@ -2292,7 +2295,24 @@ public class NodesImpl implements Nodes
 
         InputStream is = null;
 
-        if (guessEncoding)
+        if (guessEncoding && stream != null && stream.getClass() == FileInputStream.class)
+        {
+            // eg. a spooled request body - rewind the file rather than buffering it so that
+            // the writer can transfer it channel to channel
+            try
+            {
+                FileChannel channel = ((FileInputStream) stream).getChannel();
+                long start = channel.position();
+                writer.setEncoding(guessEncoding(new BufferedInputStream(stream), mimeType, false));
+                channel.position(start);
+            }
+            catch (IOException ioe)
+            {
+                throw new ContentIOException("Failed to rewind content after trying to guess encoding", ioe);
+            }
+            is = stream;
+        }
+        else if (guessEncoding)
         {
             is = new BufferedInputStream(stream);
             is.mark(1024);
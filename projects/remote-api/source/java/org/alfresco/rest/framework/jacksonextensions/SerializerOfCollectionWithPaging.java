@@ -60,13 +60,28 @@ public class SerializerOfCollectionWithPaging extends SerializerBase<Serializabl
             jgen.writeFieldName("list");
                 jgen.writeStartObject();
                 serializePagination(pagedCol, jgen);
-    			jgen.writeObjectField("entries", pagedCol.getCollection());
+                serializeEntries(pagedCol, jgen, provider);
                 serializeIncludedSource(pagedCol, jgen);
                 jgen.writeEndObject(); 
             jgen.writeEndObject();  
         }
     }
 
+    /**
+     * Writes the entries one at a time, as they are iterated, rather than handing the whole collection
+     * to a collection serializer.  A lazily evaluated collection is therefore never held in memory.
+     */
+    private void serializeEntries(SerializablePagedCollection pagedCol, JsonGenerator jgen, SerializerProvider provider) throws IOException,
+            JsonProcessingException
+    {
+        jgen.writeArrayFieldStart("entries");
+        for (Object entry : pagedCol.getCollection())
+        {
+            provider.defaultSerializeValue(entry, jgen);
+        }
+        jgen.writeEndArray();
+    }
+
     private void serializeIncludedSource(SerializablePagedCollection pagedCol, JsonGenerator jgen) throws IOException,
             JsonProcessingException
     {
@@ -26,7 +26,6 @@
 package org.alfresco.rest.framework.jacksonextensions;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -54,13 +53,11 @@ public class SerializerOfExecutionResult extends SerializerBase<ExecutionResult>
         super(ExecutionResult.class);
     }
 
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     @Override
     public void serialize(ExecutionResult value, JsonGenerator jgen, SerializerProvider provider)
                 throws IOException, JsonGenerationException
     {
         
-        SerializationConfig config = provider.getConfig();
         Object rootObj = value.getRoot();
         if (rootObj == null)
         {
@@ -68,72 +65,103 @@ public class SerializerOfExecutionResult extends SerializerBase<ExecutionResult>
         }
         else
         {
-            Class<?> cls = rootObj.getClass();
-            Map toBeSerialized = new HashMap(); //create an untyped map, add the contents of the root + the embeds.
-            BeanPropertiesFilter filter = value.getFilter();
-            if (filter == null) filter = BeanPropertiesFilter.ALLOW_ALL;
-            
-            if (Map.class.isAssignableFrom(cls))
+            //if its an embedded entity then render the properties (not as an "entry:")
+            if (value.isAnEmbeddedEntity())
             {
-                // Its a map so 
-                Map rootAsaMap = (Map) rootObj;
-                toBeSerialized.putAll(rootAsaMap);
+                serializeProperties(value, jgen, provider);
             }
             else
             {
-                JavaType classType = config.constructType(cls);
-                BeanDescription beanDesc = provider.getConfig().introspect(classType);
-                List<BeanPropertyDefinition> props = beanDesc.findProperties();
-                for (BeanPropertyDefinition beanProperty : props)
+                jgen.writeStartObject();
+                jgen.writeFieldName("entry");
+                serializeProperties(value, jgen, provider);
+                if (value.getRelated() != null && !value.getRelated().isEmpty())
                 {
-                    if (beanProperty.couldSerialize() && filter.isAllowed(beanProperty.getName()))
-                    {
-                        Object propertyValue = ResourceInspectorUtil.invokeMethod(beanProperty.getGetter().getAnnotated(), rootObj);
-                        if (propertyValue != null)
-                        {
-                            if((propertyValue instanceof String))
-                            {
-                            	if(((String)propertyValue).trim().length() > 0)
-                            	{
-                            		toBeSerialized.put(beanProperty.getName(), propertyValue);
-                            	}
-                            }
-                            else
-                            {
-                            	toBeSerialized.put(beanProperty.getName(), propertyValue);
-                            }
-                        }
-                    }
+                  jgen.writeObjectField("relations", value.getRelated());
                 }
+                jgen.writeEndObject();
             }
-            
-            //Add embedded
-            for (Entry<String, Object> embedded : value.getEmbedded().entrySet())
+
+        }
+
+    }
+
+    /**
+     * Writes the properties of the root object, followed by the embedded entities, as a single json object.
+     * The filter is applied as each property is generated so that no intermediate map of the entity is built.
+     * An embedded entity that the filter allows takes precedence over a root property of the same name.  Null
+     * map values and embedded entities are written as the map serializer would write them.
+     */
+    @SuppressWarnings("rawtypes")
+    private void serializeProperties(ExecutionResult value, JsonGenerator jgen, SerializerProvider provider)
+                throws IOException, JsonGenerationException
+    {
+        SerializationConfig config = provider.getConfig();
+        Object rootObj = value.getRoot();
+        Class<?> cls = rootObj.getClass();
+        Map<String, Object> embeddedEntities = value.getEmbedded();
+        BeanPropertiesFilter filter = value.getFilter();
+        if (filter == null) filter = BeanPropertiesFilter.ALLOW_ALL;
+        boolean writeNulls = provider.isEnabled(SerializationConfig.Feature.WRITE_NULL_MAP_VALUES);
+
+        jgen.writeStartObject();
+        if (Map.class.isAssignableFrom(cls))
+        {
+            // Its a map so 
+            for (Object mapEntry : ((Map) rootObj).entrySet())
             {
-                if (filter == null || filter.isAllowed(embedded.getKey()))
+                Object key = ((Entry) mapEntry).getKey();
+                Object propertyValue = ((Entry) mapEntry).getValue();
+                String propertyName = String.valueOf(key);
+                if ((propertyValue != null || writeNulls) && !isReplacedByEmbedded(propertyName, embeddedEntities, filter))
                 {
-                  toBeSerialized.put(embedded.getKey(),embedded.getValue());
+                    provider.defaultSerializeField(propertyName, propertyValue, jgen);
                 }
             }
-
-            //if its an embedded entity then render the properties (not as an "entry:")
-            if (value.isAnEmbeddedEntity())
-            {
-                jgen.writeObject(toBeSerialized);
-            }
-            else
+        }
+        else
+        {
+            JavaType classType = config.constructType(cls);
+            BeanDescription beanDesc = config.introspect(classType);
+            List<BeanPropertyDefinition> props = beanDesc.findProperties();
+            for (BeanPropertyDefinition beanProperty : props)
             {
-                jgen.writeStartObject();
-                jgen.writeObjectField("entry", toBeSerialized);
-                if (value.getRelated() != null && !value.getRelated().isEmpty())
+                String propertyName = beanProperty.getName();
+                if (beanProperty.couldSerialize() && filter.isAllowed(propertyName) && !isReplacedByEmbedded(propertyName, embeddedEntities, filter))
                 {
-                  jgen.writeObjectField("relations", value.getRelated());
+                    Object propertyValue = ResourceInspectorUtil.invokeMethod(beanProperty.getGetter().getAnnotated(), rootObj);
+                    if (propertyValue != null)
+                    {
+                        if((propertyValue instanceof String))
+                        {
+                        	if(((String)propertyValue).trim().length() > 0)
+                        	{
+                        		provider.defaultSerializeField(propertyName, propertyValue, jgen);
+                        	}
+                        }
+                        else
+                        {
+                        	provider.defaultSerializeField(propertyName, propertyValue, jgen);
+                        }
+                    }
                 }
-                jgen.writeEndObject();
             }
+        }
 
+        //Add embedded
+        for (Entry<String, Object> embedded : embeddedEntities.entrySet())
+        {
+            if ((embedded.getValue() != null || writeNulls) && filter.isAllowed(embedded.getKey()))
+            {
+                provider.defaultSerializeField(embedded.getKey(), embedded.getValue(), jgen);
+            }
         }
+        jgen.writeEndObject();
+    }
 
+    private static boolean isReplacedByEmbedded(String propertyName, Map<String, Object> embeddedEntities, BeanPropertiesFilter filter)
+    {
+        return embeddedEntities.containsKey(propertyName) && filter.isAllowed(propertyName);
     }
 
 }
@@ -51,6 +51,7 @@ import org.alfresco.rest.framework.resource.content.CacheDirective;
 import org.alfresco.rest.framework.resource.content.ContentInfo;
 import org.alfresco.rest.framework.resource.content.FileBinaryResource;
 import org.alfresco.rest.framework.resource.content.NodeBinaryResource;
+import org.alfresco.rest.framework.resource.parameters.CollectionWithPagingInfo;
 import org.alfresco.rest.framework.resource.parameters.Params;
 import org.alfresco.rest.framework.tools.ApiAssistant;
 import org.apache.commons.lang.StringUtils;
@@ -89,11 +90,13 @@ public abstract class AbstractResourceWebScript extends ApiWebScript implements
     private ParamsExtractor paramsExtractor;
     private ContentStreamer streamer;
     protected ResourceWebScriptHelper helper;
+    private boolean streamCollections = false;
 
     @SuppressWarnings("rawtypes")
     @Override
     public void execute(final Api api, final WebScriptRequest req, final WebScriptResponse res) throws IOException
     {
+        boolean streamed = false;
         try
         {
             final Map<String, Object> respons = new HashMap<String, Object>();
@@ -103,7 +106,8 @@ public abstract class AbstractResourceWebScript extends ApiWebScript implements
             final boolean isReadOnly = HttpMethod.GET==httpMethod;
 
             //This execution usually takes place in a Retrying Transaction (see subclasses)
-            final Object toSerialize = execute(resource, params, res, isReadOnly);
+            streamed = streamCollections && isReadOnly;
+            final Object toSerialize = streamed ? executeAndStream(resource, params, res) : execute(resource, params, res, isReadOnly);
             
             //Outside the transaction.
             if (toSerialize != null)
@@ -153,10 +157,19 @@ public abstract class AbstractResourceWebScript extends ApiWebScript implements
         }
         catch (AlfrescoRuntimeException | ApiException | WebScriptException xception )
         {
+            if (streamed)
+            {
+                //Don't append the error to a partly written collection
+                res.reset();
+            }
             assistant.renderException(xception, res);
         }
         catch (RuntimeException runtimeException)
         {
+            if (streamed)
+            {
+                res.reset();
+            }
             assistant.renderException(runtimeException, res);
         }
     }
@@ -185,6 +198,55 @@ public abstract class AbstractResourceWebScript extends ApiWebScript implements
         return toReturn;
     }
 
+    /**
+     * Executes a read-only action.  If the result is a collection then it is rendered from within the
+     * transaction: each entry is processed and serialized as it is iterated, so that the processed entries
+     * of the page are never held in memory as a whole.
+     * <p/>
+     * The serialized page is still held by the {@link org.alfresco.repo.web.scripts.BufferedResponse} until
+     * the web script completes, so nothing reaches the client earlier.  That buffer is reset before the
+     * transaction is retried and before an error is rendered, so the client gets either the whole page or a
+     * clean error response.
+     * 
+     * @return the result to render, or <tt>null</tt> if it has already been written to the response
+     */
+    public Object executeAndStream(final ResourceWithMetadata resource, final Params params, final WebScriptResponse res)
+    {
+        final String entityCollectionName = ResourceInspector.findEntityCollectionNameName(resource.getMetaData());
+        final ResourceOperation operation = resource.getMetaData().getOperation(getHttpMethod());
+        final WithResponse callBack = new WithResponse(operation.getSuccessStatus(), ApiAssistant.DEFAULT_JSON_CONTENT,ApiAssistant.CACHE_NEVER);
+        return transactionService.getRetryingTransactionHelper().doInTransaction(
+                new RetryingTransactionHelper.RetryingTransactionCallback<Object>()
+                {
+                    private boolean retrying = false;
+
+                    @Override
+                    public Object execute() throws Throwable
+                    {
+                        if (retrying)
+                        {
+                            //Discard whatever the previous attempt wrote
+                            res.reset();
+                        }
+                        retrying = true;
+                        Object result = executeAction(resource, params, callBack);
+                        //The status must be set before anything is written
+                        setResponse(res,callBack);
+                        if (result instanceof BinaryResource)
+                        {
+                            return result; //don't postprocess it.
+                        }
+                        if (result instanceof CollectionWithPagingInfo<?>)
+                        {
+                            Object toSerialize = helper.processAdditionsToTheResponseLazily(res, resource.getMetaData().getApi(), entityCollectionName, params, result);
+                            renderJsonResponse(res, toSerialize);
+                            return null;
+                        }
+                        return helper.processAdditionsToTheResponse(res, resource.getMetaData().getApi(), entityCollectionName, params, result);
+                    }
+                }, true, true);
+    }
+
     protected void streamResponse(final WebScriptRequest req, final WebScriptResponse res, BinaryResource resource) throws IOException
     {
         if (resource instanceof FileBinaryResource)
@@ -301,6 +363,16 @@ public abstract class AbstractResourceWebScript extends ApiWebScript implements
         this.helper = helper;
     }
 
+    /**
+     * Render collections returned by read-only (GET) requests entry by entry, from within the transaction.
+     * 
+     * @param streamCollections boolean
+     */
+    public void setStreamCollections(boolean streamCollections)
+    {
+        this.streamCollections = streamCollections;
+    }
+
     public HttpMethod getHttpMethod()
     {
         return this.httpMethod;
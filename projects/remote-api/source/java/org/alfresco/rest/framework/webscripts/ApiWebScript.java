@@ -71,6 +71,8 @@ public abstract class ApiWebScript extends AbstractWebScript
     protected int memoryThreshold = 4 * 1024 * 1024; // 4mb
     protected long maxContentSize = (long) 4 * 1024 * 1024 * 1024; // 4gb
     protected ThresholdOutputStreamFactory streamFactory = null;
+    protected boolean spoolToFile = false;
+    protected File tempDirectory = null;
     protected TransactionService transactionService;
 
     public void setTransactionService(TransactionService transactionService)
@@ -102,6 +104,17 @@ public abstract class ApiWebScript extends AbstractWebScript
         this.maxContentSize = maxContentSize;
     }
 
+    /**
+     * Spool large request bodies through a FileChannel into a plain temp file, so that they can be
+     * transferred file to file into a content store.  Ignored if temp files are to be encrypted.
+     * 
+     * @param spoolToFile boolean
+     */
+    public void setSpoolToFile(boolean spoolToFile)
+    {
+        this.spoolToFile = spoolToFile;
+    }
+
     public void setStreamFactory(ThresholdOutputStreamFactory streamFactory)
     {
         this.streamFactory = streamFactory;
@@ -109,7 +122,7 @@ public abstract class ApiWebScript extends AbstractWebScript
 
     public void init()
     {
-        File tempDirectory = TempFileProvider.getTempDir(tempDirectoryName);
+        this.tempDirectory = TempFileProvider.getTempDir(tempDirectoryName);
         this.streamFactory = ThresholdOutputStreamFactory.newInstance(tempDirectory, memoryThreshold, maxContentSize, encryptTempFiles);
     }
 
@@ -145,7 +158,15 @@ public abstract class ApiWebScript extends AbstractWebScript
     protected BufferedRequest getRequest(final WebScriptRequest req)
     {
         // create buffered request and response that allow transaction retrying
-        final BufferedRequest bufferedReq = new BufferedRequest(req, streamFactory);
+        final BufferedRequest bufferedReq;
+        if (spoolToFile && !encryptTempFiles && tempDirectory != null)
+        {
+            bufferedReq = new BufferedRequest(req, streamFactory, tempDirectory, memoryThreshold, maxContentSize);
+        }
+        else
+        {
+            bufferedReq = new BufferedRequest(req, streamFactory);
+        }
         return bufferedReq;
     }
 
@@ -31,12 +31,14 @@ import java.io.IOException;
 import java.io.Reader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -566,6 +568,67 @@ public class ResourceWebScriptHelper
         }
     }
 
+    /**
+     * As {@link #processAdditionsToTheResponse(WebScriptResponse, Api, String, Params, Object)} but a
+     * CollectionWithPagingInfo is wrapped rather than copied: each entry is processed only when it is
+     * iterated, i.e. as it is written to the response, so that a large page never exists in memory as
+     * a whole.
+     * <p/>
+     * The returned object must therefore be serialized within the transaction that produced it.
+     * 
+     * @param api Api
+     * @param entityCollectionName String
+     * @param params  Params
+     * @param objectToWrap Object
+     * @return Object - Either ExecutionResult or CollectionWithPagingInfo<ExecutionResult>
+     */
+    public Object processAdditionsToTheResponseLazily(final WebScriptResponse res, final Api api, final String entityCollectionName,
+                final Params params, Object objectToWrap)
+    {
+        PropertyCheck.mandatory(this, null, params);
+        if (objectToWrap instanceof CollectionWithPagingInfo<?>)
+        {
+            final CollectionWithPagingInfo<?> collectionToWrap = (CollectionWithPagingInfo<?>) objectToWrap;
+            Object sourceEntity = executeIncludedSource(api, params, entityCollectionName, collectionToWrap);
+            Collection<Object> resultCollection = new AbstractCollection<Object>()
+            {
+                @Override
+                public Iterator<Object> iterator()
+                {
+                    final Iterator<?> entries = collectionToWrap.getCollection().iterator();
+                    return new Iterator<Object>()
+                    {
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return entries.hasNext();
+                        }
+
+                        @Override
+                        public Object next()
+                        {
+                            return processAdditionsToTheResponse(res, api, entityCollectionName, params, entries.next());
+                        }
+
+                        @Override
+                        public void remove()
+                        {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size()
+                {
+                    return collectionToWrap.getCollection().size();
+                }
+            };
+            return CollectionWithPagingInfo.asPaged(collectionToWrap.getPaging(), resultCollection, collectionToWrap.hasMoreItems(), collectionToWrap.getTotalItems(), sourceEntity);
+        }
+        return processAdditionsToTheResponse(res, api, entityCollectionName, params, objectToWrap);
+    }
+
     private Object executeIncludedSource(Api api, Params params, String entityCollectionName, CollectionWithPagingInfo<?> collectionToWrap)
     {
         if (params.includeSource())
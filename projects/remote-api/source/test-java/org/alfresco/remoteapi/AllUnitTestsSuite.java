@@ -29,7 +29,9 @@ import junit.framework.JUnit4TestAdapter;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import org.alfresco.repo.web.scripts.BufferedRequestTest;
 import org.alfresco.repo.web.scripts.solr.StatsGetTest;
+import org.alfresco.repo.web.util.FileChannelStreamerTest;
 import org.alfresco.repo.web.util.PagingCursorTest;
 import org.alfresco.repo.web.util.paging.PagingTest;
 import org.alfresco.repo.webdav.GetMethodTest;
@@ -60,6 +62,8 @@ public class AllUnitTestsSuite extends TestSuite
         pagingTests(suite);
 
         suite.addTest(new JUnit4TestAdapter(StatsGetTest.class));
+        suite.addTest(new JUnit4TestAdapter(FileChannelStreamerTest.class));
+        suite.addTest(new JUnit4TestAdapter(BufferedRequestTest.class));
         return suite;
     }
     
@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.alfresco.repo.content.ContentLimitViolationException;
+import org.alfresco.util.TempFileProvider;
+import org.apache.chemistry.opencmis.server.shared.ThresholdOutputStreamFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.extensions.surf.util.Content;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * Tests for the BufferedRequest class.
+ * 
+ * @since 5.2
+ */
+public class BufferedRequestTest
+{
+    private byte[] body;
+    private File spoolDirectory;
+    private ThresholdOutputStreamFactory streamFactory;
+    private WebScriptRequest req;
+    private Content content;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        body = new byte[100000];
+        for (int i = 0; i < body.length; i++)
+        {
+            body[i] = (byte) (i % 251);
+        }
+        spoolDirectory = TempFileProvider.getTempDir("BufferedRequestTest-" + System.currentTimeMillis());
+        streamFactory = ThresholdOutputStreamFactory.newInstance(spoolDirectory, 1024, 0L, false);
+        
+        content = mock(Content.class);
+        when(content.getSize()).thenReturn((long) body.length);
+        when(content.getInputStream()).thenReturn(new ByteArrayInputStream(body));
+        req = mock(WebScriptRequest.class);
+        when(req.getContent()).thenReturn(content);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        File[] files = spoolDirectory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        spoolDirectory.delete();
+    }
+    
+    private byte[] read(InputStream is) throws IOException
+    {
+        return FileCopyUtils.copyToByteArray(is);
+    }
+    
+    @Test
+    public void testLargeBodyIsSpooledToFile() throws Exception
+    {
+        BufferedRequest bufferedReq = new BufferedRequest(req, streamFactory, spoolDirectory, 1024L, 0L);
+        InputStream is = bufferedReq.getContent().getInputStream();
+        // A plain file stream, which content writers transfer from the file channel
+        assertEquals(FileInputStream.class, is.getClass());
+        assertArrayEquals(body, read(is));
+        assertEquals(1, spoolDirectory.listFiles().length);
+        
+        // A retried transaction reads the spooled file again, rather than the request
+        bufferedReq.reset();
+        assertArrayEquals(body, read(bufferedReq.getContent().getInputStream()));
+        verify(content, times(1)).getInputStream();
+        
+        bufferedReq.close();
+        assertEquals(0, spoolDirectory.listFiles().length);
+    }
+    
+    @Test
+    public void testSmallBodyIsNotSpooled() throws Exception
+    {
+        when(content.getSize()).thenReturn(100L);
+        when(content.getInputStream()).thenReturn(new ByteArrayInputStream(body, 0, 100));
+        BufferedRequest bufferedReq = new BufferedRequest(req, streamFactory, spoolDirectory, 1024L, 0L);
+        InputStream is = bufferedReq.getContent().getInputStream();
+        assertFalse(is instanceof FileInputStream);
+        assertEquals(100, read(is).length);
+        bufferedReq.close();
+    }
+    
+    @Test
+    public void testSpooledBodyIsLimited() throws Exception
+    {
+        BufferedRequest bufferedReq = new BufferedRequest(req, streamFactory, spoolDirectory, 1024L, 50000L);
+        try
+        {
+            bufferedReq.getContent().getInputStream();
+            fail("The body is larger than the maximum content size");
+        }
+        catch (ContentLimitViolationException e)
+        {
+            // expected
+        }
+        assertTrue("The spooled file must be removed", spoolDirectory.listFiles().length == 0);
+        bufferedReq.close();
+    }
+}
@@ -25,6 +25,10 @@
  */
 package org.alfresco.repo.web.scripts.solr;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -36,7 +40,10 @@ import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.index.stream.TrackingStreamFormat;
+import org.alfresco.repo.index.stream.TrackingStreamReader;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.solr.Acl;
 import org.alfresco.repo.solr.AclChangeSet;
@@ -48,6 +55,7 @@ import org.alfresco.repo.web.scripts.BaseWebScriptTest;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.model.FileFolderService;
 import org.alfresco.service.cmr.model.FileInfo;
+import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.Path;
@@ -144,6 +152,48 @@ public class SOLRWebScriptTest extends BaseWebScriptTest
         return transactions;
     }
 
+    /**
+     * Clients that accept the binary tracking format get the same transactions as in the JSON
+     */
+    public void testTransactionsGetBinary() throws Exception
+    {
+        long fromCommitTime = System.currentTimeMillis();
+        
+        buildTransactions5();
+        
+        String url = "/api/solr/transactions?fromCommitTime=" + fromCommitTime;
+        JSONObject json = new JSONObject(sendRequest(new TestWebScriptServer.GetRequest(url), Status.STATUS_OK, admin).getContentAsString());
+        JSONArray transactions = json.getJSONArray("transactions");
+        assertEquals("Number of transactions is incorrect", 1, transactions.length());
+        
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept", TrackingStreamFormat.MIMETYPE + ", application/json");
+        TestWebScriptServer.GetRequest req = new TestWebScriptServer.GetRequest(url);
+        req.setHeaders(headers);
+        Response response = sendRequest(req, Status.STATUS_OK, admin);
+        assertTrue(TrackingStreamFormat.isContentType(response.getContentType()));
+        
+        TrackingStreamReader reader = new TrackingStreamReader(
+                new ByteArrayInputStream(response.getContentAsByteArray()), TrackingStreamFormat.TYPE_TRANSACTIONS);
+        for (int i = 0; i < transactions.length(); i++)
+        {
+            JSONObject txn = transactions.getJSONObject(i);
+            assertTrue(reader.nextRecord());
+            assertEquals(txn.getLong("id"), reader.readLong());
+            assertEquals(txn.getLong("commitTimeMs"), reader.readLong());
+            assertEquals(txn.getInt("updates"), reader.readInt());
+            assertEquals(txn.getInt("deletes"), reader.readInt());
+        }
+        assertFalse(reader.nextRecord());
+        // The maximum values are nullable and must be encoded as such; they may have moved on since the JSON request
+        Long maxTxnCommitTime = reader.readNullableLong();
+        Long maxTxnId = reader.readNullableLong();
+        assertNotNull(maxTxnCommitTime);
+        assertNotNull(maxTxnId);
+        assertTrue(maxTxnCommitTime >= json.getLong("maxTxnCommitTime"));
+        assertTrue(maxTxnId >= json.getLong("maxTxnId"));
+    }
+
     public void testAclChangeSetsGet() throws Exception
     {
         String url = "/api/solr/aclchangesets?fromTime=" + 0L + "&fromId=" + 0L;
@@ -794,6 +844,86 @@ public class SOLRWebScriptTest extends BaseWebScriptTest
         return (value == null ? false : value.equals(propValue));
     }
     
+    public void testTextContents() throws Exception
+    {
+        final NodeRef[] nodeRefs = new NodeRef[2];
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                PropertyMap props = new PropertyMap();
+                props.put(ContentModel.PROP_NAME, "Container8");
+                nodeRefs[0] = nodeService.createNode(
+                        rootNodeRef,
+                        ContentModel.ASSOC_CHILDREN,
+                        ContentModel.ASSOC_CHILDREN,
+                        ContentModel.TYPE_FOLDER,
+                        props).getChildRef();
+                
+                nodeRefs[1] = fileFolderService.create(nodeRefs[0], "Content1", ContentModel.TYPE_CONTENT).getNodeRef();
+                ContentWriter writer = fileFolderService.getWriter(nodeRefs[1]);
+                writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+                writer.setEncoding("UTF-8");
+                writer.putContent("test content");
+                return null;
+            }
+        });
+        long folderId = getNodeID(nodeRefs[0]);
+        long contentId = getNodeID(nodeRefs[1]);
+        
+        JSONObject json = new JSONObject();
+        JSONArray nodeIds = new JSONArray();
+        nodeIds.put(contentId);
+        nodeIds.put(folderId);
+        nodeIds.put(-1L);
+        json.put("nodeIds", nodeIds);
+        TestWebScriptServer.PostRequest req = new TestWebScriptServer.PostRequest("/api/solr/textContents", json.toString(), "application/json");
+        Response response = sendRequest(req, Status.STATUS_OK, admin);
+        
+        TrackingStreamReader reader = new TrackingStreamReader(
+                new ByteArrayInputStream(response.getContentAsByteArray()), TrackingStreamFormat.TYPE_TEXT_CONTENTS);
+        assertTrue(reader.nextRecord());
+        assertEquals(contentId, reader.readLong());
+        assertEquals(TrackingStreamFormat.TEXT_STATUS_OK, reader.readSymbol());
+        assertNull(reader.readString());
+        assertNotNull(reader.readNullableLong());
+        assertEquals("test content", new String(readFully(reader.readBytes()), "UTF-8"));
+        
+        // Neither the folder nor a node that does not exist have content
+        for (long nodeId : new long[] { folderId, -1L })
+        {
+            assertTrue(reader.nextRecord());
+            assertEquals(nodeId, reader.readLong());
+            assertEquals(TrackingStreamFormat.TEXT_STATUS_NO_CONTENT, reader.readSymbol());
+            assertNull(reader.readString());
+            assertNull(reader.readNullableLong());
+            assertNull(reader.readBytes());
+        }
+        assertFalse(reader.nextRecord());
+        
+        // Too many nodes
+        nodeIds = new JSONArray();
+        for (int i = 0; i < 101; i++)
+        {
+            nodeIds.put(contentId);
+        }
+        json.put("nodeIds", nodeIds);
+        req = new TestWebScriptServer.PostRequest("/api/solr/textContents", json.toString(), "application/json");
+        sendRequest(req, Status.STATUS_BAD_REQUEST, admin);
+    }
+    
+    private byte[] readFully(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int read;
+        while ((read = is.read(buf)) > 0)
+        {
+            os.write(buf, 0, read);
+        }
+        return os.toByteArray();
+    }
+    
     public void DISABLED_testGetContent() throws Exception
     {
         long nodeId = -1l;
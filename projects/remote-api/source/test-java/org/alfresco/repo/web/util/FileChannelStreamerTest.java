@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.util.TempFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Tests for the FileChannelStreamer class.
+ * 
+ * @since 5.2
+ */
+public class FileChannelStreamerTest
+{
+    private byte[] content;
+    private File file;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        content = new byte[200000];
+        for (int i = 0; i < content.length; i++)
+        {
+            content[i] = (byte) (i % 251);
+        }
+        file = TempFileProvider.createTempFile("FileChannelStreamerTest", ".bin");
+        FileOutputStream os = new FileOutputStream(file);
+        try
+        {
+            os.write(content);
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+    
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+    
+    private ContentReader getStreamReader()
+    {
+        ContentReader reader = mock(ContentReader.class);
+        when(reader.getSize()).thenReturn((long) content.length);
+        when(reader.getContentInputStream()).thenReturn(new ByteArrayInputStream(content));
+        return reader;
+    }
+    
+    @Test
+    public void testStreamFileContent() throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        FileChannelStreamer.streamContent(new FileContentReader(file), os);
+        assertArrayEquals(content, os.toByteArray());
+    }
+    
+    @Test
+    public void testStreamFileRange() throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        FileChannelStreamer.streamRange(new FileContentReader(file), os, 70000L, 100001L);
+        assertArrayEquals(Arrays.copyOfRange(content, 70000, 170001), os.toByteArray());
+    }
+    
+    @Test
+    public void testStreamFileRangeBeyondEnd() throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        FileChannelStreamer.streamRange(new FileContentReader(file), os, 199990L, 100L);
+        assertArrayEquals(Arrays.copyOfRange(content, 199990, 200000), os.toByteArray());
+    }
+    
+    @Test
+    public void testStreamFileRangeToFile() throws IOException
+    {
+        File target = TempFileProvider.createTempFile("FileChannelStreamerTest", ".out");
+        try
+        {
+            FileOutputStream os = new FileOutputStream(target);
+            try
+            {
+                FileChannelStreamer.streamRange(new FileContentReader(file), os, 70000L, 100001L);
+            }
+            finally
+            {
+                os.close();
+            }
+            assertEquals(100001L, target.length());
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            FileChannelStreamer.streamContent(new FileContentReader(target), copy);
+            assertArrayEquals(Arrays.copyOfRange(content, 70000, 170001), copy.toByteArray());
+        }
+        finally
+        {
+            target.delete();
+        }
+    }
+    
+    @Test
+    public void testStreamNonFileRange() throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        FileChannelStreamer.streamRange(getStreamReader(), os, 70000L, 100001L);
+        assertArrayEquals(Arrays.copyOfRange(content, 70000, 170001), os.toByteArray());
+    }
+    
+    @Test
+    public void testSendFile()
+    {
+        MockHttpServletRequest req = new MockHttpServletRequest();
+        // Not supported by the container
+        assertFalse(FileChannelStreamer.sendFile(req, new FileContentReader(file), 0L, content.length));
+        assertNull(req.getAttribute(FileChannelStreamer.ATTR_SENDFILE_FILENAME));
+        
+        req.setAttribute(FileChannelStreamer.ATTR_SENDFILE_SUPPORT, Boolean.TRUE);
+        // Not file-backed
+        assertFalse(FileChannelStreamer.sendFile(req, getStreamReader(), 0L, content.length));
+        
+        assertTrue(FileChannelStreamer.sendFile(req, new FileContentReader(file), 100L, 500L));
+        assertEquals(file.getAbsolutePath(), req.getAttribute(FileChannelStreamer.ATTR_SENDFILE_FILENAME));
+        assertEquals(100L, req.getAttribute(FileChannelStreamer.ATTR_SENDFILE_START));
+        assertEquals(600L, req.getAttribute(FileChannelStreamer.ATTR_SENDFILE_END));
+    }
+}
@@ -29,16 +29,21 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 
 import javax.servlet.http.HttpServletResponse;
 
+import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.util.TempFileProvider;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 
 /**
@@ -85,6 +90,41 @@ public class HttpRangeProcessorTest
         testRange("20000-", HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
     }
     
+    @Test
+    public void testSingleRangeSentByContainer() throws IOException
+    {
+        File file = TempFileProvider.createTempFile("HttpRangeProcessorTest", ".bin");
+        try
+        {
+            FileOutputStream os = new FileOutputStream(file);
+            try
+            {
+                os.write(new byte[1000]);
+            }
+            finally
+            {
+                os.close();
+            }
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setAttribute(FileChannelStreamer.ATTR_SENDFILE_SUPPORT, Boolean.TRUE);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            httpRangeProcessor.setSendFileRequest(request);
+            
+            assertTrue(httpRangeProcessor.processRange(response, new FileContentReader(file), "100-199", null, null, "image/jpeg", null));
+            assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+            assertEquals("bytes 100-199/1000", response.getHeader("Content-Range"));
+            assertEquals(file.getAbsolutePath(), request.getAttribute(FileChannelStreamer.ATTR_SENDFILE_FILENAME));
+            assertEquals(100L, request.getAttribute(FileChannelStreamer.ATTR_SENDFILE_START));
+            assertEquals(200L, request.getAttribute(FileChannelStreamer.ATTR_SENDFILE_END));
+            // The container writes the body
+            assertEquals(0, response.getContentAsByteArray().length);
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+    
     protected void testRange(String range, int expectedStatus) throws IOException
     {
         MockHttpServletResponse response = new MockHttpServletResponse();
@@ -28,6 +28,7 @@ package org.alfresco.rest.framework.tests.core;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -35,6 +36,8 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.web.scripts.BufferedResponse;
 import org.alfresco.rest.framework.Api;
 import org.alfresco.rest.framework.core.ResourceLocator;
 import org.alfresco.rest.framework.core.ResourceLookupDictionary;
@@ -53,6 +56,8 @@ import org.alfresco.rest.framework.tests.api.mocks3.FlockEntityResource;
 import org.alfresco.rest.framework.tools.ApiAssistant;
 import org.alfresco.rest.framework.webscripts.AbstractResourceWebScript;
 import org.alfresco.rest.framework.webscripts.ApiWebScript;
+import org.alfresco.service.transaction.TransactionService;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.invocation.InvocationOnMock;
@@ -133,6 +138,43 @@ public class ExecutionTests extends AbstractContextTest
         assertNotNull(result);
     }
 
+    @Test
+    public void testInvokeGetAndStreamWithRetry() throws IOException
+    {
+        AbstractResourceWebScript executor = getExecutor();
+
+        //Run each callback twice, as though the first attempt failed to commit after writing the response
+        TransactionService transerv = mock(TransactionService.class);
+        RetryingTransactionHelper tHelper = mock(RetryingTransactionHelper.class);
+        when(transerv.getRetryingTransactionHelper()).thenReturn(tHelper);
+        when(tHelper.doInTransaction(any(RetryingTransactionHelper.RetryingTransactionCallback.class), anyBoolean(), anyBoolean())).thenAnswer(new Answer<Object>() {
+            @SuppressWarnings("rawtypes")
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                RetryingTransactionHelper.RetryingTransactionCallback cb = (RetryingTransactionHelper.RetryingTransactionCallback) invocation.getArguments()[0];
+                cb.execute();
+                return cb.execute();
+            }
+        });
+        executor.setTransactionService(transerv);
+
+        ResourceWithMetadata entityResource = locator.locateEntityResource(api,"sheep", HttpMethod.GET);
+        WebScriptResponse response = mock(WebScriptResponse.class);
+        BufferedResponse bufferedResponse = new BufferedResponse(response, 1024);
+        Object result = executor.executeAndStream(entityResource, Params.valueOf((String)null, null, mock(WebScriptRequest.class)), bufferedResponse);
+        assertNull("The collection has already been written", result);
+        verify(response, times(1)).reset();
+        verify(response, times(2)).setStatus(Status.STATUS_OK);
+        String out = bufferedResponse.getOutputStream().toString();
+        assertEquals("The retry must replace the output of the first attempt: " + out, 1, StringUtils.countMatches(out, "\"list\""));
+        assertTrue(out.contains("paged"));
+
+        //Anything else is returned to be rendered after the transaction
+        result = executor.executeAndStream(entityResource, Params.valueOf("1234", null, mock(WebScriptRequest.class)), new BufferedResponse(mock(WebScriptResponse.class), 1024));
+        assertTrue(result instanceof ExecutionResult);
+        assertEquals("1234", ((Sheep) ((ExecutionResult) result).getRoot()).getId());
+    }
+
     @Test
     public void testInvokePost() throws IOException
     {
@@ -165,6 +165,25 @@ public class SerializeTests extends AbstractContextTest
         assertTrue("There must be json output as List with pagination", StringUtils.startsWith(out, "{\"list\":{\"pagination\":{\"count\":1,"));
 
     }
+
+    @Test
+    public void testPagedCollectionLazily() throws IOException
+    {
+        ResourceWithMetadata relationResource = locator.locateRelationResource(api,"sheep", "baaahh", HttpMethod.GET);
+        RelationshipResourceAction.Read<?> getter = (RelationshipResourceAction.Read<?>) relationResource.getResource();
+        CollectionWithPagingInfo<?> resources = getter.readAll("123",Params.valueOf("", null, null));
+        String expected = writeResponse(helper.processAdditionsToTheResponse(mock(WebScriptResponse.class), api,null, Params.valueOf("notUsed", null, null), resources));
+
+        Object lazy = helper.processAdditionsToTheResponseLazily(mock(WebScriptResponse.class), api,null, Params.valueOf("notUsed", null, null), resources);
+        assertTrue(lazy instanceof CollectionWithPagingInfo);
+        assertEquals(3, ((CollectionWithPagingInfo<?>) lazy).getCollection().size());
+        String out = writeResponse(lazy);
+        assertEquals("Entries written as they are iterated must match the eagerly processed collection", expected, out);
+
+        //Not a collection so processed immediately
+        Object res = helper.processAdditionsToTheResponseLazily(mock(WebScriptResponse.class), api,null, Params.valueOf("notUsed", null, null), new Sheep("ABCD"));
+        assertTrue(res instanceof ExecutionResult);
+    }
        
     @Test
     public void testExpandEmbedded() throws IOException
@@ -295,6 +314,30 @@ public class SerializeTests extends AbstractContextTest
        
     }
     
+    @Test
+    public void testSerializeMapRootWithEmbedded() throws IOException, JSONException
+    {
+        Map<String,Object> root = new HashMap<String,Object>();
+        root.put("name", "Dolly");
+        root.put("sheep", "rootSheep");
+        root.put("goat", "rootGoat");
+        root.put("nothing", null);
+        ExecutionResult res = new ExecutionResult(root, new BeanPropertiesFilter(new HashSet<String>(Arrays.asList("name", "goat"))));
+        Map<String,Object> embedded = new HashMap<String,Object>();
+        embedded.put("sheep", "embeddedSheep");
+        embedded.put("goat", "embeddedGoat");
+        res.addEmbedded(embedded);
+
+        String out = writeResponse(res);
+        JSONObject entry = new JSONObject(new JSONTokener(out)).getJSONObject("entry");
+        assertEquals("Dolly", entry.getString("name"));
+        assertEquals("An embedded entity the filter excludes must not hide the root property", "rootSheep", entry.getString("sheep"));
+        assertEquals("An embedded entity the filter allows replaces the root property", "embeddedGoat", entry.getString("goat"));
+        Map<String,Object> nullValue = new HashMap<String,Object>();
+        nullValue.put("nothing", null);
+        assertEquals("Null values must be written as they are for any other map", writeResponse(nullValue).contains("nothing"), entry.has("nothing"));
+    }
+
     @Test
     public void testSerializeSet() throws IOException
     {
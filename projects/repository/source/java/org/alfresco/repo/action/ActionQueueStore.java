@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+import java.util.List;
+
+/**
+ * Storage for the entries of a {@link DurableAsynchronousActionExecutionQueueImpl durable action queue}.
+ * <p>
+ * An entry is <i>pending</i> until a server {@link #claim(QueuedAction, String) claims} it and is
+ * {@link #remove(QueuedAction) removed} once it has been executed.  Implementations must be thread-safe.
+ * Each call is self-contained: implementations that need a transaction start their own.
+ * 
+ * @since 5.2
+ */
+public interface ActionQueueStore
+{
+    /**
+     * Add an entry, unless an identical entry is already pending.
+     * 
+     * @param entry                 the entry to add
+     * @return                      <tt>true</tt> if the entry was added or <tt>false</tt> if an entry with the
+     *                              same {@link QueuedAction#getDeduplicationKey() key} is already pending
+     */
+    boolean add(QueuedAction entry);
+
+    /**
+     * Get the entries that can be claimed, ordered by {@link QueuedAction#PRIORITY_ORDER priority}.
+     * 
+     * @param maxResults            the maximum number of entries to return
+     * @return                      the pending entries, highest priority first
+     */
+    List<QueuedAction> getPending(int maxResults);
+
+    /**
+     * Claim an entry for execution.  Only one server can claim an entry; once claimed, an identical
+     * action can be queued again.
+     * 
+     * @param entry                 the entry to claim
+     * @param serverId              the server that will execute the entry
+     * @return                      <tt>true</tt> if the claim succeeded or <tt>false</tt> if the entry has
+     *                              already been claimed or no longer exists
+     */
+    boolean claim(QueuedAction entry, String serverId);
+
+    /**
+     * Refresh a claim so that other servers do not consider it abandoned.  Stores that are not shared
+     * between servers need do nothing.
+     * 
+     * @param entry                 the entry being executed
+     * @param serverId              the server executing the entry
+     */
+    void renewClaim(QueuedAction entry, String serverId);
+
+    /**
+     * Remove an entry once it has been executed.
+     */
+    void remove(QueuedAction entry);
+
+    /**
+     * Release all claims held by a server so that the entries become pending again.  This is used
+     * when a server restarts, in which case any actions it was executing did not complete.
+     * 
+     * @param serverId              the server whose claims must be released
+     * @return                      the number of entries released
+     */
+    int releaseClaims(String serverId);
+
+    /**
+     * @return                      the number of entries that have not been claimed
+     */
+    int getPendingCount();
+}
@@ -233,39 +233,8 @@ public class AsynchronousActionExecutionQueueImpl implements AsynchronousActionE
                 executedRules);
         
         // Consider whether this action should be filtered out by one of the registered filters.
-        boolean newActionShouldBeFilteredOut = false;
         OngoingAsyncAction nodeBeingNewlyActioned = new OngoingAsyncAction(actionedUponNodeRef, action);
-        
-        for (Entry<String, AbstractAsynchronousActionFilter> entry : actionFilters.entrySet())
-        {
-        	AbstractAsynchronousActionFilter comparator = entry.getValue();
-        	String actionDefinitionName = comparator.getActionDefinitionName();
-        	
-        	if (actionDefinitionName.equals(action.getActionDefinitionName()) == false)
-        	{
-        		// We're only interested in registered actions with the same name as this one.
-        		continue;
-        	}
-        	else
-        	{
-        		// Now we've found a registered action that matches the current one.
-        		// So we'll go through the actions that are ongoing and consider them for matches with this one.
-        		// Need to synchronize to prevent changes to ongoingActions whilst iterating. Assume that ongoingActions
-        		// is not going to be too big and the loop will execute quite quickly, so that the synchronization 
-        		// will not impact concurrency too much.
-        		synchronized(this.ongoingActions)
-        		{
-	        		for (OngoingAsyncAction ongoingAction : this.ongoingActions)
-	        		{
-	        			if (comparator.compare(ongoingAction, nodeBeingNewlyActioned) == 0)
-	        			{
-	        				newActionShouldBeFilteredOut = true;
-	        				break;
-	        			}
-	        		}
-        		}
-        	}
-        }
+        boolean newActionShouldBeFilteredOut = isEquivalentActionOngoing(nodeBeingNewlyActioned);
         if (newActionShouldBeFilteredOut)
         {
         	if (logger.isDebugEnabled())
@@ -308,7 +277,48 @@ public class AsynchronousActionExecutionQueueImpl implements AsynchronousActionE
         }
     }
     
-    private void handleAsyncActionIsCompleted(NodeRef n, Action action) {
+    /**
+     * Consults the registered {@link #registerActionFilter(AbstractAsynchronousActionFilter) filters} to
+     * find out if an equivalent action is already ongoing.
+     * 
+     * @param nodeBeingNewlyActioned        the action about to be queued
+     * @return                              <tt>true</tt> if the action should be dropped
+     */
+    protected boolean isEquivalentActionOngoing(OngoingAsyncAction nodeBeingNewlyActioned)
+    {
+        for (Entry<String, AbstractAsynchronousActionFilter> entry : actionFilters.entrySet())
+        {
+        	AbstractAsynchronousActionFilter comparator = entry.getValue();
+        	String actionDefinitionName = comparator.getActionDefinitionName();
+        	
+        	if (actionDefinitionName.equals(nodeBeingNewlyActioned.getAction().getActionDefinitionName()) == false)
+        	{
+        		// We're only interested in registered actions with the same name as this one.
+        		continue;
+        	}
+        	else
+        	{
+        		// Now we've found a registered action that matches the current one.
+        		// So we'll go through the actions that are ongoing and consider them for matches with this one.
+        		// Need to synchronize to prevent changes to ongoingActions whilst iterating. Assume that ongoingActions
+        		// is not going to be too big and the loop will execute quite quickly, so that the synchronization 
+        		// will not impact concurrency too much.
+        		synchronized(this.ongoingActions)
+        		{
+	        		for (OngoingAsyncAction ongoingAction : this.ongoingActions)
+	        		{
+	        			if (comparator.compare(ongoingAction, nodeBeingNewlyActioned) == 0)
+	        			{
+	        				return true;
+	        			}
+	        		}
+        		}
+        	}
+        }
+        return false;
+    }
+    
+    protected void handleAsyncActionIsCompleted(NodeRef n, Action action) {
     	if (logger.isDebugEnabled())
     	{
     		StringBuilder msg = new StringBuilder();
@@ -319,6 +329,81 @@ public class AsynchronousActionExecutionQueueImpl implements AsynchronousActionE
     	ongoingActions.remove(ongoing);
     }
     
+    /**
+     * Executes the action in a new transaction, as the user and in the tenant that submitted it.
+     * Failures are logged rather than thrown.
+     * 
+     * @param actionService                     the action service
+     * @param action                            the action to perform
+     * @param actionedUponNodeRef               the node to perform the action on
+     * @param checkConditions                   the check conditions
+     * @param actionChain                       the action chain
+     * @param executedRules                     list of executions done to helps to prevent loop scenarios with async rules
+     * @return                                  <tt>true</tt> if the action completed successfully
+     */
+    protected boolean runAction(
+            final RuntimeActionService actionService,
+            final Action action,
+            final NodeRef actionedUponNodeRef,
+            final boolean checkConditions,
+            final Set<String> actionChain,
+            final Set<RuleServiceImpl.ExecutedRuleData> executedRules)
+    {
+        try
+        {
+            // Get the run as user name
+            final String userName = ((ActionImpl)action).getRunAsUser();
+            if (userName == null)
+            {
+                throw new ActionServiceException("Cannot execute action asynchronously since run as user is 'null'");
+            }
+            // Get the tenant the action was submitted from
+            final String tenantId = ((ActionImpl)action).getTenantId();
+            
+            // import the content
+            TenantRunAsWork<Object> actionRunAs = new TenantRunAsWork<Object>()
+            {
+                public Object doWork() throws Exception
+                {
+                    RetryingTransactionCallback<Object> actionCallback = new RetryingTransactionCallback<Object>()
+                    {
+                        public Object execute()
+                        {   
+                            // If we have rules, apply them
+                            if (executedRules != null)
+                            {
+                                AlfrescoTransactionSupport.bindResource("RuleServiceImpl.ExecutedRules", executedRules);
+                            }
+                            
+                            // Allow other classes to know when this action completes
+                            AlfrescoTransactionSupport.bindListener(new CallbackTransactionListener(action, actionedUponNodeRef));
+                            
+                            // Have the action run
+                            actionService.executeActionImpl(action, actionedUponNodeRef, checkConditions, true, actionChain);
+
+                            return null;
+                        }
+                    };
+                    return transactionService.getRetryingTransactionHelper().doInTransaction(actionCallback);
+                }
+            };
+            TenantUtil.runAsUserTenant(actionRunAs, userName, tenantId);
+            return true;
+        }
+        catch (Throwable e)
+        {
+            Throwable rootCause = (e instanceof AlfrescoRuntimeException) ? ((AlfrescoRuntimeException)e).getRootCause() : null;
+            String message = (rootCause == null ? null : rootCause.getMessage());
+            message = "Failed to execute asynchronous action: " + action+ (message == null ? "" : ": "+message);
+            if(!actionService.onLogException(action, logger, rootCause, message))
+            {
+                //if not handled by the executor just show in the log
+                logger.error(message, e);
+            }
+            return false;
+        }
+    }
+    
     /**
      * Transaction listener used to invoke callback policies
      */
@@ -394,64 +479,13 @@ public class AsynchronousActionExecutionQueueImpl implements AsynchronousActionE
          */
         public void run()
         {
-            try
-            {
-                // Get the run as user name
-                final String userName = ((ActionImpl)ActionExecutionWrapper.this.action).getRunAsUser();
-                if (userName == null)
-                {
-                    throw new ActionServiceException("Cannot execute action asynchronously since run as user is 'null'");
-                }
-                // Get the tenant the action was submitted from
-                final String tenantId = ((ActionImpl)ActionExecutionWrapper.this.action).getTenantId();
-                
-                // import the content
-                TenantRunAsWork<Object> actionRunAs = new TenantRunAsWork<Object>()
-                {
-                    public Object doWork() throws Exception
-                    {
-                        RetryingTransactionCallback<Object> actionCallback = new RetryingTransactionCallback<Object>()
-                        {
-                            public Object execute()
-                            {   
-                                // If we have rules, apply them
-                                if (ActionExecutionWrapper.this.executedRules != null)
-                                {
-                                    AlfrescoTransactionSupport.bindResource("RuleServiceImpl.ExecutedRules", ActionExecutionWrapper.this.executedRules);
-                                }
-                                
-                                // Allow other classes to know when this action completes
-                                AlfrescoTransactionSupport.bindListener(new CallbackTransactionListener(
-                                      ActionExecutionWrapper.this.action,
-                                      ActionExecutionWrapper.this.actionedUponNodeRef
-                                ));
-                                
-                                // Have the action run
-                                ActionExecutionWrapper.this.actionService.executeActionImpl(
-                                        ActionExecutionWrapper.this.action,
-                                        ActionExecutionWrapper.this.actionedUponNodeRef,
-                                        ActionExecutionWrapper.this.checkConditions, true,
-                                        ActionExecutionWrapper.this.actionChain);
-
-                                return null;
-                            }
-                        };
-                        return transactionService.getRetryingTransactionHelper().doInTransaction(actionCallback);
-                    }
-                };
-                TenantUtil.runAsUserTenant(actionRunAs, userName, tenantId);
-            }
-            catch (Throwable e)
-            {
-                Throwable rootCause = (e instanceof AlfrescoRuntimeException) ? ((AlfrescoRuntimeException)e).getRootCause() : null;
-                String message = (rootCause == null ? null : rootCause.getMessage());
-                message = "Failed to execute asynchronous action: " + action+ (message == null ? "" : ": "+message);
-                if(!ActionExecutionWrapper.this.actionService.onLogException(action, logger, rootCause, message))
-                {
-                    //if not handled by the executor just show in the log
-                    logger.error(message, e);
-                }
-            }
+            runAction(
+                    ActionExecutionWrapper.this.actionService,
+                    ActionExecutionWrapper.this.action,
+                    ActionExecutionWrapper.this.actionedUponNodeRef,
+                    ActionExecutionWrapper.this.checkConditions,
+                    ActionExecutionWrapper.this.actionChain,
+                    ActionExecutionWrapper.this.executedRules);
             handleAsyncActionIsCompleted(actionedUponNodeRef, action);
         }
     }
@@ -0,0 +1,488 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.attributes.AttributeService.AttributeQueryCallback;
+import org.alfresco.service.cmr.attributes.DuplicateAttributeException;
+import org.alfresco.service.transaction.TransactionService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An {@link ActionQueueStore} held in the database using the {@link AttributeService}, which makes
+ * the queue visible to all servers in a cluster.
+ * <p>
+ * Three sets of attributes are kept per queue:
+ * <ul>
+ *   <li><b>entries</b>: the {@link QueuedAction} keyed by its ID</li>
+ *   <li><b>claims</b>: the server that is executing an entry and when it claimed it</li>
+ *   <li><b>keys</b>: the deduplication key of every pending entry</li>
+ * </ul>
+ * Claims and keys rely on the uniqueness of attribute keys, so only one server can claim a given entry
+ * and only one identical entry can be pending.  A claim that is not {@link #renewClaim(QueuedAction, String) renewed}
+ * within the <b>claimTimeoutMs</b> is assumed to belong to a server that has gone away, and the entry can be
+ * claimed again.
+ * <p>
+ * The pending entries are also indexed in memory, in priority order, so that polling the queue doesn't read
+ * every entry from the database.  The index is kept up to date by this server's own operations and rebuilt from
+ * the database every <b>resyncIntervalMs</b>, which is when entries queued by other servers and entries whose
+ * claims have been abandoned are seen.  The entries are read without holding the lock on the index, so other
+ * callers keep using the old index meanwhile; changes this server makes during the read are applied to the
+ * new index before it replaces the old one.
+ * 
+ * @since 5.2
+ */
+public class AttributeActionQueueStore implements ActionQueueStore
+{
+    public static final String KEY_ENTRY = ".AsyncActionQueueEntry";
+    public static final String KEY_CLAIM = ".AsyncActionQueueClaim";
+    public static final String KEY_DEDUP = ".AsyncActionQueueKey";
+    
+    private static final char CLAIM_SEPARATOR = '@';
+    
+    private static Log logger = LogFactory.getLog(AttributeActionQueueStore.class);
+    
+    private final TransactionService transactionService;
+    private final AttributeService attributeService;
+    private final String queueName;
+    private final long claimTimeoutMs;
+    private final long resyncIntervalMs;
+    
+    /** the pending entries, highest priority first, guarded by <tt>this</tt> */
+    private final TreeSet<QueuedAction> pendingIndex = new TreeSet<QueuedAction>(QueuedAction.PRIORITY_ORDER);
+    private final Map<String, QueuedAction> pendingById = new HashMap<String, QueuedAction>(64);
+    private long lastResync = 0L;
+    /** set while the entries are read from the database, guarded by <tt>this</tt> */
+    private boolean resyncing;
+    /** set if another resync is needed as soon as the current one completes, guarded by <tt>this</tt> */
+    private boolean resyncRequested;
+    /** the changes made while the entries are read from the database, guarded by <tt>this</tt> */
+    private final List<QueuedAction> addedDuringResync = new ArrayList<QueuedAction>();
+    private final List<String> removedDuringResync = new ArrayList<String>();
+
+    /**
+     * @param transactionService        used to give each operation its own transaction
+     * @param attributeService          the <b>unprotected</b> attribute service
+     * @param queueName                 distinguishes between the entries of different queues
+     * @param claimTimeoutMs            the time after which an unrenewed claim is considered abandoned
+     */
+    public AttributeActionQueueStore(
+            TransactionService transactionService,
+            AttributeService attributeService,
+            String queueName,
+            long claimTimeoutMs)
+    {
+        this(transactionService, attributeService, queueName, claimTimeoutMs, 10000L);
+    }
+
+    /**
+     * @param transactionService        used to give each operation its own transaction
+     * @param attributeService          the <b>unprotected</b> attribute service
+     * @param queueName                 distinguishes between the entries of different queues
+     * @param claimTimeoutMs            the time after which an unrenewed claim is considered abandoned
+     * @param resyncIntervalMs          how often the in-memory index of pending entries is rebuilt from the database
+     */
+    public AttributeActionQueueStore(
+            TransactionService transactionService,
+            AttributeService attributeService,
+            String queueName,
+            long claimTimeoutMs,
+            long resyncIntervalMs)
+    {
+        this.transactionService = transactionService;
+        this.attributeService = attributeService;
+        this.queueName = queueName;
+        this.claimTimeoutMs = claimTimeoutMs;
+        this.resyncIntervalMs = resyncIntervalMs;
+    }
+
+    private <R> R doInNewTransaction(RetryingTransactionCallback<R> callback, boolean readOnly)
+    {
+        RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        return txnHelper.doInTransaction(callback, readOnly, true);
+    }
+    
+    private boolean isStale(Serializable claim, long now)
+    {
+        String claimStr = (String) claim;
+        long claimTime = Long.parseLong(claimStr.substring(claimStr.lastIndexOf(CLAIM_SEPARATOR) + 1));
+        return now - claimTime > claimTimeoutMs;
+    }
+    
+    private String getClaimServer(Serializable claim)
+    {
+        String claimStr = (String) claim;
+        return claimStr.substring(0, claimStr.lastIndexOf(CLAIM_SEPARATOR));
+    }
+
+    private String buildClaim(String serverId)
+    {
+        return serverId + CLAIM_SEPARATOR + System.currentTimeMillis();
+    }
+
+    /**
+     * @return                      all current claims keyed by entry ID
+     */
+    private Map<String, Serializable> getClaims()
+    {
+        final Map<String, Serializable> claims = new HashMap<String, Serializable>(64);
+        attributeService.getAttributes(new AttributeQueryCallback()
+        {
+            @Override
+            public boolean handleAttribute(Long id, Serializable value, Serializable[] keys)
+            {
+                claims.put((String) keys[2], value);
+                return true;
+            }
+        }, KEY_CLAIM, queueName);
+        return claims;
+    }
+
+    @Override
+    public boolean add(final QueuedAction entry)
+    {
+        RetryingTransactionCallback<Boolean> addCallback = new RetryingTransactionCallback<Boolean>()
+        {
+            @Override
+            public Boolean execute() throws Throwable
+            {
+                if (attributeService.exists(KEY_DEDUP, queueName, entry.getDeduplicationKey()))
+                {
+                    return Boolean.FALSE;
+                }
+                attributeService.createAttribute(entry.getId(), KEY_DEDUP, queueName, entry.getDeduplicationKey());
+                attributeService.createAttribute(entry, KEY_ENTRY, queueName, entry.getId());
+                return Boolean.TRUE;
+            }
+        };
+        boolean added;
+        try
+        {
+            added = doInNewTransaction(addCallback, false);
+        }
+        catch (DuplicateAttributeException e)
+        {
+            // Another server queued the same action at the same time
+            return false;
+        }
+        if (added)
+        {
+            added(entry);
+        }
+        return added;
+    }
+
+    /**
+     * Reads the pending entries from the database.
+     */
+    private List<QueuedAction> loadPending()
+    {
+        RetryingTransactionCallback<List<QueuedAction>> getCallback = new RetryingTransactionCallback<List<QueuedAction>>()
+        {
+            @Override
+            public List<QueuedAction> execute() throws Throwable
+            {
+                final Map<String, Serializable> claims = getClaims();
+                final long now = System.currentTimeMillis();
+                final List<QueuedAction> pending = new ArrayList<QueuedAction>(64);
+                attributeService.getAttributes(new AttributeQueryCallback()
+                {
+                    @Override
+                    public boolean handleAttribute(Long id, Serializable value, Serializable[] keys)
+                    {
+                        Serializable claim = claims.get((String) keys[2]);
+                        if (claim == null || isStale(claim, now))
+                        {
+                            pending.add((QueuedAction) value);
+                        }
+                        return true;
+                    }
+                }, KEY_ENTRY, queueName);
+                return pending;
+            }
+        };
+        return doInNewTransaction(getCallback, true);
+    }
+    
+    /**
+     * Rebuilds the index from the database if it is due and no other thread is already doing so.  The entries
+     * are read without holding the lock on <tt>this</tt>; the changes made by this server meanwhile are recorded
+     * and applied to the new index before it is swapped in.
+     */
+    private void resyncIndexIfDue()
+    {
+        long now = System.currentTimeMillis();
+        synchronized (this)
+        {
+            if (resyncing || (lastResync != 0L && now - lastResync < resyncIntervalMs))
+            {
+                return;
+            }
+            resyncing = true;
+            resyncRequested = false;
+        }
+        List<QueuedAction> pending = null;
+        try
+        {
+            pending = loadPending();
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                if (pending != null)
+                {
+                    pendingIndex.clear();
+                    pendingById.clear();
+                    for (QueuedAction entry : pending)
+                    {
+                        addToIndex(entry);
+                    }
+                    for (QueuedAction entry : addedDuringResync)
+                    {
+                        addToIndex(entry);
+                    }
+                    for (String id : removedDuringResync)
+                    {
+                        removeFromIndex(id);
+                    }
+                    lastResync = resyncRequested ? 0L : now;
+                }
+                addedDuringResync.clear();
+                removedDuringResync.clear();
+                resyncing = false;
+            }
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Read " + pending.size() + " pending entries of queue " + queueName);
+        }
+    }
+    
+    /**
+     * The caller must hold the lock on <tt>this</tt>.
+     */
+    private void addToIndex(QueuedAction entry)
+    {
+        if (pendingById.put(entry.getId(), entry) == null)
+        {
+            pendingIndex.add(entry);
+        }
+    }
+    
+    /**
+     * The caller must hold the lock on <tt>this</tt>.
+     */
+    private void removeFromIndex(String id)
+    {
+        QueuedAction indexed = pendingById.remove(id);
+        if (indexed != null)
+        {
+            pendingIndex.remove(indexed);
+        }
+    }
+    
+    private synchronized void added(QueuedAction entry)
+    {
+        addToIndex(entry);
+        if (resyncing)
+        {
+            addedDuringResync.add(entry);
+        }
+    }
+    
+    private synchronized void removed(QueuedAction entry)
+    {
+        removeFromIndex(entry.getId());
+        if (resyncing)
+        {
+            removedDuringResync.add(entry.getId());
+        }
+    }
+
+    @Override
+    public List<QueuedAction> getPending(int maxResults)
+    {
+        resyncIndexIfDue();
+        synchronized (this)
+        {
+            List<QueuedAction> pending = new ArrayList<QueuedAction>(Math.min(maxResults, pendingIndex.size()));
+            for (QueuedAction entry : pendingIndex)
+            {
+                if (pending.size() >= maxResults)
+                {
+                    break;
+                }
+                pending.add(entry);
+            }
+            return pending;
+        }
+    }
+
+    @Override
+    public boolean claim(final QueuedAction entry, final String serverId)
+    {
+        RetryingTransactionCallback<Boolean> claimCallback = new RetryingTransactionCallback<Boolean>()
+        {
+            @Override
+            public Boolean execute() throws Throwable
+            {
+                if (!attributeService.exists(KEY_ENTRY, queueName, entry.getId()))
+                {
+                    // Already executed elsewhere
+                    return Boolean.FALSE;
+                }
+                Serializable claim = attributeService.getAttribute(KEY_CLAIM, queueName, entry.getId());
+                if (claim != null)
+                {
+                    if (!isStale(claim, System.currentTimeMillis()))
+                    {
+                        return Boolean.FALSE;
+                    }
+                    if (logger.isWarnEnabled())
+                    {
+                        logger.warn("Taking over abandoned claim on " + entry + " from server " + getClaimServer(claim));
+                    }
+                    attributeService.removeAttribute(KEY_CLAIM, queueName, entry.getId());
+                }
+                attributeService.createAttribute(buildClaim(serverId), KEY_CLAIM, queueName, entry.getId());
+                // Identical actions can be queued again now that this one is underway
+                if (entry.getId().equals(attributeService.getAttribute(KEY_DEDUP, queueName, entry.getDeduplicationKey())))
+                {
+                    attributeService.removeAttribute(KEY_DEDUP, queueName, entry.getDeduplicationKey());
+                }
+                return Boolean.TRUE;
+            }
+        };
+        try
+        {
+            return doInNewTransaction(claimCallback, false);
+        }
+        catch (DuplicateAttributeException e)
+        {
+            // Another server claimed the entry at the same time
+            return false;
+        }
+        finally
+        {
+            // Claimed by this or another server or gone: it comes back with a resync if the claim is abandoned
+            removed(entry);
+        }
+    }
+
+    @Override
+    public void renewClaim(final QueuedAction entry, final String serverId)
+    {
+        RetryingTransactionCallback<Void> renewCallback = new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                Serializable claim = attributeService.getAttribute(KEY_CLAIM, queueName, entry.getId());
+                if (claim != null && serverId.equals(getClaimServer(claim)))
+                {
+                    attributeService.setAttribute(buildClaim(serverId), KEY_CLAIM, queueName, entry.getId());
+                }
+                return null;
+            }
+        };
+        doInNewTransaction(renewCallback, false);
+    }
+
+    @Override
+    public void remove(final QueuedAction entry)
+    {
+        RetryingTransactionCallback<Void> removeCallback = new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                attributeService.removeAttribute(KEY_ENTRY, queueName, entry.getId());
+                attributeService.removeAttribute(KEY_CLAIM, queueName, entry.getId());
+                if (entry.getId().equals(attributeService.getAttribute(KEY_DEDUP, queueName, entry.getDeduplicationKey())))
+                {
+                    attributeService.removeAttribute(KEY_DEDUP, queueName, entry.getDeduplicationKey());
+                }
+                return null;
+            }
+        };
+        doInNewTransaction(removeCallback, false);
+        removed(entry);
+    }
+
+    @Override
+    public int releaseClaims(final String serverId)
+    {
+        RetryingTransactionCallback<Integer> releaseCallback = new RetryingTransactionCallback<Integer>()
+        {
+            @Override
+            public Integer execute() throws Throwable
+            {
+                int released = 0;
+                for (Map.Entry<String, Serializable> claim : getClaims().entrySet())
+                {
+                    if (serverId.equals(getClaimServer(claim.getValue())))
+                    {
+                        attributeService.removeAttribute(KEY_CLAIM, queueName, claim.getKey());
+                        released++;
+                    }
+                }
+                return released;
+            }
+        };
+        int released = doInNewTransaction(releaseCallback, false);
+        if (released > 0)
+        {
+            synchronized (this)
+            {
+                // The released entries are read again on the next poll
+                lastResync = 0L;
+                resyncRequested = resyncing;
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public int getPendingCount()
+    {
+        resyncIndexIfDue();
+        synchronized (this)
+        {
+            return pendingIndex.size();
+        }
+    }
+}
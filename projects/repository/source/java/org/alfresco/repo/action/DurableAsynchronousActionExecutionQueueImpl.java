@@ -0,0 +1,887 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.rule.RuleServiceImpl;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.GUID;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+/**
+ * An asynchronous action execution queue that can keep its actions in an {@link ActionQueueStore}
+ * so that they survive a restart.
+ * <p>
+ * The <b>mode</b> selects where queued actions are kept:
+ * <ul>
+ *   <li><b>MEMORY</b>: in the thread pool's work queue, exactly as the {@link AsynchronousActionExecutionQueueImpl
+ *       standard queue} does.  This is the default.</li>
+ *   <li><b>DATABASE</b>: in the {@link AttributeActionQueueStore database}, where the actions are visible to all servers
+ *       in the cluster.  A server that has spare capacity executes actions queued by other servers once they have waited
+ *       for <b>stealDelayMs</b>.</li>
+ *   <li><b>FILE</b>: in a {@link FileActionQueueStore journal} in the local <b>journalDirectory</b>.</li>
+ * </ul>
+ * In the durable modes, a dispatcher thread claims the pending actions in order of priority and hands them to
+ * the thread pool, never running more than <b>maxConcurrentActions</b> at once.  Each action type can be given a
+ * <b>priority</b> (higher values run first, the default is <b>defaultPriority</b>) and a <b>concurrency limit</b>, so
+ * that a flood of background work, such as thumbnails for a bulk upload, cannot occupy every thread while
+ * interactive actions wait.  An action that is identical to one that is still pending is dropped.
+ * <p>
+ * Actions are executed at least once: if a server stops while executing an action, the action runs again when the
+ * server restarts or, in <b>DATABASE</b> mode, when another server finds that the claim has not been renewed within
+ * <b>claimTimeoutMs</b>.  If the store cannot accept an action, it is executed from memory instead.
+ * <p>
+ * The queue depth, counters and per-type latencies are published over JMX.
+ * 
+ * @since 5.2
+ */
+public class DurableAsynchronousActionExecutionQueueImpl extends AsynchronousActionExecutionQueueImpl
+        implements DurableAsynchronousActionExecutionQueueMBean, ApplicationContextAware, ApplicationListener<ApplicationEvent>
+{
+    /**
+     * Where queued actions are kept
+     */
+    public enum Mode
+    {
+        MEMORY, DATABASE, FILE
+    }
+    
+    private static final String KEY_EXECUTED_RULES = "RuleServiceImpl.ExecutedRules";
+    /** The most pending entries considered in one dispatch */
+    private static final int MAX_CANDIDATES = 1000;
+    
+    private static Log logger = LogFactory.getLog(DurableAsynchronousActionExecutionQueueImpl.class);
+    
+    private ApplicationContext applicationContext;
+    private ActionServiceImpl actionServiceImpl;
+    private ThreadPoolExecutor threadPoolExecutor;
+    private TransactionService transactionService;
+    private AttributeService attributeService;
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String id;
+    private String objectName;
+    private Mode mode = Mode.MEMORY;
+    private String journalDirectory;
+    private String serverId;
+    private int maxConcurrentActions;
+    private int defaultPriority;
+    private Map<String, Integer> priorities = Collections.emptyMap();
+    private Map<String, Integer> concurrencyLimits = Collections.emptyMap();
+    private boolean workStealing = true;
+    private long stealDelayMs = 10000L;
+    private long pollIntervalMs = 1000L;
+    private long claimTimeoutMs = 600000L;
+    
+    private ActionQueueStore store;
+    private Thread dispatcherThread;
+    private ObjectName registeredName;
+    private volatile boolean running;
+    private final Object dispatchMonitor = new Object();
+    private boolean dispatchRequested;
+    
+    private final AtomicInteger runningCount = new AtomicInteger();
+    private final ConcurrentMap<String, QueuedAction> runningEntries = new ConcurrentHashMap<String, QueuedAction>();
+    /** Loop-prevention data that cannot be persisted; only available when the action runs on this server */
+    private final ConcurrentMap<QueuedAction, Set<RuleServiceImpl.ExecutedRuleData>> executedRules =
+            new ConcurrentHashMap<QueuedAction, Set<RuleServiceImpl.ExecutedRuleData>>();
+    private final ConcurrentMap<String, ActionTypeStatistics> statistics = new ConcurrentHashMap<String, ActionTypeStatistics>();
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private final AtomicLong stolenCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException
+    {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void setActionServiceImpl(ActionServiceImpl serviceImpl)
+    {
+        super.setActionServiceImpl(serviceImpl);
+        this.actionServiceImpl = serviceImpl;
+    }
+
+    @Override
+    public void setId(String id)
+    {
+        super.setId(id);
+        this.id = id;
+    }
+
+    @Override
+    public void setThreadPoolExecutor(ThreadPoolExecutor threadPoolExecutor)
+    {
+        super.setThreadPoolExecutor(threadPoolExecutor);
+        this.threadPoolExecutor = threadPoolExecutor;
+    }
+
+    @Override
+    public void setTransactionService(TransactionService transactionService)
+    {
+        super.setTransactionService(transactionService);
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param attributeService      the <b>unprotected</b> attribute service (<b>DATABASE</b> mode only)
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param mbeanExporter         used to publish the statistics over JMX (optional)
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName            the JMX name to publish the statistics under; by default, derived from the queue ID
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    /**
+     * @param mode                  one of the {@link Mode modes}
+     */
+    public void setMode(String mode)
+    {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase());
+    }
+
+    /**
+     * @param journalDirectory      the local directory holding the queued actions (<b>FILE</b> mode only)
+     */
+    public void setJournalDirectory(String journalDirectory)
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * @param serverId              a name for this server that is unique in the cluster and stable across restarts;
+     *                              by default, the host name
+     */
+    public void setServerId(String serverId)
+    {
+        this.serverId = (serverId == null || serverId.trim().length() == 0) ? null : serverId.trim();
+    }
+
+    /**
+     * @param maxConcurrentActions  the most actions to execute at once; by default, the core size of the thread pool
+     */
+    public void setMaxConcurrentActions(int maxConcurrentActions)
+    {
+        this.maxConcurrentActions = maxConcurrentActions;
+    }
+
+    /**
+     * @param defaultPriority       the priority of action types that have no explicit priority
+     */
+    public void setDefaultPriority(int defaultPriority)
+    {
+        this.defaultPriority = defaultPriority;
+    }
+
+    /**
+     * @param priorities            priorities keyed by action definition name; higher values run first
+     */
+    public void setPriorities(Map<String, Integer> priorities)
+    {
+        this.priorities = priorities;
+    }
+
+    /**
+     * @param concurrencyLimits     the most actions of each type to run at once, keyed by action definition name
+     */
+    public void setConcurrencyLimits(Map<String, Integer> concurrencyLimits)
+    {
+        this.concurrencyLimits = concurrencyLimits;
+    }
+
+    /**
+     * @param workStealing          <tt>true</tt> to execute actions queued by other servers (<b>DATABASE</b> mode only)
+     */
+    public void setWorkStealing(boolean workStealing)
+    {
+        this.workStealing = workStealing;
+    }
+
+    /**
+     * @param stealDelayMs          how long an action must have waited before another server may execute it
+     */
+    public void setStealDelayMs(long stealDelayMs)
+    {
+        this.stealDelayMs = stealDelayMs;
+    }
+
+    /**
+     * @param pollIntervalMs        how often to look for actions queued by other servers or after a restart
+     */
+    public void setPollIntervalMs(long pollIntervalMs)
+    {
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    /**
+     * @param claimTimeoutMs        how long a claim lasts without being renewed (<b>DATABASE</b> mode only)
+     */
+    public void setClaimTimeoutMs(long claimTimeoutMs)
+    {
+        this.claimTimeoutMs = claimTimeoutMs;
+    }
+
+    @Override
+    public void init()
+    {
+        super.init();
+        if (mode == Mode.MEMORY)
+        {
+            return;
+        }
+        PropertyCheck.mandatory(this, "threadPoolExecutor", threadPoolExecutor);
+        if (serverId == null)
+        {
+            try
+            {
+                serverId = InetAddress.getLocalHost().getHostName();
+            }
+            catch (UnknownHostException e)
+            {
+                throw new AlfrescoRuntimeException("Unable to determine the host name; set the 'serverId' property.", e);
+            }
+        }
+        if (maxConcurrentActions <= 0)
+        {
+            maxConcurrentActions = Math.max(1, threadPoolExecutor.getCorePoolSize());
+        }
+        String queueName = (id == null || id.length() == 0) ? "default" : id;
+        switch (mode)
+        {
+            case DATABASE:
+                PropertyCheck.mandatory(this, "attributeService", attributeService);
+                store = new AttributeActionQueueStore(transactionService, attributeService, queueName, claimTimeoutMs,
+                        stealDelayMs);
+                break;
+            case FILE:
+                PropertyCheck.mandatory(this, "journalDirectory", journalDirectory);
+                FileActionQueueStore fileStore = new FileActionQueueStore(new File(journalDirectory, queueName));
+                fileStore.init();
+                store = fileStore;
+                break;
+            default:
+                throw new IllegalStateException("Unexpected mode: " + mode);
+        }
+        if (objectName == null)
+        {
+            objectName = "Alfresco:Name=AsynchronousActionQueue,Id=" + queueName;
+        }
+    }
+
+    /**
+     * Starts the dispatcher once the context has started and stops it when the context closes
+     */
+    @Override
+    public void onApplicationEvent(ApplicationEvent event)
+    {
+        if (store == null || event.getSource() != applicationContext)
+        {
+            return;
+        }
+        if (event instanceof ContextRefreshedEvent)
+        {
+            start();
+        }
+        else if (event instanceof ContextClosedEvent)
+        {
+            stop();
+        }
+    }
+
+    private synchronized void start()
+    {
+        if (running)
+        {
+            return;
+        }
+        // Anything this server was executing when it stopped must run again
+        try
+        {
+            int released = store.releaseClaims(serverId);
+            if (released > 0 && logger.isInfoEnabled())
+            {
+                logger.info("Requeued " + released + " actions that were interrupted by the last shutdown of " + serverId);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Failed to requeue actions interrupted by the last shutdown of " + serverId, e);
+        }
+        running = true;
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("AsyncActionDispatcher");
+        dispatcherThread = threadFactory.newThread(new Dispatcher());
+        dispatcherThread.start();
+        if (mbeanExporter != null)
+        {
+            try
+            {
+                StandardMBean mbean = new StandardMBean(this, DurableAsynchronousActionExecutionQueueMBean.class);
+                registeredName = mbeanExporter.registerMBean(mbean, new ObjectName(objectName));
+            }
+            catch (MalformedObjectNameException | NotCompliantMBeanException e)
+            {
+                logger.warn("Unable to publish action queue statistics over JMX: " + objectName, e);
+            }
+        }
+        if (logger.isInfoEnabled())
+        {
+            logger.info("Started " + mode + " asynchronous action queue " + objectName + " on server " + serverId);
+        }
+    }
+
+    private synchronized void stop()
+    {
+        if (!running)
+        {
+            return;
+        }
+        running = false;
+        requestDispatch();
+        try
+        {
+            dispatcherThread.join(pollIntervalMs * 2);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        dispatcherThread = null;
+        if (registeredName != null)
+        {
+            mbeanExporter.unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+
+    @Override
+    public void executeAction(RuntimeActionService actionService, Action action, NodeRef actionedUponNodeRef,
+            boolean checkConditions, Set<String> actionChain, NodeRef actionExecutionHistoryNodeRef)
+    {
+        if (!running)
+        {
+            super.executeAction(actionService, action, actionedUponNodeRef, checkConditions, actionChain, actionExecutionHistoryNodeRef);
+            return;
+        }
+        String actionType = action.getActionDefinitionName();
+        if (isEquivalentActionOngoing(new OngoingAsyncAction(actionedUponNodeRef, action)))
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Dropping action " + action + " as equivalent is ongoing.");
+            }
+            duplicateCount.incrementAndGet();
+            return;
+        }
+        QueuedAction entry = new QueuedAction(
+                GUID.generate(),
+                serverId,
+                getPriority(actionType),
+                System.currentTimeMillis(),
+                action,
+                actionedUponNodeRef,
+                checkConditions,
+                actionChain);
+        boolean added;
+        try
+        {
+            added = store.add(entry);
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Failed to queue action " + entry + "; it will be executed from memory.", e);
+            super.executeAction(actionService, action, actionedUponNodeRef, checkConditions, actionChain, actionExecutionHistoryNodeRef);
+            return;
+        }
+        if (!added)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Dropping action " + action + " as an identical action is pending.");
+            }
+            duplicateCount.incrementAndGet();
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<RuleServiceImpl.ExecutedRuleData> rules =
+                (Set<RuleServiceImpl.ExecutedRuleData>) AlfrescoTransactionSupport.getResource(KEY_EXECUTED_RULES);
+        if (rules != null)
+        {
+            executedRules.put(entry, rules);
+        }
+        queuedCount.incrementAndGet();
+        getStatistics(actionType).queued.incrementAndGet();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Queued " + entry);
+        }
+        requestDispatch();
+    }
+
+    private int getPriority(String actionType)
+    {
+        Integer priority = priorities.get(actionType);
+        return priority == null ? defaultPriority : priority;
+    }
+
+    private int getConcurrencyLimit(String actionType)
+    {
+        Integer limit = concurrencyLimits.get(actionType);
+        return limit == null ? maxConcurrentActions : limit;
+    }
+
+    private ActionTypeStatistics getStatistics(String actionType)
+    {
+        ActionTypeStatistics typeStatistics = statistics.get(actionType);
+        if (typeStatistics == null)
+        {
+            typeStatistics = new ActionTypeStatistics();
+            ActionTypeStatistics existing = statistics.putIfAbsent(actionType, typeStatistics);
+            if (existing != null)
+            {
+                typeStatistics = existing;
+            }
+        }
+        return typeStatistics;
+    }
+
+    private void requestDispatch()
+    {
+        synchronized (dispatchMonitor)
+        {
+            dispatchRequested = true;
+            dispatchMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Claim and start as many pending actions as there are free threads, highest priority first
+     */
+    private void dispatch()
+    {
+        int free = maxConcurrentActions - runningCount.get();
+        if (free <= 0)
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (QueuedAction entry : store.getPending(MAX_CANDIDATES))
+        {
+            if (!running)
+            {
+                return;
+            }
+            boolean local = serverId.equals(entry.getServerId());
+            if (!local && (!workStealing || now - entry.getQueuedTime() < stealDelayMs))
+            {
+                // Give the server that queued the action the first chance to run it
+                continue;
+            }
+            ActionTypeStatistics typeStatistics = getStatistics(entry.getActionDefinitionName());
+            if (typeStatistics.running.get() >= getConcurrencyLimit(entry.getActionDefinitionName()))
+            {
+                continue;
+            }
+            if (!store.claim(entry, serverId))
+            {
+                continue;
+            }
+            if (!local)
+            {
+                stolenCount.incrementAndGet();
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Taking " + entry + " from server " + entry.getServerId());
+                }
+            }
+            runningCount.incrementAndGet();
+            typeStatistics.running.incrementAndGet();
+            runningEntries.put(entry.getId(), entry);
+            try
+            {
+                threadPoolExecutor.execute(new QueuedActionRunner(entry, typeStatistics));
+            }
+            catch (RejectedExecutionException e)
+            {
+                // The claim is released when this server restarts or, if shared, when it expires
+                logger.error("Thread pool rejected queued action " + entry, e);
+                runningEntries.remove(entry.getId());
+                typeStatistics.running.decrementAndGet();
+                runningCount.decrementAndGet();
+                return;
+            }
+            if (--free == 0)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Keep the claims on running actions alive and forget the loop-prevention data of actions
+     * that have been executed elsewhere
+     */
+    private void housekeep()
+    {
+        for (QueuedAction entry : runningEntries.values())
+        {
+            store.renewClaim(entry, serverId);
+        }
+        long expiry = System.currentTimeMillis() - claimTimeoutMs;
+        Iterator<QueuedAction> iterator = executedRules.keySet().iterator();
+        while (iterator.hasNext())
+        {
+            if (iterator.next().getQueuedTime() < expiry)
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Runs the dispatch loop until the queue is stopped
+     */
+    private class Dispatcher implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            long lastHousekeeping = System.currentTimeMillis();
+            while (running)
+            {
+                try
+                {
+                    dispatch();
+                    if (System.currentTimeMillis() - lastHousekeeping > claimTimeoutMs / 3)
+                    {
+                        housekeep();
+                        lastHousekeeping = System.currentTimeMillis();
+                    }
+                }
+                catch (Throwable e)
+                {
+                    logger.error("Failed to dispatch queued actions", e);
+                }
+                synchronized (dispatchMonitor)
+                {
+                    try
+                    {
+                        if (!dispatchRequested && running)
+                        {
+                            dispatchMonitor.wait(pollIntervalMs);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    dispatchRequested = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes a claimed action and removes it from the store
+     */
+    private class QueuedActionRunner implements Runnable
+    {
+        private final QueuedAction entry;
+        private final ActionTypeStatistics typeStatistics;
+
+        private QueuedActionRunner(QueuedAction entry, ActionTypeStatistics typeStatistics)
+        {
+            this.entry = entry;
+            this.typeStatistics = typeStatistics;
+        }
+
+        @Override
+        public void run()
+        {
+            long startTime = System.currentTimeMillis();
+            Action action = entry.getAction();
+            NodeRef actionedUponNodeRef = entry.getActionedUponNodeRef();
+            ongoingActions.add(new OngoingAsyncAction(actionedUponNodeRef, action));
+            boolean success = false;
+            try
+            {
+                success = runAction(
+                        actionServiceImpl,
+                        action,
+                        actionedUponNodeRef,
+                        entry.getCheckConditions(),
+                        entry.getActionChain(),
+                        executedRules.remove(entry));
+            }
+            finally
+            {
+                try
+                {
+                    store.remove(entry);
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error("Failed to remove executed action from the queue; it will run again: " + entry, e);
+                }
+                handleAsyncActionIsCompleted(actionedUponNodeRef, action);
+                long endTime = System.currentTimeMillis();
+                typeStatistics.record(startTime - entry.getQueuedTime(), endTime - startTime, success);
+                (success ? completedCount : failedCount).incrementAndGet();
+                runningEntries.remove(entry.getId());
+                typeStatistics.running.decrementAndGet();
+                runningCount.decrementAndGet();
+                requestDispatch();
+            }
+        }
+    }
+
+    /**
+     * Counters for one action type
+     */
+    private static class ActionTypeStatistics
+    {
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong executed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong totalQueueLatencyMs = new AtomicLong();
+        private final AtomicLong maxQueueLatencyMs = new AtomicLong();
+        private final AtomicLong totalExecutionTimeMs = new AtomicLong();
+
+        private void record(long queueLatencyMs, long executionTimeMs, boolean success)
+        {
+            executed.incrementAndGet();
+            if (!success)
+            {
+                failed.incrementAndGet();
+            }
+            totalQueueLatencyMs.addAndGet(queueLatencyMs);
+            totalExecutionTimeMs.addAndGet(executionTimeMs);
+            long max = maxQueueLatencyMs.get();
+            while (queueLatencyMs > max && !maxQueueLatencyMs.compareAndSet(max, queueLatencyMs))
+            {
+                max = maxQueueLatencyMs.get();
+            }
+        }
+
+        private long average(AtomicLong total)
+        {
+            long count = executed.get();
+            return count == 0L ? 0L : total.get() / count;
+        }
+
+        private void reset()
+        {
+            queued.set(0L);
+            executed.set(0L);
+            failed.set(0L);
+            totalQueueLatencyMs.set(0L);
+            maxQueueLatencyMs.set(0L);
+            totalExecutionTimeMs.set(0L);
+        }
+    }
+
+    @Override
+    public String getMode()
+    {
+        return mode.name();
+    }
+
+    @Override
+    public String getServerId()
+    {
+        return serverId;
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return store == null ? threadPoolExecutor.getQueue().size() : store.getPendingCount();
+    }
+
+    @Override
+    public int getRunningCount()
+    {
+        return runningCount.get();
+    }
+
+    @Override
+    public int getMaxConcurrentActions()
+    {
+        return maxConcurrentActions;
+    }
+
+    @Override
+    public long getQueuedCount()
+    {
+        return queuedCount.get();
+    }
+
+    @Override
+    public long getDuplicateCount()
+    {
+        return duplicateCount.get();
+    }
+
+    @Override
+    public long getStolenCount()
+    {
+        return stolenCount.get();
+    }
+
+    @Override
+    public long getCompletedCount()
+    {
+        return completedCount.get();
+    }
+
+    @Override
+    public long getFailedCount()
+    {
+        return failedCount.get();
+    }
+
+    @Override
+    public String[] getActionTypes()
+    {
+        List<String> actionTypes = new ArrayList<String>(statistics.keySet());
+        Collections.sort(actionTypes);
+        return actionTypes.toArray(new String[actionTypes.size()]);
+    }
+
+    @Override
+    public long getAverageQueueLatencyMs(String actionType)
+    {
+        ActionTypeStatistics typeStatistics = statistics.get(actionType);
+        return typeStatistics == null ? 0L : typeStatistics.average(typeStatistics.totalQueueLatencyMs);
+    }
+
+    @Override
+    public long getMaxQueueLatencyMs(String actionType)
+    {
+        ActionTypeStatistics typeStatistics = statistics.get(actionType);
+        return typeStatistics == null ? 0L : typeStatistics.maxQueueLatencyMs.get();
+    }
+
+    @Override
+    public long getAverageExecutionTimeMs(String actionType)
+    {
+        ActionTypeStatistics typeStatistics = statistics.get(actionType);
+        return typeStatistics == null ? 0L : typeStatistics.average(typeStatistics.totalExecutionTimeMs);
+    }
+
+    @Override
+    public String[] getActionTypeStatistics()
+    {
+        String[] actionTypes = getActionTypes();
+        String[] lines = new String[actionTypes.length];
+        for (int i = 0; i < actionTypes.length; i++)
+        {
+            ActionTypeStatistics typeStatistics = statistics.get(actionTypes[i]);
+            StringBuilder sb = new StringBuilder(128);
+            sb.append(actionTypes[i])
+              .append(": priority=").append(getPriority(actionTypes[i]))
+              .append(", limit=").append(getConcurrencyLimit(actionTypes[i]))
+              .append(", running=").append(typeStatistics.running.get())
+              .append(", queued=").append(typeStatistics.queued.get())
+              .append(", executed=").append(typeStatistics.executed.get())
+              .append(", failed=").append(typeStatistics.failed.get())
+              .append(", avgQueueLatencyMs=").append(typeStatistics.average(typeStatistics.totalQueueLatencyMs))
+              .append(", maxQueueLatencyMs=").append(typeStatistics.maxQueueLatencyMs.get())
+              .append(", avgExecutionTimeMs=").append(typeStatistics.average(typeStatistics.totalExecutionTimeMs));
+            lines[i] = sb.toString();
+        }
+        return lines;
+    }
+
+    @Override
+    public void resetStatistics()
+    {
+        queuedCount.set(0L);
+        duplicateCount.set(0L);
+        stolenCount.set(0L);
+        completedCount.set(0L);
+        failedCount.set(0L);
+        for (ActionTypeStatistics typeStatistics : statistics.values())
+        {
+            typeStatistics.reset();
+        }
+    }
+}
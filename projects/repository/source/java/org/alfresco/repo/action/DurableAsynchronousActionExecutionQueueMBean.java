@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+/**
+ * Management interface for the {@link DurableAsynchronousActionExecutionQueueImpl durable asynchronous action queue}.
+ * 
+ * @since 5.2
+ */
+public interface DurableAsynchronousActionExecutionQueueMBean
+{
+    /**
+     * @return          one of <tt>MEMORY</tt>, <tt>DATABASE</tt> or <tt>FILE</tt>
+     */
+    public String getMode();
+
+    /**
+     * @return          the ID under which this server claims queued actions
+     */
+    public String getServerId();
+
+    /**
+     * @return          the number of actions waiting to be executed, including those queued by other servers
+     */
+    public int getQueueDepth();
+
+    /**
+     * @return          the number of actions being executed by this server
+     */
+    public int getRunningCount();
+
+    /**
+     * @return          the maximum number of actions that this server executes at the same time
+     */
+    public int getMaxConcurrentActions();
+
+    /**
+     * @return          the number of actions queued by this server
+     */
+    public long getQueuedCount();
+
+    /**
+     * @return          the number of actions dropped because an identical action was already pending
+     */
+    public long getDuplicateCount();
+
+    /**
+     * @return          the number of actions queued by other servers that were executed by this server
+     */
+    public long getStolenCount();
+
+    /**
+     * @return          the number of actions executed by this server
+     */
+    public long getCompletedCount();
+
+    /**
+     * @return          the number of actions executed by this server that failed
+     */
+    public long getFailedCount();
+
+    /**
+     * @return          the names of the action types executed or queued by this server
+     */
+    public String[] getActionTypes();
+
+    /**
+     * @param actionType    the action definition name
+     * @return              the mean time between queueing and the start of execution, in milliseconds
+     */
+    public long getAverageQueueLatencyMs(String actionType);
+
+    /**
+     * @param actionType    the action definition name
+     * @return              the longest time between queueing and the start of execution, in milliseconds
+     */
+    public long getMaxQueueLatencyMs(String actionType);
+
+    /**
+     * @param actionType    the action definition name
+     * @return              the mean execution time, in milliseconds
+     */
+    public long getAverageExecutionTimeMs(String actionType);
+
+    /**
+     * @return          a line of statistics for each action type
+     */
+    public String[] getActionTypeStatistics();
+
+    /**
+     * Reset the counters and per-type statistics
+     */
+    public void resetStatistics();
+}
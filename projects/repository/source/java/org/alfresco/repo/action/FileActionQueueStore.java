@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An {@link ActionQueueStore} that journals each entry to a file in a local directory.  The queue
+ * survives a restart of the server but is not shared with other servers.
+ * <p>
+ * Each entry is written to its own file, which is deleted once the entry has been executed.  Claims
+ * are only held in memory: entries that were being executed when the server stopped are executed
+ * again after it restarts.  Files that cannot be read are renamed with a <tt>.bad</tt> suffix.
+ * 
+ * @since 5.2
+ */
+public class FileActionQueueStore implements ActionQueueStore
+{
+    private static final String FILE_SUFFIX = ".action";
+    
+    private static Log logger = LogFactory.getLog(FileActionQueueStore.class);
+    
+    private final File directory;
+    /** Pending entries in priority order */
+    private final TreeSet<QueuedAction> pending = new TreeSet<QueuedAction>(QueuedAction.PRIORITY_ORDER);
+    /** IDs of the entries being executed */
+    private final Set<String> claimed = new HashSet<String>();
+    /** All entries by ID */
+    private final Map<String, QueuedAction> entries = new HashMap<String, QueuedAction>();
+    /** Pending entries by deduplication key */
+    private final Map<String, QueuedAction> pendingByKey = new HashMap<String, QueuedAction>();
+
+    /**
+     * @param directory             the directory holding the journal; it is created if necessary
+     */
+    public FileActionQueueStore(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Create the directory and load the entries journalled by a previous run
+     */
+    public synchronized void init()
+    {
+        if (!directory.exists() && !directory.mkdirs())
+        {
+            throw new AlfrescoRuntimeException("Unable to create action queue directory: " + directory);
+        }
+        entries.clear();
+        pending.clear();
+        pendingByKey.clear();
+        claimed.clear();
+        for (File file : listFiles())
+        {
+            QueuedAction entry = readFile(file);
+            if (entry == null)
+            {
+                // Unreadable: set it aside so that it is not read again
+                file.renameTo(new File(file.getPath() + ".bad"));
+                continue;
+            }
+            entries.put(entry.getId(), entry);
+            pending.add(entry);
+            if (!pendingByKey.containsKey(entry.getDeduplicationKey()))
+            {
+                pendingByKey.put(entry.getDeduplicationKey(), entry);
+            }
+        }
+        if (!entries.isEmpty() && logger.isInfoEnabled())
+        {
+            logger.info("Found " + entries.size() + " journalled actions in " + directory);
+        }
+    }
+
+    @Override
+    public synchronized boolean add(QueuedAction entry)
+    {
+        if (pendingByKey.containsKey(entry.getDeduplicationKey()))
+        {
+            return false;
+        }
+        writeFile(entry);
+        entries.put(entry.getId(), entry);
+        pending.add(entry);
+        pendingByKey.put(entry.getDeduplicationKey(), entry);
+        return true;
+    }
+
+    @Override
+    public synchronized List<QueuedAction> getPending(int maxResults)
+    {
+        List<QueuedAction> results = new ArrayList<QueuedAction>(Math.min(maxResults, pending.size()));
+        for (QueuedAction entry : pending)
+        {
+            if (results.size() >= maxResults)
+            {
+                break;
+            }
+            results.add(entry);
+        }
+        return results;
+    }
+
+    @Override
+    public synchronized boolean claim(QueuedAction entry, String serverId)
+    {
+        if (!pending.remove(entry))
+        {
+            return false;
+        }
+        claimed.add(entry.getId());
+        if (entry.equals(pendingByKey.get(entry.getDeduplicationKey())))
+        {
+            pendingByKey.remove(entry.getDeduplicationKey());
+        }
+        return true;
+    }
+
+    @Override
+    public void renewClaim(QueuedAction entry, String serverId)
+    {
+        // Claims are not shared
+    }
+
+    @Override
+    public synchronized void remove(QueuedAction entry)
+    {
+        if (entries.remove(entry.getId()) == null)
+        {
+            return;
+        }
+        pending.remove(entry);
+        claimed.remove(entry.getId());
+        if (entry.equals(pendingByKey.get(entry.getDeduplicationKey())))
+        {
+            pendingByKey.remove(entry.getDeduplicationKey());
+        }
+        File file = getFile(entry);
+        if (!file.delete() && file.exists())
+        {
+            logger.error("Failed to remove action journal file; the action will run again after a restart: " + file);
+        }
+    }
+
+    @Override
+    public synchronized int releaseClaims(String serverId)
+    {
+        int released = claimed.size();
+        for (String id : claimed)
+        {
+            QueuedAction entry = entries.get(id);
+            pending.add(entry);
+            if (!pendingByKey.containsKey(entry.getDeduplicationKey()))
+            {
+                pendingByKey.put(entry.getDeduplicationKey(), entry);
+            }
+        }
+        claimed.clear();
+        return released;
+    }
+
+    @Override
+    public synchronized int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    private File getFile(QueuedAction entry)
+    {
+        return new File(directory, entry.getId() + FILE_SUFFIX);
+    }
+
+    private void writeFile(QueuedAction entry)
+    {
+        File file = getFile(entry);
+        File tempFile = new File(file.getPath() + ".tmp");
+        try
+        {
+            try (ObjectOutputStream os = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+            {
+                os.writeObject(entry);
+            }
+            // Only complete files are read back
+            if (!tempFile.renameTo(file))
+            {
+                throw new IOException("Failed to rename " + tempFile);
+            }
+        }
+        catch (IOException e)
+        {
+            tempFile.delete();
+            throw new AlfrescoRuntimeException("Failed to journal action: " + entry, e);
+        }
+    }
+
+    private QueuedAction readFile(File file)
+    {
+        try (ObjectInputStream is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            return (QueuedAction) is.readObject();
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException e)
+        {
+            logger.error("Unable to read action journal file: " + file, e);
+            return null;
+        }
+    }
+
+    private File[] listFiles()
+    {
+        File[] files = directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(FILE_SUFFIX);
+            }
+        });
+        return files == null ? new File[0] : files;
+    }
+}
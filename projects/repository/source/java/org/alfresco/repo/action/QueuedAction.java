@@ -0,0 +1,223 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * An asynchronous action that has been accepted by a
+ * {@link DurableAsynchronousActionExecutionQueueImpl durable queue} but has not yet completed.
+ * Instances are written to an {@link ActionQueueStore} and are therefore serializable and immutable.
+ * 
+ * @since 5.2
+ */
+public class QueuedAction implements Serializable
+{
+    private static final long serialVersionUID = -4817021570366417255L;
+
+    /**
+     * Orders entries by descending priority and then by the time at which they were queued
+     */
+    public static final Comparator<QueuedAction> PRIORITY_ORDER = new Comparator<QueuedAction>()
+    {
+        @Override
+        public int compare(QueuedAction o1, QueuedAction o2)
+        {
+            if (o1.priority != o2.priority)
+            {
+                return o1.priority > o2.priority ? -1 : 1;
+            }
+            if (o1.queuedTime != o2.queuedTime)
+            {
+                return o1.queuedTime < o2.queuedTime ? -1 : 1;
+            }
+            return o1.id.compareTo(o2.id);
+        }
+    };
+
+    private final String id;
+    private final String serverId;
+    private final int priority;
+    private final long queuedTime;
+    private final String deduplicationKey;
+    private final Action action;
+    private final NodeRef actionedUponNodeRef;
+    private final boolean checkConditions;
+    private final Set<String> actionChain;
+
+    /**
+     * @param id                        a cluster-wide unique ID for the entry
+     * @param serverId                  the server that queued the action
+     * @param priority                  the priority; higher values are executed first
+     * @param queuedTime                the time at which the action was queued
+     * @param action                    the action to execute
+     * @param actionedUponNodeRef       the node to execute the action against
+     * @param checkConditions           <tt>true</tt> to check the action conditions before executing
+     * @param actionChain               the chain of actions that led to this one (may be <tt>null</tt>)
+     */
+    public QueuedAction(
+            String id,
+            String serverId,
+            int priority,
+            long queuedTime,
+            Action action,
+            NodeRef actionedUponNodeRef,
+            boolean checkConditions,
+            Set<String> actionChain)
+    {
+        this.id = id;
+        this.serverId = serverId;
+        this.priority = priority;
+        this.queuedTime = queuedTime;
+        this.action = action;
+        this.actionedUponNodeRef = actionedUponNodeRef;
+        this.checkConditions = checkConditions;
+        this.actionChain = (actionChain == null) ? null : new HashSet<String>(actionChain);
+        this.deduplicationKey = buildDeduplicationKey(action, actionedUponNodeRef);
+    }
+
+    /**
+     * Builds a key that is the same for any two actions that would do exactly the same work i.e. actions
+     * with the same definition, parameter values, run-as user and tenant against the same node.
+     * 
+     * @return                          a fixed-length key
+     */
+    public static String buildDeduplicationKey(Action action, NodeRef actionedUponNodeRef)
+    {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(action.getActionDefinitionName()).append('|').append(actionedUponNodeRef);
+        if (action instanceof ActionImpl)
+        {
+            ActionImpl actionImpl = (ActionImpl) action;
+            sb.append('|').append(actionImpl.getRunAsUser()).append('|').append(actionImpl.getTenantId());
+        }
+        Map<String, Serializable> parameterValues = new TreeMap<String, Serializable>(action.getParameterValues());
+        for (Map.Entry<String, Serializable> entry : parameterValues.entrySet())
+        {
+            sb.append('|').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return action.getActionDefinitionName() + "-" + DigestUtils.sha1Hex(sb.toString());
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return                          the server that queued the action
+     */
+    public String getServerId()
+    {
+        return serverId;
+    }
+
+    public int getPriority()
+    {
+        return priority;
+    }
+
+    public long getQueuedTime()
+    {
+        return queuedTime;
+    }
+
+    /**
+     * @see #buildDeduplicationKey(Action, NodeRef)
+     */
+    public String getDeduplicationKey()
+    {
+        return deduplicationKey;
+    }
+
+    public String getActionDefinitionName()
+    {
+        return action.getActionDefinitionName();
+    }
+
+    public Action getAction()
+    {
+        return action;
+    }
+
+    public NodeRef getActionedUponNodeRef()
+    {
+        return actionedUponNodeRef;
+    }
+
+    public boolean getCheckConditions()
+    {
+        return checkConditions;
+    }
+
+    public Set<String> getActionChain()
+    {
+        return actionChain;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!(obj instanceof QueuedAction))
+        {
+            return false;
+        }
+        return id.equals(((QueuedAction) obj).id);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("QueuedAction")
+          .append("[ id=").append(id)
+          .append(", action=").append(getActionDefinitionName())
+          .append(", node=").append(actionedUponNodeRef)
+          .append(", priority=").append(priority)
+          .append(", server=").append(serverId)
+          .append("]");
+        return sb.toString();
+    }
+}
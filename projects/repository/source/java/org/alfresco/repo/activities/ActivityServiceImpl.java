@@ -27,6 +27,8 @@ package org.alfresco.repo.activities;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,10 +36,14 @@ import java.util.Set;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
+import org.alfresco.query.CannedQueryPageDetails;
 import org.alfresco.query.PagingRequest;
 import org.alfresco.query.PagingResults;
 import org.alfresco.repo.Client;
+import org.alfresco.repo.activities.feed.FeedTaskProcessor;
 import org.alfresco.repo.activities.feed.cleanup.FeedCleaner;
+import org.alfresco.repo.activities.post.lookup.PostLookup;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.activities.ActivityFeedDAO;
 import org.alfresco.repo.domain.activities.ActivityFeedEntity;
 import org.alfresco.repo.domain.activities.FeedControlDAO;
@@ -45,19 +51,25 @@ import org.alfresco.repo.domain.activities.FeedControlEntity;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.permissions.AccessDeniedException;
 import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.tenant.TenantUtil;
 import org.alfresco.service.cmr.activities.ActivityPostService;
 import org.alfresco.service.cmr.activities.ActivityService;
 import org.alfresco.service.cmr.activities.FeedControl;
 import org.alfresco.service.cmr.model.FileInfo;
 import org.alfresco.service.cmr.repository.AssociationRef;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.AccessStatus;
 import org.alfresco.service.cmr.security.AuthorityService;
 import org.alfresco.service.cmr.security.NoSuchPersonException;
+import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.cmr.security.PersonService;
 import org.alfresco.service.cmr.site.SiteInfo;
 import org.alfresco.service.cmr.site.SiteService;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONException;
@@ -83,10 +95,25 @@ public class ActivityServiceImpl implements ActivityService, InitializingBean
     private ActivityPostService activityPostService;
     private PersonService personService;
     private NodeService nodeService;
+    private PermissionService permissionService;
     
     private int maxFeedItems = 100;
     
     private boolean userNamesAreCaseSensitive = false;
+    
+    private int largeSiteMemberThreshold = 0;
+    private SimpleCache<String, List<ActivityFeedEntity>> siteMembersFeedCache;     // site network -> latest site members feed entries
+    private SimpleCache<String, List<ActivityFeedEntity>> mergedMembersFeedCache;   // feed user (and site) -> site members feed entries readable by the user
+    
+    private static final Comparator<ActivityFeedEntity> POST_DATE_DESCENDING = new Comparator<ActivityFeedEntity>()
+    {
+        @Override
+        public int compare(ActivityFeedEntity feed1, ActivityFeedEntity feed2)
+        {
+            int compare = feed2.getPostDate().compareTo(feed1.getPostDate());
+            return (compare != 0 ? compare : feed2.getId().compareTo(feed1.getId()));
+        }
+    };
 
     public void setMaxFeedItems(int maxFeedItems)
     {
@@ -143,6 +170,39 @@ public class ActivityServiceImpl implements ActivityService, InitializingBean
         this.nodeService = nodeService;
     }
     
+    public void setPermissionService(PermissionService permissionService)
+    {
+        this.permissionService = permissionService;
+    }
+    
+    /**
+     * Must match the threshold of the feed generator: when greater than zero, the activities stored once for
+     * all the members of large sites are merged into user feeds.
+     * 
+     * @param largeSiteMemberThreshold      the number of site members, or <tt>0</tt> (default) if feeds are not merged
+     * @see FeedTaskProcessor#setLargeSiteMemberThreshold(int)
+     */
+    public void setLargeSiteMemberThreshold(int largeSiteMemberThreshold)
+    {
+        this.largeSiteMemberThreshold = largeSiteMemberThreshold;
+    }
+    
+    /**
+     * @param siteMembersFeedCache          optional cache of the latest activities stored for all members of a large site
+     */
+    public void setSiteMembersFeedCache(SimpleCache<String, List<ActivityFeedEntity>> siteMembersFeedCache)
+    {
+        this.siteMembersFeedCache = siteMembersFeedCache;
+    }
+    
+    /**
+     * @param mergedMembersFeedCache        optional cache of the large site activities that a user can read
+     */
+    public void setMergedMembersFeedCache(SimpleCache<String, List<ActivityFeedEntity>> mergedMembersFeedCache)
+    {
+        this.mergedMembersFeedCache = mergedMembersFeedCache;
+    }
+    
     
     /*(non-Javadoc)
      * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
@@ -294,6 +354,11 @@ public class ActivityServiceImpl implements ActivityService, InitializingBean
 
             String networkId = tenantService.getCurrentUserDomain();
 
+            if ((largeSiteMemberThreshold > 0) && ! (excludeThisUser && excludeOtherUsers))
+            {
+                return getMergedPagedUserFeedEntries(feedUserId, networkId, siteId, excludeThisUser, excludeOtherUsers, minFeedId, pagingRequest);
+            }
+            
             PagingResults<ActivityFeedEntity> activityFeedEntries = feedDAO.selectPagedUserFeedEntries(feedUserId, networkId, siteId, excludeThisUser, excludeOtherUsers, minFeedId, pagingRequest);
             return activityFeedEntries;
         }
@@ -305,6 +370,55 @@ public class ActivityServiceImpl implements ActivityService, InitializingBean
         }
     }
     
+    /**
+     * Page through the user's own feed entries merged with the activities of the user's large sites. The page can
+     * start anywhere in the user's own entries, hence these are read from the first one up to the end of the page.
+     */
+    private PagingResults<ActivityFeedEntity> getMergedPagedUserFeedEntries(String feedUserId, String networkId, String siteId, boolean excludeThisUser, boolean excludeOtherUsers,
+                                                                            long minFeedId, PagingRequest pagingRequest) throws SQLException
+    {
+        int skipCount = pagingRequest.getSkipCount();
+        int maxItems = pagingRequest.getMaxItems();
+        int endIndex = (maxItems == CannedQueryPageDetails.DEFAULT_PAGE_SIZE ? maxItems : (int) Math.min((long) skipCount + maxItems, Integer.MAX_VALUE));
+        
+        PagingResults<ActivityFeedEntity> userFeeds = feedDAO.selectPagedUserFeedEntries(feedUserId, networkId, siteId, excludeThisUser, excludeOtherUsers, minFeedId,
+                                                                                         new PagingRequest(0, endIndex));
+        List<ActivityFeedEntity> merged = mergeSiteMembersFeeds(feedUserId, siteId, excludeThisUser, excludeOtherUsers, minFeedId,
+                                                                userFeeds.getPage(), -1);
+        
+        final boolean hasMoreItems = userFeeds.hasMoreItems() || (merged.size() > endIndex);
+        final List<ActivityFeedEntity> page = (skipCount >= merged.size()
+                                               ? new ArrayList<ActivityFeedEntity>(0)
+                                               : new ArrayList<ActivityFeedEntity>(merged.subList(skipCount, Math.min(merged.size(), endIndex))));
+        
+        return new PagingResults<ActivityFeedEntity>()
+        {
+            @Override
+            public List<ActivityFeedEntity> getPage()
+            {
+                return page;
+            }
+            
+            @Override
+            public boolean hasMoreItems()
+            {
+                return hasMoreItems;
+            }
+            
+            @Override
+            public Pair<Integer, Integer> getTotalResultCount()
+            {
+                return new Pair<Integer, Integer>(null, null);
+            }
+            
+            @Override
+            public String getQueryExecutionId()
+            {
+                return null;
+            }
+        };
+    }
+    
     /**
      * Attempts to find the avatar {@link NodeRef} for the user in supplied {@link ActivityFeedEntity}. As this is aimed
      * at setting the {@link NodeRef} from a client-side point of view there are a couple of activity types where
@@ -376,6 +490,222 @@ public class ActivityServiceImpl implements ActivityService, InitializingBean
         return avatarNodeRef;
     }
 
+    /**
+     * Merge the activities of the user's large sites, stored once for all site members, into the user's own feed entries
+     * 
+     * @param maxItems          the most entries to return, or <tt>-1</tt> for all
+     */
+    private List<ActivityFeedEntity> mergeSiteMembersFeeds(String feedUserId, String siteId, boolean excludeThisUser, boolean excludeOtherUsers, long minFeedId,
+                                                           List<ActivityFeedEntity> userFeeds, int maxItems) throws SQLException
+    {
+        if (excludeThisUser && excludeOtherUsers)
+        {
+            return userFeeds;
+        }
+        
+        List<ActivityFeedEntity> membersFeeds = getReadableSiteMembersFeeds(feedUserId, siteId);
+        if (membersFeeds.isEmpty())
+        {
+            return userFeeds;
+        }
+        
+        List<ActivityFeedEntity> merged = new ArrayList<ActivityFeedEntity>(userFeeds.size() + membersFeeds.size());
+        merged.addAll(userFeeds);
+        
+        for (ActivityFeedEntity membersFeed : membersFeeds)
+        {
+            if ((minFeedId > -1) && (membersFeed.getId() < minFeedId))
+            {
+                continue;
+            }
+            
+            boolean postedByThisUser = feedUserId.equals(membersFeed.getPostUserId());
+            if ((excludeThisUser && postedByThisUser) || (excludeOtherUsers && ! postedByThisUser))
+            {
+                continue;
+            }
+            
+            // note: cached entries are shared, hence copy before the entry is modified for the caller
+            merged.add(membersFeed.copyFor(feedUserId));
+        }
+        
+        Collections.sort(merged, POST_DATE_DESCENDING);
+        
+        if ((maxItems >= 0) && (merged.size() > maxItems))
+        {
+            merged = new ArrayList<ActivityFeedEntity>(merged.subList(0, maxItems));
+        }
+        
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Merged " + membersFeeds.size() + " site members feed entries into " + userFeeds.size() + " feed entries for user : '" + feedUserId + "'");
+        }
+        
+        return merged;
+    }
+    
+    /**
+     * Get the latest activities of the user's large sites (or the given site) that are not excluded by the
+     * user's feed controls and for which the user can read the activity node, if any.
+     */
+    private List<ActivityFeedEntity> getReadableSiteMembersFeeds(final String feedUserId, String siteId) throws SQLException
+    {
+        String cacheKey = feedUserId + "/" + (siteId == null ? "" : siteId);
+        if (mergedMembersFeedCache != null)
+        {
+            List<ActivityFeedEntity> readable = mergedMembersFeedCache.get(cacheKey);
+            if (readable != null)
+            {
+                return readable;
+            }
+        }
+        
+        List<String> siteNetworks = new ArrayList<String>();
+        if (siteId != null)
+        {
+            if (siteService.isMember(tenantService.getBaseName(siteId), feedUserId))
+            {
+                siteNetworks.add(siteId);
+            }
+        }
+        else
+        {
+            for (SiteInfo siteInfo : siteService.listSites(feedUserId))
+            {
+                siteNetworks.add(tenantService.getName(siteInfo.getShortName()));
+            }
+        }
+        
+        List<ActivityFeedEntity> readable = new ArrayList<ActivityFeedEntity>();
+        if (! siteNetworks.isEmpty())
+        {
+            List<FeedControlEntity> feedControls = feedControlDAO.selectFeedControls(feedUserId);
+            for (String siteNetwork : siteNetworks)
+            {
+                for (ActivityFeedEntity membersFeed : getSiteMembersFeed(siteNetwork))
+                {
+                    if (FeedTaskProcessor.acceptActivity(membersFeed.getSiteNetwork(), membersFeed.getAppTool(), feedControls) &&
+                        canRead(feedUserId, membersFeed))
+                    {
+                        readable.add(membersFeed);
+                    }
+                }
+            }
+        }
+        readable = Collections.unmodifiableList(readable);
+        
+        if (mergedMembersFeedCache != null)
+        {
+            mergedMembersFeedCache.put(cacheKey, readable);
+        }
+        return readable;
+    }
+    
+    private List<ActivityFeedEntity> getSiteMembersFeed(String siteNetwork) throws SQLException
+    {
+        if (siteMembersFeedCache != null)
+        {
+            List<ActivityFeedEntity> membersFeed = siteMembersFeedCache.get(siteNetwork);
+            if (membersFeed != null)
+            {
+                return membersFeed;
+            }
+        }
+        
+        String membersFeedUserId = ActivityFeedEntity.getSiteMembersFeedUserId(siteNetwork);
+        List<ActivityFeedEntity> membersFeed = Collections.unmodifiableList(
+                feedDAO.selectUserFeedEntries(membersFeedUserId, siteNetwork, false, false, -1, maxFeedItems));
+        
+        if (siteMembersFeedCache != null)
+        {
+            siteMembersFeedCache.put(siteNetwork, membersFeed);
+        }
+        return membersFeed;
+    }
+    
+    /**
+     * Node read permission check for a site members feed entry, as applied by the feed generator to user feed entries
+     */
+    private boolean canRead(final String feedUserId, ActivityFeedEntity membersFeed)
+    {
+        if (permissionService == null)
+        {
+            return true;
+        }
+        
+        String nodeRefStr = null;
+        try
+        {
+            JSONObject summary = new JSONObject(membersFeed.getActivitySummary());
+            nodeRefStr = summary.optString(PostLookup.JSON_NODEREF, null);
+            if (nodeRefStr == null)
+            {
+                nodeRefStr = summary.optString(PostLookup.JSON_NODEREF_PARENT, null);
+            }
+        }
+        catch (JSONException e)
+        {
+            // no nodeRef
+        }
+        
+        if ((nodeRefStr == null) || (! NodeRef.isNodeRef(nodeRefStr)))
+        {
+            return true;
+        }
+        
+        final NodeRef nodeRef = new NodeRef(nodeRefStr);
+        return TenantUtil.runAsSystemTenant(new TenantUtil.TenantRunAsWork<Boolean>()
+        {
+            public Boolean doWork() throws Exception
+            {
+                return canReadImpl(feedUserId, nodeRef);
+            }
+        }, tenantService.getDomain(membersFeed.getSiteNetwork()));
+    }
+    
+    private boolean canReadImpl(final String feedUserId, NodeRef nodeRef)
+    {
+        // note: deleted node does not exist (hence no permission)
+        final NodeRef checkNodeRef;
+        NodeRef parentToCheckNodeRef = null;
+        if (nodeService.exists(nodeRef))
+        {
+            checkNodeRef = nodeRef;
+        }
+        else
+        {
+            NodeRef archiveNodeRef = new NodeRef(StoreRef.STORE_REF_ARCHIVE_SPACESSTORE, nodeRef.getId());
+            if (! nodeService.exists(archiveNodeRef))
+            {
+                return false;
+            }
+            // MNT-10023
+            if (permissionService.getInheritParentPermissions(archiveNodeRef))
+            {
+                ChildAssociationRef originalParentAssoc = (ChildAssociationRef) nodeService.getProperty(archiveNodeRef, ContentModel.PROP_ARCHIVED_ORIGINAL_PARENT_ASSOC);
+                if (originalParentAssoc != null)
+                {
+                    parentToCheckNodeRef = originalParentAssoc.getParentRef();
+                }
+            }
+            checkNodeRef = archiveNodeRef;
+        }
+        
+        boolean allow = AuthenticationUtil.runAs(new AuthenticationUtil.RunAsWork<Boolean>()
+        {
+            public Boolean doWork() throws Exception
+            {
+                return (permissionService.hasPermission(checkNodeRef, PermissionService.READ) == AccessStatus.ALLOWED);
+            }
+        }, feedUserId);
+        
+        if (! allow && (parentToCheckNodeRef != null))
+        {
+            allow = canReadImpl(feedUserId, parentToCheckNodeRef);
+        }
+        return allow;
+    }
+    
     public List<ActivityFeedEntity> getUserFeedEntries(String feedUserId, String siteId, boolean excludeThisUser, boolean excludeOtherUsers, long minFeedId)
     {
         return getUserFeedEntries(feedUserId, siteId, excludeThisUser, excludeOtherUsers, null, null, minFeedId);
@@ -420,6 +750,11 @@ public class ActivityServiceImpl implements ActivityService, InitializingBean
             }
             
             List<ActivityFeedEntity> activityFeeds = feedDAO.selectUserFeedEntries(feedUserId, siteId, excludeThisUser, excludeOtherUsers, minFeedId, maxFeedItems);
+            
+            if (largeSiteMemberThreshold > 0)
+            {
+                activityFeeds = mergeSiteMembersFeeds(feedUserId, siteId, excludeThisUser, excludeOtherUsers, minFeedId, activityFeeds, maxFeedItems);
+            }
 
             // Create a local cache just for this method to map IDs of users to their avatar NodeRef. This
             // is local to the method because we only want to cache per request - there is not point in keeping
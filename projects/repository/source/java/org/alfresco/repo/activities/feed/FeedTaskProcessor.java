@@ -92,12 +92,26 @@ public abstract class FeedTaskProcessor
     private static final String URL_SERVICE_TEMPLATE  = "/api/activities/template";
     
     private boolean userNamesAreCaseSensitive = false;
+    private int largeSiteMemberThreshold = 0;
     
     public void setUserNamesAreCaseSensitive(boolean userNamesAreCaseSensitive)
     {
         this.userNamesAreCaseSensitive = userNamesAreCaseSensitive;
     }
     
+    /**
+     * Sites with more members than this have each of their activities stored once, against the
+     * {@link ActivityFeedEntity#getSiteMembersFeedUserId(String) site members feed}, rather than once per
+     * member.  The activities are then merged into member feeds when they are read.
+     * 
+     * @param largeSiteMemberThreshold      the number of site members, or <tt>0</tt> (default) to always write
+     *                                      one feed entry per member
+     */
+    public void setLargeSiteMemberThreshold(int largeSiteMemberThreshold)
+    {
+        this.largeSiteMemberThreshold = largeSiteMemberThreshold;
+    }
+    
     public void process(int jobTaskNode, long minSeq, long maxSeq, RepoCtx ctx) throws Exception
     {
         long startTime = System.currentTimeMillis();
@@ -229,8 +243,11 @@ public abstract class FeedTaskProcessor
                     
                     for (String recipient : recipients)
                     {
+                        // feed controls and node read permissions of site members feeds are applied when read
+                        boolean siteMembersFeed = ActivityFeedEntity.isSiteMembersFeedUserId(recipient);
+                        
                         List<FeedControlEntity> feedControls = null;
-                        if (! recipient.equals(""))
+                        if (! recipient.equals("") && ! siteMembersFeed)
                         {
                             // Get user's feed controls
                             feedControls = userFeedControls.get(recipient);
@@ -249,7 +266,7 @@ public abstract class FeedTaskProcessor
                         else
                         {
                             // node read permission check (if nodeRef is present)
-                            if (! canRead(ctx, recipient, model))
+                            if (! siteMembersFeed && ! canRead(ctx, recipient, model))
                             {
                                 excludedConnections++;
                                 continue;
@@ -265,7 +282,10 @@ public abstract class FeedTaskProcessor
                                 //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
                                 if (! userNamesAreCaseSensitive)
                                 {
-                                    recipient = recipient.toLowerCase();
+                                    if (! siteMembersFeed)
+                                    {
+                                        recipient = recipient.toLowerCase();
+                                    }
                                     postingUserId = postingUserId.toLowerCase();
                                 }
                                 feed.setFeedUserId(recipient);
@@ -346,6 +366,9 @@ public abstract class FeedTaskProcessor
         // Recipients of this post
         Set<String> recipients = new HashSet<String>();
         
+        // Members of a large site, who read the site members feed instead of getting their own feed entries
+        Set<String> largeSiteMembers = null;
+        
         // Add site members to recipient list
         if ((null != siteId) && (siteId.length() > 0))
         {
@@ -368,7 +391,16 @@ public abstract class FeedTaskProcessor
                 siteConnectedUsers.put(siteId, connectedUsers);
             }
             
-            recipients.addAll(connectedUsers);
+            if (isLargeSite(siteId, connectedUsers))
+            {
+                largeSiteMembers = connectedUsers;
+                recipients.add(""); // site feed
+                recipients.add(ActivityFeedEntity.getSiteMembersFeedUserId(siteId));
+            }
+            else
+            {
+                recipients.addAll(connectedUsers);
+            }
         }
         
         // Add followers to recipient list
@@ -398,8 +430,7 @@ public abstract class FeedTaskProcessor
                 // MNT-13234
                 // avoid duplicate activities in activities feed
                 boolean caseSensitive = ctx.isUserNamesAreCaseSensitive();
-                if ((caseSensitive && recipients.contains(followerUser))
-                        || (!caseSensitive && (recipients.contains(followerUser) || recipients.contains(followerUser.toLowerCase()))))
+                if (contains(recipients, followerUser, caseSensitive) || contains(largeSiteMembers, followerUser, caseSensitive))
                 {
                     continue;
                 }
@@ -426,11 +457,39 @@ public abstract class FeedTaskProcessor
         
         
         // Add the originator to recipients
-        recipients.add(postUserId);
+        if (! contains(largeSiteMembers, postUserId, ctx.isUserNamesAreCaseSensitive()))
+        {
+            recipients.add(postUserId);
+        }
         
         return recipients;
     }
     
+    private boolean isLargeSite(String siteId, Set<String> connectedUsers)
+    {
+        if (largeSiteMemberThreshold <= 0)
+        {
+            return false;
+        }
+        
+        // note: connected users include the site feed
+        if ((connectedUsers.size() - 1) <= largeSiteMemberThreshold)
+        {
+            return false;
+        }
+        
+        return ActivityFeedEntity.getSiteMembersFeedUserId(siteId).length() <= ActivityFeedDAO.MAX_LEN_USER_ID;
+    }
+    
+    private static boolean contains(Set<String> users, String userId, boolean caseSensitive)
+    {
+        if (users == null)
+        {
+            return false;
+        }
+        return users.contains(userId) || (! caseSensitive && users.contains(userId.toLowerCase()));
+    }
+    
     public abstract void startTransaction() throws SQLException;
 
     public abstract void commitTransaction() throws SQLException;
@@ -662,6 +721,19 @@ public abstract class FeedTaskProcessor
     }
 
     protected boolean acceptActivity(ActivityPostEntity activityPost, List<FeedControlEntity> feedControls)
+    {
+        return acceptActivity(activityPost.getSiteNetwork(), activityPost.getAppTool(), feedControls);
+    }
+    
+    /**
+     * Apply opt-out feed controls to an activity
+     * 
+     * @param siteNetwork       the site (network) of the activity
+     * @param appTool           the app tool of the activity
+     * @param feedControls      the feed controls of the feed user (may be <tt>null</tt>)
+     * @return                  <tt>true</tt> if the activity is not excluded by any of the feed controls
+     */
+    public static boolean acceptActivity(String siteNetwork, String appTool, List<FeedControlEntity> feedControls)
     {
         if (feedControls == null)
         {
@@ -672,7 +744,7 @@ public abstract class FeedTaskProcessor
         {
             if (ActivitiesDAO.KEY_ACTIVITY_NULL_VALUE.equals(feedControl.getSiteNetwork()) && (feedControl.getAppTool() != null))
             {
-                if (feedControl.getAppTool().equals(activityPost.getAppTool()))
+                if (feedControl.getAppTool().equals(appTool))
                 {
                     // exclude this appTool (across sites)
                     return false;
@@ -680,7 +752,7 @@ public abstract class FeedTaskProcessor
             }
             else if (((feedControl.getAppTool() == null) || (feedControl.getAppTool().length() == 0)) && (feedControl.getSiteNetwork() != null))
             {
-                if (feedControl.getSiteNetwork().equals(activityPost.getSiteNetwork()))
+                if (feedControl.getSiteNetwork().equals(siteNetwork))
                 {
                     // exclude this site (across appTools)
                     return false;
@@ -689,8 +761,8 @@ public abstract class FeedTaskProcessor
             else if (((feedControl.getSiteNetwork() != null) && (feedControl.getSiteNetwork().length() > 0)) &&
                      ((feedControl.getAppTool() != null) && (feedControl.getAppTool().length() > 0)))
             {
-                if ((feedControl.getSiteNetwork().equals(activityPost.getSiteNetwork())) &&
-                    (feedControl.getAppTool().equals(activityPost.getAppTool())))
+                if ((feedControl.getSiteNetwork().equals(siteNetwork)) &&
+                    (feedControl.getAppTool().equals(appTool)))
                 {
                     // exclude this appTool for this site
                     return false;
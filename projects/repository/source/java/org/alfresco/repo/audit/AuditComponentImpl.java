@@ -86,6 +86,7 @@ public class AuditComponentImpl implements AuditComponent
     private TransactionService transactionService;
     private AuditFilter auditFilter;
     private UserAuditFilter userAuditFilter;
+    private AuditEntryWriter auditEntryWriter;
     
     /**
      * Default constructor
@@ -142,6 +143,17 @@ public class AuditComponentImpl implements AuditComponent
         this.userAuditFilter = userAuditFilter;
     }
 
+    /**
+     * Set the component that persists new audit entries.  If not set, entries are written
+     * directly in the audited transaction.
+     * 
+     * @since 5.2
+     */
+    public void setAuditEntryWriter(AuditEntryWriter auditEntryWriter)
+    {
+        this.auditEntryWriter = auditEntryWriter;
+    }
+
     /**
      * {@inheritDoc}
      * @since 3.2
@@ -853,7 +865,10 @@ public class AuditComponentImpl implements AuditComponent
             boolean justGatherPreCallData = application.isApplicationJustGeneratingPreCallData();
             if (!justGatherPreCallData)
             {
-                entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
+                // The writer may defer the write until after commit, in which case there is no ID yet
+                entryId = (auditEntryWriter == null)
+                        ? auditDAO.createAuditEntry(applicationId, time, username, auditData)
+                        : auditEntryWriter.createAuditEntry(applicationId, time, username, auditData);
             }
             // Done
             if (logger.isDebugEnabled())
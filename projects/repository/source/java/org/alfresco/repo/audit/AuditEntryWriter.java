@@ -0,0 +1,767 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.AbstractLifecycleBean;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Persists audit entries on behalf of the {@link AuditComponentImpl}.
+ * <p>
+ * In {@link Mode#SYNCHRONOUS SYNCHRONOUS} mode (the default) entries are written by the caller,
+ * inside the audited transaction, exactly as they always have been.  In the asynchronous modes
+ * the entries are held against the audited transaction and, once it has committed, handed to a
+ * bounded in-memory queue.  A single background writer drains the queue, persisting up to
+ * {@link #setBatchSize(int) batchSize} entries per transaction so that the cost of the
+ * <tt>alf_prop_*</tt> and <tt>alf_audit_entry</tt> inserts is taken off the audited operation
+ * and the commit overhead is shared between many entries.
+ * <p>
+ * When the queue is full the committing thread applies backpressure:
+ * <ul>
+ *   <li>{@link Mode#ASYNCHRONOUS ASYNCHRONOUS}: waits up to {@link #setOfferTimeoutMs(long) offerTimeoutMs}
+ *       for space, once per transaction, and then writes the entries that did not fit itself in a new
+ *       transaction.  Entries that are still queued
+ *       when the server stops abruptly are lost.</li>
+ *   <li>{@link Mode#ASYNCHRONOUS_SPILL ASYNCHRONOUS_SPILL}: journals the overflow to the
+ *       {@link #setSpillDirectory(String) spill directory}.  Batches that cannot be written and entries
+ *       still queued at shutdown are journalled, too.  The journal is replayed by the writer once the
+ *       queue is empty and again after a restart.</li>
+ * </ul>
+ * Audit entries are never visible to queries before the writer has persisted them, so the asynchronous
+ * modes are not suitable where the audit trail is read back within the audited operation.
+ * <p>
+ * In the asynchronous modes the queue statistics are published over JMX as an {@link AuditEntryWriterMBean}.
+ *
+ * @since 5.2
+ */
+public class AuditEntryWriter extends AbstractLifecycleBean implements AuditEntryWriterMBean
+{
+    /**
+     * How audit entries are made durable
+     */
+    public enum Mode
+    {
+        /** Write in the audited transaction */
+        SYNCHRONOUS,
+        /** Queue in memory after commit; callers write directly when the queue is full */
+        ASYNCHRONOUS,
+        /** Queue in memory after commit; overflow and failed batches are journalled to disk */
+        ASYNCHRONOUS_SPILL
+    }
+
+    private static final String SPILL_FILE_PREFIX = "audit-";
+    private static final String SPILL_FILE_SUFFIX = ".spill";
+    private static final long POLL_INTERVAL_MS = 1000L;
+
+    private static Log logger = LogFactory.getLog(AuditEntryWriter.class);
+
+    private final Object pendingKey = new Object();
+    private final AtomicLong spillSequence = new AtomicLong();
+    private final AtomicLong spilledEntries = new AtomicLong();
+    private final AtomicLong writtenEntries = new AtomicLong();
+    private final AtomicLong callerWrittenEntries = new AtomicLong();
+    private final AtomicLong droppedEntries = new AtomicLong();
+    private final AtomicLong lastBatchLagMs = new AtomicLong();
+
+    private AuditDAO auditDAO;
+    private TransactionService transactionService;
+    private Mode mode = Mode.SYNCHRONOUS;
+    private int queueCapacity = 10000;
+    private int batchSize = 250;
+    private long offerTimeoutMs = 100L;
+    private long shutdownTimeoutMs = 30000L;
+    private File spillDirectory;
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName = "Alfresco:Name=AuditEntryWriter";
+    private ObjectName registeredName;
+
+    private BlockingQueue<PendingAuditEntry> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    /**
+     * Set the DAO used to persist the audit entries
+     */
+    public void setAuditDAO(AuditDAO auditDAO)
+    {
+        this.auditDAO = auditDAO;
+    }
+
+    /**
+     * Set the service used to start the writer's transactions
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param mode          the name of the {@link Mode durability mode}; default <b>SYNCHRONOUS</b>
+     */
+    public void setMode(String mode)
+    {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase());
+    }
+
+    /**
+     * @param queueCapacity the maximum number of committed entries held in memory; default <b>10000</b>
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param batchSize     the maximum number of entries persisted per writer transaction; default <b>250</b>
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param offerTimeoutMs    the time a committing thread waits for queue space before writing the
+     *                          entries that did not fit itself (<b>ASYNCHRONOUS</b> mode only); default <b>100</b>
+     */
+    public void setOfferTimeoutMs(long offerTimeoutMs)
+    {
+        this.offerTimeoutMs = offerTimeoutMs;
+    }
+
+    /**
+     * @param shutdownTimeoutMs the time allowed for the queue to drain when the server stops; default <b>30000</b>
+     */
+    public void setShutdownTimeoutMs(long shutdownTimeoutMs)
+    {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    /**
+     * @param spillDirectory    the directory holding the overflow journal (<b>ASYNCHRONOUS_SPILL</b> mode only)
+     */
+    public void setSpillDirectory(String spillDirectory)
+    {
+        this.spillDirectory = (spillDirectory == null || spillDirectory.trim().length() == 0)
+                ? null
+                : new File(spillDirectory.trim());
+    }
+
+    /**
+     * @param mbeanExporter     used to publish the queue statistics over JMX (optional)
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the JMX name to publish the queue statistics under
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    /**
+     * Checks the configuration and prepares the queue and journal.  Entries queued before the
+     * application context has started are written once the writer thread starts.
+     */
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "auditDAO", auditDAO);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        if (mode == Mode.SYNCHRONOUS)
+        {
+            return;
+        }
+        if (queueCapacity < 1 || batchSize < 1)
+        {
+            throw new AlfrescoRuntimeException("Audit queueCapacity and batchSize must be positive.");
+        }
+        queue = new ArrayBlockingQueue<PendingAuditEntry>(queueCapacity);
+        if (mode == Mode.ASYNCHRONOUS_SPILL)
+        {
+            PropertyCheck.mandatory(this, "spillDirectory", spillDirectory);
+            if (!spillDirectory.exists() && !spillDirectory.mkdirs())
+            {
+                throw new AlfrescoRuntimeException("Unable to create audit spill directory: " + spillDirectory);
+            }
+            // Pick up the journal left by a previous run
+            for (File spillFile : listSpillFiles())
+            {
+                spilledEntries.addAndGet(readSpillFileSize(spillFile));
+            }
+            if (spilledEntries.get() > 0L)
+            {
+                logger.info("Found " + spilledEntries.get() + " journalled audit entries in " + spillDirectory);
+            }
+        }
+    }
+
+    /**
+     * @return          <tt>true</tt> if entries are persisted by the background writer
+     */
+    public boolean isAsynchronous()
+    {
+        return mode != Mode.SYNCHRONOUS;
+    }
+
+    @Override
+    public String getMode()
+    {
+        return mode.name();
+    }
+
+    @Override
+    public int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    @Override
+    public long getSpilledEntryCount()
+    {
+        return spilledEntries.get();
+    }
+
+    @Override
+    public long getQueueLagMs()
+    {
+        PendingAuditEntry oldest = (queue == null) ? null : queue.peek();
+        return (oldest == null) ? 0L : Math.max(0L, System.currentTimeMillis() - oldest.queuedAt);
+    }
+
+    @Override
+    public long getLastBatchLagMs()
+    {
+        return lastBatchLagMs.get();
+    }
+
+    @Override
+    public long getWrittenEntryCount()
+    {
+        return writtenEntries.get();
+    }
+
+    @Override
+    public long getCallerWrittenEntryCount()
+    {
+        return callerWrittenEntries.get();
+    }
+
+    @Override
+    public long getDroppedEntryCount()
+    {
+        return droppedEntries.get();
+    }
+
+    /**
+     * Persist an audit entry.  In synchronous mode the entry is written immediately in the current
+     * transaction; otherwise it is queued when, and only if, the current transaction commits.
+     *
+     * @return          the ID of the new entry or <tt>null</tt> if the write has been deferred
+     */
+    public Long createAuditEntry(Long applicationId, long time, String username, Map<String, Serializable> values)
+    {
+        if (!isAsynchronous())
+        {
+            return auditDAO.createAuditEntry(applicationId, time, username, values);
+        }
+        List<PendingAuditEntry> pending = TransactionalResourceHelper.getList(pendingKey);
+        if (pending.isEmpty())
+        {
+            AlfrescoTransactionSupport.bindListener(new QueueOnCommitListener(pending));
+        }
+        // The values are copied as the caller is free to modify the map after the call
+        pending.add(new PendingAuditEntry(applicationId, time, username, new HashMap<String, Serializable>(values)));
+        return null;
+    }
+
+    /**
+     * Hands the entries of a committed transaction to the writer, applying the mode's backpressure
+     * if the queue is full
+     */
+    protected void enqueue(List<PendingAuditEntry> entries)
+    {
+        List<PendingAuditEntry> overflow = new ArrayList<PendingAuditEntry>(0);
+        // Wait for space once per transaction at most: after that, entries that don't fit are overflow
+        boolean wait = (mode == Mode.ASYNCHRONOUS);
+        for (int i = 0; i < entries.size(); i++)
+        {
+            PendingAuditEntry entry = entries.get(i);
+            entry.queuedAt = System.currentTimeMillis();
+            boolean queued;
+            try
+            {
+                queued = wait
+                        ? queue.offer(entry, offerTimeoutMs, TimeUnit.MILLISECONDS)
+                        : queue.offer(entry);
+            }
+            catch (InterruptedException e)
+            {
+                // Don't wait any longer: everything that is left is overflow
+                Thread.currentThread().interrupt();
+                overflow.addAll(entries.subList(i, entries.size()));
+                break;
+            }
+            if (!queued)
+            {
+                overflow.add(entry);
+                wait = false;
+            }
+        }
+        if (overflow.isEmpty())
+        {
+            return;
+        }
+        if (mode == Mode.ASYNCHRONOUS_SPILL)
+        {
+            spill(overflow);
+        }
+        else
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Audit queue is full; writing " + overflow.size() + " entries in the committing thread.");
+            }
+            try
+            {
+                writeBatch(overflow);
+                callerWrittenEntries.addAndGet(overflow.size());
+            }
+            catch (RuntimeException e)
+            {
+                droppedEntries.addAndGet(overflow.size());
+                logger.error("Failed to write " + overflow.size() + " audit entries; they have been discarded.", e);
+            }
+        }
+    }
+
+    @Override
+    protected void onBootstrap(ApplicationEvent event)
+    {
+        if (!isAsynchronous())
+        {
+            return;
+        }
+        running = true;
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("AuditEntryWriter");
+        writerThread = threadFactory.newThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runWriter();
+            }
+        });
+        writerThread.start();
+        if (mbeanExporter != null)
+        {
+            try
+            {
+                registeredName = mbeanExporter.registerMBean(this, new ObjectName(objectName));
+            }
+            catch (MalformedObjectNameException e)
+            {
+                throw new AlfrescoRuntimeException("Invalid audit entry writer MBean name: " + objectName, e);
+            }
+        }
+    }
+
+    @Override
+    protected void onShutdown(ApplicationEvent event)
+    {
+        if (queue == null)
+        {
+            return;
+        }
+        if (registeredName != null)
+        {
+            mbeanExporter.unregisterMBean(registeredName);
+            registeredName = null;
+        }
+        if (writerThread != null)
+        {
+            // Let the writer empty the queue before stopping
+            running = false;
+            try
+            {
+                writerThread.join(shutdownTimeoutMs);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            writerThread.interrupt();
+            writerThread = null;
+        }
+
+        List<PendingAuditEntry> remaining = new ArrayList<PendingAuditEntry>(queue.size());
+        queue.drainTo(remaining);
+        if (remaining.isEmpty())
+        {
+            return;
+        }
+        if (mode == Mode.ASYNCHRONOUS_SPILL)
+        {
+            spill(remaining);
+        }
+        else
+        {
+            droppedEntries.addAndGet(remaining.size());
+            logger.warn("Audit writer stopped with " + remaining.size() + " unwritten entries.");
+        }
+    }
+
+    /**
+     * The writer loop: drains the queue in batches and replays the journal whenever the queue is empty
+     */
+    private void runWriter()
+    {
+        List<PendingAuditEntry> batch = new ArrayList<PendingAuditEntry>(batchSize);
+        while (running || !queue.isEmpty())
+        {
+            try
+            {
+                PendingAuditEntry first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first == null)
+                {
+                    if (running && spilledEntries.get() > 0L)
+                    {
+                        replayJournal();
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            }
+            catch (InterruptedException e)
+            {
+                // Shutting down
+                break;
+            }
+            catch (Throwable e)
+            {
+                logger.error("Audit writer failed to process a batch of " + batch.size() + " entries.", e);
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write a batch taken from the queue or the journal, falling back to the mode's failure handling
+     */
+    private void flush(List<PendingAuditEntry> batch)
+    {
+        long oldestQueuedAt = Long.MAX_VALUE;
+        for (PendingAuditEntry entry : batch)
+        {
+            oldestQueuedAt = Math.min(oldestQueuedAt, entry.queuedAt);
+        }
+        try
+        {
+            writeBatch(batch);
+            writtenEntries.addAndGet(batch.size());
+        }
+        catch (Throwable e)
+        {
+            if (mode == Mode.ASYNCHRONOUS_SPILL)
+            {
+                logger.error("Failed to write " + batch.size() + " audit entries; journalling them for a later attempt.", e);
+                spill(batch);
+            }
+            else
+            {
+                droppedEntries.addAndGet(batch.size());
+                logger.error("Failed to write " + batch.size() + " audit entries; they have been discarded.", e);
+            }
+            return;
+        }
+        lastBatchLagMs.set(Math.max(0L, System.currentTimeMillis() - oldestQueuedAt));
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Wrote audit batch: \n" +
+                    "   Entries:     " + batch.size() + "\n" +
+                    "   Lag (ms):    " + lastBatchLagMs.get() + "\n" +
+                    "   Queue depth: " + getQueueDepth());
+        }
+    }
+
+    /**
+     * Persist the given entries in a single new transaction
+     */
+    protected void writeBatch(final List<PendingAuditEntry> batch)
+    {
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                for (PendingAuditEntry entry : batch)
+                {
+                    auditDAO.createAuditEntry(entry.applicationId, entry.time, entry.username, entry.values);
+                }
+                return null;
+            }
+        };
+        RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        txnHelper.setForceWritable(true);
+        txnHelper.doInTransaction(callback, false, true);
+    }
+
+    /**
+     * Append entries to the journal as a single file
+     */
+    private void spill(List<PendingAuditEntry> entries)
+    {
+        String name = SPILL_FILE_PREFIX +
+                System.currentTimeMillis() + "-" + spillSequence.incrementAndGet() + SPILL_FILE_SUFFIX;
+        File tempFile = new File(spillDirectory, name + ".tmp");
+        try
+        {
+            try (ObjectOutputStream os = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+            {
+                os.writeInt(entries.size());
+                for (PendingAuditEntry entry : entries)
+                {
+                    os.writeObject(entry);
+                }
+            }
+            // Only complete files are seen by the reader
+            if (!tempFile.renameTo(new File(spillDirectory, name)))
+            {
+                throw new IOException("Failed to rename " + tempFile);
+            }
+            spilledEntries.addAndGet(entries.size());
+        }
+        catch (IOException e)
+        {
+            tempFile.delete();
+            droppedEntries.addAndGet(entries.size());
+            logger.error("Failed to journal " + entries.size() + " audit entries; they have been discarded.", e);
+        }
+    }
+
+    /**
+     * Write the journalled entries, oldest file first, until the journal is empty or new entries arrive
+     */
+    private void replayJournal()
+    {
+        for (File spillFile : listSpillFiles())
+        {
+            if (!running || !queue.isEmpty())
+            {
+                return;
+            }
+            List<PendingAuditEntry> entries = readSpillFile(spillFile);
+            if (entries == null)
+            {
+                // Unreadable: set it aside so that it is not replayed again
+                int size = readSpillFileSize(spillFile);
+                spillFile.renameTo(new File(spillFile.getPath() + ".bad"));
+                spilledEntries.set(Math.max(0L, spilledEntries.get() - size));
+                continue;
+            }
+            // Remove the file before writing: a failed batch is journalled again
+            if (!spillFile.delete())
+            {
+                logger.error("Failed to remove audit journal file; it will not be replayed: " + spillFile);
+                return;
+            }
+            spilledEntries.addAndGet(-entries.size());
+            for (int i = 0; i < entries.size(); i += batchSize)
+            {
+                flush(entries.subList(i, Math.min(i + batchSize, entries.size())));
+            }
+        }
+    }
+
+    private File[] listSpillFiles()
+    {
+        File[] files = spillDirectory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.startsWith(SPILL_FILE_PREFIX) && name.endsWith(SPILL_FILE_SUFFIX);
+            }
+        });
+        if (files == null)
+        {
+            return new File[0];
+        }
+        // Names start with the spill time
+        Arrays.sort(files);
+        return files;
+    }
+
+    private List<PendingAuditEntry> readSpillFile(File spillFile)
+    {
+        try (ObjectInputStream is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(spillFile))))
+        {
+            int size = is.readInt();
+            List<PendingAuditEntry> entries = new ArrayList<PendingAuditEntry>(size);
+            for (int i = 0; i < size; i++)
+            {
+                entries.add((PendingAuditEntry) is.readObject());
+            }
+            return entries;
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException e)
+        {
+            logger.error("Unable to read audit journal file: " + spillFile, e);
+            return null;
+        }
+    }
+
+    private int readSpillFileSize(File spillFile)
+    {
+        try (ObjectInputStream is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(spillFile))))
+        {
+            return is.readInt();
+        }
+        catch (IOException e)
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Queues the entries recorded by a transaction once it has committed
+     */
+    private class QueueOnCommitListener extends TransactionListenerAdapter
+    {
+        private final List<PendingAuditEntry> pending;
+
+        private QueueOnCommitListener(List<PendingAuditEntry> pending)
+        {
+            this.pending = pending;
+        }
+
+        @Override
+        public void afterCommit()
+        {
+            enqueue(new ArrayList<PendingAuditEntry>(pending));
+        }
+    }
+
+    /**
+     * An audit entry waiting to be persisted
+     */
+    protected static class PendingAuditEntry implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Long applicationId;
+        private final long time;
+        private final String username;
+        private final HashMap<String, Serializable> values;
+        private long queuedAt;
+
+        protected PendingAuditEntry(Long applicationId, long time, String username, HashMap<String, Serializable> values)
+        {
+            this.applicationId = applicationId;
+            this.time = time;
+            this.username = username;
+            this.values = values;
+            this.queuedAt = System.currentTimeMillis();
+        }
+
+        public Long getApplicationId()
+        {
+            return applicationId;
+        }
+
+        public long getTime()
+        {
+            return time;
+        }
+
+        public String getUsername()
+        {
+            return username;
+        }
+
+        public Map<String, Serializable> getValues()
+        {
+            return values;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "PendingAuditEntry[application=" + applicationId + ", time=" + time + ", user=" + username + "]";
+        }
+    }
+}
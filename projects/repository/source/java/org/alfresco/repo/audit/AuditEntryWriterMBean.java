@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+/**
+ * Management interface for the {@link AuditEntryWriter audit entry writer}.
+ * 
+ * @since 5.2
+ */
+public interface AuditEntryWriterMBean
+{
+    /**
+     * @return          one of <tt>SYNCHRONOUS</tt>, <tt>ASYNCHRONOUS</tt> or <tt>ASYNCHRONOUS_SPILL</tt>
+     */
+    public String getMode();
+
+    /**
+     * @return          the maximum number of committed entries held in memory
+     */
+    public int getQueueCapacity();
+
+    /**
+     * @return          the number of entries waiting in memory
+     */
+    public int getQueueDepth();
+
+    /**
+     * @return          the time the oldest entry in memory has been waiting since its transaction committed
+     */
+    public long getQueueLagMs();
+
+    /**
+     * @return          the commit-to-write delay of the oldest entry in the most recent batch
+     */
+    public long getLastBatchLagMs();
+
+    /**
+     * @return          the number of entries waiting in the disk journal
+     */
+    public long getSpilledEntryCount();
+
+    /**
+     * @return          the number of entries persisted by the background writer
+     */
+    public long getWrittenEntryCount();
+
+    /**
+     * @return          the number of entries written by committing threads because the queue was full
+     */
+    public long getCallerWrittenEntryCount();
+
+    /**
+     * @return          the number of entries that could not be persisted or journalled
+     */
+    public long getDroppedEntryCount();
+}
@@ -0,0 +1,742 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.node.NodeBulkLoader;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.quartz.Job;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.extensions.surf.util.AbstractLifecycleBean;
+
+/**
+ * Warms up the node and ACL caches after a restart.
+ * <p>
+ * While the server is running, the {@link HotKeyRecorder recorders} keep track of the node and ACL
+ * IDs that are used most.  These are periodically {@link #record() written} to a file that is local to
+ * the server.  When the server next starts, the file is read and the entries are loaded back into
+ * the caches in the background by {@link BatchProcessor} workers:
+ * <ul>
+ *   <li>nodes are loaded in bulk, which fills the node, aspect and property caches</li>
+ *   <li>ACLs are loaded by computing their readers, which fills the ACL and readers caches</li>
+ * </ul>
+ * Each worker pauses for <b>throttleMillis</b> after every batch, once the batch's transaction has
+ * finished, so that the warm-up does not compete with live requests for database connections.  Progress is published over JMX.
+ * 
+ * @since 5.2
+ */
+public class CacheWarmUp extends AbstractLifecycleBean implements CacheWarmUpMBean
+{
+    private static final String FILE_HEADER = "# Alfresco cache warm-up keys";
+    private static final String PREFIX_NODE = "node=";
+    private static final String PREFIX_ACL = "acl=";
+    
+    public static final String STATE_IDLE = "IDLE";
+    public static final String STATE_WARMING = "WARMING";
+    public static final String STATE_STOPPING = "STOPPING";
+    public static final String STATE_COMPLETE = "COMPLETE";
+    public static final String STATE_FAILED = "FAILED";
+    
+    private static Log logger = LogFactory.getLog(CacheWarmUp.class);
+    
+    private TransactionService transactionService;
+    private NodeBulkLoader nodeBulkLoader;
+    private PermissionService permissionService;
+    private HotKeyRecorder<Long> nodeKeyRecorder;
+    private HotKeyRecorder<Long> aclKeyRecorder;
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName = "Alfresco:Name=CacheWarmUp";
+    private boolean enabled;
+    private String directory;
+    private int maxNodes = 50000;
+    private int maxAcls = 5000;
+    private int workerThreads = 2;
+    private int nodeBatchSize = 250;
+    private volatile long throttleMillis = 20L;
+    
+    private volatile String state = STATE_IDLE;
+    private final AtomicInteger nodesWarmed = new AtomicInteger();
+    private final AtomicInteger aclsWarmed = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private volatile int nodesTotal;
+    private volatile int aclsTotal;
+    private volatile Date startTime;
+    private volatile Date endTime;
+    private volatile Date lastRecordTime;
+    private ObjectName registeredName;
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param nodeBulkLoader        the component that loads nodes into the caches in bulk
+     */
+    public void setNodeBulkLoader(NodeBulkLoader nodeBulkLoader)
+    {
+        this.nodeBulkLoader = nodeBulkLoader;
+    }
+
+    /**
+     * @param permissionService     the <b>unprotected</b> permission service used to cache ACL readers
+     */
+    public void setPermissionService(PermissionService permissionService)
+    {
+        this.permissionService = permissionService;
+    }
+
+    public void setNodeKeyRecorder(HotKeyRecorder<Long> nodeKeyRecorder)
+    {
+        this.nodeKeyRecorder = nodeKeyRecorder;
+    }
+
+    public void setAclKeyRecorder(HotKeyRecorder<Long> aclKeyRecorder)
+    {
+        this.aclKeyRecorder = aclKeyRecorder;
+    }
+
+    /**
+     * @param mbeanExporter         used to publish progress over JMX (optional)
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName            the JMX name to publish progress under
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    /**
+     * @param enabled               <tt>true</tt> to record hot keys and replay them on startup
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param directory             the local directory holding the warm-up file
+     */
+    public void setDirectory(String directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @param maxNodes              the maximum number of node IDs to record
+     */
+    public void setMaxNodes(int maxNodes)
+    {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * @param maxAcls               the maximum number of ACL IDs to record
+     */
+    public void setMaxAcls(int maxAcls)
+    {
+        this.maxAcls = maxAcls;
+    }
+
+    /**
+     * @param workerThreads         the number of threads loading entries during warm-up
+     */
+    public void setWorkerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * @param nodeBatchSize         the number of nodes loaded together with a single query
+     */
+    public void setNodeBatchSize(int nodeBatchSize)
+    {
+        this.nodeBatchSize = nodeBatchSize;
+    }
+
+    @Override
+    public void setThrottleMillis(long throttleMillis)
+    {
+        this.throttleMillis = throttleMillis;
+    }
+
+    @Override
+    public long getThrottleMillis()
+    {
+        return throttleMillis;
+    }
+
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        PropertyCheck.mandatory(this, "nodeBulkLoader", nodeBulkLoader);
+        PropertyCheck.mandatory(this, "permissionService", permissionService);
+        PropertyCheck.mandatory(this, "nodeKeyRecorder", nodeKeyRecorder);
+        PropertyCheck.mandatory(this, "aclKeyRecorder", aclKeyRecorder);
+        PropertyCheck.mandatory(this, "directory", directory);
+        nodeKeyRecorder.setEnabled(enabled);
+        aclKeyRecorder.setEnabled(enabled);
+    }
+
+    @Override
+    protected void onBootstrap(ApplicationEvent event)
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        if (mbeanExporter != null)
+        {
+            try
+            {
+                registeredName = mbeanExporter.registerMBean(this, new ObjectName(objectName));
+            }
+            catch (MalformedObjectNameException e)
+            {
+                throw new AlfrescoRuntimeException("Invalid cache warm-up MBean name: " + objectName, e);
+            }
+        }
+        warmUp();
+    }
+
+    @Override
+    protected void onShutdown(ApplicationEvent event)
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        stop();
+        // Keep what was learned during this run for the next startup
+        try
+        {
+            record();
+        }
+        catch (Throwable e)
+        {
+            logger.warn("Failed to record cache warm-up keys during shutdown", e);
+        }
+        if (registeredName != null)
+        {
+            mbeanExporter.unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public String getState()
+    {
+        return state;
+    }
+
+    @Override
+    public int getNodesTotal()
+    {
+        return nodesTotal;
+    }
+
+    @Override
+    public int getNodesWarmed()
+    {
+        return nodesWarmed.get();
+    }
+
+    @Override
+    public int getAclsTotal()
+    {
+        return aclsTotal;
+    }
+
+    @Override
+    public int getAclsWarmed()
+    {
+        return aclsWarmed.get();
+    }
+
+    @Override
+    public int getErrors()
+    {
+        return errors.get();
+    }
+
+    @Override
+    public String getPercentComplete()
+    {
+        int total = nodesTotal + aclsTotal;
+        if (total == 0)
+        {
+            return STATE_COMPLETE.equals(state) ? "100.0%" : "0.0%";
+        }
+        double percent = (nodesWarmed.get() + aclsWarmed.get()) * 100.0 / total;
+        return String.format("%.1f%%", percent);
+    }
+
+    @Override
+    public Date getStartTime()
+    {
+        return startTime;
+    }
+
+    @Override
+    public Date getEndTime()
+    {
+        return endTime;
+    }
+
+    @Override
+    public Date getLastRecordTime()
+    {
+        return lastRecordTime;
+    }
+
+    @Override
+    public int getTrackedNodeKeys()
+    {
+        return nodeKeyRecorder.size();
+    }
+
+    @Override
+    public int getTrackedAclKeys()
+    {
+        return aclKeyRecorder.size();
+    }
+
+    /**
+     * @return                      the warm-up file for this server
+     */
+    protected File getFile()
+    {
+        String hostName;
+        try
+        {
+            hostName = InetAddress.getLocalHost().getHostName();
+        }
+        catch (IOException e)
+        {
+            hostName = "localhost";
+        }
+        // The directory may be shared between servers, so keep the files apart
+        return new File(directory, "cache-warmup-" + hostName.replaceAll("[^\\w.-]", "_") + ".txt");
+    }
+
+    @Override
+    public synchronized void record()
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        List<Long> nodeIds = nodeKeyRecorder.getHottest(maxNodes);
+        List<Long> aclIds = aclKeyRecorder.getHottest(maxAcls);
+        if (nodeIds.isEmpty() && aclIds.isEmpty())
+        {
+            // Nothing has been used since the last startup; keep what we had
+            return;
+        }
+        File file = getFile();
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs())
+        {
+            throw new AlfrescoRuntimeException("Unable to create cache warm-up directory: " + dir);
+        }
+        // Write to a temporary file so that a crash cannot leave a partial file behind
+        File tempFile = new File(dir, file.getName() + ".tmp");
+        Writer writer = null;
+        try
+        {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+            writer.write(FILE_HEADER);
+            writer.write('\n');
+            for (Long nodeId : nodeIds)
+            {
+                writer.write(PREFIX_NODE);
+                writer.write(nodeId.toString());
+                writer.write('\n');
+            }
+            for (Long aclId : aclIds)
+            {
+                writer.write(PREFIX_ACL);
+                writer.write(aclId.toString());
+                writer.write('\n');
+            }
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to write cache warm-up file: " + tempFile, e);
+        }
+        finally
+        {
+            if (writer != null)
+            {
+                try { writer.close(); } catch (Throwable e) {}
+            }
+        }
+        if (file.exists() && !file.delete())
+        {
+            throw new AlfrescoRuntimeException("Unable to replace cache warm-up file: " + file);
+        }
+        if (!tempFile.renameTo(file))
+        {
+            throw new AlfrescoRuntimeException("Unable to rename cache warm-up file: " + tempFile);
+        }
+        // Let keys that are no longer used age out
+        nodeKeyRecorder.decay();
+        aclKeyRecorder.decay();
+        lastRecordTime = new Date();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Recorded " + nodeIds.size() + " nodes and " + aclIds.size() + " ACLs to " + file);
+        }
+    }
+
+    @Override
+    public synchronized void warmUp()
+    {
+        if (!enabled || STATE_WARMING.equals(state) || STATE_STOPPING.equals(state))
+        {
+            return;
+        }
+        state = STATE_WARMING;
+        startTime = new Date();
+        endTime = null;
+        nodesWarmed.set(0);
+        aclsWarmed.set(0);
+        errors.set(0);
+        nodesTotal = 0;
+        aclsTotal = 0;
+        
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("CacheWarmUp");
+        threadFactory.setThreadPriority(Thread.MIN_PRIORITY);
+        threadFactory.newThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    doWarmUp();
+                    state = STATE_STOPPING.equals(state) ? STATE_IDLE : STATE_COMPLETE;
+                }
+                catch (Throwable e)
+                {
+                    logger.error("Cache warm-up failed", e);
+                    state = STATE_FAILED;
+                }
+                finally
+                {
+                    endTime = new Date();
+                }
+            }
+        }).start();
+    }
+
+    @Override
+    public void stop()
+    {
+        if (STATE_WARMING.equals(state))
+        {
+            state = STATE_STOPPING;
+        }
+    }
+
+    private boolean isStopping()
+    {
+        return !STATE_WARMING.equals(state);
+    }
+
+    private void doWarmUp() throws IOException
+    {
+        File file = getFile();
+        if (!file.exists())
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("No cache warm-up file found at " + file);
+            }
+            return;
+        }
+        final List<Long> nodeIds = new ArrayList<Long>(maxNodes);
+        final List<Long> aclIds = new ArrayList<Long>(maxAcls);
+        readFile(file, nodeIds, aclIds);
+        nodesTotal = nodeIds.size();
+        aclsTotal = aclIds.size();
+        if (logger.isInfoEnabled())
+        {
+            logger.info("Warming caches with " + nodesTotal + " nodes and " + aclsTotal + " ACLs from " + file);
+        }
+        
+        RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        
+        // Nodes are loaded in chunks, each with a single bulk query
+        List<List<Long>> nodeChunks = new ArrayList<List<Long>>();
+        for (int i = 0; i < nodeIds.size(); i += nodeBatchSize)
+        {
+            nodeChunks.add(nodeIds.subList(i, Math.min(nodeIds.size(), i + nodeBatchSize)));
+        }
+        BatchProcessor<List<Long>> nodeProcessor = new BatchProcessor<List<Long>>(
+                "CacheWarmUpNodes",
+                txnHelper,
+                new ListWorkProvider<List<Long>>(nodeChunks),
+                workerThreads, 1,
+                getApplicationContext(),
+                logger, 100);
+        nodeProcessor.process(new BatchProcessWorkerAdaptor<List<Long>>()
+        {
+            @Override
+            public String getIdentifier(List<Long> entry)
+            {
+                return "Nodes " + entry.get(0) + " ... " + entry.get(entry.size() - 1);
+            }
+
+            @Override
+            public void process(List<Long> entry) throws Throwable
+            {
+                if (isStopping())
+                {
+                    return;
+                }
+                try
+                {
+                    nodeBulkLoader.cacheNodesById(entry);
+                    nodesWarmed.addAndGet(entry.size());
+                }
+                catch (Throwable e)
+                {
+                    errors.incrementAndGet();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void afterProcess() throws Throwable
+            {
+                throttle();
+            }
+        }, true);
+        
+        BatchProcessor<Long> aclProcessor = new BatchProcessor<Long>(
+                "CacheWarmUpAcls",
+                txnHelper,
+                new ListWorkProvider<Long>(aclIds),
+                workerThreads, 100,
+                getApplicationContext(),
+                logger, 1000);
+        aclProcessor.process(new BatchProcessWorkerAdaptor<Long>()
+        {
+            @Override
+            public String getIdentifier(Long entry)
+            {
+                return "ACL " + entry;
+            }
+
+            @Override
+            public void process(Long entry) throws Throwable
+            {
+                if (isStopping())
+                {
+                    return;
+                }
+                try
+                {
+                    permissionService.getReaders(entry);
+                    aclsWarmed.incrementAndGet();
+                }
+                catch (Throwable e)
+                {
+                    errors.incrementAndGet();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void afterProcess() throws Throwable
+            {
+                throttle();
+            }
+        }, true);
+        
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "Cache warm-up loaded " + nodesWarmed.get() + " nodes and " + aclsWarmed.get() + " ACLs " +
+                    "with " + errors.get() + " errors.");
+        }
+    }
+
+    /**
+     * Pauses a worker between batches.  This is called once the batch's transaction has finished, so the
+     * worker holds no database connection while it waits.
+     */
+    private void throttle()
+    {
+        long pause = throttleMillis;
+        if (pause <= 0L || isStopping())
+        {
+            return;
+        }
+        try
+        {
+            Thread.sleep(pause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read the node and ACL IDs from the warm-up file, ignoring anything that is not understood
+     */
+    static void readFile(File file, List<Long> nodeIds, List<Long> aclIds) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                try
+                {
+                    if (line.startsWith(PREFIX_NODE))
+                    {
+                        nodeIds.add(Long.valueOf(line.substring(PREFIX_NODE.length())));
+                    }
+                    else if (line.startsWith(PREFIX_ACL))
+                    {
+                        aclIds.add(Long.valueOf(line.substring(PREFIX_ACL.length())));
+                    }
+                }
+                catch (NumberFormatException e)
+                {
+                    // Ignore the entry
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Hands out a list of work in one go
+     */
+    private static class ListWorkProvider<T> implements BatchProcessWorkProvider<T>
+    {
+        private final int size;
+        private List<T> work;
+
+        private ListWorkProvider(List<T> work)
+        {
+            this.size = work.size();
+            this.work = work;
+        }
+
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            return size;
+        }
+
+        @Override
+        public synchronized Collection<T> getNextWork()
+        {
+            List<T> next = work;
+            work = Collections.emptyList();
+            return next;
+        }
+    }
+
+    /**
+     * Periodically writes the hot cache keys to the warm-up file.
+     * <p>
+     * The following parameters are required:
+     * <ul>
+     *   <li><b>cacheWarmUp</b>: The cache warm-up bean</li>
+     * </ul>
+     */
+    public static class RecordJob implements Job
+    {
+        public void execute(JobExecutionContext context) throws JobExecutionException
+        {
+            JobDataMap jobData = context.getJobDetail().getJobDataMap();
+            Object cacheWarmUpObj = jobData.get("cacheWarmUp");
+            if (cacheWarmUpObj == null || !(cacheWarmUpObj instanceof CacheWarmUp))
+            {
+                throw new AlfrescoRuntimeException(
+                        "CacheWarmUp.RecordJob data must contain valid 'cacheWarmUp' reference");
+            }
+            ((CacheWarmUp) cacheWarmUpObj).record();
+        }
+    }
+}
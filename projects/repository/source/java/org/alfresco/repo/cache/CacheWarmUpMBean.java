@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.util.Date;
+
+/**
+ * Management interface for the {@link CacheWarmUp cache warm-up} component.
+ * 
+ * @since 5.2
+ */
+public interface CacheWarmUpMBean
+{
+    /**
+     * @return          <tt>true</tt> if hot keys are recorded and replayed
+     */
+    public boolean isEnabled();
+
+    /**
+     * @return          one of <tt>IDLE</tt>, <tt>WARMING</tt>, <tt>STOPPING</tt>, <tt>COMPLETE</tt> or <tt>FAILED</tt>
+     */
+    public String getState();
+
+    /**
+     * @return          the number of node IDs read from the warm-up file
+     */
+    public int getNodesTotal();
+
+    /**
+     * @return          the number of nodes loaded into the caches so far
+     */
+    public int getNodesWarmed();
+
+    /**
+     * @return          the number of ACL IDs read from the warm-up file
+     */
+    public int getAclsTotal();
+
+    /**
+     * @return          the number of ACLs loaded into the caches so far
+     */
+    public int getAclsWarmed();
+
+    /**
+     * @return          the number of entries that could not be loaded
+     */
+    public int getErrors();
+
+    /**
+     * @return          the progress of the current or last warm-up e.g. <tt>42.5%</tt>
+     */
+    public String getPercentComplete();
+
+    /**
+     * @return          when the current or last warm-up started (may be <tt>null</tt>)
+     */
+    public Date getStartTime();
+
+    /**
+     * @return          when the last warm-up finished (may be <tt>null</tt>)
+     */
+    public Date getEndTime();
+
+    /**
+     * @return          when the hot keys were last written to the warm-up file (may be <tt>null</tt>)
+     */
+    public Date getLastRecordTime();
+
+    /**
+     * @return          the number of distinct node IDs currently being tracked
+     */
+    public int getTrackedNodeKeys();
+
+    /**
+     * @return          the number of distinct ACL IDs currently being tracked
+     */
+    public int getTrackedAclKeys();
+
+    /**
+     * @return          the pause, in milliseconds, that each worker takes after loading a batch
+     */
+    public long getThrottleMillis();
+
+    /**
+     * Change the pause that each worker takes after loading a batch.  This takes effect immediately
+     * and can be used to slow down or speed up a warm-up that is in progress.
+     */
+    public void setThrottleMillis(long throttleMillis);
+
+    /**
+     * Write the current hot keys to the warm-up file
+     */
+    public void record();
+
+    /**
+     * Load the keys from the warm-up file into the caches in the background
+     */
+    public void warmUp();
+
+    /**
+     * Stop the warm-up that is in progress
+     */
+    public void stop();
+}
@@ -0,0 +1,420 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.alfresco.repo.cache.lookup.CacheRegionKey;
+
+/**
+ * A set of cache keys that is cheap to hold in large numbers.
+ * <p>
+ * Most keys held by the large transactional caches are entity IDs, either as plain <tt>Long</tt>
+ * values or {@link CacheRegionKey region-qualified} <tt>Long</tt> values.  These are stored as
+ * primitives in open-addressed tables, one per region; keys are recreated when iterating.
+ * All other keys are held in a regular set.
+ * <p>
+ * Not thread-safe: it is only used to hold transaction-local state.
+ * 
+ * @since 5.2
+ */
+final class CompactKeySet implements Iterable<Serializable>
+{
+    private LongSet longKeys;
+    private Map<String, LongSet> regionKeys;
+    private Set<Serializable> otherKeys;
+    private int size;
+
+    /**
+     * @return              <tt>true</tt> if the key was not already present
+     */
+    public boolean add(Serializable key)
+    {
+        boolean added;
+        if (key instanceof Long)
+        {
+            if (longKeys == null)
+            {
+                longKeys = new LongSet();
+            }
+            added = longKeys.add((Long) key);
+        }
+        else if (isRegionLongKey(key))
+        {
+            CacheRegionKey regionKey = (CacheRegionKey) key;
+            if (regionKeys == null)
+            {
+                regionKeys = new HashMap<String, LongSet>(5);
+            }
+            LongSet set = regionKeys.get(regionKey.getCacheRegion());
+            if (set == null)
+            {
+                set = new LongSet();
+                regionKeys.put(regionKey.getCacheRegion(), set);
+            }
+            added = set.add((Long) regionKey.getCacheKey());
+        }
+        else
+        {
+            if (otherKeys == null)
+            {
+                otherKeys = new HashSet<Serializable>(13);
+            }
+            added = otherKeys.add(key);
+        }
+        if (added)
+        {
+            size++;
+        }
+        return added;
+    }
+
+    public boolean contains(Serializable key)
+    {
+        if (size == 0)
+        {
+            return false;
+        }
+        else if (key instanceof Long)
+        {
+            return longKeys != null && longKeys.contains((Long) key);
+        }
+        else if (isRegionLongKey(key))
+        {
+            CacheRegionKey regionKey = (CacheRegionKey) key;
+            LongSet set = (regionKeys == null) ? null : regionKeys.get(regionKey.getCacheRegion());
+            return set != null && set.contains((Long) regionKey.getCacheKey());
+        }
+        else
+        {
+            return otherKeys != null && otherKeys.contains(key);
+        }
+    }
+
+    /**
+     * @return              <tt>true</tt> if the key was present
+     */
+    public boolean remove(Serializable key)
+    {
+        if (size == 0)
+        {
+            return false;
+        }
+        boolean removed;
+        if (key instanceof Long)
+        {
+            removed = longKeys != null && longKeys.remove((Long) key);
+        }
+        else if (isRegionLongKey(key))
+        {
+            CacheRegionKey regionKey = (CacheRegionKey) key;
+            LongSet set = (regionKeys == null) ? null : regionKeys.get(regionKey.getCacheRegion());
+            removed = set != null && set.remove((Long) regionKey.getCacheKey());
+        }
+        else
+        {
+            removed = otherKeys != null && otherKeys.remove(key);
+        }
+        if (removed)
+        {
+            size--;
+        }
+        return removed;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        longKeys = null;
+        regionKeys = null;
+        otherKeys = null;
+        size = 0;
+    }
+
+    private static boolean isRegionLongKey(Serializable key)
+    {
+        return key instanceof CacheRegionKey && ((CacheRegionKey) key).getCacheKey() instanceof Long;
+    }
+
+    /**
+     * Iterates over plain keys, then region keys and then other keys.  The set must not be modified
+     * during iteration.
+     */
+    @Override
+    public Iterator<Serializable> iterator()
+    {
+        return new Iterator<Serializable>()
+        {
+            private final Iterator<Map.Entry<String, LongSet>> regions =
+                    (regionKeys == null) ? null : regionKeys.entrySet().iterator();
+            private final Iterator<Serializable> others = (otherKeys == null) ? null : otherKeys.iterator();
+            private LongSet current = longKeys;
+            private String currentRegion = null;
+            private int index = -1;
+            private Serializable next = advance();
+
+            private Serializable advance()
+            {
+                while (true)
+                {
+                    if (current != null)
+                    {
+                        index = current.nextIndex(index);
+                        if (index >= 0)
+                        {
+                            Long value = current.valueAt(index);
+                            return (currentRegion == null) ? value : new CacheRegionKey(currentRegion, value);
+                        }
+                    }
+                    if (regions != null && regions.hasNext())
+                    {
+                        Map.Entry<String, LongSet> entry = regions.next();
+                        currentRegion = entry.getKey();
+                        current = entry.getValue();
+                        index = -1;
+                        continue;
+                    }
+                    current = null;
+                    if (others != null && others.hasNext())
+                    {
+                        return others.next();
+                    }
+                    return null;
+                }
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return next != null;
+            }
+
+            @Override
+            public Serializable next()
+            {
+                if (next == null)
+                {
+                    throw new NoSuchElementException();
+                }
+                Serializable ret = next;
+                next = advance();
+                return ret;
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Open-addressed hash set of primitive <tt>long</tt> values using linear probing.
+     * The value {@link Long#MIN_VALUE} marks a free slot and is tracked separately.
+     */
+    static final class LongSet
+    {
+        private static final long FREE = Long.MIN_VALUE;
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] table;
+        private int mask;
+        private int size;
+        private boolean hasFreeValue;
+
+        LongSet()
+        {
+            table = new long[INITIAL_CAPACITY];
+            Arrays.fill(table, FREE);
+            mask = INITIAL_CAPACITY - 1;
+        }
+
+        private static int hash(long value)
+        {
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        boolean add(long value)
+        {
+            if (value == FREE)
+            {
+                if (hasFreeValue)
+                {
+                    return false;
+                }
+                hasFreeValue = true;
+                return true;
+            }
+            int slot = hash(value) & mask;
+            while (table[slot] != FREE)
+            {
+                if (table[slot] == value)
+                {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = value;
+            size++;
+            // Keep the load factor at or below 1/2
+            if (size * 2 > table.length)
+            {
+                resize(table.length * 2);
+            }
+            return true;
+        }
+
+        boolean contains(long value)
+        {
+            if (value == FREE)
+            {
+                return hasFreeValue;
+            }
+            int slot = hash(value) & mask;
+            while (table[slot] != FREE)
+            {
+                if (table[slot] == value)
+                {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        boolean remove(long value)
+        {
+            if (value == FREE)
+            {
+                boolean had = hasFreeValue;
+                hasFreeValue = false;
+                return had;
+            }
+            int slot = hash(value) & mask;
+            while (table[slot] != FREE)
+            {
+                if (table[slot] == value)
+                {
+                    table[slot] = FREE;
+                    size--;
+                    closeGap(slot);
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        /**
+         * Shift back entries following a removed slot so that probe sequences stay unbroken
+         */
+        private void closeGap(int gap)
+        {
+            int slot = (gap + 1) & mask;
+            while (table[slot] != FREE)
+            {
+                int home = hash(table[slot]) & mask;
+                // Move the entry if its home slot is not cyclically between the gap and its current slot
+                boolean move = (gap <= slot) ? (home <= gap || home > slot) : (home <= gap && home > slot);
+                if (move)
+                {
+                    table[gap] = table[slot];
+                    table[slot] = FREE;
+                    gap = slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private void resize(int capacity)
+        {
+            long[] old = table;
+            table = new long[capacity];
+            Arrays.fill(table, FREE);
+            mask = capacity - 1;
+            for (long value : old)
+            {
+                if (value != FREE)
+                {
+                    int slot = hash(value) & mask;
+                    while (table[slot] != FREE)
+                    {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = value;
+                }
+            }
+        }
+
+        int size()
+        {
+            return size + (hasFreeValue ? 1 : 0);
+        }
+
+        /**
+         * @return          the next index after the given one that holds a value or <tt>-1</tt> if there are no more.
+         *                  The index <tt>table.length</tt> stands for the {@link #FREE} value itself.
+         */
+        int nextIndex(int index)
+        {
+            for (int i = index + 1; i < table.length; i++)
+            {
+                if (table[i] != FREE)
+                {
+                    return i;
+                }
+            }
+            if (index < table.length && hasFreeValue)
+            {
+                return table.length;
+            }
+            return -1;
+        }
+
+        long valueAt(int index)
+        {
+            return (index == table.length) ? FREE : table[index];
+        }
+    }
+}
@@ -26,6 +26,8 @@
 package org.alfresco.repo.cache;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,6 +37,10 @@ import org.apache.commons.logging.LogFactory;
  * The caches are created with a capacity specified by the property {name}.maxItems.
  * For example, a cache named <tt>cache.ticketsCache</tt> would have a capacity specified
  * by the property <tt>cache.ticketsCache.maxItems</tt>
+ * <p>
+ * Setting <tt>{name}.offHeap.enabled=true</tt> creates an {@link OffHeapSimpleCache} instead,
+ * bounded by <tt>{name}.offHeap.maxBytes</tt> (with optional <tt>k</tt>, <tt>m</tt> or <tt>g</tt>
+ * suffix) and split into <tt>{name}.offHeap.segments</tt> segments.
  * 
  * @author Matt Ward
  */
@@ -43,13 +49,96 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
     private static final Log log = LogFactory.getLog(DefaultCacheFactory.class);
     private static final String EVICT_NONE = "NONE";
     
+    private CacheStatistics cacheStatistics;
+    private List<OffHeapValueCodec<?>> offHeapCodecs = Collections.emptyList();
+    private OffHeapValueSerializer offHeapSerializer;
+    
+    /**
+     * @param cacheStatistics   the statistics that off-heap caches report their operations to
+     */
+    public void setCacheStatistics(CacheStatistics cacheStatistics)
+    {
+        this.cacheStatistics = cacheStatistics;
+    }
+    
+    /**
+     * @param offHeapCodecs     codecs providing a compact form for values held in off-heap caches
+     */
+    public void setOffHeapCodecs(List<OffHeapValueCodec<?>> offHeapCodecs)
+    {
+        this.offHeapCodecs = offHeapCodecs;
+    }
     
     @Override
     public SimpleCache<K, V> createCache(String cacheName)
     {
+        if (Boolean.parseBoolean(getProperty(cacheName, "offHeap.enabled", "false")))
+        {
+            return createOffHeapCache(cacheName);
+        }
         return createLocalCache(cacheName);
     }
     
+    private SimpleCache<K, V> createOffHeapCache(String cacheName)
+    {
+        long maxBytes = parseBytes(getProperty(cacheName, "offHeap.maxBytes", "64m"));
+        int segments = Integer.parseInt(getProperty(cacheName, "offHeap.segments", "16"));
+        int maxItems = maxItems(cacheName);
+        boolean useMaxItems = useMaxItems(cacheName);
+        int ttlSecs = ttlSeconds(cacheName);
+        int maxIdleSeconds = maxIdleSeconds(cacheName);
+        OffHeapSimpleCache<K, V> cache = new OffHeapSimpleCache<K, V>(
+                maxBytes, segments,
+                maxItems, useMaxItems,
+                ttlSecs, maxIdleSeconds,
+                getOffHeapSerializer(),
+                cacheName);
+        cache.setCacheStatistics(cacheStatistics);
+        if (log.isDebugEnabled())
+        {
+            log.debug("Creating cache: " + cache);
+        }
+        return cache;
+    }
+    
+    /**
+     * All off-heap caches share a serializer so that the namespace dictionary is shared
+     */
+    private synchronized OffHeapValueSerializer getOffHeapSerializer()
+    {
+        if (offHeapSerializer == null)
+        {
+            offHeapSerializer = new OffHeapValueSerializer(offHeapCodecs);
+        }
+        return offHeapSerializer;
+    }
+    
+    /**
+     * Parse a byte count with an optional <tt>k</tt>, <tt>m</tt> or <tt>g</tt> suffix
+     */
+    static long parseBytes(String value)
+    {
+        String str = value.trim().toLowerCase();
+        long multiplier = 1L;
+        if (str.endsWith("k"))
+        {
+            multiplier = 1024L;
+        }
+        else if (str.endsWith("m"))
+        {
+            multiplier = 1024L * 1024L;
+        }
+        else if (str.endsWith("g"))
+        {
+            multiplier = 1024L * 1024L * 1024L;
+        }
+        if (multiplier > 1L)
+        {
+            str = str.substring(0, str.length() - 1).trim();
+        }
+        return Long.parseLong(str) * multiplier;
+    }
+    
     private SimpleCache<K, V> createLocalCache(String cacheName)
     {
         int maxItems = maxItems(cacheName);
@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.util.Pair;
+
+/**
+ * Keeps an approximate count of how often cache keys are accessed so that the hottest
+ * keys can be {@link CacheWarmUp recorded} and used to warm up the caches after a restart.
+ * <p>
+ * Only one in every <b>sampleRate</b> accesses is counted, and no more than <b>maxKeys</b>
+ * distinct keys are tracked at a time; keys first seen while the recorder is full are ignored
+ * until the next {@link #decay() decay} frees up room.  Counts are halved on each decay,
+ * so keys that are no longer used drop out over time.
+ * 
+ * @since 5.2
+ */
+public class HotKeyRecorder<K extends Serializable>
+{
+    private final ConcurrentHashMap<K, AtomicInteger> counts = new ConcurrentHashMap<K, AtomicInteger>();
+    private volatile boolean enabled = true;
+    private int sampleRate = 16;
+    private int maxKeys = 100000;
+
+    /**
+     * @param enabled           <tt>false</tt> to ignore all accesses
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @param sampleRate        count one in every <b>sampleRate</b> accesses (default 16)
+     */
+    public void setSampleRate(int sampleRate)
+    {
+        if (sampleRate < 1)
+        {
+            throw new IllegalArgumentException("sampleRate must be at least 1");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @param maxKeys           the maximum number of distinct keys to track (default 100000)
+     */
+    public void setMaxKeys(int maxKeys)
+    {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Note an access to the given key
+     */
+    public void record(K key)
+    {
+        if (!enabled || key == null)
+        {
+            return;
+        }
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0)
+        {
+            return;
+        }
+        AtomicInteger count = counts.get(key);
+        if (count == null)
+        {
+            if (counts.size() >= maxKeys)
+            {
+                return;
+            }
+            count = new AtomicInteger();
+            AtomicInteger existing = counts.putIfAbsent(key, count);
+            if (existing != null)
+            {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * @return                  the number of distinct keys currently tracked
+     */
+    public int size()
+    {
+        return counts.size();
+    }
+
+    /**
+     * Get the most frequently accessed keys
+     * 
+     * @param max               the maximum number of keys to return
+     * @return                  the keys in order of decreasing access count
+     */
+    public List<K> getHottest(int max)
+    {
+        // Take a snapshot of the counts so that the sort is stable
+        List<Pair<K, Integer>> entries = new ArrayList<Pair<K, Integer>>(counts.size());
+        for (Map.Entry<K, AtomicInteger> entry : counts.entrySet())
+        {
+            entries.add(new Pair<K, Integer>(entry.getKey(), entry.getValue().get()));
+        }
+        Collections.sort(entries, new Comparator<Pair<K, Integer>>()
+        {
+            @Override
+            public int compare(Pair<K, Integer> o1, Pair<K, Integer> o2)
+            {
+                return o2.getSecond().compareTo(o1.getSecond());
+            }
+        });
+        int count = Math.min(max, entries.size());
+        List<K> keys = new ArrayList<K>(count);
+        for (int i = 0; i < count; i++)
+        {
+            keys.add(entries.get(i).getFirst());
+        }
+        return keys;
+    }
+
+    /**
+     * Halve all access counts and forget keys that have not been accessed since the last decay
+     */
+    public void decay()
+    {
+        Iterator<AtomicInteger> iterator = counts.values().iterator();
+        while (iterator.hasNext())
+        {
+            AtomicInteger count = iterator.next();
+            int value = count.get();
+            // A concurrent increment is allowed to be lost; the counts are approximate
+            count.set(value / 2);
+            if (value / 2 == 0)
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget all keys
+     */
+    public void clear()
+    {
+        counts.clear();
+    }
+}
@@ -0,0 +1,717 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.springframework.beans.factory.BeanNameAware;
+
+/**
+ * {@link SimpleCache} implementation that keeps its values serialized in direct (off-heap) memory.
+ * <p>
+ * Keys remain on the heap but values are held by the {@link OffHeapValueSerializer} in compact
+ * binary form, so that large shared caches do not contribute to the live heap that the garbage
+ * collector has to trace.  The capacity is given in bytes and is split between a number of
+ * independently locked segments.  Each segment is a ring buffer that is written sequentially;
+ * when the buffer is full, the oldest entries are evicted to make room.  Entries that have been
+ * read since they were written get a second chance: rather than being evicted, they are written
+ * again at the head of the buffer, so frequently used entries are not lost to a stream of new ones.
+ * Optionally, the number of items, the time-to-live and the time-to-idle can be limited as well.
+ * <p>
+ * Operation counts and timings are kept in counters shared by all threads and, if a
+ * {@link CacheStatistics} is provided, pushed to it under the name of the cache by the first
+ * operation that follows a {@link #STATS_PUBLISH_INTERVAL_MS publishing interval}.
+ * 
+ * @since 5.2
+ */
+public final class OffHeapSimpleCache<K extends Serializable, V extends Object>
+    implements SimpleCache<K, V>, BeanNameAware
+{
+    private static final int MAX_SEGMENT_BYTES = Integer.MAX_VALUE - 8;
+    /** The minimum time in milliseconds between two pushes of the statistics */
+    static final long STATS_PUBLISH_INTERVAL_MS = 1000L;
+
+    private final OffHeapValueSerializer serializer;
+    private final long maxBytes;
+    private final int maxItems;
+    private final boolean useMaxItems;
+    private final long ttlMs;
+    private final long maxIdleMs;
+    private final Segment[] segments;
+    private String cacheName;
+    private CacheStatistics cacheStatistics;
+    /** The number and total time in nanoseconds of the operations of each type since the last push */
+    private final StripedCounter[] pendingCounts;
+    private final StripedCounter[] pendingTimes;
+    private final AtomicLong lastPublished = new AtomicLong(System.currentTimeMillis());
+
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * @param maxBytes          the total capacity in bytes of the serialized values
+     * @param segmentCount      the number of independently locked segments
+     * @param maxItems          the maximum number of items, only applied if <b>useMaxItems</b> is <tt>true</tt>
+     * @param useMaxItems       <tt>true</tt> to apply the <b>maxItems</b> limit
+     * @param ttlSecs           time-to-live in seconds or <tt>0</tt> for no limit
+     * @param maxIdleSecs       time-to-idle in seconds or <tt>0</tt> for no limit
+     * @param serializer        converts values to and from bytes
+     * @param cacheName         the name of the cache
+     */
+    @SuppressWarnings("unchecked")
+    public OffHeapSimpleCache(
+            long maxBytes, int segmentCount,
+            int maxItems, boolean useMaxItems,
+            int ttlSecs, int maxIdleSecs,
+            OffHeapValueSerializer serializer,
+            String cacheName)
+    {
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("maxBytes must be positive, but was " + maxBytes);
+        }
+        if (segmentCount <= 0)
+        {
+            throw new IllegalArgumentException("segmentCount must be positive, but was " + segmentCount);
+        }
+        if (maxItems < 0)
+        {
+            throw new IllegalArgumentException("maxItems may not be negative, but was " + maxItems);
+        }
+        // Each segment is backed by a single buffer, which is limited in size
+        while (maxBytes / segmentCount > MAX_SEGMENT_BYTES)
+        {
+            segmentCount *= 2;
+        }
+        this.serializer = serializer;
+        this.maxBytes = maxBytes;
+        this.maxItems = (maxItems == 0 ? Integer.MAX_VALUE : maxItems);
+        this.useMaxItems = useMaxItems;
+        this.ttlMs = ttlSecs * 1000L;
+        this.maxIdleMs = maxIdleSecs * 1000L;
+        this.segments = (Segment[]) Array.newInstance(Segment.class, segmentCount);
+        int segmentBytes = (int) (maxBytes / segmentCount);
+        int segmentItems = useMaxItems ? Math.max(1, this.maxItems / segmentCount) : Integer.MAX_VALUE;
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment(segmentBytes, segmentItems);
+        }
+        this.pendingCounts = new StripedCounter[OpType.values().length];
+        this.pendingTimes = new StripedCounter[OpType.values().length];
+        for (int i = 0; i < pendingCounts.length; i++)
+        {
+            pendingCounts[i] = new StripedCounter();
+            pendingTimes[i] = new StripedCounter();
+        }
+        setBeanName(cacheName);
+    }
+
+    /**
+     * @param cacheStatistics   the component to push operation statistics to (may be <tt>null</tt>)
+     */
+    public void setCacheStatistics(CacheStatistics cacheStatistics)
+    {
+        this.cacheStatistics = cacheStatistics;
+    }
+
+    private Segment segmentFor(Object key)
+    {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[(hash & 0x7FFFFFFF) % segments.length];
+    }
+
+    @Override
+    public boolean contains(K key)
+    {
+        return segmentFor(key).contains(key);
+    }
+
+    @Override
+    public Collection<K> getKeys()
+    {
+        List<K> keys = new ArrayList<K>();
+        for (Segment segment : segments)
+        {
+            segment.collectKeys(keys);
+        }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(K key)
+    {
+        long start = System.nanoTime();
+        byte[] bytes = segmentFor(key).get(key);
+        V value = null;
+        if (bytes == null)
+        {
+            misses.increment();
+        }
+        else
+        {
+            hits.increment();
+            value = (V) serializer.deserialize(bytes);
+        }
+        recordStats(start, bytes == null ? OpType.GET_MISS : OpType.GET_HIT);
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        long start = System.nanoTime();
+        byte[] bytes = serializer.serialize(value);
+        segmentFor(key).put(key, bytes);
+        recordStats(start, OpType.PUT);
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        long start = System.nanoTime();
+        segmentFor(key).remove(key);
+        recordStats(start, OpType.REMOVE);
+    }
+
+    @Override
+    public void clear()
+    {
+        long start = System.nanoTime();
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+        recordStats(start, OpType.CLEAR);
+    }
+
+    /**
+     * Count and time the operation in the shared counters and push them to the {@link CacheStatistics}
+     * if they have not been pushed for a while
+     */
+    private void recordStats(long start, OpType opType)
+    {
+        if (cacheStatistics == null)
+        {
+            return;
+        }
+        pendingCounts[opType.ordinal()].increment();
+        pendingTimes[opType.ordinal()].add(System.nanoTime() - start);
+        long now = System.currentTimeMillis();
+        long last = lastPublished.get();
+        if (now - last >= STATS_PUBLISH_INTERVAL_MS && lastPublished.compareAndSet(last, now))
+        {
+            publishStats();
+        }
+    }
+
+    /**
+     * Push the operations counted since the last push to the {@link CacheStatistics}
+     */
+    void publishStats()
+    {
+        if (cacheStatistics == null)
+        {
+            return;
+        }
+        TransactionStats stats = new TransactionStats();
+        boolean empty = true;
+        for (OpType opType : OpType.values())
+        {
+            long count = pendingCounts[opType.ordinal()].sumThenReset();
+            long time = pendingTimes[opType.ordinal()].sumThenReset();
+            if (count > 0)
+            {
+                stats.add(opType, count, time);
+                empty = false;
+            }
+        }
+        if (!empty)
+        {
+            cacheStatistics.add(cacheName, stats);
+        }
+    }
+
+    /**
+     * @return                  the configured capacity in bytes
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * @return                  the number of bytes currently used by live entries
+     */
+    public long getUsedBytes()
+    {
+        long used = 0L;
+        for (Segment segment : segments)
+        {
+            used += segment.getUsedBytes();
+        }
+        return used;
+    }
+
+    /**
+     * @return                  the number of entries currently held
+     */
+    public int getSize()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+        {
+            size += segment.getSize();
+        }
+        return size;
+    }
+
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return                  the number of entries that were removed to make space for new ones
+     */
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return                  the number of values that were not cached because they were too large
+     */
+    public long getRejectionCount()
+    {
+        return rejections.get();
+    }
+
+    public int getMaxItems()
+    {
+        return maxItems;
+    }
+
+    public boolean isUseMaxItems()
+    {
+        return useMaxItems;
+    }
+
+    public int getSegmentCount()
+    {
+        return segments.length;
+    }
+
+    /**
+     * Retrieve the name of this cache.
+     * 
+     * @return the cacheName
+     */
+    public String getCacheName()
+    {
+        return this.cacheName;
+    }
+
+    /**
+     * @param cacheName Set automatically by Spring, but can be set manually if required.
+     */
+    @Override
+    public void setBeanName(String cacheName)
+    {
+        this.cacheName = cacheName;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "OffHeapSimpleCache[maxBytes=" + maxBytes + ", segments=" + segments.length +
+               ", maxItems=" + maxItems + ", useMaxItems=" + useMaxItems + ", cacheName=" + cacheName + "]";
+    }
+
+    /**
+     * Location of a value within a segment buffer
+     */
+    private static final class Slot
+    {
+        private final Object key;
+        private final int offset;
+        private final int length;
+        private final long created;
+        private long lastAccessed;
+        private boolean live = true;
+        /** set when the value is read, cleared when the slot is written again */
+        private boolean referenced;
+
+        private Slot(Object key, int offset, int length, long now)
+        {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+            this.created = now;
+            this.lastAccessed = now;
+        }
+    }
+
+    /**
+     * A value that is written again at the head of the buffer
+     */
+    private static final class Retained
+    {
+        private final Object key;
+        private final byte[] bytes;
+        private final long created;
+        private final long lastAccessed;
+
+        private Retained(Object key, byte[] bytes, long created, long lastAccessed)
+        {
+            this.key = key;
+            this.bytes = bytes;
+            this.created = created;
+            this.lastAccessed = lastAccessed;
+        }
+    }
+
+    /**
+     * A ring buffer of serialized values with an on-heap index.  Values are written one after the
+     * other; the slot log is kept in write order, so the oldest slots are always the ones that are
+     * overwritten next, unless they have been read since they were written.
+     */
+    private final class Segment
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        private final int maxSegmentItems;
+        private final Map<Object, Slot> index = new HashMap<Object, Slot>(256);
+        private final ArrayDeque<Slot> log = new ArrayDeque<Slot>(256);
+        private ByteBuffer buffer;
+        private int writePosition;
+        private long usedBytes;
+
+        private Segment(int capacity, int maxSegmentItems)
+        {
+            this.capacity = capacity;
+            this.maxSegmentItems = maxSegmentItems;
+        }
+
+        private boolean contains(Object key)
+        {
+            lock.lock();
+            try
+            {
+                return getLiveSlot(key, System.currentTimeMillis(), false) != null;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void collectKeys(List<K> keys)
+        {
+            lock.lock();
+            try
+            {
+                for (Object key : index.keySet())
+                {
+                    keys.add((K) key);
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private byte[] get(Object key)
+        {
+            lock.lock();
+            try
+            {
+                Slot slot = getLiveSlot(key, System.currentTimeMillis(), true);
+                if (slot == null)
+                {
+                    return null;
+                }
+                slot.referenced = true;
+                return read(slot);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private byte[] read(Slot slot)
+        {
+            byte[] bytes = new byte[slot.length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(slot.offset);
+            view.get(bytes);
+            return bytes;
+        }
+
+        /**
+         * Find a slot, dropping it if it has expired
+         */
+        private Slot getLiveSlot(Object key, long now, boolean touch)
+        {
+            Slot slot = index.get(key);
+            if (slot == null)
+            {
+                return null;
+            }
+            if ((ttlMs > 0 && now - slot.created > ttlMs) || (maxIdleMs > 0 && now - slot.lastAccessed > maxIdleMs))
+            {
+                kill(slot);
+                return null;
+            }
+            if (touch)
+            {
+                slot.lastAccessed = now;
+            }
+            return slot;
+        }
+
+        private void put(Object key, byte[] bytes)
+        {
+            lock.lock();
+            try
+            {
+                Slot existing = index.get(key);
+                if (existing != null)
+                {
+                    kill(existing);
+                }
+                if (bytes.length > capacity)
+                {
+                    rejections.incrementAndGet();
+                    return;
+                }
+                if (buffer == null)
+                {
+                    buffer = ByteBuffer.allocateDirect(capacity);
+                }
+                long now = System.currentTimeMillis();
+                ArrayDeque<Retained> retained = new ArrayDeque<Retained>(4);
+                Slot slot = append(key, bytes, now, now, retained, null);
+                // Entries read since they were written are written again, but not at the expense of the new one
+                while (!retained.isEmpty())
+                {
+                    Retained entry = retained.pollFirst();
+                    if (append(entry.key, entry.bytes, entry.created, entry.lastAccessed, retained, slot) == null)
+                    {
+                        evictions.incrementAndGet();
+                    }
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Write a value at the head of the buffer, releasing the oldest slots to make room
+         * 
+         * @param retained      collects the released slots that deserve a second chance
+         * @param protect       a slot that must not be released or <tt>null</tt>
+         * @return              the new slot or <tt>null</tt> if there was no room without releasing <b>protect</b>
+         */
+        private Slot append(Object key, byte[] bytes, long created, long lastAccessed, ArrayDeque<Retained> retained, Slot protect)
+        {
+            int length = bytes.length;
+            // Honour the item limit by dropping the oldest entries
+            while (index.size() >= maxSegmentItems && !log.isEmpty())
+            {
+                if (log.peekFirst() == protect)
+                {
+                    return null;
+                }
+                release(log.pollFirst(), retained);
+            }
+            // Wrap around if the value does not fit at the end of the buffer
+            if (writePosition + length > capacity)
+            {
+                while (!log.isEmpty() && log.peekFirst().offset >= writePosition)
+                {
+                    if (log.peekFirst() == protect)
+                    {
+                        return null;
+                    }
+                    release(log.pollFirst(), retained);
+                }
+                writePosition = 0;
+            }
+            // Make room by overwriting the oldest entries
+            int end = writePosition + length;
+            while (!log.isEmpty())
+            {
+                Slot oldest = log.peekFirst();
+                if (oldest.offset >= end || oldest.offset + oldest.length <= writePosition)
+                {
+                    break;
+                }
+                if (oldest == protect)
+                {
+                    return null;
+                }
+                release(log.pollFirst(), retained);
+            }
+            ByteBuffer view = buffer.duplicate();
+            view.position(writePosition);
+            view.put(bytes);
+            Slot slot = new Slot(key, writePosition, length, created);
+            slot.lastAccessed = lastAccessed;
+            log.addLast(slot);
+            index.put(key, slot);
+            usedBytes += length;
+            writePosition = end;
+            return slot;
+        }
+
+        private void remove(Object key)
+        {
+            lock.lock();
+            try
+            {
+                Slot slot = index.get(key);
+                if (slot != null)
+                {
+                    kill(slot);
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private void clear()
+        {
+            lock.lock();
+            try
+            {
+                index.clear();
+                log.clear();
+                writePosition = 0;
+                usedBytes = 0L;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Drop a slot that has been removed from the head of the log, unless it has been read since it was
+         * written: its value is then kept to be written again
+         */
+        private void release(Slot slot, ArrayDeque<Retained> retained)
+        {
+            if (slot.live && slot.referenced)
+            {
+                byte[] bytes = read(slot);
+                kill(slot);
+                retained.addLast(new Retained(slot.key, bytes, slot.created, slot.lastAccessed));
+            }
+            else
+            {
+                evict(slot);
+            }
+        }
+
+        /**
+         * Drop a slot that has been removed from the head of the log
+         */
+        private void evict(Slot slot)
+        {
+            if (slot.live)
+            {
+                kill(slot);
+                evictions.incrementAndGet();
+            }
+        }
+
+        /**
+         * Remove the slot from the index; the space is reclaimed when the write position gets to it
+         */
+        private void kill(Slot slot)
+        {
+            if (slot.live)
+            {
+                slot.live = false;
+                index.remove(slot.key);
+                usedBytes -= slot.length;
+            }
+        }
+
+        private long getUsedBytes()
+        {
+            lock.lock();
+            try
+            {
+                return usedBytes;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private int getSize()
+        {
+            lock.lock();
+            try
+            {
+                return index.size();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+}
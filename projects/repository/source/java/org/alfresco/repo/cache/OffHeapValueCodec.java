@@ -0,0 +1,57 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads values of one exact class in a compact binary form for the
+ * {@link OffHeapValueSerializer}.  Codecs are registered with the
+ * {@link DefaultCacheFactory} and are used in preference to Java serialization.
+ * 
+ * @param <T>               the type of value handled
+ * 
+ * @since 5.2
+ */
+public interface OffHeapValueCodec<T>
+{
+    /**
+     * @return              the exact class of the values handled by this codec (subclasses are not matched)
+     */
+    Class<T> getValueClass();
+
+    /**
+     * Write the value.  The codec is free to use the serializer to write nested values.
+     */
+    void write(T value, DataOutput out, OffHeapValueSerializer serializer) throws IOException;
+
+    /**
+     * Read a value written by {@link #write(Object, DataOutput, OffHeapValueSerializer)}
+     */
+    T read(DataInput in, OffHeapValueSerializer serializer) throws IOException;
+}
@@ -0,0 +1,508 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.springframework.util.StringUtils;
+
+/**
+ * Converts cache values to and from a compact binary form for storage outside of the Java heap.
+ * <p>
+ * The values found in the node caches (property maps keyed by {@link QName}, sets of aspect
+ * {@link QName QNames} and the {@link ValueHolder} wrappers used by the {@link TransactionalCache})
+ * as well as the common property value types are written without any class metadata.  Namespace
+ * URIs are written as indexes into a dictionary held by the serializer; as the dictionary is not
+ * persisted, the serialized form is only valid within the running JVM.  Values of classes with
+ * a registered {@link OffHeapValueCodec} are written by the codec and anything else falls back to
+ * Java serialization.
+ * <p>
+ * Sets and maps of {@link QName QNames} only get the compact form if they are hash or linked hash
+ * collections or unmodifiable views of a set or map; they are read back as the same class, with
+ * unmodifiable views wrapping linked collections so that their iteration order is kept.  Other
+ * classes, such as sorted collections, are serialized.
+ * 
+ * @since 5.2
+ */
+public class OffHeapValueSerializer
+{
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_TRUE = 4;
+    private static final byte TYPE_FALSE = 5;
+    private static final byte TYPE_DATE = 6;
+    private static final byte TYPE_DOUBLE = 7;
+    private static final byte TYPE_FLOAT = 8;
+    private static final byte TYPE_QNAME = 9;
+    private static final byte TYPE_LOCALE = 10;
+    private static final byte TYPE_NODEREF = 11;
+    private static final byte TYPE_VALUE_HOLDER = 12;
+    private static final byte TYPE_QNAME_SET = 13;
+    private static final byte TYPE_QNAME_MAP = 14;
+    private static final byte TYPE_LIST = 15;
+    private static final byte TYPE_SERIALIZED = 16;
+    private static final byte TYPE_CODEC = 17;
+    
+    /** The kinds of QName set or map that are written in the compact form */
+    private static final byte COLLECTION_HASH = 0;
+    private static final byte COLLECTION_LINKED = 1;
+    private static final byte COLLECTION_UNMODIFIABLE = 2;
+    private static final Class<?> UNMODIFIABLE_SET_CLASS = Collections.unmodifiableSet(new HashSet<Object>()).getClass();
+    private static final Class<?> UNMODIFIABLE_MAP_CLASS = Collections.unmodifiableMap(new HashMap<Object, Object>()).getClass();
+
+    private final Map<Class<?>, Integer> codecIndexes;
+    private final List<OffHeapValueCodec<?>> codecs;
+    private final Map<String, Integer> namespaceIds;
+    private final List<String> namespaces;
+
+    public OffHeapValueSerializer()
+    {
+        this(Collections.<OffHeapValueCodec<?>>emptyList());
+    }
+
+    /**
+     * @param codecs            codecs for classes that need a compact form (may be empty)
+     */
+    public OffHeapValueSerializer(List<OffHeapValueCodec<?>> codecs)
+    {
+        this.codecs = new ArrayList<OffHeapValueCodec<?>>(codecs);
+        this.codecIndexes = new HashMap<Class<?>, Integer>(codecs.size() * 2 + 1);
+        for (int i = 0; i < this.codecs.size(); i++)
+        {
+            codecIndexes.put(this.codecs.get(i).getValueClass(), i);
+        }
+        this.namespaceIds = new ConcurrentHashMap<String, Integer>(64);
+        this.namespaces = new CopyOnWriteArrayList<String>();
+    }
+
+    /**
+     * Serialize a value
+     * 
+     * @param value             the value (may be <tt>null</tt>)
+     * @return                  the bytes representing the value
+     */
+    public byte[] serialize(Object value)
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        try
+        {
+            DataOutputStream out = new DataOutputStream(bos);
+            writeValue(value, out);
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to serialize cache value: " + value, e);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Deserialize a value produced by {@link #serialize(Object)}
+     */
+    public Object deserialize(byte[] bytes)
+    {
+        try
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            return readValue(in);
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to deserialize cache value", e);
+        }
+    }
+
+    /**
+     * Write a single value, including its type marker
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void writeValue(Object value, DataOutput out) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeByte(TYPE_NULL);
+            return;
+        }
+        Class<?> clazz = value.getClass();
+        Integer codecIndex = codecIndexes.get(clazz);
+        if (codecIndex != null)
+        {
+            out.writeByte(TYPE_CODEC);
+            out.writeByte(codecIndex);
+            ((OffHeapValueCodec) codecs.get(codecIndex)).write(value, out, this);
+        }
+        else if (clazz == String.class)
+        {
+            out.writeByte(TYPE_STRING);
+            writeString((String) value, out);
+        }
+        else if (clazz == Long.class)
+        {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        }
+        else if (clazz == Integer.class)
+        {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        }
+        else if (clazz == Boolean.class)
+        {
+            out.writeByte(((Boolean) value) ? TYPE_TRUE : TYPE_FALSE);
+        }
+        else if (clazz == Date.class)
+        {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) value).getTime());
+        }
+        else if (clazz == Double.class)
+        {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        }
+        else if (clazz == Float.class)
+        {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        }
+        else if (clazz == QName.class)
+        {
+            out.writeByte(TYPE_QNAME);
+            writeQName((QName) value, out);
+        }
+        else if (clazz == Locale.class)
+        {
+            out.writeByte(TYPE_LOCALE);
+            writeString(((Locale) value).toString(), out);
+        }
+        else if (clazz == NodeRef.class)
+        {
+            out.writeByte(TYPE_NODEREF);
+            writeString(value.toString(), out);
+        }
+        else if (clazz == ValueHolder.class)
+        {
+            ValueHolder<?> holder = (ValueHolder<?>) value;
+            out.writeByte(TYPE_VALUE_HOLDER);
+            out.writeInt(holder.getRand());
+            writeValue(holder.getValue(), out);
+        }
+        else if (clazz == ArrayList.class)
+        {
+            List<?> list = (List<?>) value;
+            out.writeByte(TYPE_LIST);
+            out.writeInt(list.size());
+            for (Object item : list)
+            {
+                writeValue(item, out);
+            }
+        }
+        else if (getCollectionKind(clazz, HashSet.class, LinkedHashSet.class, UNMODIFIABLE_SET_CLASS) >= 0
+                && isQNameCollection((Set<?>) value))
+        {
+            Set<QName> set = (Set<QName>) value;
+            out.writeByte(TYPE_QNAME_SET);
+            out.writeByte(getCollectionKind(clazz, HashSet.class, LinkedHashSet.class, UNMODIFIABLE_SET_CLASS));
+            out.writeInt(set.size());
+            for (QName qname : set)
+            {
+                writeQName(qname, out);
+            }
+        }
+        else if (getCollectionKind(clazz, HashMap.class, LinkedHashMap.class, UNMODIFIABLE_MAP_CLASS) >= 0
+                && isQNameCollection(((Map<?, ?>) value).keySet()))
+        {
+            Map<QName, ?> map = (Map<QName, ?>) value;
+            out.writeByte(TYPE_QNAME_MAP);
+            out.writeByte(getCollectionKind(clazz, HashMap.class, LinkedHashMap.class, UNMODIFIABLE_MAP_CLASS));
+            out.writeInt(map.size());
+            for (Map.Entry<QName, ?> entry : map.entrySet())
+            {
+                writeQName(entry.getKey(), out);
+                writeValue(entry.getValue(), out);
+            }
+        }
+        else if (value instanceof Serializable)
+        {
+            out.writeByte(TYPE_SERIALIZED);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.close();
+            byte[] bytes = bos.toByteArray();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else
+        {
+            throw new IOException("Values must be Serializable or have a registered codec: " + clazz);
+        }
+    }
+
+    /**
+     * Read a single value written by {@link #writeValue(Object, DataOutput)}
+     */
+    public Object readValue(DataInput in) throws IOException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+            case TYPE_NULL:
+                return null;
+            case TYPE_CODEC:
+                return codecs.get(in.readByte()).read(in, this);
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            case TYPE_DATE:
+                return new Date(in.readLong());
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_QNAME:
+                return readQName(in);
+            case TYPE_LOCALE:
+                return StringUtils.parseLocaleString(readString(in));
+            case TYPE_NODEREF:
+                return new NodeRef(readString(in));
+            case TYPE_VALUE_HOLDER:
+                int rand = in.readInt();
+                return new ValueHolder<Object>(readValue(in), rand);
+            case TYPE_LIST:
+            {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++)
+                {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case TYPE_QNAME_SET:
+            {
+                byte kind = in.readByte();
+                int size = in.readInt();
+                Set<QName> set = (kind == COLLECTION_HASH)
+                        ? new HashSet<QName>(size * 2 + 1)
+                        : new LinkedHashSet<QName>(size * 2 + 1);
+                for (int i = 0; i < size; i++)
+                {
+                    set.add(readQName(in));
+                }
+                return (kind == COLLECTION_UNMODIFIABLE) ? Collections.unmodifiableSet(set) : set;
+            }
+            case TYPE_QNAME_MAP:
+            {
+                byte kind = in.readByte();
+                int size = in.readInt();
+                Map<QName, Object> map = (kind == COLLECTION_HASH)
+                        ? new HashMap<QName, Object>(size * 2 + 1)
+                        : new LinkedHashMap<QName, Object>(size * 2 + 1);
+                for (int i = 0; i < size; i++)
+                {
+                    QName qname = readQName(in);
+                    map.put(qname, readValue(in));
+                }
+                return (kind == COLLECTION_UNMODIFIABLE) ? Collections.unmodifiableMap(map) : map;
+            }
+            case TYPE_SERIALIZED:
+            {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try
+                {
+                    return ois.readObject();
+                }
+                catch (ClassNotFoundException e)
+                {
+                    throw new IOException("Unable to read serialized cache value", e);
+                }
+                finally
+                {
+                    ois.close();
+                }
+            }
+            default:
+                throw new IOException("Unknown cache value type: " + type);
+        }
+    }
+
+    /**
+     * Write a string of any length, including <tt>null</tt>
+     */
+    public void writeString(String value, DataOutput out) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString(String, DataOutput)}
+     */
+    public String readString(DataInput in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a nullable <tt>Long</tt>
+     */
+    public void writeLong(Long value, DataOutput out) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+        {
+            out.writeLong(value);
+        }
+    }
+
+    /**
+     * Read a nullable <tt>Long</tt> written by {@link #writeLong(Long, DataOutput)}
+     */
+    public Long readLong(DataInput in) throws IOException
+    {
+        return in.readBoolean() ? Long.valueOf(in.readLong()) : null;
+    }
+
+    private void writeQName(QName qname, DataOutput out) throws IOException
+    {
+        out.writeInt(getNamespaceId(qname.getNamespaceURI()));
+        writeString(qname.getLocalName(), out);
+    }
+
+    private QName readQName(DataInput in) throws IOException
+    {
+        String namespaceURI = namespaces.get(in.readInt());
+        String localName = readString(in);
+        return QName.createQName(namespaceURI, localName);
+    }
+
+    private int getNamespaceId(String namespaceURI)
+    {
+        Integer id = namespaceIds.get(namespaceURI);
+        if (id != null)
+        {
+            return id;
+        }
+        synchronized (namespaces)
+        {
+            id = namespaceIds.get(namespaceURI);
+            if (id == null)
+            {
+                namespaces.add(namespaceURI);
+                id = namespaces.size() - 1;
+                namespaceIds.put(namespaceURI, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @return                  the kind of collection to write in the compact form or <tt>-1</tt> if the class
+     *                          would not be read back as the same class
+     */
+    private static int getCollectionKind(Class<?> clazz, Class<?> hashClass, Class<?> linkedClass, Class<?> unmodifiableClass)
+    {
+        if (clazz == hashClass)
+        {
+            return COLLECTION_HASH;
+        }
+        else if (clazz == linkedClass)
+        {
+            return COLLECTION_LINKED;
+        }
+        else if (clazz == unmodifiableClass)
+        {
+            return COLLECTION_UNMODIFIABLE;
+        }
+        return -1;
+    }
+
+    private static boolean isQNameCollection(Collection<?> collection)
+    {
+        for (Object item : collection)
+        {
+            if (!(item instanceof QName))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can add to without contending on a single memory location.
+ * <p>
+ * Each thread adds to one of a number of stripes, picked by its thread ID, and the value of the
+ * counter is the sum of the stripes.  The stripes are spaced a cache line apart.  Reading the
+ * sum while other threads add to it gives a value that was correct at some point during the read.
+ * 
+ * @since 5.2
+ */
+class StripedCounter
+{
+    /** The number of longs between two stripes, so that they do not share a cache line */
+    private static final int SPACING = 8;
+    
+    private final AtomicLongArray cells;
+    private final int mask;
+    
+    StripedCounter()
+    {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2)
+        {
+            stripes <<= 1;
+        }
+        this.cells = new AtomicLongArray(stripes * SPACING);
+        this.mask = stripes - 1;
+    }
+    
+    private int cellFor(Thread thread)
+    {
+        long id = thread.getId();
+        return (((int) (id ^ (id >>> 32))) & mask) * SPACING;
+    }
+    
+    void increment()
+    {
+        add(1L);
+    }
+    
+    void add(long delta)
+    {
+        cells.getAndAdd(cellFor(Thread.currentThread()), delta);
+    }
+    
+    long sum()
+    {
+        long sum = 0L;
+        for (int i = 0; i < cells.length(); i += SPACING)
+        {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+    
+    /**
+     * @return          the sum of what was added since the last reset; nothing added while the
+     *                  stripes are being reset is lost
+     */
+    long sumThenReset()
+    {
+        long sum = 0L;
+        for (int i = 0; i < cells.length(); i += SPACING)
+        {
+            sum += cells.getAndSet(i, 0L);
+        }
+        return sum;
+    }
+}
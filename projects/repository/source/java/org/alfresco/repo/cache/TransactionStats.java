@@ -39,6 +39,8 @@ import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 public class TransactionStats
 {
     private Map<OpType, SummaryStatistics> timings = new HashMap<>();
+    /** Operations added as totals: the count and the total time of each type */
+    private Map<OpType, double[]> totals = new HashMap<>();
     
     /**
      * Cache operation type.
@@ -49,15 +51,35 @@ public class TransactionStats
         GET_MISS,
         PUT,
         REMOVE,
-        CLEAR
+        CLEAR,
+        /** An updated entry was dropped from a full transactional cache and its key marked for removal */
+        SPILL,
+        /** Too many keys were marked for removal and the shared cache will be cleared instead */
+        OVERFLOW
     }
     
     public long getCount(OpType op)
     {
         SummaryStatistics stats = getTimings(op);
-        return stats.getN();
+        double[] total = totals.get(op);
+        return stats.getN() + (total == null ? 0L : (long) total[0]);
     }
     
+    /**
+     * @return the total time in nanoseconds of the operations of the given type, whether
+     *         they were recorded one by one or added as totals
+     */
+    public double getTotalTime(OpType op)
+    {
+        SummaryStatistics stats = getTimings(op);
+        double[] total = totals.get(op);
+        return stats.getSum() + (total == null ? 0.0d : total[1]);
+    }
+    
+    /**
+     * @return the timings of the operations of the given type that were {@link #record(long, long, OpType) recorded}
+     *         one by one
+     */
     public SummaryStatistics getTimings(OpType op)
     {
         SummaryStatistics opTimings = timings.get(op);
@@ -79,6 +101,29 @@ public class TransactionStats
         addTiming(op, timeTaken);
     }
 
+    /**
+     * Add operations that were counted and timed elsewhere, such as by a cache shared between threads
+     * 
+     * @param op        the type of the operations
+     * @param count     the number of operations
+     * @param totalTime the total time in nanoseconds that the operations took
+     */
+    public void add(OpType op, long count, double totalTime)
+    {
+        if (count < 0)
+        {
+            throw new IllegalArgumentException("Count may not be negative, but was " + count);
+        }
+        double[] total = totals.get(op);
+        if (total == null)
+        {
+            total = new double[2];
+            totals.put(op, total);
+        }
+        total[0] += count;
+        total[1] += totalTime;
+    }
+
     private void addTiming(OpType op, double time)
     {
         SummaryStatistics opTimings = getTimings(op);
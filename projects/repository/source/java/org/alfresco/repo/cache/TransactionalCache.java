@@ -71,10 +71,12 @@ import org.springframework.beans.factory.InitializingBean;
  * shared transaction is cleared <i>before</i> updates are added back to it.
  * <p>
  * Because there is a limited amount of space available to the in-transaction caches,
- * when either of these becomes full, the cleared flag is set.  This ensures that
- * the shared cache will not have stale data in the event of the transaction-local
- * caches dropping items.  It is therefore important to size the transactional caches
- * correctly.
+ * the oldest entries are dropped when the updated items reach the
+ * {@link #setMaxCacheSize(int) maximum size}.  Values read from the shared cache are
+ * simply forgotten; the keys of new or updated values are <i>spilled</i> into the compact
+ * set of removed keys so that the shared cache will not have stale data.  Only when
+ * the removed keys exceed the {@link #setMaxSpillSize(int) spill limit} is the cleared
+ * flag set.  Spills and overflows are recorded in the {@link TransactionStats}.
  * 
  * @author Derek Hulley
  */
@@ -98,6 +100,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     private boolean allowEqualsChecks;
     /** the maximum number of elements to be contained in the cache */
     private int maxCacheSize = 500;
+    /** the maximum number of keys to be removed from the shared cache before a clear is required */
+    private int maxSpillSize = 500000;
     /** a unique string identifying this instance when binding resources */
     private String resourceKeyTxnData;
     /** Use of cacheStats is guarded by the cacheStatsEnabled flag */
@@ -210,6 +214,19 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         this.maxCacheSize = maxCacheSize;
     }
 
+    /**
+     * Set the maximum number of keys that the transaction will remove from the shared cache
+     * on commit.  The keys of removed values and of values that did not fit into the
+     * {@link #setMaxCacheSize(int) update cache} are kept in a compact form.  If the limit is
+     * exceeded, the shared cache is cleared on commit instead.
+     * 
+     * @param maxSpillSize          maximum number of keys to be tracked for removal (default 500000)
+     */
+    public void setMaxSpillSize(int maxSpillSize)
+    {
+        this.maxSpillSize = maxSpillSize;
+    }
+
     /**
      * Set the name that identifies this cache from other instances.
      */
@@ -265,8 +282,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         {
             data = new TransactionData();
             // create and initialize caches
-            data.updatedItemsCache = new LRULinkedHashMap<Serializable, CacheBucket<V>>(23);
-            data.removedItemsCache = new HashSet<Serializable>(13);
+            data.updatedItemsCache = new UpdatedItemsMap(data, 23);
+            data.removedItemsCache = new CompactKeySet();
             data.lockedItemsCache = new HashSet<Serializable>(13);
             data.isReadOnly = AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_ONLY;
             data.stats = new TransactionStats();
@@ -397,7 +414,10 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             // add keys
             keys.addAll(txnData.updatedItemsCache.keySet());
             // remove keys
-            keys.removeAll(txnData.removedItemsCache);
+            for (Serializable removedKey : txnData.removedItemsCache)
+            {
+                keys.remove(removedKey);
+            }
         }
         else
         {
@@ -731,27 +751,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             else
             {
                 // we have an active transaction - add the item into the updated cache for this transaction
-                // are we in an overflow condition?
-                if (txnData.updatedItemsCache.hasHitSize())
-                {
-                    // overflow about to occur or has occured - we can only guarantee non-stale
-                    // data by clearing the shared cache after the transaction.  Also, the
-                    // shared cache needs to be ignored for the rest of the transaction.
-                    txnData.isClearOn = true;
-                    if (!txnData.haveIssuedFullWarning)
-                    {
-                    	if (logger.isInfoEnabled())
-                        {
-                             Exception e = new Exception("Stack: ");
-                             logger.info("Transactional update cache '" + name + "' is full (" + maxCacheSize + ").", e);
-                        }
-                    	else if (logger.isWarnEnabled())
-                        {
-                            logger.warn("Transactional update cache '" + name + "' is full (" + maxCacheSize + ").");
-                        }
-                        txnData.haveIssuedFullWarning = true;
-                    }
-                }
+                // (the oldest entries are spilled if the update cache is full)
                 ValueHolder<V> existingValueHolder = txnData.noSharedCacheRead ? null : sharedCache.get(key);
                 CacheBucket<V> bucket = null;
                 if (existingValueHolder == null)
@@ -841,32 +841,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 }
                 else
                 {
-                    // are we in an overflow condition?
-                    if (txnData.removedItemsCache.size() >= maxCacheSize)
-                    {
-                        // overflow about to occur or has occured - we can only guarantee non-stale
-                        // data by clearing the shared cache after the transaction.  Also, the
-                        // shared cache needs to be ignored for the rest of the transaction.
-                        txnData.isClearOn = true;
-                        if (!txnData.haveIssuedFullWarning)
-                        {
-                        	if (logger.isInfoEnabled())
-                            {
-                                 Exception e = new Exception("Stack: ");
-                                 logger.info("Transactional removal cache '" + name + "' is full (" + maxCacheSize + ").", e);
-                            }
-                            else if (logger.isWarnEnabled())
-                            {
-                            	logger.warn("Transactional removal cache '" + name + "' is full (" + maxCacheSize + ").");
-                            }
-                            txnData.haveIssuedFullWarning = true;
-                        }
-                    }
-                    else
-                    {
-                        // Create a bucket to remove the value from the shared cache
-                        txnData.removedItemsCache.add(key);
-                    }
+                    // Record the key to remove the value from the shared cache
+                    addRemovedKey(txnData, key);
                 }
                 // remove the item from the udpated cache, if present
                 txnData.updatedItemsCache.remove(key);
@@ -1166,6 +1142,71 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         }
     }
     
+    /**
+     * Record a key whose shared cache entry must be removed at the end of the transaction.
+     * If too many keys are recorded, the shared cache is cleared instead.
+     */
+    private void addRemovedKey(TransactionData txnData, Serializable key)
+    {
+        // are we in an overflow condition?
+        if (txnData.removedItemsCache.size() >= maxSpillSize && !txnData.removedItemsCache.contains(key))
+        {
+            // overflow about to occur - we can only guarantee non-stale
+            // data by clearing the shared cache after the transaction.  Also, the
+            // shared cache needs to be ignored for the rest of the transaction.
+            txnData.isClearOn = true;
+            txnData.removedItemsCache.clear();
+            if (cacheStatsEnabled)
+            {
+                long nanos = System.nanoTime();
+                txnData.stats.record(nanos, nanos, OpType.OVERFLOW);
+            }
+            if (!txnData.haveIssuedFullWarning)
+            {
+                if (logger.isInfoEnabled())
+                {
+                    Exception e = new Exception("Stack: ");
+                    logger.info("Transactional removal cache '" + name + "' is full (" + maxSpillSize + ").", e);
+                }
+                else if (logger.isWarnEnabled())
+                {
+                    logger.warn("Transactional removal cache '" + name + "' is full (" + maxSpillSize + ").");
+                }
+                txnData.haveIssuedFullWarning = true;
+            }
+        }
+        else
+        {
+            txnData.removedItemsCache.add(key);
+        }
+    }
+    
+    /**
+     * Handle an entry dropped from the full update cache.  Values read from the shared cache
+     * are simply forgotten.  New or updated values can't be written through, so the key is
+     * spilled to the removed keys: the value will be reloaded if used again in the transaction
+     * and the shared cache entry is removed on commit.
+     */
+    private void spill(TransactionData txnData, Serializable key, CacheBucket<V> bucket)
+    {
+        if (bucket instanceof ReadCacheBucket || txnData.isClearOn)
+        {
+            return;
+        }
+        final long startNanos = cacheStatsEnabled ? System.nanoTime() : 0;
+        addRemovedKey(txnData, key);
+        if (cacheStatsEnabled && !txnData.isClearOn)
+        {
+            txnData.stats.record(startNanos, System.nanoTime(), OpType.SPILL);
+        }
+        if (isDebugEnabled)
+        {
+            logger.debug("Spilled key from full transactional update cache: \n" +
+                    "   cache: " + this + "\n" +
+                    "   key: " + key);
+        }
+    }
+    
     /**
      * Ensures that the transactional caches are removed from the common cache manager.
      * 
@@ -1370,8 +1411,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     /** Data holder to bind data to the transaction */
     private class TransactionData
     {
-        private LRULinkedHashMap<Serializable, CacheBucket<V>> updatedItemsCache;
-        private Set<Serializable> removedItemsCache;
+        private UpdatedItemsMap updatedItemsCache;
+        private CompactKeySet removedItemsCache;
         private Set<Serializable> lockedItemsCache;
         private boolean haveIssuedFullWarning;
         private boolean isClearOn;
@@ -1382,30 +1423,35 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     }
     
     /**
-     * Simple LRU based on {@link LinkedHashMap}
+     * Bounded map of in-transaction values based on {@link LinkedHashMap}, spilling
+     * the eldest entries when full
      * 
      * @author Derek Hulley
      * @since 3.4
      */
-    private class LRULinkedHashMap<K1, V1> extends LinkedHashMap<K1, V1>
+    private class UpdatedItemsMap extends LinkedHashMap<Serializable, CacheBucket<V>>
     {
         private static final long serialVersionUID = -4874684348174271106L;
 
-        private LRULinkedHashMap(int initialSize)
+        private final TransactionData txnData;
+
+        private UpdatedItemsMap(TransactionData txnData, int initialSize)
         {
             super(initialSize);
-        }
-        private boolean hasHitSize()
-        {
-            return size() >= maxCacheSize;
+            this.txnData = txnData;
         }
         /**
          * Remove the eldest entry if the size has reached the maximum cache size
          */
         @Override
-        protected boolean removeEldestEntry(Map.Entry<K1, V1> eldest)
+        protected boolean removeEldestEntry(Map.Entry<Serializable, CacheBucket<V>> eldest)
         {
-            return (size() > maxCacheSize);
+            if (size() > maxCacheSize)
+            {
+                spill(txnData, eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
         }
     }
     
@@ -1507,10 +1553,22 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             this.rand = (int) (Math.random() * Integer.MAX_VALUE);
             this.value = value;
         }
+        /**
+         * Recreate a holder from its serialized form
+         */
+        ValueHolder(V2 value, int rand)
+        {
+            this.rand = rand;
+            this.value = value;
+        }
         public final V2 getValue()
         {
             return value;
         }
+        final int getRand()
+        {
+            return rand;
+        }
         @Override
         public final int hashCode()
         {
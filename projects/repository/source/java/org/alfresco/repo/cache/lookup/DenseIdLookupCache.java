@@ -0,0 +1,185 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.lookup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+
+/**
+ * A read-optimized, process-local cache of small dictionaries of database entities, such as
+ * locales, that are only ever appended to and never changed or deleted.
+ * <p>
+ * Values are held in a dense array indexed directly by ID, so a lookup by ID involves no
+ * boxing and no hashing.  Lookups by value use a copy-on-write map that is replaced whenever
+ * an entry is added; readers never lock.  IDs above the {@link #DEFAULT_MAX_ID maximum} are
+ * not cached and lookups for them return <tt>null</tt>, as for any other miss.
+ * <p>
+ * This cache is not a replacement for the shared {@link EntityLookupCache}: it sits in front
+ * of it and is populated from it.  Because it is neither transactional nor clustered, the
+ * following rules apply:
+ * <ul>
+ *   <li>Entries by ID can always be {@link #putValue(long, Object) recorded}.  Database IDs are
+ *       never reused, so an entry for an ID that was rolled back can never be read.</li>
+ *   <li>Entries by value are only {@link #put(long, Object) recorded} outside of read-write
+ *       transactions, so that an ID that may yet be rolled back is never handed out.</li>
+ *   <li>It must not be used for entities that can be changed or deleted.  Nothing invalidates
+ *       it when the shared cache is invalidated, for instance by another server in the cluster.</li>
+ * </ul>
+ * 
+ * @param <V>           the entity value type, which must have good <code>equals</code> and
+ *                      <code>hashCode</code> implementations
+ * 
+ * @since 5.2
+ */
+public class DenseIdLookupCache<V>
+{
+    /** The default upper bound of the IDs that will be cached */
+    public static final int DEFAULT_MAX_ID = 65535;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int maxId;
+    private volatile Object[] values;
+    private volatile Map<V, Long> ids;
+
+    /**
+     * Construct a cache for IDs up to the {@link #DEFAULT_MAX_ID default maximum}
+     */
+    public DenseIdLookupCache()
+    {
+        this(DEFAULT_MAX_ID);
+    }
+
+    /**
+     * @param maxId         the largest ID that will be cached
+     */
+    public DenseIdLookupCache(int maxId)
+    {
+        if (maxId < 0)
+        {
+            throw new IllegalArgumentException("The maximum ID may not be negative: " + maxId);
+        }
+        this.maxId = maxId;
+        this.values = new Object[Math.min(INITIAL_CAPACITY, maxId + 1)];
+        this.ids = Collections.emptyMap();
+    }
+
+    /**
+     * @param id            the entity ID
+     * @return              the cached value or <tt>null</tt> if it is not cached
+     */
+    @SuppressWarnings("unchecked")
+    public V getValue(long id)
+    {
+        Object[] values = this.values;
+        if (id < 0 || id >= values.length)
+        {
+            return null;
+        }
+        return (V) values[(int) id];
+    }
+
+    /**
+     * @param value         the entity value
+     * @return              the cached ID or <tt>null</tt> if it is not cached
+     */
+    public Long getId(V value)
+    {
+        return ids.get(value);
+    }
+
+    /**
+     * Record the value for lookups by ID only
+     * 
+     * @param id            the entity ID
+     * @param value         the entity value
+     */
+    public synchronized void putValue(long id, V value)
+    {
+        if (id < 0 || id > maxId || value == null)
+        {
+            return;
+        }
+        Object[] values = this.values;
+        if (id >= values.length)
+        {
+            int capacity = (int) Math.min(Math.max(id + 1, values.length * 2L), maxId + 1L);
+            values = Arrays.copyOf(values, capacity);
+        }
+        values[(int) id] = value;
+        // Publish the array, even if it did not grow, so that the new entry is visible
+        this.values = values;
+    }
+
+    /**
+     * Record the value for lookups in both directions.  The lookup by value is only recorded
+     * if there is no read-write transaction active i.e. when the entity is known to be committed.
+     * 
+     * @param id            the entity ID
+     * @param value         the entity value
+     */
+    public synchronized void put(long id, V value)
+    {
+        if (id < 0 || id > maxId || value == null)
+        {
+            return;
+        }
+        putValue(id, value);
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_WRITE)
+        {
+            return;
+        }
+        Long existingId = ids.get(value);
+        if (existingId != null && existingId.longValue() == id)
+        {
+            return;
+        }
+        Map<V, Long> copy = new HashMap<V, Long>(ids);
+        copy.put(value, id);
+        ids = copy;
+    }
+
+    /**
+     * Remove all entries
+     */
+    public synchronized void clear()
+    {
+        values = new Object[values.length];
+        ids = Collections.emptyMap();
+    }
+
+    /**
+     * @return              the number of entries that can be looked up by value
+     */
+    public int size()
+    {
+        return ids.size();
+    }
+}
@@ -28,6 +28,7 @@ package org.alfresco.repo.cache.lookup;
 import java.io.Serializable;
 import java.sql.Savepoint;
 
+import org.alfresco.repo.cache.HotKeyRecorder;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.control.ControlDAO;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
@@ -238,6 +239,7 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
     private final SimpleCache<Serializable, Object> cache;
     private final EntityLookupCallbackDAO<K, V, VK> entityLookup;
     private final String cacheRegion;
+    private HotKeyRecorder<K> keyRecorder;
 
     /**
      * Construct the lookup cache <b>without any cache</b>.  All calls are passed directly to the
@@ -283,6 +285,17 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         this.entityLookup = entityLookup;
     }
     
+    /**
+     * Set a component that will be told about every {@link #getByKey(Serializable) lookup by key}
+     * so that the most frequently used entities can be loaded again after a restart.
+     * 
+     * @param keyRecorder           the access recorder or <tt>null</tt> to record nothing
+     */
+    public void setKeyRecorder(HotKeyRecorder<K> keyRecorder)
+    {
+        this.keyRecorder = keyRecorder;
+    }
+    
     /**
      * Find the entity associated with the given key.
      * The {@link EntityLookupCallbackDAO#findByKey(Serializable) entity callback} will be used if necessary.
@@ -301,6 +314,10 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         {
             throw new IllegalArgumentException("An entity lookup key may not be null");
         }
+        if (keyRecorder != null)
+        {
+            keyRecorder.record(key);
+        }
         // Handle missing cache
         if (cache == null)
         {
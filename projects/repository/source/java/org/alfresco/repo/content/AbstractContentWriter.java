@@ -461,10 +461,19 @@ public abstract class AbstractContentWriter extends AbstractContentAccessor impl
         }
     }
 
+    /**
+     * Content from a plain <code>FileInputStream</code> is transferred channel to channel
+     * from its current position, see {@link #copyFile(FileInputStream)}.
+     */
     public final void putContent(InputStream is) throws ContentIOException
     {
         try
         {
+            if (is != null && is.getClass() == FileInputStream.class)
+            {
+                copyFile((FileInputStream) is);     // both channels are closed
+                return;
+            }
             OutputStream os = getContentOutputStream();
             copyStreams(is, os);     // both streams are closed
             // done
@@ -481,9 +490,8 @@ public abstract class AbstractContentWriter extends AbstractContentAccessor impl
     {
         try
         {
-            OutputStream os = getContentOutputStream();
             FileInputStream is = new FileInputStream(file);
-            copyStreams(is, os);     // both streams are closed
+            copyFile(is);            // both channels are closed
             // done
         }
         catch (IOException e)
@@ -510,6 +518,77 @@ public abstract class AbstractContentWriter extends AbstractContentAccessor impl
         return byteCount;
     }
     
+    /**
+     * Transfers the remainder of a file to the writable channel.  When the underlying channel is
+     * itself a <code>FileChannel</code> (e.g. a file-backed store) the content is transferred file to file
+     * without passing through heap buffers.  Other channels (e.g. those of stores that wrap or encrypt
+     * the stream) are still written from the JDK's own temporary buffers.
+     * <p/>
+     * Both channels are closed but any IOExceptions are thrown
+     */
+    private final long copyFile(FileInputStream is) throws IOException
+    {
+        ContentLimitProvider contentLimitProvider = getContentLimitProvider();
+        final long sizeLimit = contentLimitProvider.getSizeLimit();
+
+        FileChannel in = is.getChannel();
+        WritableByteChannel out = null;
+        IOException error = null;
+        long byteCount = 0;
+        try
+        {
+            // The channel is opened, and then closed, as when the limit is exceeded by a stream
+            out = getWritableChannel();
+            long position = in.position();
+            long count = in.size() - position;
+            if (sizeLimit > 0 && count > sizeLimit)
+            {
+                throw new ContentLimitViolationException("Content size violation, limit = " + sizeLimit);
+            }
+            long outPosition = (out instanceof FileChannel) ? ((FileChannel) out).position() : 0L;
+            while (byteCount < count)
+            {
+                long transferred = (out instanceof FileChannel)
+                        ? ((FileChannel) out).transferFrom(in, outPosition + byteCount, count - byteCount)
+                        : in.transferTo(position + byteCount, count - byteCount, out);
+                if (transferred <= 0)
+                {
+                    throw new IOException("File was truncated whilst being copied: " + (count - byteCount) + " bytes missing");
+                }
+                byteCount += transferred;
+            }
+        }
+        finally
+        {
+            try
+            {
+                is.close();
+            }
+            catch (IOException e)
+            {
+                error = e;
+                logger.error("Failed to close input stream: " + this, e);
+            }
+            if (out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException e)
+                {
+                    error = e;
+                    logger.error("Failed to close output channel: " + this, e);
+                }
+            }
+        }
+        if (error != null)
+        {
+            throw error;
+        }
+        return byteCount;
+    }
+
     /**
      * Makes use of the encoding, if available, to convert the string to bytes.
      * 
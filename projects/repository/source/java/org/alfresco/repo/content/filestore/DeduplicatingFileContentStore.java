@@ -0,0 +1,468 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Collections;
+import java.util.Map;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+import org.alfresco.util.Deleter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * A {@link FileContentStore} that stores each unique content stream only once.
+ * <p>
+ * Content is written to its own URL file exactly as for the normal file store.  The writer
+ * digests the content as it is written and, when the content stream is closed, the URL file
+ * is replaced by a hard link to a single blob named after the digest:
+ * <pre>
+ *    &lt;blob directory&gt;/ab/cd/abcd...ef.bin
+ * </pre>
+ * The filesystem's link count is the reference count for a blob: every content URL referring
+ * to the blob is one link and the blob file itself is the last.  Readers, URL listing and the
+ * orphan handling in the content URL tables and {@link org.alfresco.repo.content.cleanup.ContentStoreCleaner}
+ * are therefore unchanged; each content URL is still an individual file that is cleaned up by
+ * {@link #delete(String)}, which also removes the blob once no URL links to it.
+ * <p>
+ * The digest is recorded in a user-defined file attribute of the blob.  As all the links share
+ * the blob's inode, {@link #delete(String)} finds the blob from the attribute of the URL file
+ * without reading the content again.
+ * <p>
+ * The blob directory must be on the same filesystem as the root directory.  If hard links, link
+ * counts or user-defined file attributes are not supported, or linking a particular file fails,
+ * the content simply stays in its private URL file.
+ * 
+ * @since 5.2
+ */
+public class DeduplicatingFileContentStore extends FileContentStore
+{
+    /** The suffix added to the root directory to form the default blob directory */
+    public static final String BLOB_DIRECTORY_SUFFIX = ".blobs";
+    
+    private static final String ATTR_LINK_COUNT = "unix:nlink";
+    private static final String ATTR_DIGEST = "alfresco.digest";
+    private static final int LOCK_STRIPES = 64;
+    
+    private static final Log logger = LogFactory.getLog(DeduplicatingFileContentStore.class);
+    
+    private final File blobDirectory;
+    private final Object[] blobLocks;
+    private boolean deduplicate;
+    
+    /**
+     * Construct a store using a blob directory next to the root directory
+     * 
+     * @param context               the application context
+     * @param rootDirectoryStr      the root under which URL files will be stored
+     */
+    public DeduplicatingFileContentStore(ApplicationContext context, String rootDirectoryStr)
+    {
+        this(context, new File(rootDirectoryStr));
+    }
+    
+    /**
+     * Construct a store using a blob directory next to the root directory
+     * 
+     * @param context               the application context
+     * @param rootDirectory         the root under which URL files will be stored
+     */
+    public DeduplicatingFileContentStore(ApplicationContext context, File rootDirectory)
+    {
+        this(context, rootDirectory, null, Collections.<String, Serializable>emptyMap());
+    }
+    
+    /**
+     * @param context               the application context
+     * @param rootDirectory         the root under which URL files will be stored
+     * @param blobDirectory         the directory holding the unique blobs or <tt>null</tt> to use
+     *                              a sibling of the root directory
+     * @param extendedEventParams   additional parameters for the store creation event
+     */
+    public DeduplicatingFileContentStore(
+            ApplicationContext context,
+            File rootDirectory,
+            File blobDirectory,
+            Map<String, Serializable> extendedEventParams)
+    {
+        super(context, rootDirectory, extendedEventParams);
+        
+        if (blobDirectory == null)
+        {
+            blobDirectory = new File(getRootLocation() + BLOB_DIRECTORY_SUFFIX);
+        }
+        this.blobDirectory = blobDirectory.getAbsoluteFile();
+        this.blobLocks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++)
+        {
+            blobLocks[i] = new Object();
+        }
+        this.deduplicate = checkLinkSupport();
+    }
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("DeduplicatingFileContentStore")
+          .append("[ root=").append(getRootLocation())
+          .append(", blobs=").append(blobDirectory)
+          .append(", deduplicate=").append(deduplicate)
+          .append("]");
+        return sb.toString();
+    }
+    
+    /**
+     * @return              Returns the directory holding the unique blobs
+     */
+    public File getBlobDirectory()
+    {
+        return blobDirectory;
+    }
+    
+    /**
+     * @return              Returns <tt>true</tt> if new content is being deduplicated or <tt>false</tt>
+     *                      if the filesystem does not support it
+     */
+    public boolean isDeduplicating()
+    {
+        return deduplicate;
+    }
+    
+    /**
+     * Checks that hard links can be created and counted between the root and blob directories
+     * and that the digest can be recorded against them
+     */
+    private boolean checkLinkSupport()
+    {
+        File rootDirectory = new File(getRootLocation());
+        File probe = new File(rootDirectory, ".dedup-" + System.nanoTime());
+        File probeLink = new File(blobDirectory, probe.getName());
+        try
+        {
+            Files.createDirectories(blobDirectory.toPath());
+            Files.createFile(probe.toPath());
+            try
+            {
+                Files.createLink(probeLink.toPath(), probe.toPath());
+                writeDigest(probe.toPath(), probe.getName());
+                return getLinkCount(probe.toPath()) == 2 && probe.getName().equals(readDigest(probeLink.toPath()));
+            }
+            finally
+            {
+                Files.deleteIfExists(probeLink.toPath());
+                Files.deleteIfExists(probe.toPath());
+            }
+        }
+        catch (IOException | UnsupportedOperationException | IllegalArgumentException | SecurityException e)
+        {
+            logger.warn(
+                    "Content deduplication is not supported; content will be stored per URL: \n" +
+                    "   store: " + this + "\n" +
+                    "   error: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private static int getLinkCount(Path path) throws IOException
+    {
+        return ((Number) Files.getAttribute(path, ATTR_LINK_COUNT)).intValue();
+    }
+    
+    private static UserDefinedFileAttributeView getAttributeView(Path path)
+    {
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+        if (view == null)
+        {
+            throw new UnsupportedOperationException("User-defined file attributes are not supported: " + path);
+        }
+        return view;
+    }
+    
+    /**
+     * Records the digest against the file and every other link to it
+     */
+    private static void writeDigest(Path path, String digest) throws IOException
+    {
+        getAttributeView(path).write(ATTR_DIGEST, ByteBuffer.wrap(digest.getBytes(StandardCharsets.US_ASCII)));
+    }
+    
+    /**
+     * @return              Returns the digest recorded against the file or <tt>null</tt> if there is none
+     */
+    private static String readDigest(Path path) throws IOException
+    {
+        UserDefinedFileAttributeView view = getAttributeView(path);
+        if (!view.list().contains(ATTR_DIGEST))
+        {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(view.size(ATTR_DIGEST));
+        view.read(ATTR_DIGEST, buffer);
+        buffer.flip();
+        return StandardCharsets.US_ASCII.decode(buffer).toString();
+    }
+    
+    private Object getBlobLock(String digest)
+    {
+        return blobLocks[(digest.hashCode() & 0x7FFFFFFF) % LOCK_STRIPES];
+    }
+    
+    /**
+     * @param digest        the hex-encoded content digest
+     * @return              Returns the file that holds the blob for the digest
+     */
+    /*package*/ File getBlobFile(String digest)
+    {
+        File dir = new File(new File(blobDirectory, digest.substring(0, 2)), digest.substring(2, 4));
+        return new File(dir, digest + ".bin");
+    }
+    
+    /**
+     * Hands out writers that digest the content and registers the listener that links
+     * the finished content to its blob.
+     */
+    @Override
+    protected FileContentWriter createWriter(File file, String contentUrl, ContentReader existingContentReader)
+    {
+        if (!deduplicate)
+        {
+            return super.createWriter(file, contentUrl, existingContentReader);
+        }
+        DeduplicatingFileContentWriter writer = new DeduplicatingFileContentWriter(file, contentUrl, existingContentReader);
+        writer.addListener(new DeduplicatingListener(writer));
+        return writer;
+    }
+    
+    /**
+     * Replaces the freshly-written URL file with a link to the blob holding the same content,
+     * or makes the URL file the blob if the content has not been seen before.
+     * <p>
+     * Failures are not fatal: the content is left in the URL file.
+     */
+    private void deduplicate(DeduplicatingFileContentWriter writer)
+    {
+        File file = writer.getFile();
+        Path urlPath = file.toPath();
+        Path tempPath = new File(file.getParentFile(), file.getName() + ".dedup").toPath();
+        try
+        {
+            long size = file.length();
+            if (size == 0L)
+            {
+                // Nothing to gain
+                return;
+            }
+            String digest = writer.getContentDigest();
+            Path blobPath = getBlobFile(digest).toPath();
+            synchronized (getBlobLock(digest))
+            {
+                if (Files.exists(blobPath) && Files.size(blobPath) == size)
+                {
+                    if (readDigest(blobPath) == null)
+                    {
+                        writeDigest(blobPath, digest);
+                    }
+                    // Link to the existing blob and swap it in for the private copy
+                    Files.createLink(tempPath, blobPath);
+                    Files.move(tempPath, urlPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+                else
+                {
+                    // The private copy becomes the blob
+                    writeDigest(urlPath, digest);
+                    Files.createDirectories(blobPath.getParent());
+                    Files.deleteIfExists(blobPath);
+                    Files.createLink(blobPath, urlPath);
+                }
+            }
+            // done
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Deduplicated content: \n" +
+                        "   url: " + writer.getContentUrl() + "\n" +
+                        "   blob: " + blobPath + "\n" +
+                        "   references: " + (getLinkCount(blobPath) - 1));
+            }
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            logger.warn("Failed to deduplicate content; it will be kept as is: " + writer, e);
+        }
+        finally
+        {
+            try
+            {
+                Files.deleteIfExists(tempPath);
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to remove temporary link: " + tempPath, e);
+            }
+        }
+    }
+    
+    /**
+     * Deletes the URL file and releases its reference to the blob.  The blob itself is
+     * deleted once the last URL that linked to it has gone.
+     * <p>
+     * A linked file without a recorded digest leaves its blob behind for
+     * {@link #purgeUnreferencedBlobs()}.
+     */
+    @Override
+    public boolean delete(String contentUrl)
+    {
+        String digest = null;
+        if (deduplicate && !contentUrl.startsWith(SPOOF_PROTOCOL))
+        {
+            File file = makeFile(contentUrl);
+            try
+            {
+                if (file.exists() && getLinkCount(file.toPath()) > 1)
+                {
+                    digest = readDigest(file.toPath());
+                }
+            }
+            catch (IOException | UnsupportedOperationException e)
+            {
+                logger.warn("Failed to read the content digest; its blob will be left for purging: " + contentUrl, e);
+            }
+        }
+        boolean deleted = super.delete(contentUrl);
+        if (deleted && digest != null)
+        {
+            releaseBlob(digest);
+        }
+        return deleted;
+    }
+    
+    /**
+     * Deletes the blob for the given digest if no content URL links to it any more
+     * 
+     * @return          Returns <tt>true</tt> if the blob was deleted
+     */
+    private boolean releaseBlob(String digest)
+    {
+        File blobFile = getBlobFile(digest);
+        Path blobPath = blobFile.toPath();
+        synchronized (getBlobLock(digest))
+        {
+            try
+            {
+                if (!Files.exists(blobPath) || getLinkCount(blobPath) > 1)
+                {
+                    return false;
+                }
+                Files.delete(blobPath);
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to release content blob: " + blobPath, e);
+                return false;
+            }
+        }
+        Deleter.deleteEmptyParents(blobFile, blobDirectory.getAbsolutePath());
+        // done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Deleted unreferenced content blob: " + blobPath);
+        }
+        return true;
+    }
+    
+    /**
+     * Removes blobs that are no longer linked to by any content URL.  Blobs can only be left
+     * behind if URL files are removed from outside of the store or if deletions race, so this
+     * is a maintenance operation that need not be run regularly.
+     * 
+     * @return          Returns the number of blobs that were deleted
+     */
+    public int purgeUnreferencedBlobs()
+    {
+        if (!deduplicate)
+        {
+            return 0;
+        }
+        return purgeUnreferencedBlobs(blobDirectory);
+    }
+    
+    private int purgeUnreferencedBlobs(File directory)
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return 0;
+        }
+        int count = 0;
+        for (File file : files)
+        {
+            if (file.isDirectory())
+            {
+                count += purgeUnreferencedBlobs(file);
+            }
+            else if (file.getName().endsWith(".bin"))
+            {
+                String digest = file.getName().substring(0, file.getName().length() - 4);
+                if (releaseBlob(digest))
+                {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Links the content to its blob once the content stream has been closed
+     */
+    private class DeduplicatingListener implements ContentStreamListener
+    {
+        private final DeduplicatingFileContentWriter writer;
+        
+        private DeduplicatingListener(DeduplicatingFileContentWriter writer)
+        {
+            this.writer = writer;
+        }
+        
+        @Override
+        public void contentStreamClosed() throws ContentIOException
+        {
+            deduplicate(writer);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+
+/**
+ * A {@link FileContentWriter} that computes a digest of the content as it is written.
+ * <p>
+ * Only strictly sequential writes are digested.  As soon as the client makes a random
+ * change to the file (positional writes, truncation, mapping, etc) the running digest
+ * is discarded and {@link #getContentDigest()} falls back to reading the file once the
+ * channel has been closed.
+ * 
+ * @see DeduplicatingFileContentStore
+ * @since 5.2
+ */
+public class DeduplicatingFileContentWriter extends FileContentWriter
+{
+    /** The digest algorithm used to identify content */
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private MessageDigest digest;
+    private long digestedLength;
+    
+    /**
+     * @param file the file for writing
+     * @param url the relative url that the writer represents
+     * @param existingContentReader a reader of a previous version of this content
+     */
+    public DeduplicatingFileContentWriter(File file, String url, ContentReader existingContentReader)
+    {
+        super(file, url, existingContentReader);
+        this.digest = newDigest();
+        this.digestedLength = 0L;
+    }
+    
+    /**
+     * Get the hex-encoded digest of the content written.  This must only be called once the
+     * content stream has been closed.
+     * 
+     * @return Returns the digest of the content, calculated during the write if possible
+     * @throws IOException if the digest has to be calculated from the file and it cannot be read
+     */
+    public String getContentDigest() throws IOException
+    {
+        File file = getFile();
+        if (digest != null && digestedLength == file.length())
+        {
+            String hex = toHex(digest.digest());
+            // The digest has been reset
+            invalidateDigest();
+            return hex;
+        }
+        return digest(file);
+    }
+    
+    /**
+     * Calculates the digest of an existing file by reading it
+     * 
+     * @param file the file to read
+     * @return Returns the hex-encoded digest of the file content
+     */
+    public static String digest(File file) throws IOException
+    {
+        MessageDigest fileDigest = newDigest();
+        byte[] buffer = new byte[8192];
+        InputStream is = new FileInputStream(file);
+        try
+        {
+            int read;
+            while ((read = is.read(buffer)) != -1)
+            {
+                fileDigest.update(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+        return toHex(fileDigest.digest());
+    }
+    
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new AlfrescoRuntimeException("Digest algorithm not available: " + DIGEST_ALGORITHM, e);
+        }
+    }
+    
+    private static String toHex(byte[] bytes)
+    {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * Discards the running digest so that it is recalculated from the file
+     */
+    private void invalidateDigest()
+    {
+        digest = null;
+    }
+    
+    /**
+     * Digests the bytes that were consumed from the buffer by a write
+     */
+    private void digestWritten(ByteBuffer src, int startPosition)
+    {
+        if (digest == null)
+        {
+            return;
+        }
+        ByteBuffer written = src.duplicate();
+        written.limit(src.position());
+        written.position(startPosition);
+        digestedLength += written.remaining();
+        digest.update(written);
+    }
+    
+    /**
+     * Digests sequential writes before handing over to the normal callbacks
+     */
+    @Override
+    protected FileChannel getCallbackFileChannel(FileChannel directChannel, List<ContentStreamListener> listeners)
+    {
+        return new DigestingFileChannel(directChannel, listeners);
+    }
+    
+    /**
+     * Updates the writer's digest for every sequential write and invalidates it for
+     * any operation that modifies the file out of sequence.
+     */
+    private class DigestingFileChannel extends CallbackFileChannel
+    {
+        public DigestingFileChannel(FileChannel delegate, List<ContentStreamListener> listeners)
+        {
+            super(delegate, listeners);
+        }
+        
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            int startPosition = src.position();
+            int written = super.write(src);
+            digestWritten(src, startPosition);
+            return written;
+        }
+        
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+        {
+            int[] startPositions = new int[length];
+            for (int i = 0; i < length; i++)
+            {
+                startPositions[i] = srcs[offset + i].position();
+            }
+            long written = super.write(srcs, offset, length);
+            for (int i = 0; i < length; i++)
+            {
+                digestWritten(srcs[offset + i], startPositions[i]);
+            }
+            return written;
+        }
+        
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException
+        {
+            invalidateDigest();
+            return super.write(src, position);
+        }
+        
+        @Override
+        public FileChannel position(long newPosition) throws IOException
+        {
+            if (newPosition != digestedLength)
+            {
+                invalidateDigest();
+            }
+            return super.position(newPosition);
+        }
+        
+        @Override
+        public FileChannel truncate(long size) throws IOException
+        {
+            if (size < digestedLength)
+            {
+                invalidateDigest();
+            }
+            return super.truncate(size);
+        }
+        
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException
+        {
+            invalidateDigest();
+            return super.transferFrom(src, position, count);
+        }
+        
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException
+        {
+            if (mode != MapMode.READ_ONLY)
+            {
+                invalidateDigest();
+            }
+            return super.map(mode, position, size);
+        }
+    }
+}
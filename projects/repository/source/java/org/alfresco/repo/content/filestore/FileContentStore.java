@@ -510,7 +510,7 @@ public class FileContentStore
                 contentUrl = newContentUrl;
             }
             // create the writer
-            FileContentWriter writer = new FileContentWriter(file, contentUrl, existingContentReader);
+            FileContentWriter writer = createWriter(file, contentUrl, existingContentReader);
             
             if (contentLimitProvider != null)
             {
@@ -532,6 +532,22 @@ public class FileContentStore
         }
     }
 
+    /**
+     * Constructs the writer handed out by {@link #getWriterInternal(ContentReader, String)}.
+     * The store will apply the content limit and random access settings to the result.
+     * 
+     * @param file                      the new file to write to
+     * @param contentUrl                the URL of the new content
+     * @param existingContentReader     a reader of a previous version of the content
+     * @return                          a writer onto the file
+     * 
+     * @since 5.2
+     */
+    protected FileContentWriter createWriter(File file, String contentUrl, ContentReader existingContentReader)
+    {
+        return new FileContentWriter(file, contentUrl, existingContentReader);
+    }
+
     /**
      * Gets the urls.
      * 
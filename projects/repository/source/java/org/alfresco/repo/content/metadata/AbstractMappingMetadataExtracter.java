@@ -122,6 +122,8 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
     public static final String NAMESPACE_PROPERTY_PREFIX = "namespace.prefix.";
     private static final String ERR_TYPE_CONVERSION = "metadata.extraction.err.type_conversion";
     private static final String PROP_DEFAULT_TIMEOUT = "content.metadataExtracter.default.timeoutMs";
+    private static final String PROP_DEFAULT_MAX_DOCUMENT_SIZE = "content.metadataExtracter.default.maxDocumentSizeMB";
+    private static final String PROP_DEFAULT_MAX_CONCURRENT_EXTRACTIONS = "content.metadataExtracter.default.maxConcurrentExtractionsCount";
     public static final String PROPERTY_PREFIX_METADATA = "metadata.";
     public static final String PROPERTY_COMPONENT_EXTRACT = ".extract.";
     public static final String PROPERTY_COMPONENT_EMBED = ".embed.";
@@ -473,9 +475,10 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
      * Gets the <code>ExecutorService</code> to be used for timeout-aware
      * extraction.
      * <p>
-     * If no <code>ExecutorService</code> has been defined a default
-     * of <code>Executors.newCachedThreadPool()</code> is used during
-     * {@link AbstractMappingMetadataExtracter#init()}.
+     * If no <code>ExecutorService</code> has been defined the registry's
+     * {@link MetadataExtracterRegistry#getScheduler() scheduler} is used or, if
+     * there is none, a default of <code>Executors.newCachedThreadPool()</code> is
+     * created during {@link AbstractMappingMetadataExtracter#init()}.
      * 
      * @return the defined or default <code>ExecutorService</code>
      */
@@ -486,7 +489,7 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
 
     /**
      * Sets the <code>ExecutorService</code> to be used for timeout-aware
-     * extraction.
+     * extraction.  This takes precedence over the registry's scheduler.
      * 
      * @param executorService the <code>ExecutorService</code> for timeouts
      */
@@ -495,6 +498,19 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         this.executorService = executorService;
     }
 
+    /**
+     * @return the registry's shared extraction scheduler, or <tt>null</tt> if this extracter
+     *         has its own <code>ExecutorService</code> or there is no scheduler
+     */
+    protected MetadataExtracterScheduler getScheduler()
+    {
+        if (executorService != null || registry == null)
+        {
+            return null;
+        }
+        return registry.getScheduler();
+    }
+
     /**
      * Set the mapping from document metadata to system metadata.  It is possible to direct
      * an extracted document property to several system properties.  The conversion between
@@ -1056,7 +1072,7 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
                     "  Nothing will be extracted by: " + this);
         }
 
-        if (executorService == null)
+        if (executorService == null && getScheduler() == null)
         {
             executorService = Executors.newCachedThreadPool();
         }
@@ -1065,17 +1081,26 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         {
             if (properties != null)
             {
-                String property = properties.getProperty(PROP_DEFAULT_TIMEOUT);
-                if (property != null)
+                String timeout = properties.getProperty(PROP_DEFAULT_TIMEOUT);
+                String maxDocumentSize = properties.getProperty(PROP_DEFAULT_MAX_DOCUMENT_SIZE);
+                String maxConcurrentExtractions = properties.getProperty(PROP_DEFAULT_MAX_CONCURRENT_EXTRACTIONS);
+                if (timeout != null || maxDocumentSize != null || maxConcurrentExtractions != null)
                 {
-                    Long value = Long.parseLong(property);
-                    if (value != null)
+                    MetadataExtracterLimits limits = new MetadataExtracterLimits();
+                    if (timeout != null)
                     {
-                        MetadataExtracterLimits limits = new MetadataExtracterLimits();
-                        limits.setTimeoutMs(value);
-                        mimetypeLimits = new HashMap<String, MetadataExtracterLimits>(1);
-                        mimetypeLimits.put("*", limits);
+                        limits.setTimeoutMs(Long.parseLong(timeout.trim()));
                     }
+                    if (maxDocumentSize != null)
+                    {
+                        limits.setMaxDocumentSizeMB(Double.parseDouble(maxDocumentSize.trim()));
+                    }
+                    if (maxConcurrentExtractions != null)
+                    {
+                        limits.setMaxConcurrentExtractionsCount(Integer.parseInt(maxConcurrentExtractions.trim()));
+                    }
+                    mimetypeLimits = new HashMap<String, MetadataExtracterLimits>(1);
+                    mimetypeLimits.put("*", limits);
                 }
             }
         }
@@ -1213,9 +1238,10 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         {
             Map<String, Serializable> rawMetadata = null;
             // Check that the content has some meat
-            if (reader.getSize() > 0 && reader.exists())
+            MetadataExtracterLimits limits = getLimits(reader.getMimetype());
+            if (reader.getSize() > 0 && reader.exists() && !isTooLarge(reader, limits))
             {
-                rawMetadata = extractRaw(reader, getLimits(reader.getMimetype()));
+                rawMetadata = extractRaw(reader, limits);
             }
             else
             {
@@ -2004,6 +2030,31 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         return limits;
     }
     
+    /**
+     * Checks the size of the content against the {@link MetadataExtracterLimits#getMaxDocumentSizeMB() maximum document size}.
+     * 
+     * @return <tt>true</tt> if the content is too large for metadata to be extracted
+     */
+    private boolean isTooLarge(ContentReader reader, MetadataExtracterLimits limits)
+    {
+        if (limits == null || limits.getMaxDocumentSizeMB() < 0)
+        {
+            return false;
+        }
+        long maxSize = (long) (limits.getMaxDocumentSizeMB() * 1024 * 1024);
+        if (reader.getSize() <= maxSize)
+        {
+            return false;
+        }
+        if (logger.isInfoEnabled())
+        {
+            logger.info("Metadata not extracted as the content is larger than " + limits.getMaxDocumentSizeMB() + "MB: \n" +
+                    "   Extracter: " + this + "\n" +
+                    "   Content:   " + reader);
+        }
+        return true;
+    }
+
     /**
      * <code>Callable</code> wrapper for the 
      * {@link AbstractMappingMetadataExtracter#extractRaw(ContentReader)} method
@@ -2049,10 +2100,12 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
      * Calls the {@link AbstractMappingMetadataExtracter#extractRaw(ContentReader)} method
      * using the given limits.
      * <p>
-     * Currently the only limit supported by {@link MetadataExtracterLimits} is a timeout
-     * so this method uses {@link AbstractMappingMetadataExtracter#getExecutorService()}
-     * to execute a {@link FutureTask} with any timeout defined.
+     * If the registry has a {@link MetadataExtracterRegistry#getScheduler() scheduler}, and this
+     * extracter has not been given its own <code>ExecutorService</code>, the extraction is always run
+     * by the scheduler, which also enforces the concurrency limits.
      * <p>
+     * Otherwise this method uses {@link AbstractMappingMetadataExtracter#getExecutorService()}
+     * to execute a {@link FutureTask} with any timeout defined.
      * If no timeout limit is defined or is unlimited (-1),
      * the <code>extractRaw</code> method is called directly.
      * 
@@ -2065,7 +2118,8 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
     private Map<String, Serializable> extractRaw(
             ContentReader reader, MetadataExtracterLimits limits) throws Throwable
     {
-        if (limits == null || limits.getTimeoutMs() == -1)
+        MetadataExtracterScheduler scheduler = getScheduler();
+        if (scheduler == null && (limits == null || limits.getTimeoutMs() == -1))
         {
             return extractRaw(reader);
         }
@@ -2074,13 +2128,20 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         try
         {
             proxiedReader = new StreamAwareContentReaderProxy(reader);
+            if (scheduler != null)
+            {
+                return scheduler.execute(new ExtractRawCallable(proxiedReader), reader.getMimetype(), reader.getSize(), limits);
+            }
             task = new FutureTask<Map<String,Serializable>>(new ExtractRawCallable(proxiedReader));
             getExecutorService().execute(task);
             return task.get(limits.getTimeoutMs(), TimeUnit.MILLISECONDS);
         }
         catch (TimeoutException e)
         {
-            task.cancel(true);
+            if (task != null)
+            {
+                task.cancel(true);
+            }
             if (null != proxiedReader)
             {
                 proxiedReader.release();
@@ -2090,7 +2151,10 @@ abstract public class AbstractMappingMetadataExtracter implements MetadataExtrac
         catch (InterruptedException e)
         {
             // We were asked to stop
-            task.cancel(true);
+            if (task != null)
+            {
+                task.cancel(true);
+            }
             return null;
         }
         catch (ExecutionException e)
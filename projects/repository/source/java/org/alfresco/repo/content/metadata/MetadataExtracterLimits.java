@@ -30,7 +30,8 @@ import org.alfresco.api.AlfrescoPublicApi;
 /**
  * Represents maximum values (that result in exceptions if exceeded) or
  * limits on values (that result in EOF (End Of File) being returned
- * early). The only current option is for elapsed time.
+ * early). The options are elapsed time, document size and the number of
+ * concurrent extractions.
  * 
  * @author Ray Gauss II
  */
@@ -38,6 +39,8 @@ import org.alfresco.api.AlfrescoPublicApi;
 public class MetadataExtracterLimits
 {
     private long timeoutMs = -1;
+    private double maxDocumentSizeMB = -1;
+    private int maxConcurrentExtractionsCount = -1;
     
     /**
      * Gets the time in milliseconds after which the metadata extracter will be stopped.
@@ -59,4 +62,45 @@ public class MetadataExtracterLimits
         this.timeoutMs = timeoutMs;
     }
 
+    /**
+     * Gets the size of the largest document, in MB, from which metadata will be extracted.
+     * 
+     * @return the maximum document size or -1 if there is no limit
+     */
+    public double getMaxDocumentSizeMB()
+    {
+        return maxDocumentSizeMB;
+    }
+
+    /**
+     * Sets the size of the largest document, in MB, from which metadata will be extracted.
+     * 
+     * @param maxDocumentSizeMB the maximum document size or -1 if there is no limit
+     */
+    public void setMaxDocumentSizeMB(double maxDocumentSizeMB)
+    {
+        this.maxDocumentSizeMB = maxDocumentSizeMB;
+    }
+
+    /**
+     * Gets the maximum number of extractions of the mimetype that may run at the same time.
+     * Only enforced when extractions are run by a {@link MetadataExtracterScheduler}.
+     * 
+     * @return the maximum number of concurrent extractions or -1 if there is no limit
+     */
+    public int getMaxConcurrentExtractionsCount()
+    {
+        return maxConcurrentExtractionsCount;
+    }
+
+    /**
+     * Sets the maximum number of extractions of the mimetype that may run at the same time.
+     * 
+     * @param maxConcurrentExtractionsCount the maximum number of concurrent extractions or -1 if there is no limit
+     */
+    public void setMaxConcurrentExtractionsCount(int maxConcurrentExtractionsCount)
+    {
+        this.maxConcurrentExtractionsCount = maxConcurrentExtractionsCount;
+    }
+
 }
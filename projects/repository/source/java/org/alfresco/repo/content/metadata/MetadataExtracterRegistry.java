@@ -73,6 +73,7 @@ public class MetadataExtracterRegistry
     private List<MetadataExtracter> extracters;
     private Map<String, List<MetadataExtracter>> extracterCache;
     private Map<String, List<MetadataEmbedder>> embedderCache;
+    private MetadataExtracterScheduler scheduler;
 
     /** Controls read access to the cache */
     private Lock extracterCacheReadLock;
@@ -92,6 +93,25 @@ public class MetadataExtracterRegistry
         extracterCacheWriteLock = extractionCacheLock.writeLock();
     }
     
+    /**
+     * Sets the scheduler that runs the extractions of all the registered extracters that have not been given
+     * their own <code>ExecutorService</code>.
+     * 
+     * @param scheduler a shared, bounded extraction scheduler
+     */
+    public void setScheduler(MetadataExtracterScheduler scheduler)
+    {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the shared extraction scheduler or <tt>null</tt> if there is none
+     */
+    public MetadataExtracterScheduler getScheduler()
+    {
+        return scheduler;
+    }
+
     /**
      * Force the registry to drop its cache of extractors.  This is useful for the case where an extractor
      * becomes available only after the registry has initialized the cache.
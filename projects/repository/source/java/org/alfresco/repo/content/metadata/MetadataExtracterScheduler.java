@@ -0,0 +1,601 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.metadata;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A bounded scheduler for metadata extractions, shared by all the extracters of a
+ * {@link MetadataExtracterRegistry}.
+ * <p>
+ * Extractions run on a fixed number of threads.  Before an extraction is queued the calling thread
+ * must be admitted, which limits:
+ * <ul>
+ *    <li>the number of concurrent extractions of each mimetype, as defined by
+ *        {@link MetadataExtracterLimits#getMaxConcurrentExtractionsCount()}</li>
+ *    <li>the total size of the content being extracted at any one time, as parsers such as PDFBox
+ *        need memory roughly in proportion to the size of the document</li>
+ * </ul>
+ * A burst of large documents therefore waits for capacity rather than starting a thread each.
+ * The timeout of an extraction starts when it gets a thread; the time spent waiting for capacity and
+ * for a thread is bounded by the admission timeout instead.
+ * Capacity is given back when an extraction actually finishes, so an extraction that has timed out but
+ * that ignores the interrupt continues to hold it.
+ * 
+ * @since 5.2
+ */
+public class MetadataExtracterScheduler
+{
+    private static final Log logger = LogFactory.getLog(MetadataExtracterScheduler.class);
+
+    private static final String DEFAULT_NAME = "MetadataExtracter";
+
+    private String name = DEFAULT_NAME;
+    private int poolSize = 4;
+    private int memoryBudgetMB = 256;
+    private long admissionTimeoutMs = -1;
+
+    private ThreadPoolExecutor executor;
+    private Semaphore memoryPermits;
+    private int memoryPermitsKB;
+    private final ConcurrentMap<String, Semaphore> mimetypePermits = new ConcurrentHashMap<String, Semaphore>();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong extractions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong admissionTimeouts = new AtomicLong();
+    private final AtomicLong totalWaitMs = new AtomicLong();
+    private final AtomicLong maxWaitMs = new AtomicLong();
+    private final AtomicLong totalExtractionMs = new AtomicLong();
+    private final AtomicLong maxExtractionMs = new AtomicLong();
+
+    /**
+     * @param name used to name the extraction threads
+     */
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * @param poolSize the number of extractions that may run at the same time
+     */
+    public void setPoolSize(int poolSize)
+    {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * @param memoryBudgetMB the total size of the content that may be extracted at the same time.
+     *                       A document larger than the budget is extracted on its own.
+     *                       Zero or less means that content size is not taken into account.
+     */
+    public void setMemoryBudgetMB(int memoryBudgetMB)
+    {
+        this.memoryBudgetMB = memoryBudgetMB;
+    }
+
+    /**
+     * @param admissionTimeoutMs the time to wait for capacity and for a thread before giving up on
+     *                           an extraction, or -1 to wait for as long as it takes
+     */
+    public void setAdmissionTimeoutMs(long admissionTimeoutMs)
+    {
+        this.admissionTimeoutMs = admissionTimeoutMs;
+    }
+
+    public synchronized void init()
+    {
+        if (executor != null)
+        {
+            return;
+        }
+        if (poolSize < 1)
+        {
+            throw new IllegalArgumentException("The metadata extracter poolSize must be at least 1");
+        }
+        memoryPermitsKB = memoryBudgetMB > 0 ? (int) Math.min(Integer.MAX_VALUE, memoryBudgetMB * 1024L) : 0;
+        memoryPermits = memoryPermitsKB > 0 ? new Semaphore(memoryPermitsKB, true) : null;
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix(name + "-Extract");
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Started " + this);
+        }
+    }
+
+    public synchronized void shutdown()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Runs an extraction once capacity is available and waits for its result.
+     * 
+     * @param work          the extraction
+     * @param mimetype      the mimetype of the content
+     * @param contentSize   the size of the content in bytes
+     * @param limits        the limits of the extracter for the mimetype, may be <tt>null</tt>
+     * @return              the result of the extraction
+     * @throws TimeoutException     if capacity or a thread did not become available within the admission
+     *                              timeout or the extraction did not finish within the limit's timeout
+     *                              (counted from when it started running), in which case it has been cancelled
+     * @throws ExecutionException   wrapping any failure of the extraction
+     * @throws InterruptedException if interrupted whilst waiting, in which case the extraction is cancelled
+     */
+    public <T> T execute(Callable<T> work, String mimetype, long contentSize, MetadataExtracterLimits limits)
+            throws TimeoutException, ExecutionException, InterruptedException
+    {
+        ThreadPoolExecutor executor = getExecutor();
+        long startTime = System.currentTimeMillis();
+        Semaphore mimetypeSemaphore = getMimetypePermits(mimetype, limits);
+        int weightKB = getWeightKB(contentSize);
+
+        long deadline = admissionTimeoutMs < 0 ? -1 : startTime + admissionTimeoutMs;
+        admit(mimetypeSemaphore, weightKB, deadline, mimetype, contentSize);
+        Extraction<T> extraction = new Extraction<T>(work, mimetypeSemaphore, weightKB, startTime);
+        try
+        {
+            executor.execute(extraction);
+        }
+        catch (RejectedExecutionException e)
+        {
+            extraction.cancel(false);
+            throw e;
+        }
+
+        long timeoutMs = limits == null ? -1 : limits.getTimeoutMs();
+        if (timeoutMs != -1)
+        {
+            // Don't let the extraction's timeout run while it is queued behind other extractions
+            awaitStart(extraction, deadline, mimetype, contentSize);
+        }
+        try
+        {
+            if (timeoutMs == -1)
+            {
+                return extraction.get();
+            }
+            long remainingMs = timeoutMs - (System.currentTimeMillis() - extraction.startTime);
+            return extraction.get(Math.max(0L, remainingMs), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            timeouts.incrementAndGet();
+            extraction.cancel(true);
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Metadata extraction of " + mimetype + " (" + contentSize + " bytes) timed out after " +
+                        (System.currentTimeMillis() - startTime) + "ms: " + this);
+            }
+            throw e;
+        }
+        catch (InterruptedException e)
+        {
+            extraction.cancel(true);
+            throw e;
+        }
+    }
+
+    private ThreadPoolExecutor getExecutor()
+    {
+        ThreadPoolExecutor executor = this.executor;
+        if (executor == null)
+        {
+            init();
+            executor = this.executor;
+        }
+        return executor;
+    }
+
+    /**
+     * The first limit seen for a mimetype applies to all extractions of that mimetype.
+     */
+    private Semaphore getMimetypePermits(String mimetype, MetadataExtracterLimits limits)
+    {
+        if (mimetype == null || limits == null || limits.getMaxConcurrentExtractionsCount() <= 0)
+        {
+            return null;
+        }
+        Semaphore semaphore = mimetypePermits.get(mimetype);
+        if (semaphore == null)
+        {
+            semaphore = new Semaphore(limits.getMaxConcurrentExtractionsCount(), true);
+            Semaphore existing = mimetypePermits.putIfAbsent(mimetype, semaphore);
+            if (existing != null)
+            {
+                semaphore = existing;
+            }
+        }
+        return semaphore;
+    }
+
+    private int getWeightKB(long contentSize)
+    {
+        if (memoryPermits == null)
+        {
+            return 0;
+        }
+        long sizeKB = Math.max(1L, (contentSize + 1023L) / 1024L);
+        return (int) Math.min(memoryPermitsKB, sizeKB);
+    }
+
+    private void admit(Semaphore mimetypeSemaphore, int weightKB, long deadline, String mimetype, long contentSize)
+            throws TimeoutException, InterruptedException
+    {
+        boolean mimetypeAdmitted = false;
+        boolean admitted = false;
+        waiting.incrementAndGet();
+        try
+        {
+            if (mimetypeSemaphore != null)
+            {
+                if (!acquire(mimetypeSemaphore, 1, deadline))
+                {
+                    admissionTimedOut(mimetype, contentSize);
+                }
+                mimetypeAdmitted = true;
+            }
+            if (weightKB > 0 && !acquire(memoryPermits, weightKB, deadline))
+            {
+                admissionTimedOut(mimetype, contentSize);
+            }
+            admitted = true;
+        }
+        finally
+        {
+            waiting.decrementAndGet();
+            if (mimetypeAdmitted && !admitted)
+            {
+                mimetypeSemaphore.release();
+            }
+        }
+    }
+
+    /**
+     * Waits for an admitted extraction to get a thread.  If it does not get one before the admission
+     * deadline it is cancelled and gives back its capacity.
+     */
+    private void awaitStart(Extraction<?> extraction, long deadline, String mimetype, long contentSize)
+            throws TimeoutException, InterruptedException
+    {
+        try
+        {
+            if (!extraction.awaitStart(deadline) && extraction.cancelIfQueued())
+            {
+                admissionTimedOut(mimetype, contentSize);
+            }
+            // It has started, or is just about to
+            extraction.awaitStart(-1);
+        }
+        catch (InterruptedException e)
+        {
+            extraction.cancel(true);
+            throw e;
+        }
+    }
+
+    private boolean acquire(Semaphore semaphore, int permits, long deadline) throws InterruptedException
+    {
+        if (deadline == -1)
+        {
+            semaphore.acquire(permits);
+            return true;
+        }
+        return semaphore.tryAcquire(permits, Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private void admissionTimedOut(String mimetype, long contentSize) throws TimeoutException
+    {
+        admissionTimeouts.incrementAndGet();
+        throw new TimeoutException("Timed out after " + admissionTimeoutMs + "ms waiting to extract metadata from " +
+                mimetype + " (" + contentSize + " bytes): " + this);
+    }
+
+    private void release(Semaphore mimetypeSemaphore, int weightKB)
+    {
+        if (weightKB > 0)
+        {
+            memoryPermits.release(weightKB);
+        }
+        if (mimetypeSemaphore != null)
+        {
+            mimetypeSemaphore.release();
+        }
+    }
+
+    private static void recordMax(AtomicLong max, long value)
+    {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value))
+        {
+            // Lost a race - try again
+        }
+    }
+
+    /**
+     * @return the number of callers waiting for capacity
+     */
+    public int getWaitingCount()
+    {
+        return waiting.get();
+    }
+
+    /**
+     * @return the number of extractions that have been admitted but have not yet started
+     */
+    public int getQueuedCount()
+    {
+        ThreadPoolExecutor executor = this.executor;
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of extractions currently running
+     */
+    public int getRunningCount()
+    {
+        return running.get();
+    }
+
+    /**
+     * @return the number of extractions that have finished, successfully or not
+     */
+    public long getExtractionCount()
+    {
+        return extractions.get();
+    }
+
+    /**
+     * @return the number of extractions that threw an exception
+     */
+    public long getFailureCount()
+    {
+        return failures.get();
+    }
+
+    /**
+     * @return the number of extractions that were cancelled because they did not finish in time
+     */
+    public long getTimeoutCount()
+    {
+        return timeouts.get();
+    }
+
+    /**
+     * @return the number of extractions that never started because capacity did not become available in time
+     */
+    public long getAdmissionTimeoutCount()
+    {
+        return admissionTimeouts.get();
+    }
+
+    /**
+     * @return the average time between asking for an extraction and it starting
+     */
+    public long getAverageWaitMs()
+    {
+        long count = extractions.get();
+        return count == 0 ? 0 : totalWaitMs.get() / count;
+    }
+
+    public long getMaxWaitMs()
+    {
+        return maxWaitMs.get();
+    }
+
+    /**
+     * @return the average time taken by the extractions themselves
+     */
+    public long getAverageExtractionMs()
+    {
+        long count = extractions.get();
+        return count == 0 ? 0 : totalExtractionMs.get() / count;
+    }
+
+    public long getMaxExtractionMs()
+    {
+        return maxExtractionMs.get();
+    }
+
+    /**
+     * @return the size of the content that may still be admitted in KB, or -1 if content size is not limited
+     */
+    public int getAvailableMemoryKB()
+    {
+        Semaphore memoryPermits = this.memoryPermits;
+        return memoryPermits == null ? -1 : memoryPermits.availablePermits();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("MetadataExtracterScheduler[name=").append(name)
+          .append(", poolSize=").append(poolSize)
+          .append(", memoryBudgetMB=").append(memoryBudgetMB)
+          .append(", waiting=").append(getWaitingCount())
+          .append(", queued=").append(getQueuedCount())
+          .append(", running=").append(getRunningCount())
+          .append(", extractions=").append(getExtractionCount())
+          .append(", failures=").append(getFailureCount())
+          .append(", timeouts=").append(getTimeoutCount())
+          .append(", admissionTimeouts=").append(getAdmissionTimeoutCount())
+          .append(", averageWaitMs=").append(getAverageWaitMs())
+          .append(", maxWaitMs=").append(getMaxWaitMs())
+          .append(", averageExtractionMs=").append(getAverageExtractionMs())
+          .append(", maxExtractionMs=").append(getMaxExtractionMs())
+          .append("]");
+        return sb.toString();
+    }
+
+    /**
+     * An admitted extraction.  The capacity it holds is given back either when it finishes running or,
+     * if it is cancelled before it starts, when it is cancelled.
+     */
+    private class Extraction<T> extends FutureTask<T>
+    {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int RELEASED = 2;
+
+        private final Semaphore mimetypeSemaphore;
+        private final int weightKB;
+        private final long requestTime;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile long startTime;
+
+        private Extraction(Callable<T> work, Semaphore mimetypeSemaphore, int weightKB, long requestTime)
+        {
+            super(work);
+            this.mimetypeSemaphore = mimetypeSemaphore;
+            this.weightKB = weightKB;
+            this.requestTime = requestTime;
+        }
+
+        @Override
+        public void run()
+        {
+            if (!state.compareAndSet(QUEUED, RUNNING))
+            {
+                // Cancelled before it started
+                return;
+            }
+            startTime = System.currentTimeMillis();
+            running.incrementAndGet();
+            started.countDown();
+            try
+            {
+                super.run();
+            }
+            finally
+            {
+                finished();
+            }
+        }
+
+        @Override
+        protected void set(T result)
+        {
+            // Give back the capacity before the waiting caller sees the result
+            finished();
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable t)
+        {
+            if (!isCancelled())
+            {
+                failures.incrementAndGet();
+            }
+            finished();
+            super.setException(t);
+        }
+
+        /**
+         * @param deadline  the time to wait until, or -1 to wait for as long as it takes
+         * @return          <tt>true</tt> if the extraction has started running
+         */
+        private boolean awaitStart(long deadline) throws InterruptedException
+        {
+            if (deadline == -1)
+            {
+                started.await();
+                return true;
+            }
+            return started.await(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @return          <tt>true</tt> if the extraction had not started and has been cancelled
+         */
+        private boolean cancelIfQueued()
+        {
+            if (!state.compareAndSet(QUEUED, RELEASED))
+            {
+                return false;
+            }
+            release(mimetypeSemaphore, weightKB);
+            cancel(false);
+            return true;
+        }
+
+        private void finished()
+        {
+            if (state.compareAndSet(RUNNING, RELEASED))
+            {
+                long endTime = System.currentTimeMillis();
+                running.decrementAndGet();
+                extractions.incrementAndGet();
+                totalWaitMs.addAndGet(startTime - requestTime);
+                recordMax(maxWaitMs, startTime - requestTime);
+                totalExtractionMs.addAndGet(endTime - startTime);
+                recordMax(maxExtractionMs, endTime - startTime);
+                release(mimetypeSemaphore, weightKB);
+            }
+        }
+
+        @Override
+        protected void done()
+        {
+            if (state.compareAndSet(QUEUED, RELEASED))
+            {
+                // Cancelled before it started, so it will never run
+                release(mimetypeSemaphore, weightKB);
+            }
+        }
+    }
+}
@@ -50,6 +50,9 @@ public class ActivityFeedEntity
     public static final String KEY_ACTIVITY_FEED_TYPE = "activityType";
     public static final String KEY_ACTIVITY_FEED_SUMMARY = "activitySummary";
     
+    // feed user id prefix of the activities of a large site, stored once for all its members
+    public static final String SITE_MEMBERS_FEED_USERID_PREFIX = "#members#";
+    
     private Long id; // internal DB-generated id
     private String activityType;
     private String activitySummary;
@@ -62,6 +65,42 @@ public class ActivityFeedEntity
     private Date feedDate; // for debug
     private long postId; // for debug - not an explicit FK constraint, could be used to implement re-generate
     
+    /**
+     * @param siteNetwork       the (tenant-specific) site network
+     * @return                  the feed user id under which the activities of the site are stored for all its members
+     */
+    public static String getSiteMembersFeedUserId(String siteNetwork)
+    {
+        return SITE_MEMBERS_FEED_USERID_PREFIX + siteNetwork;
+    }
+    
+    public static boolean isSiteMembersFeedUserId(String feedUserId)
+    {
+        return (feedUserId != null) && feedUserId.startsWith(SITE_MEMBERS_FEED_USERID_PREFIX);
+    }
+    
+    /**
+     * Copy this feed entry for a given feed user, eg. when merging a site members feed entry into a user feed
+     * 
+     * @param feedUserId        the feed user of the copy
+     * @return                  a new feed entry
+     */
+    public ActivityFeedEntity copyFor(String feedUserId)
+    {
+        ActivityFeedEntity copy = new ActivityFeedEntity();
+        copy.id = id;
+        copy.activityType = activityType;
+        copy.activitySummary = activitySummary;
+        copy.setFeedUserId(feedUserId);
+        copy.postUserId = postUserId;
+        copy.postUserAvatarNodeRef = postUserAvatarNodeRef;
+        copy.siteNetwork = siteNetwork;
+        copy.appTool = appTool;
+        copy.postDate = postDate;
+        copy.feedDate = feedDate;
+        copy.postId = postId;
+        return copy;
+    }
 
     public Long getId()
     {
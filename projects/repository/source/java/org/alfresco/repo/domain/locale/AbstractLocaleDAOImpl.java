@@ -28,6 +28,7 @@ package org.alfresco.repo.domain.locale;
 import java.util.Locale;
 
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.cache.lookup.DenseIdLookupCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
 import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
@@ -57,6 +58,11 @@ public abstract class AbstractLocaleDAOImpl implements LocaleDAO
      * VALUE KEY: Locale<br/>
      */
     private EntityLookupCache<Long, String, String> localeEntityCache;
+    /**
+     * Process-local cache of the Locale values, in front of the shared cache.  Locale entities
+     * are never changed or deleted, so this never needs to be invalidated.
+     */
+    private final DenseIdLookupCache<String> localesById = new DenseIdLookupCache<String>();
     
     /**
      * Set the cache that maintains the ID-Locale mappings and vice-versa (bi-directional)
@@ -108,12 +114,17 @@ public abstract class AbstractLocaleDAOImpl implements LocaleDAO
             throw new IllegalArgumentException("Cannot look up entity by null ID.");
         }
         
-        Pair<Long, String> entityPair = localeEntityCache.getByKey(id);
-        if (entityPair == null)
+        String localeStr = localesById.getValue(id);
+        if (localeStr == null)
         {
-            throw new DataIntegrityViolationException("No locale exists for ID " + id);
+            Pair<Long, String> entityPair = localeEntityCache.getByKey(id);
+            if (entityPair == null)
+            {
+                throw new DataIntegrityViolationException("No locale exists for ID " + id);
+            }
+            localeStr = entityPair.getSecond();
+            localesById.put(id, localeStr);
         }
-        String localeStr = entityPair.getSecond();
         // Convert the locale string to a locale
         Locale locale = null;
         if (LocaleEntity.DEFAULT_LOCALE_SUBSTITUTE.equals(localeStr))
@@ -122,7 +133,7 @@ public abstract class AbstractLocaleDAOImpl implements LocaleDAO
         }
         else
         {
-            locale = DefaultTypeConverter.INSTANCE.convert(Locale.class, entityPair.getSecond());
+            locale = DefaultTypeConverter.INSTANCE.convert(Locale.class, localeStr);
         }
         
         return new Pair<Long, Locale>(id, locale);
@@ -170,6 +181,11 @@ public abstract class AbstractLocaleDAOImpl implements LocaleDAO
             throw new IllegalArgumentException("Cannot look up entity by null locale.");
         }
         
+        Long id = localesById.getId(localeStr);
+        if (id != null)
+        {
+            return new Pair<Long, Locale>(id, locale);
+        }
         Pair<Long, String> entityPair = localeEntityCache.getByValue(localeStr);
         if (entityPair == null)
         {
@@ -177,6 +193,7 @@ public abstract class AbstractLocaleDAOImpl implements LocaleDAO
         }
         else
         {
+            localesById.put(entityPair.getFirst(), localeStr);
             return new Pair<Long, Locale>(entityPair.getFirst(), locale);
         }
     }
@@ -207,11 +224,17 @@ public abstract class AbstractLocaleDAOImpl implements LocaleDAO
             throw new IllegalArgumentException("Cannot look up entity by null locale.");
         }
         
+        Long id = localesById.getId(localeStr);
+        if (id != null)
+        {
+            return new Pair<Long, Locale>(id, locale);
+        }
         Pair<Long, String> entityPair = localeEntityCache.getOrCreateByValue(localeStr);
         if (entityPair == null)
         {
             throw new RuntimeException("Locale should have been created.");
         }
+        localesById.put(entityPair.getFirst(), localeStr);
         return new Pair<Long, Locale>(entityPair.getFirst(), locale);
     }
     
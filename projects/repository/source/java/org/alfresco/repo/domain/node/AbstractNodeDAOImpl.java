@@ -35,6 +35,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -51,6 +52,7 @@ import org.alfresco.ibatis.BatchingDAO;
 import org.alfresco.ibatis.RetryingCallbackHelper;
 import org.alfresco.ibatis.RetryingCallbackHelper.RetryingCallback;
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.HotKeyRecorder;
 import org.alfresco.repo.cache.NullCache;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
@@ -59,6 +61,7 @@ import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOA
 import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.domain.control.ControlDAO;
 import org.alfresco.repo.domain.locale.LocaleDAO;
+import org.alfresco.repo.domain.node.PrimaryPathCache.CachedPath;
 import org.alfresco.repo.domain.permissions.AccessControlListDAO;
 import org.alfresco.repo.domain.permissions.AclDAO;
 import org.alfresco.repo.domain.qname.QNameDAO;
@@ -124,6 +127,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     
     private static final String KEY_LOST_NODE_PAIRS = AbstractNodeDAOImpl.class.getName() + ".lostNodePairs";
     private static final String KEY_DELETED_ASSOCS = AbstractNodeDAOImpl.class.getName() + ".deletedAssocs";
+    private static final String KEY_READ_AHEAD = AbstractNodeDAOImpl.class.getName() + ".readAhead";
     
     protected Log logger = LogFactory.getLog(getClass());
     private Log loggerPaths = LogFactory.getLog(getClass().getName() + ".paths");
@@ -148,6 +152,11 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private NodeIndexer nodeIndexer; 
     
     private int cachingThreshold = 10;
+    private int readAheadWindowSize = 0;
+    private int readAheadMaxNodes = 10000;
+    private final NodeReadAheadStatistics readAheadStatistics = new NodeReadAheadStatistics();
+    private HotKeyRecorder<Long> nodeKeyRecorder;
+    private HotKeyRecorder<Long> aclKeyRecorder;
 
     /**
      * Cache for the Store root nodes by StoreRef:<br/>
@@ -198,6 +207,13 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private ParentAssocsCache parentAssocsCache;
     private int parentAssocsCacheSize;
     private int parentAssocsCacheLimitFactor = 8;
+    /**
+     * Non-clustered cache for primary paths, validated against the node transactions:<br/>
+     * KEY: store ID and node ID <br/>
+     * VALUE: the primary path along with the node and transaction IDs of the ancestors
+     */
+    private PrimaryPathCache primaryPathCache;
+    private int primaryPathCacheSize;
         
     /**
      * Cache for fast lookups of child nodes by <b>cm:name</b>. 
@@ -241,6 +257,70 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
 		this.cachingThreshold = cachingThreshold;
 	}
 
+    /**
+     * Set the number of nodes that are pre-cached together when a node registered for
+     * read-ahead is first visited.  Child association results and canned query results
+     * are registered automatically.
+     * 
+     * @param readAheadWindowSize       the window size or <tt>0</tt> to disable read-ahead
+     */
+    public void setReadAheadWindowSize(int readAheadWindowSize)
+    {
+        this.readAheadWindowSize = readAheadWindowSize;
+    }
+
+    /**
+     * @return                          the number of nodes that are pre-cached together
+     */
+    public int getReadAheadWindowSize()
+    {
+        return readAheadWindowSize;
+    }
+
+    /**
+     * Set the maximum number of nodes registered for read-ahead in a transaction.  Only the first
+     * nodes of a longer list are registered and, when the limit is reached, the nodes registered
+     * first are forgotten.
+     * 
+     * @param readAheadMaxNodes         the maximum number of registered nodes per transaction
+     */
+    public void setReadAheadMaxNodes(int readAheadMaxNodes)
+    {
+        this.readAheadMaxNodes = readAheadMaxNodes;
+    }
+
+    /**
+     * @param nodeKeyRecorder           records the IDs of the nodes most often looked up (optional)
+     */
+    public void setNodeKeyRecorder(HotKeyRecorder<Long> nodeKeyRecorder)
+    {
+        this.nodeKeyRecorder = nodeKeyRecorder;
+    }
+
+    /**
+     * @param aclKeyRecorder            records the IDs of the ACLs most often checked (optional)
+     */
+    public void setAclKeyRecorder(HotKeyRecorder<Long> aclKeyRecorder)
+    {
+        this.aclKeyRecorder = aclKeyRecorder;
+    }
+
+    /**
+     * @return                          the hit/miss counters for the read-ahead prefetcher
+     */
+    public NodeReadAheadStatistics getReadAheadStatistics()
+    {
+        return readAheadStatistics;
+    }
+
+    /**
+     * @return                          the cache of primary paths or <tt>null</tt> if it is disabled
+     */
+    public PrimaryPathCache getPrimaryPathCache()
+    {
+        return primaryPathCache;
+    }
+
     /**
      * @param policyBehaviourFilter     the service to determine the behaviour for <b>cm:auditable</b> and
      *                                  other inherent capabilities.
@@ -404,6 +484,18 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         this.parentAssocsCacheLimitFactor = parentAssocsCacheLimitFactor;
     }
 
+    /**
+     * Sets the maximum number of primary paths cached for each store.  The paths are used
+     * by {@link #getPaths(Pair, boolean)} to avoid walking up deep hierarchies one parent
+     * association at a time.
+     * 
+     * @param primaryPathCacheSize      the cache size per store or <tt>0</tt> to disable the cache
+     */
+    public void setPrimaryPathCacheSize(int primaryPathCacheSize)
+    {
+        this.primaryPathCacheSize = primaryPathCacheSize;
+    }
+
     /**
      * Set the cache that maintains lookups by child <b>cm:name</b>
      * 
@@ -432,6 +524,11 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
 
         this.nodePropertyHelper = new NodePropertyHelper(dictionaryService, qnameDAO, localeDAO, contentDataDAO);
         this.parentAssocsCache = new ParentAssocsCache(this.parentAssocsCacheSize, this.parentAssocsCacheLimitFactor);
+        if (this.primaryPathCacheSize > 0)
+        {
+            this.primaryPathCache = new PrimaryPathCache(this.primaryPathCacheSize);
+        }
+        this.nodesCache.setKeyRecorder(nodeKeyRecorder);
     }
     
     /*
@@ -509,6 +606,10 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         aspectsCache.clear();
         propertiesCache.clear();
         parentAssocsCache.clear();
+        if (primaryPathCache != null)
+        {
+            primaryPathCache.clear();
+        }
     }
     
     /**
@@ -1229,7 +1330,13 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     public Long getNodeAclId(Long nodeId)
     {
         Node node = getNodeNotNull(nodeId, true);
-        return node.getAclId();
+        readAhead(node);
+        Long aclId = node.getAclId();
+        if (aclKeyRecorder != null)
+        {
+            aclKeyRecorder.record(aclId);
+        }
+        return aclId;
     }
     
     @Override
@@ -2571,7 +2678,9 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
      */
     private Map<QName, Serializable> getNodePropertiesCached(Long nodeId)
     {
-        NodeVersionKey nodeVersionKey = getNodeNotNull(nodeId, false).getNodeVersionKey();
+        Node node = getNodeNotNull(nodeId, false);
+        readAhead(node);
+        NodeVersionKey nodeVersionKey = node.getNodeVersionKey();
         Pair<NodeVersionKey, Map<QName, Serializable>> cacheEntry = propertiesCache.getByKey(nodeVersionKey);
         if (cacheEntry == null)
         {
@@ -2833,7 +2942,9 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
      */
     private Set<QName> getNodeAspectsCached(Long nodeId)
     {
-        NodeVersionKey nodeVersionKey = getNodeNotNull(nodeId, false).getNodeVersionKey();
+        Node node = getNodeNotNull(nodeId, false);
+        readAhead(node);
+        NodeVersionKey nodeVersionKey = node.getNodeVersionKey();
         Pair<NodeVersionKey, Set<QName>> cacheEntry = aspectsCache.getByKey(nodeVersionKey);
         if (cacheEntry == null)
         {
@@ -3485,6 +3596,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     {
         private final ChildAssocRefQueryCallback callback;
         private final boolean preload;
+        private final boolean readAhead;
         private final List<NodeRef> nodeRefs;
         /**
          * @param callback      the callback to batch around
@@ -3493,7 +3605,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         {
             this.callback = callback;
             this.preload = callback.preLoadNodes();
-            if (preload)
+            this.readAhead = !preload && readAheadWindowSize > 0;
+            if (preload || readAhead)
             {
                 nodeRefs = new LinkedList<NodeRef>();           // No memory required
             }
@@ -3525,8 +3638,9 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
                 Pair<Long, NodeRef> parentNodePair,
                 Pair<Long, NodeRef> childNodePair)
         {
-            if (preload)
+            if (preload || (readAhead && nodeRefs.size() < readAheadMaxNodes))
             {
+                // Nodes beyond the read-ahead limit would not be registered
                 nodeRefs.add(childNodePair.getSecond());
             }
             return callback.handle(childAssocPair, parentNodePair, childNodePair);
@@ -3539,6 +3653,12 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
                 cacheNodes(nodeRefs);
                 nodeRefs.clear();
             }
+            else if (readAhead && nodeRefs.size() > 0)
+            {
+                // The client will visit the nodes after the query: load them as they are reached
+                readAheadNodes(nodeRefs);
+                nodeRefs.clear();
+            }
             // Done
             callback.done();
         }                               
@@ -3877,8 +3997,23 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         // create storage for touched associations
         Stack<Long> assocIdStack = new Stack<Long>();
         
-        // call recursive method to sort it out
-        prependPaths(nodePair, null, currentPath, paths, assocIdStack, primaryOnly);
+        // use the cached primary path if it is all that is needed
+        Node node = getNodeNotNull(nodePair.getFirst(), false);
+        CachedPath cachedPath = getPrimaryPathCached(node);
+        if (cachedPath != null && (primaryOnly || cachedPath.isOnlyPath()))
+        {
+            paths.add(cachedPath.toPath());
+        }
+        else
+        {
+            // call recursive method to sort it out
+            prependPaths(nodePair, null, currentPath, paths, assocIdStack, primaryOnly);
+            // a single path is also the primary path
+            if (paths.size() == 1)
+            {
+                setPrimaryPathCached(node, paths.get(0));
+            }
+        }
         
         // check that for the primary only case we have exactly one path
         if (primaryOnly && paths.size() != 1)
@@ -4120,6 +4255,19 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             currentRootNodePair = new Pair<StoreRef, NodeRef>(currentStoreRef, rootNodePair.getSecond());
         }
         
+        // complete the path using the cached path of an ancestor if there are no other paths to consider
+        if (currentPath.size() > 0)
+        {
+            CachedPath cachedPath = getPrimaryPathCached(getNodeNotNull(currentNodeId, false));
+            if (cachedPath != null && cachedPath.size() > 1 && (primaryOnly || cachedPath.isOnlyPath()))
+            {
+                Path pathToSave = cachedPath.toPath();
+                pathToSave.append(currentPath);
+                completedPaths.add(pathToSave);
+                return;
+            }
+        }
+        
         // get the parent associations of the given node
         ParentAssocsInfo parentAssocInfo = getParentAssocsCached(currentNodeId); // note: currently may throw NotLiveNodeException
         // bulk load parents as we are certain to hit them in the next call
@@ -4391,6 +4539,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private ParentAssocsInfo getParentAssocsCached(Long nodeId)
     {
         Node node = getNodeNotNull(nodeId, false);
+        readAhead(node);
         Pair<Long, String> cacheKey = new Pair<Long, String>(nodeId, node.getTransaction().getChangeTxnId());
         ParentAssocsInfo value = parentAssocsCache.get(cacheKey);
         if (value == null)
@@ -4424,6 +4573,101 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         parentAssocsCache.put(cacheKey, parentAssocs);
     }
     
+    /**
+     * @return              the cached primary path of the node if it is still valid
+     */
+    private CachedPath getPrimaryPathCached(Node node)
+    {
+        if (primaryPathCache == null)
+        {
+            return null;
+        }
+        CachedPath cachedPath = primaryPathCache.get(node.getStore().getId(), node.getId());
+        if (cachedPath == null)
+        {
+            return null;
+        }
+        // Check from the bottom up that no node on the path has been changed since
+        Long currentTxnId = getCurrentTransactionId(false);
+        Node pathNode = node;
+        for (int i = 0; i < cachedPath.size(); i++)
+        {
+            if (i > 0)
+            {
+                pathNode = getNodeNotNull(cachedPath.getNodeId(i), false);
+            }
+            Long txnId = pathNode.getTransaction().getId();
+            if (txnId.longValue() != cachedPath.getTxnId(i) || txnId.equals(currentTxnId))
+            {
+                // The node was changed or is being changed by the current transaction.
+                // A change to the hierarchy in this transaction will not necessarily change the node's transaction.
+                return null;
+            }
+        }
+        return cachedPath;
+    }
+    
+    /**
+     * Cache the primary path of a node unless the current transaction has changed any of the nodes on it
+     * 
+     * @param node          the node
+     * @param primaryPath   the primary path of the node
+     */
+    private void setPrimaryPathCached(Node node, Path primaryPath)
+    {
+        if (primaryPathCache == null)
+        {
+            return;
+        }
+        Long currentTxnId = getCurrentTransactionId(false);
+        List<Long> nodeIds = new ArrayList<Long>(primaryPath.size());
+        List<Long> txnIds = new ArrayList<Long>(primaryPath.size());
+        boolean onlyPath = true;
+        CachedPath ancestorPath = null;
+        Node pathNode = node;
+        while (true)
+        {
+            Long txnId = pathNode.getTransaction().getId();
+            if (txnId.equals(currentTxnId))
+            {
+                return;
+            }
+            nodeIds.add(pathNode.getId());
+            txnIds.add(txnId);
+            ParentAssocsInfo parentAssocInfo = getParentAssocsCached(pathNode.getId());
+            ChildAssocEntity primaryParentAssoc = parentAssocInfo.getPrimaryParentAssoc();
+            if (primaryParentAssoc == null)
+            {
+                // Reached the top
+                onlyPath &= parentAssocInfo.getParentAssocs().isEmpty();
+                break;
+            }
+            // Secondary parents and roots within the hierarchy lead to other paths
+            onlyPath &= parentAssocInfo.getParentAssocs().size() == 1 && !parentAssocInfo.isRoot();
+            if (nodeIds.size() >= primaryPath.size())
+            {
+                // The hierarchy has changed under us
+                return;
+            }
+            pathNode = getNodeNotNull(primaryParentAssoc.getParentNode().getId(), false);
+            ancestorPath = getPrimaryPathCached(pathNode);
+            if (ancestorPath != null)
+            {
+                break;
+            }
+        }
+        int size = nodeIds.size() + (ancestorPath == null ? 0 : ancestorPath.size());
+        if (size != primaryPath.size())
+        {
+            // The hierarchy has changed under us
+            return;
+        }
+        CachedPath cachedPath = (ancestorPath == null)
+                ? new CachedPath(nodeIds, txnIds, primaryPath, onlyPath)
+                : ancestorPath.prepend(nodeIds, txnIds, primaryPath, onlyPath);
+        primaryPathCache.put(node.getStore().getId(), node.getId(), cachedPath);
+    }
+    
     /**
      * Helper method to copy cache values from one key to another
      */
@@ -4738,7 +4982,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             {
                 // Preload
                 List<Node> nodes = selectNodesByUuids(storeId, batch);
-                cacheNodesNoBatch(nodes);
+                cacheNodesNoBatch(nodes, false);
                 batch.clear();
             }
         }
@@ -4746,7 +4990,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         if (batch.size() > 0)
         {
             List<Node> nodes = selectNodesByUuids(storeId, batch);
-            cacheNodesNoBatch(nodes);
+            cacheNodesNoBatch(nodes, false);
         }
     }
     
@@ -4761,7 +5005,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             {
                 // Preload
                 List<Node> nodes = selectNodesByIds(batch);
-                cacheNodesNoBatch(nodes);
+                cacheNodesNoBatch(nodes, false);
                 batch.clear();
             }
         }
@@ -4769,14 +5013,16 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         if (batch.size() > 0)
         {
             List<Node> nodes = selectNodesByIds(batch);
-            cacheNodesNoBatch(nodes);
+            cacheNodesNoBatch(nodes, false);
         }
     }
     
     /**
      * Bulk-fetch the nodes for a given store.  All nodes passed in are fetched.
+     * 
+     * @param includeParentAssocs       <tt>true</tt> to also bulk-fetch the parent associations
      */
-    private void cacheNodesNoBatch(List<Node> nodes)
+    private void cacheNodesNoBatch(List<Node> nodes, boolean includeParentAssocs)
     {
         // Get the nodes
         SortedSet<Long> aspectNodeIds = new TreeSet<Long>();
@@ -4832,6 +5078,247 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             Map<QName, Serializable> props = nodePropertyHelper.convertToPublicProperties(propertyValues);
             setNodePropertiesCached(nodeId, props);
         }
+        
+        if (includeParentAssocs)
+        {
+            cacheParentAssocsNoBatch(nodes);
+        }
+    }
+    
+    /**
+     * Bulk-fetch the parent associations of the given nodes.  The aspects of the nodes must already
+     * be cached.  Nodes without parents or with out-of-date versions are left for the individual
+     * lookup to deal with.
+     */
+    private void cacheParentAssocsNoBatch(List<Node> nodes)
+    {
+        Map<Long, Node> nodesById = new HashMap<Long, Node>(nodes.size() * 2);
+        for (Node node : nodes)
+        {
+            Pair<Long, String> cacheKey = new Pair<Long, String>(node.getId(), node.getTransaction().getChangeTxnId());
+            if (parentAssocsCache.get(cacheKey) == null)
+            {
+                nodesById.put(node.getId(), node);
+            }
+        }
+        if (nodesById.isEmpty())
+        {
+            return;
+        }
+        
+        Map<Long, List<ChildAssocEntity>> assocsByChildId = new HashMap<Long, List<ChildAssocEntity>>(nodesById.size() * 2);
+        for (ChildAssocEntity assoc : selectParentAssocs(new TreeSet<Long>(nodesById.keySet())))
+        {
+            Long childNodeId = assoc.getChildNode().getId();
+            List<ChildAssocEntity> assocs = assocsByChildId.get(childNodeId);
+            if (assocs == null)
+            {
+                assocs = new ArrayList<ChildAssocEntity>(1);
+                assocsByChildId.put(childNodeId, assocs);
+            }
+            assocs.add(assoc);
+        }
+        
+        for (Map.Entry<Long, List<ChildAssocEntity>> entry : assocsByChildId.entrySet())
+        {
+            Node node = nodesById.get(entry.getKey());
+            List<ChildAssocEntity> assocs = entry.getValue();
+            NodeVersionKey nodeVersionKey = node.getNodeVersionKey();
+            // Only cache what matches the version of the node that we are holding
+            if (!assocs.get(0).getChildNode().getNodeVersionKey().equals(nodeVersionKey))
+            {
+                continue;
+            }
+            Set<QName> aspects = aspectsCache.getValue(nodeVersionKey);
+            if (aspects == null)
+            {
+                continue;
+            }
+            boolean isRoot = aspects.contains(ContentModel.ASPECT_ROOT);
+            boolean isStoreRoot = ContentModel.TYPE_STOREROOT.equals(qnameDAO.getQName(node.getTypeQNameId()).getSecond());
+            ParentAssocsInfo value = new ParentAssocsInfo(isRoot, isStoreRoot, assocs);
+            Pair<Long, String> cacheKey = new Pair<Long, String>(node.getId(), node.getTransaction().getChangeTxnId());
+            parentAssocsCache.put(cacheKey, value);
+        }
+    }
+    
+    /**
+     * Transaction-bound state of the nodes registered for read-ahead
+     */
+    private static class ReadAheadWindows
+    {
+        private final Map<NodeRef, ReadAheadEntry> entries;
+        private boolean loading;
+        
+        private ReadAheadWindows(final int maxNodes)
+        {
+            // The nodes registered first are forgotten when there are too many
+            this.entries = new LinkedHashMap<NodeRef, ReadAheadEntry>(256)
+            {
+                private static final long serialVersionUID = 1L;
+                
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<NodeRef, ReadAheadEntry> eldest)
+                {
+                    return size() > maxNodes;
+                }
+            };
+        }
+    }
+    
+    /**
+     * The position of a registered node within the list that it was registered with
+     */
+    private static class ReadAheadEntry
+    {
+        private final List<NodeRef> nodeRefs;
+        private final int index;
+        private boolean loaded;
+        
+        private ReadAheadEntry(List<NodeRef> nodeRefs, int index)
+        {
+            this.nodeRefs = nodeRefs;
+            this.index = index;
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The nodes are bound to the current transaction and are loaded in windows of
+     * <b>readAheadWindowSize</b> nodes as they are visited.  At most <b>readAheadMaxNodes</b>
+     * nodes of the list are registered.
+     */
+    @Override
+    public boolean readAheadNodes(List<NodeRef> nodeRefs)
+    {
+        if (readAheadWindowSize <= 0)
+        {
+            return false;
+        }
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            return false;
+        }
+        if (nodeRefs.size() < cachingThreshold)
+        {
+            // Too few nodes to be worth it, but there is nothing for the client to do either
+            return true;
+        }
+        ReadAheadWindows windows = AlfrescoTransactionSupport.getResource(KEY_READ_AHEAD);
+        if (windows == null)
+        {
+            windows = new ReadAheadWindows(readAheadMaxNodes);
+            AlfrescoTransactionSupport.bindResource(KEY_READ_AHEAD, windows);
+        }
+        // Take a copy as the client is free to modify the list; the nodes visited first are kept
+        int size = Math.min(nodeRefs.size(), readAheadMaxNodes);
+        List<NodeRef> registered = new ArrayList<NodeRef>(nodeRefs.subList(0, size));
+        for (int i = 0; i < size; i++)
+        {
+            NodeRef nodeRef = registered.get(i);
+            ReadAheadEntry existing = windows.entries.get(nodeRef);
+            if (existing == null || !existing.loaded)
+            {
+                // The latest visiting order wins
+                windows.entries.put(nodeRef, new ReadAheadEntry(registered, i));
+            }
+        }
+        readAheadStatistics.recordRegistered(size);
+        return true;
+    }
+    
+    /**
+     * Pre-cache the next window of registered nodes if the given node was registered for
+     * read-ahead but has not been loaded yet.
+     */
+    private void readAhead(Node node)
+    {
+        if (readAheadWindowSize <= 0)
+        {
+            return;
+        }
+        ReadAheadWindows windows = AlfrescoTransactionSupport.getResource(KEY_READ_AHEAD);
+        if (windows == null || windows.loading)
+        {
+            return;
+        }
+        ReadAheadEntry entry = windows.entries.remove(node.getNodeRef());
+        if (entry == null)
+        {
+            return;                 // Not registered or visited already
+        }
+        else if (entry.loaded)
+        {
+            readAheadStatistics.recordHit();
+            return;
+        }
+        readAheadStatistics.recordMiss();
+        
+        // Collect the window, starting with the node being visited
+        List<NodeRef> window = new ArrayList<NodeRef>(readAheadWindowSize);
+        window.add(node.getNodeRef());
+        int size = entry.nodeRefs.size();
+        for (int i = entry.index + 1; i < size && window.size() < readAheadWindowSize; i++)
+        {
+            NodeRef nodeRef = entry.nodeRefs.get(i);
+            ReadAheadEntry nextEntry = windows.entries.get(nodeRef);
+            if (nextEntry == null || nextEntry.loaded)
+            {
+                continue;
+            }
+            nextEntry.loaded = true;
+            window.add(nodeRef);
+        }
+        
+        windows.loading = true;
+        try
+        {
+            cacheNodesForReadAhead(window);
+        }
+        finally
+        {
+            windows.loading = false;
+        }
+        readAheadStatistics.recordWindow(window.size());
+        if (isDebugEnabled)
+        {
+            logger.debug("Read-ahead of " + window.size() + " nodes: " + readAheadStatistics);
+        }
+    }
+    
+    /**
+     * Loads nodes, aspects, properties, content data and parent associations for a read-ahead window.
+     * Nodes that are already in the cache are not selected again.
+     */
+    private void cacheNodesForReadAhead(List<NodeRef> nodeRefs)
+    {
+        List<Node> nodes = new ArrayList<Node>(nodeRefs.size());
+        Map<StoreRef, SortedSet<String>> uuidsByStore = new HashMap<StoreRef, SortedSet<String>>(3);
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            Long nodeId = nodesCache.getKey(nodeRef);
+            Node node = (nodeId == null) ? null : nodesCache.getValue(nodeId);
+            if (node != null)
+            {
+                nodes.add(node);
+                continue;
+            }
+            StoreRef storeRef = nodeRef.getStoreRef();
+            SortedSet<String> uuids = uuidsByStore.get(storeRef);
+            if (uuids == null)
+            {
+                uuids = new TreeSet<String>();
+                uuidsByStore.put(storeRef, uuids);
+            }
+            uuids.add(nodeRef.getId());
+        }
+        for (Map.Entry<StoreRef, SortedSet<String>> entry : uuidsByStore.entrySet())
+        {
+            Long storeId = getStoreNotNull(entry.getKey()).getId();
+            nodes.addAll(selectNodesByUuids(storeId, entry.getValue()));
+        }
+        cacheNodesNoBatch(nodes, true);
     }
 
     /**
@@ -5105,6 +5592,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             Boolean isPrimary,
             ChildAssocRefQueryCallback resultsCallback);
     protected abstract List<ChildAssocEntity> selectParentAssocs(Long childNodeId);
+    protected abstract List<ChildAssocEntity> selectParentAssocs(SortedSet<Long> childNodeIds);
     /**
      * No DB constraint, so multiple returned
      */
@@ -170,6 +170,14 @@ public class NodeEntity implements Node, PermissionCheckValue, Serializable, Clo
         }
     }
     
+    /**
+     * @return                  <tt>true</tt> if the entity has been {@link #lock() locked}
+     */
+    synchronized boolean isLocked()
+    {
+        return locked;
+    }
+    
     private synchronized final void checkLock()
     {
         if (locked)
@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.alfresco.repo.cache.OffHeapValueCodec;
+import org.alfresco.repo.cache.OffHeapValueSerializer;
+
+/**
+ * Compact form of {@link NodeEntity} instances held by off-heap node caches.
+ * Locked entities are locked again when they are read back.
+ * 
+ * @since 5.2
+ */
+public class NodeEntityOffHeapCodec implements OffHeapValueCodec<NodeEntity>
+{
+    @Override
+    public Class<NodeEntity> getValueClass()
+    {
+        return NodeEntity.class;
+    }
+
+    @Override
+    public void write(NodeEntity node, DataOutput out, OffHeapValueSerializer serializer) throws IOException
+    {
+        serializer.writeLong(node.getId(), out);
+        serializer.writeLong(node.getVersion(), out);
+        serializer.writeString(node.getUuid(), out);
+        serializer.writeLong(node.getTypeQNameId(), out);
+        serializer.writeLong(node.getLocaleId(), out);
+        serializer.writeLong(node.getAclId(), out);
+        
+        StoreEntity store = node.getStore();
+        out.writeBoolean(store != null);
+        if (store != null)
+        {
+            serializer.writeLong(store.getId(), out);
+            serializer.writeLong(store.getVersion(), out);
+            serializer.writeString(store.getProtocol(), out);
+            serializer.writeString(store.getIdentifier(), out);
+            serializer.writeValue(store.getRootNode(), out);
+        }
+        
+        TransactionEntity txn = node.getTransaction();
+        out.writeBoolean(txn != null);
+        if (txn != null)
+        {
+            serializer.writeLong(txn.getId(), out);
+            serializer.writeLong(txn.getVersion(), out);
+            serializer.writeString(txn.getChangeTxnId(), out);
+            serializer.writeLong(txn.getCommitTimeMs(), out);
+            ServerEntity server = txn.getServer();
+            out.writeBoolean(server != null);
+            if (server != null)
+            {
+                serializer.writeLong(server.getId(), out);
+                serializer.writeLong(server.getVersion(), out);
+                serializer.writeString(server.getIpAddress(), out);
+            }
+        }
+        
+        AuditablePropertiesEntity auditableProps = node.getAuditableProperties();
+        out.writeBoolean(auditableProps != null);
+        if (auditableProps != null)
+        {
+            serializer.writeString(auditableProps.getAuditCreator(), out);
+            serializer.writeString(auditableProps.getAuditCreated(), out);
+            serializer.writeString(auditableProps.getAuditModifier(), out);
+            serializer.writeString(auditableProps.getAuditModified(), out);
+            serializer.writeString(auditableProps.getAuditAccessed(), out);
+        }
+        
+        out.writeBoolean(node.isLocked());
+    }
+
+    @Override
+    public NodeEntity read(DataInput in, OffHeapValueSerializer serializer) throws IOException
+    {
+        NodeEntity node = new NodeEntity();
+        node.setId(serializer.readLong(in));
+        node.setVersion(serializer.readLong(in));
+        node.setUuid(serializer.readString(in));
+        node.setTypeQNameId(serializer.readLong(in));
+        node.setLocaleId(serializer.readLong(in));
+        node.setAclId(serializer.readLong(in));
+        
+        if (in.readBoolean())
+        {
+            StoreEntity store = new StoreEntity();
+            store.setId(serializer.readLong(in));
+            store.setVersion(serializer.readLong(in));
+            store.setProtocol(serializer.readString(in));
+            store.setIdentifier(serializer.readString(in));
+            store.setRootNode((NodeEntity) serializer.readValue(in));
+            node.setStore(store);
+        }
+        
+        if (in.readBoolean())
+        {
+            TransactionEntity txn = new TransactionEntity();
+            txn.setId(serializer.readLong(in));
+            txn.setVersion(serializer.readLong(in));
+            txn.setChangeTxnId(serializer.readString(in));
+            txn.setCommitTimeMs(serializer.readLong(in));
+            if (in.readBoolean())
+            {
+                ServerEntity server = new ServerEntity();
+                server.setId(serializer.readLong(in));
+                server.setVersion(serializer.readLong(in));
+                server.setIpAddress(serializer.readString(in));
+                txn.setServer(server);
+            }
+            node.setTransaction(txn);
+        }
+        
+        if (in.readBoolean())
+        {
+            AuditablePropertiesEntity auditableProps = new AuditablePropertiesEntity();
+            auditableProps.setAuditCreator(serializer.readString(in));
+            auditableProps.setAuditCreated(serializer.readString(in));
+            auditableProps.setAuditModifier(serializer.readString(in));
+            auditableProps.setAuditModified(serializer.readString(in));
+            auditableProps.setAuditAccessed(serializer.readString(in));
+            node.setAuditableProperties(auditableProps);
+        }
+        
+        if (in.readBoolean())
+        {
+            node.lock();
+        }
+        return node;
+    }
+}
@@ -362,7 +362,7 @@ public class NodePropertyHelper
         if (scratch.size() > 0)
         {
             PropertyDefinition propertyDef = dictionaryService.getProperty(propertyQName);
-            Serializable collapsedValue = collapsePropertiesWithSameQName(propertyDef, scratch);
+            Serializable collapsedValue = collapsePropertiesWithSameQName(propertyDef, scratch, getDefaultLocaleId());
             return collapsedValue;
         }
         else
@@ -379,6 +379,8 @@ public class NodePropertyHelper
         {
             return propertyMap;
         }
+        // The default locale is the same for all the values
+        Long defaultLocaleId = getDefaultLocaleId();
         // We need to process the properties in order
         SortedMap<NodePropertyKey, NodePropertyValue> sortedPropertyValues = new TreeMap<NodePropertyKey, NodePropertyValue>(
                 propertyValues);
@@ -411,12 +413,12 @@ public class NodePropertyHelper
                 if (scratch.size() == 1)
                 {
                     // There is no need to collapse list indexes
-                    collapsedValue = collapsePropertiesWithSameQNameAndListIndex(currentPropertyDef, scratch);
+                    collapsedValue = collapsePropertiesWithSameQNameAndListIndex(currentPropertyDef, scratch, defaultLocaleId);
                 }
                 else
                 {
                     // There is more than one value so the list indexes need to be collapsed
-                    collapsedValue = collapsePropertiesWithSameQName(currentPropertyDef, scratch);
+                    collapsedValue = collapsePropertiesWithSameQName(currentPropertyDef, scratch, defaultLocaleId);
                 }
                 boolean forceCollection = false;
                 // If the property is multi-valued then the output property must be a collection
@@ -459,9 +461,20 @@ public class NodePropertyHelper
         return propertyMap;
     }
 
+    /**
+     * @return                  the ID of the default locale or <tt>null</tt> if it has not been persisted yet
+     */
+    private Long getDefaultLocaleId()
+    {
+        // The chance of it being null is vanishingly small, but ...
+        Pair<Long, Locale> defaultLocalePair = localeDAO.getDefaultLocalePair();
+        return (defaultLocalePair == null) ? null : defaultLocalePair.getFirst();
+    }
+
     private Serializable collapsePropertiesWithSameQName(
             PropertyDefinition propertyDef,
-            SortedMap<NodePropertyKey, NodePropertyValue> sortedPropertyValues)
+            SortedMap<NodePropertyKey, NodePropertyValue> sortedPropertyValues,
+            Long defaultLocaleId)
     {
         Serializable result = null;
         Collection<Serializable> collectionResult = null;
@@ -487,7 +500,7 @@ public class NodePropertyHelper
             if (scratch.size() > 0 && (nextListIndex == null || !nextListIndex.equals(currentListIndex)))
             {
                 // We have added something to the scratch properties but the index has just changed
-                Serializable collapsedValue = collapsePropertiesWithSameQNameAndListIndex(propertyDef, scratch);
+                Serializable collapsedValue = collapsePropertiesWithSameQNameAndListIndex(propertyDef, scratch, defaultLocaleId);
                 // Store. If there is a value already, then we must build a collection.
                 if (result == null)
                 {
@@ -545,7 +558,8 @@ public class NodePropertyHelper
      */
     private Serializable collapsePropertiesWithSameQNameAndListIndex(
             PropertyDefinition propertyDef,
-            Map<NodePropertyKey, NodePropertyValue> propertyValues)
+            Map<NodePropertyKey, NodePropertyValue> propertyValues,
+            Long defaultLocaleId)
     {
         int propertyValuesSize = propertyValues.size();
         Serializable value = null;
@@ -558,10 +572,6 @@ public class NodePropertyHelper
         // Do we definitely have MLText?
         boolean isMLText = (propertyDef != null && propertyDef.getDataType().getName().equals(DataTypeDefinition.MLTEXT));
         
-        // Determine the default locale ID.  The chance of it being null is vanishingly small, but ...
-        Pair<Long, Locale> defaultLocalePair = localeDAO.getDefaultLocalePair();
-        Long defaultLocaleId = (defaultLocalePair == null) ? null : defaultLocalePair.getFirst();
-        
         Integer listIndex = null;
         for (Map.Entry<NodePropertyKey, NodePropertyValue> entry : propertyValues.entrySet())
         {
@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running counters for the node read-ahead prefetcher.
+ * <p>
+ * A <i>hit</i> is a node that was visited after it had already been pulled in by a read-ahead
+ * window; a <i>miss</i> is a visit to a registered node that had not been loaded yet and which
+ * therefore triggered the load of the next window.
+ * 
+ * @since 5.2
+ */
+public class NodeReadAheadStatistics
+{
+    private final AtomicLong registeredNodes = new AtomicLong();
+    private final AtomicLong windows = new AtomicLong();
+    private final AtomicLong prefetchedNodes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    void recordRegistered(int count)
+    {
+        registeredNodes.addAndGet(count);
+    }
+
+    void recordWindow(int count)
+    {
+        windows.incrementAndGet();
+        prefetchedNodes.addAndGet(count);
+    }
+
+    void recordHit()
+    {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss()
+    {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * @return          the number of nodes that were registered for read-ahead
+     */
+    public long getRegisteredNodes()
+    {
+        return registeredNodes.get();
+    }
+
+    /**
+     * @return          the number of read-ahead windows that were loaded
+     */
+    public long getWindows()
+    {
+        return windows.get();
+    }
+
+    /**
+     * @return          the number of nodes that were requested by read-ahead windows
+     */
+    public long getPrefetchedNodes()
+    {
+        return prefetchedNodes.get();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return          the ratio of hits to visits or <tt>0.0</tt> if nothing was visited yet
+     */
+    public double getHitRatio()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : (double) hitCount / (double) total;
+    }
+
+    /**
+     * Reset all counters to zero
+     */
+    public void reset()
+    {
+        registeredNodes.set(0L);
+        windows.set(0L);
+        prefetchedNodes.set(0L);
+        hits.set(0L);
+        misses.set(0L);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("NodeReadAheadStatistics")
+          .append("[registered=").append(getRegisteredNodes())
+          .append(", windows=").append(getWindows())
+          .append(", prefetched=").append(getPrefetchedNodes())
+          .append(", hits=").append(getHits())
+          .append(", misses=").append(getMisses())
+          .append("]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.Path;
+
+/**
+ * A node-local cache of primary paths, keyed by node ID and bounded per store.
+ * <p>
+ * Each entry holds the IDs of the node and of its primary ancestors along with the ID of the
+ * transaction that last changed each of them.  Any change to the parent associations of a node
+ * touches the node, so an entry is only valid as long as all recorded transaction IDs are still
+ * current; moving a node therefore invalidates exactly the entries of the moved subtree, which
+ * are rebuilt when next used.  It is up to the client to perform this validation.
+ * 
+ * @since 5.2
+ */
+public class PrimaryPathCache
+{
+    private final int maxSizePerStore;
+    private final ConcurrentMap<Long, Map<Long, CachedPath>> pathsByStore;
+    
+    /**
+     * @param maxSizePerStore           the maximum number of paths to cache for each store
+     */
+    public PrimaryPathCache(int maxSizePerStore)
+    {
+        this.maxSizePerStore = maxSizePerStore;
+        this.pathsByStore = new ConcurrentHashMap<Long, Map<Long, CachedPath>>(7);
+    }
+    
+    /**
+     * @return                          the cached path (not validated) or <tt>null</tt>
+     */
+    public CachedPath get(Long storeId, Long nodeId)
+    {
+        Map<Long, CachedPath> paths = pathsByStore.get(storeId);
+        return (paths == null) ? null : paths.get(nodeId);
+    }
+    
+    public void put(Long storeId, Long nodeId, CachedPath cachedPath)
+    {
+        Map<Long, CachedPath> paths = pathsByStore.get(storeId);
+        if (paths == null)
+        {
+            paths = Collections.synchronizedMap(new LinkedHashMap<Long, CachedPath>(256, 0.75F, true)
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, CachedPath> eldest)
+                {
+                    return size() > maxSizePerStore;
+                }
+            });
+            Map<Long, CachedPath> existing = pathsByStore.putIfAbsent(storeId, paths);
+            if (existing != null)
+            {
+                paths = existing;
+            }
+        }
+        paths.put(nodeId, cachedPath);
+    }
+    
+    /**
+     * @return                          the number of paths cached for the store
+     */
+    public int size(Long storeId)
+    {
+        Map<Long, CachedPath> paths = pathsByStore.get(storeId);
+        return (paths == null) ? 0 : paths.size();
+    }
+    
+    public void clear()
+    {
+        pathsByStore.clear();
+    }
+    
+    /**
+     * The primary path of a node.  Node index <tt>0</tt> is the node itself and the last index is
+     * the top of the hierarchy; the path elements are kept in path order, i.e. starting at the top.
+     */
+    public static class CachedPath
+    {
+        private final long[] nodeIds;
+        private final long[] txnIds;
+        private final ChildAssociationRef[] assocRefs;
+        private final boolean onlyPath;
+        
+        /**
+         * @param nodeIds               the IDs of the node and its primary ancestors
+         * @param txnIds                the IDs of the transactions that last changed each of the nodes
+         * @param path                  the primary path of the node
+         * @param onlyPath              <tt>true</tt> if the primary path is the only path to the node
+         */
+        public CachedPath(List<Long> nodeIds, List<Long> txnIds, Path path, boolean onlyPath)
+        {
+            if (nodeIds.size() != txnIds.size() || nodeIds.size() != path.size())
+            {
+                throw new IllegalArgumentException(
+                        "Node IDs, transaction IDs and path elements do not match: " + nodeIds + ", " + txnIds + ", " + path);
+            }
+            int size = nodeIds.size();
+            this.nodeIds = new long[size];
+            this.txnIds = new long[size];
+            this.assocRefs = new ChildAssociationRef[size];
+            for (int i = 0; i < size; i++)
+            {
+                this.nodeIds[i] = nodeIds.get(i);
+                this.txnIds[i] = txnIds.get(i);
+                this.assocRefs[i] = copy(((Path.ChildAssocElement) path.get(i)).getRef());
+            }
+            this.onlyPath = onlyPath;
+        }
+        
+        /**
+         * Prepend an ancestor's cached path with the elements for the descendants
+         */
+        private CachedPath(CachedPath ancestorPath, List<Long> nodeIds, List<Long> txnIds, Path path, boolean onlyPath)
+        {
+            int count = nodeIds.size();
+            int size = count + ancestorPath.size();
+            if (txnIds.size() != count || path.size() != size)
+            {
+                throw new IllegalArgumentException(
+                        "Node IDs, transaction IDs and path elements do not match: " + nodeIds + ", " + txnIds + ", " + path);
+            }
+            this.nodeIds = new long[size];
+            this.txnIds = new long[size];
+            this.assocRefs = new ChildAssociationRef[size];
+            for (int i = 0; i < count; i++)
+            {
+                this.nodeIds[i] = nodeIds.get(i);
+                this.txnIds[i] = txnIds.get(i);
+            }
+            System.arraycopy(ancestorPath.nodeIds, 0, this.nodeIds, count, ancestorPath.size());
+            System.arraycopy(ancestorPath.txnIds, 0, this.txnIds, count, ancestorPath.size());
+            for (int i = 0; i < size; i++)
+            {
+                this.assocRefs[i] = copy(((Path.ChildAssocElement) path.get(i)).getRef());
+            }
+            this.onlyPath = onlyPath && ancestorPath.onlyPath;
+        }
+        
+        /**
+         * Build the path of a descendant from the path of one of its cached ancestors
+         * 
+         * @param nodeIds               the IDs of the descendant and its ancestors up to but excluding this node
+         * @param txnIds                the transaction IDs matching the node IDs
+         * @param path                  the full primary path of the descendant
+         * @param onlyPath              <tt>true</tt> if there are no other paths from the descendant to this node
+         */
+        public CachedPath prepend(List<Long> nodeIds, List<Long> txnIds, Path path, boolean onlyPath)
+        {
+            return new CachedPath(this, nodeIds, txnIds, path, onlyPath);
+        }
+        
+        private static ChildAssociationRef copy(ChildAssociationRef ref)
+        {
+            return new ChildAssociationRef(
+                    ref.getTypeQName(),
+                    ref.getParentRef(),
+                    ref.getQName(),
+                    ref.getChildRef(),
+                    ref.isPrimary(),
+                    ref.getNthSibling());
+        }
+        
+        /**
+         * @return                  the number of nodes and path elements
+         */
+        public int size()
+        {
+            return nodeIds.length;
+        }
+        
+        public long getNodeId(int index)
+        {
+            return nodeIds[index];
+        }
+        
+        public long getTxnId(int index)
+        {
+            return txnIds[index];
+        }
+        
+        /**
+         * @return                  <tt>true</tt> if no node in the path has secondary parents or is a root
+         *                          below the top, i.e. the primary path is the only path
+         */
+        public boolean isOnlyPath()
+        {
+            return onlyPath;
+        }
+        
+        /**
+         * @return                  a new path with new elements that the client may modify
+         */
+        public Path toPath()
+        {
+            Path path = new Path();
+            for (ChildAssociationRef assocRef : assocRefs)
+            {
+                path.append(new Path.ChildAssocElement(copy(assocRef)));
+            }
+            return path;
+        }
+    }
+}
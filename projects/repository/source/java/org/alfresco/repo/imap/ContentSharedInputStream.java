@@ -0,0 +1,198 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.imap;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.mail.internet.SharedInputStream;
+
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * A {@link SharedInputStream} over the content of a node, so that a {@link javax.mail.internet.MimeMessage} parsed
+ * from it keeps only the position of its body and re-reads the body from the content store when it is needed,
+ * instead of holding it in memory.
+ * <p>
+ * The underlying content stream is only opened on the first read.
+ * 
+ * @since 5.2
+ */
+public class ContentSharedInputStream extends InputStream implements SharedInputStream
+{
+    private final ContentReader reader;
+    /** the offset of this stream in the content */
+    private final long start;
+    /** the offset in the content at which this stream ends or <tt>-1</tt> for the end of the content */
+    private final long end;
+    /** the current offset in the content */
+    private long pos;
+    private InputStream in;
+    private boolean closed;
+
+    /**
+     * @param reader            the reader of the content (only used as a template for new readers)
+     */
+    public ContentSharedInputStream(ContentReader reader)
+    {
+        this(reader, 0L, -1L);
+    }
+
+    private ContentSharedInputStream(ContentReader reader, long start, long end)
+    {
+        this.reader = reader;
+        this.start = start;
+        this.end = end;
+        this.pos = start;
+    }
+
+    private InputStream getInputStream() throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("Stream closed");
+        }
+        if (in == null)
+        {
+            in = new BufferedInputStream(reader.getReader().getContentInputStream());
+            long toSkip = pos;
+            while (toSkip > 0)
+            {
+                long skipped = in.skip(toSkip);
+                if (skipped <= 0)
+                {
+                    // The content is shorter than expected
+                    break;
+                }
+                toSkip -= skipped;
+            }
+        }
+        return in;
+    }
+
+    private long getEnd()
+    {
+        return end == -1L ? reader.getSize() : end;
+    }
+
+    private int getMaxRead(int len)
+    {
+        if (end == -1L)
+        {
+            return len;
+        }
+        return (int) Math.min(len, Math.max(0L, end - pos));
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (getMaxRead(1) == 0)
+        {
+            return -1;
+        }
+        int b = getInputStream().read();
+        if (b >= 0)
+        {
+            pos++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        int maxRead = getMaxRead(len);
+        if (maxRead == 0)
+        {
+            return -1;
+        }
+        int read = getInputStream().read(b, off, maxRead);
+        if (read > 0)
+        {
+            pos += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0)
+        {
+            return 0L;
+        }
+        long maxSkip = end == -1L ? n : Math.min(n, Math.max(0L, end - pos));
+        long skipped = getInputStream().skip(maxSkip);
+        if (skipped > 0)
+        {
+            pos += skipped;
+        }
+        return skipped;
+    }
+
+    /**
+     * The number of bytes left in this stream, which doesn't require the content to be opened
+     */
+    @Override
+    public int available() throws IOException
+    {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, getEnd() - pos));
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        if (in != null)
+        {
+            in.close();
+            in = null;
+        }
+    }
+
+    @Override
+    public long getPosition()
+    {
+        return pos - start;
+    }
+
+    @Override
+    public InputStream newStream(long start, long end)
+    {
+        if (start < 0)
+        {
+            throw new IllegalArgumentException("start < 0");
+        }
+        long newEnd = end == -1L ? this.end : this.start + end;
+        return new ContentSharedInputStream(reader, this.start + start, newEnd);
+    }
+}
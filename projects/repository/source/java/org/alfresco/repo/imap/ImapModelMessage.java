@@ -31,6 +31,7 @@ import java.io.InputStream;
 import javax.activation.DataHandler;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimePartDataSource;
+import javax.mail.internet.SharedInputStream;
 import javax.mail.util.SharedByteArrayInputStream;
 
 import org.alfresco.model.ContentModel;
@@ -84,14 +85,22 @@ public class ImapModelMessage extends AbstractMimeMessage
         saved = true;
     }
 
+    /**
+     * Parses the headers of the stored message. The body is not read: it is streamed from the content store
+     * each time it is requested, so that cached messages don't hold the bodies in memory.
+     */
     private void buildRFC822Message() throws MessagingException
     {
         ContentService contentService = serviceRegistry.getContentService();
         ContentReader reader = contentService.getReader(messageFileInfo.getNodeRef(), ContentModel.PROP_CONTENT);
+        if (reader == null || !reader.exists())
+        {
+            throw new MessagingException("The message content does not exist: " + messageFileInfo.getNodeRef());
+        }
         InputStream is = null;
         try
         {
-            is = reader.getContentInputStream();
+            is = new ContentSharedInputStream(reader);
             this.parse(is);
         }
         catch (ContentIOException e)
@@ -132,7 +141,8 @@ public class ImapModelMessage extends AbstractMimeMessage
                     throw new MessagingException("No content");
                 }
             }
-            return this.contentStream;
+            // Each caller gets its own stream onto the body
+            return ((SharedInputStream) this.contentStream).newStream(0, -1);
         }
         catch (Exception e)
         {
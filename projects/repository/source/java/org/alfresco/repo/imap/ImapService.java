@@ -26,6 +26,8 @@
 package org.alfresco.repo.imap;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.NavigableMap;
 
@@ -327,6 +329,17 @@ public interface ImapService
     
     public void persistMessageHeaders(NodeRef nodeRef, MimeMessage message);
 
+    /**
+     * The contents of a folder as seen by a user.
+     * <p>
+     * Besides the UID of each message (the node's DB ID) the status holds its MODSEQ: the ID of the transaction
+     * that last changed the message node. Both are persisted with the node.  A later status of the same folder
+     * still lists the whole folder and reads the MODSEQ of every message, but only reads the flags of the messages
+     * whose MODSEQ changed.  Clients can ask for the messages that changed since a MODSEQ they have seen.
+     * <p>
+     * The messages by UID are kept for the folder listing; the UIDs, MODSEQs and flags are kept beside them in
+     * arrays and bit sets so that the counts and flags don't need a lookup per message.
+     */
     static class FolderStatus
     {        
         public final int messageCount;
@@ -336,17 +349,109 @@ public interface ImapService
         public final long uidValidity;
         public final String changeToken;
         public final NavigableMap<Long, FileInfo> search;
-
-        public FolderStatus(int messageCount, int recentCount, int firstUnseen, int unseenCount, long uidValidity,
-                String changeToken, NavigableMap<Long, FileInfo> search)
+        /** the highest MODSEQ of the messages in the folder or <tt>0</tt> if it is empty */
+        public final long highestModSeq;
+        
+        /** the UIDs in ascending order, followed by the MODSEQ and the flags of the message at the same index */
+        private final long[] uids;
+        private final long[] modSeqs;
+        private final BitSet recent;
+        private final BitSet unseen;
+
+        /**
+         * @param uidValidity           the UIDVALIDITY of the folder
+         * @param changeToken           the change token of the folder
+         * @param search                the messages by UID
+         * @param modSeqs               the MODSEQ of each message in UID order (<tt>null</tt> if not known)
+         * @param recent                the indexes, in UID order, of the messages flagged as recent
+         * @param unseen                the indexes, in UID order, of the messages not flagged as seen
+         */
+        public FolderStatus(long uidValidity, String changeToken, NavigableMap<Long, FileInfo> search,
+                long[] modSeqs, BitSet recent, BitSet unseen)
         {
-            this.messageCount = messageCount;
-            this.recentCount = recentCount;
-            this.firstUnseen = firstUnseen;
-            this.unseenCount = unseenCount;
             this.uidValidity = uidValidity;
             this.changeToken = changeToken;
             this.search = search;
+            this.messageCount = search.size();
+            this.uids = new long[messageCount];
+            int i = 0;
+            for (Long uid : search.keySet())
+            {
+                uids[i++] = uid;
+            }
+            this.modSeqs = modSeqs == null ? new long[messageCount] : modSeqs;
+            this.recent = recent == null ? new BitSet() : recent;
+            this.unseen = unseen == null ? new BitSet() : unseen;
+            if (this.modSeqs.length != messageCount)
+            {
+                throw new IllegalArgumentException("Expected " + messageCount + " MODSEQs but got " + this.modSeqs.length);
+            }
+            
+            long highestModSeq = 0L;
+            for (long modSeq : this.modSeqs)
+            {
+                highestModSeq = Math.max(highestModSeq, modSeq);
+            }
+            this.highestModSeq = highestModSeq;
+            this.recentCount = this.recent.cardinality();
+            this.unseenCount = this.unseen.cardinality();
+            this.firstUnseen = this.unseen.nextSetBit(0) + 1;
+        }
+        
+        /**
+         * @param uid                   the UID of a message
+         * @return                      the index of the message in UID order or a negative number if it is not in the folder
+         */
+        int indexOf(long uid)
+        {
+            return Arrays.binarySearch(uids, uid);
+        }
+        
+        /**
+         * @param uid                   the UID of a message
+         * @return                      the MODSEQ of the message or <tt>-1</tt> if it is not in the folder
+         */
+        public long getModSeq(long uid)
+        {
+            int index = indexOf(uid);
+            return index < 0 ? -1L : modSeqs[index];
+        }
+        
+        long getModSeqAt(int index)
+        {
+            return modSeqs[index];
+        }
+        
+        boolean isRecentAt(int index)
+        {
+            return recent.get(index);
+        }
+        
+        boolean isUnseenAt(int index)
+        {
+            return unseen.get(index);
+        }
+        
+        /**
+         * Gets the messages that were added or changed after the given MODSEQ.  Transactions don't always commit in
+         * the order of their IDs, so a client should ask again from a MODSEQ lower than the highest it has seen if
+         * it must not miss changes made by concurrent transactions.
+         * 
+         * @param modSeq                a MODSEQ previously read from this folder
+         * @return                      the UIDs, in ascending order, of the messages with a higher MODSEQ
+         */
+        public long[] getUidsChangedSince(long modSeq)
+        {
+            long[] changed = new long[messageCount];
+            int count = 0;
+            for (int i = 0; i < messageCount; i++)
+            {
+                if (modSeqs[i] > modSeq)
+                {
+                    changed[count++] = uids[i];
+                }
+            }
+            return Arrays.copyOf(changed, count);
         }
     }
 
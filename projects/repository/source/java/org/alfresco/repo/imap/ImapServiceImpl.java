@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -108,8 +109,8 @@ import org.alfresco.util.FileFilterMode;
 import org.alfresco.util.FileFilterMode.Client;
 import org.alfresco.util.GUID;
 import org.alfresco.util.MaxSizeMap;
-import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.Triple;
 import org.alfresco.util.config.RepositoryFolderConfigBean;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -149,9 +150,9 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
     private SearchService searchService;
     private AttachmentsExtractor attachmentsExtractor;
 
-    // Note that this cache need not be cluster synchronized, as it is keyed by the cluster-safe 
-    // change token.  Key is username, changeToken
-    private Map<Pair<String, String>, FolderStatus> folderCache;
+    // Note that this cache need not be cluster synchronized, as its entries are checked against the cluster-safe 
+    // change token.  Key is username, folder, view mode
+    private Map<Triple<String, NodeRef, ImapViewMode>, FolderStatus> folderCache;
     private int folderCacheSize = 1000;
     private ReentrantReadWriteLock folderCacheLock = new ReentrantReadWriteLock();
     private SimpleCache<NodeRef, CacheItem> messageCache;
@@ -390,7 +391,7 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         PropertyCheck.mandatory(this, "policyBehaviourFilter", policyBehaviourFilter);
         PropertyCheck.mandatory(this, "namespaceService", namespaceService);
         PropertyCheck.mandatory(this, "searchService", getSearchService());
-        this.folderCache = new MaxSizeMap<Pair<String,String>, FolderStatus>(folderCacheSize, false);
+        this.folderCache = new MaxSizeMap<Triple<String, NodeRef, ImapViewMode>, FolderStatus>(folderCacheSize, false);
         
         // be sure that a default e-mail is correct
         try
@@ -830,6 +831,10 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
      * Search for emails in specified folder depending on view mode.
      * 
      * Shallow list of files
+     * <p>
+     * The latest status of each folder is kept per user.  When the folder's change token moves on, the folder is
+     * listed again and the MODSEQ (last change transaction) of every message is read; the new status reuses the
+     * file info and flags of the messages whose MODSEQ is the same as before.
      * 
      * @param contextNodeRef context folder for search
      * @param viewMode context folder view mode
@@ -852,23 +857,20 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
             }
         }, AuthenticationUtil.getSystemUserName());
 
-        Pair<String, String> cacheKey = null;
-        if (changeToken != null)
+        Triple<String, NodeRef, ImapViewMode> cacheKey = new Triple<String, NodeRef, ImapViewMode>(userName, contextNodeRef, viewMode);
+        FolderStatus previousResult;
+        this.folderCacheLock.readLock().lock();
+        try
         {
-            cacheKey = new Pair<String, String>(userName, changeToken);
-            this.folderCacheLock.readLock().lock();
-            try
-            {
-                FolderStatus result = this.folderCache.get(cacheKey);
-                if (result != null)
-                {
-                    return result;
-                }
-            }
-            finally
-            {
-                this.folderCacheLock.readLock().unlock();
-            }
+            previousResult = this.folderCache.get(cacheKey);
+        }
+        finally
+        {
+            this.folderCacheLock.readLock().unlock();
+        }
+        if (previousResult != null && changeToken != null && changeToken.equals(previousResult.changeToken))
+        {
+            return previousResult;
         }
         
         List<FileInfo> fileInfos = null;
@@ -882,52 +884,57 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
             FileFilterMode.clearClient();
         }
         
+        // The MODSEQ of each message is the ID of the transaction that last changed it
         final NavigableMap<Long, FileInfo> currentSearch = new TreeMap<Long, FileInfo>();
-
-        switch (viewMode)
-        {
-        case MIXED:
-            for (FileInfo fileInfo : fileInfos)
-            {
-                currentSearch.put((Long) fileInfo.getProperties().get(ContentModel.PROP_NODE_DBID), fileInfo);
-            }
-            break;
-        case ARCHIVE:
-            for (FileInfo fileInfo : fileInfos)
-            {
-                if (nodeService.hasAspect(fileInfo.getNodeRef(), ImapModel.ASPECT_IMAP_CONTENT))
+        Map<Long, Long> currentModSeqs = new HashMap<Long, Long>(fileInfos.size() * 2);
+        for (FileInfo fileInfo : fileInfos)
+        {
+            Long uid = (Long) fileInfo.getProperties().get(ContentModel.PROP_NODE_DBID);
+            NodeRef.Status nodeStatus = nodeService.getNodeStatus(fileInfo.getNodeRef());
+            long modSeq = nodeStatus == null ? 0L : nodeStatus.getDbTxnId();
+            // Messages that haven't changed since the previous status keep what was read for them then
+            int previousIndex = previousResult == null ? -1 : previousResult.indexOf(uid);
+            boolean unchanged = previousIndex >= 0 && previousResult.getModSeqAt(previousIndex) == modSeq;
+            switch (viewMode)
+            {
+            case MIXED:
+                break;
+            case ARCHIVE:
+                if (!unchanged && !nodeService.hasAspect(fileInfo.getNodeRef(), ImapModel.ASPECT_IMAP_CONTENT))
                 {
-                    currentSearch.put((Long) fileInfo.getProperties().get(ContentModel.PROP_NODE_DBID), fileInfo);
+                    continue;
                 }
-            }
-            break;
-        case VIRTUAL:
-            for (FileInfo fileInfo : fileInfos)
-            {
-                if (!nodeService.hasAspect(fileInfo.getNodeRef(), ImapModel.ASPECT_IMAP_CONTENT))
+                break;
+            case VIRTUAL:
+                if (!unchanged && nodeService.hasAspect(fileInfo.getNodeRef(), ImapModel.ASPECT_IMAP_CONTENT))
                 {
-                    currentSearch.put((Long) fileInfo.getProperties().get(ContentModel.PROP_NODE_DBID), fileInfo);
+                    continue;
                 }
+                break;
             }
-            break;
+            currentSearch.put(uid, unchanged ? previousResult.search.get(uid) : fileInfo);
+            currentModSeqs.put(uid, modSeq);
         }
 
-        int messageCount = currentSearch.size(), recentCount = 0, unseenCount = 0, firstUnseen = 0;
-        int i = 1;
+        long[] modSeqs = new long[currentSearch.size()];
+        BitSet recent = new BitSet();
+        BitSet unseen = new BitSet();
+        int i = 0;
         for (FileInfo fileInfo : currentSearch.values())
         {
-            Flags flags = getFlags(fileInfo);
-            if (flags.contains(Flags.Flag.RECENT))
+            Long uid = (Long) fileInfo.getProperties().get(ContentModel.PROP_NODE_DBID);
+            modSeqs[i] = currentModSeqs.get(uid);
+            int previousIndex = previousResult == null ? -1 : previousResult.indexOf(uid);
+            if (previousIndex >= 0 && previousResult.getModSeqAt(previousIndex) == modSeqs[i])
             {
-                recentCount++;
+                recent.set(i, previousResult.isRecentAt(previousIndex));
+                unseen.set(i, previousResult.isUnseenAt(previousIndex));
             }
-            if (!flags.contains(Flags.Flag.SEEN))
+            else
             {
-                if (firstUnseen == 0)
-                {
-                    firstUnseen = i;
-                }
-                unseenCount++;
+                Flags flags = getFlags(fileInfo);
+                recent.set(i, flags.contains(Flags.Flag.RECENT));
+                unseen.set(i, !flags.contains(Flags.Flag.SEEN));
             }
             i++;
         }
@@ -935,7 +942,6 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
         if (changeToken == null)
         {
             changeToken = GUID.generate();
-            cacheKey = new Pair<String, String>(userName, changeToken);
             final String finalToken = changeToken;
             doAsSystem(new RunAsWork<Void>()
             {
@@ -950,13 +956,13 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
             });
         }
         Long uidValidity = (Long) nodeService.getProperty(contextNodeRef, ImapModel.PROP_UIDVALIDITY);
-        FolderStatus result = new FolderStatus(messageCount, recentCount, firstUnseen, unseenCount,
-                uidValidity == null ? 0 : uidValidity, changeToken, currentSearch);
+        FolderStatus result = new FolderStatus(uidValidity == null ? 0 : uidValidity, changeToken, currentSearch,
+                modSeqs, recent, unseen);
         this.folderCacheLock.writeLock().lock();
         try
         {
             FolderStatus oldResult = this.folderCache.get(cacheKey);
-            if (oldResult != null)
+            if (oldResult != null && oldResult != previousResult && changeToken.equals(oldResult.changeToken))
             {
                 if(logger.isDebugEnabled())
                 {
@@ -965,11 +971,13 @@ public class ImapServiceImpl implements ImapService, OnRestoreNodePolicy, OnCrea
          
                 return oldResult;
             }
+            // Only the latest status of a folder is kept for each user
             this.folderCache.put(cacheKey, result);
 
             if(logger.isDebugEnabled())
             {
-                logger.debug("At end of getFolderStatus. Found files:" + currentSearch.size() + ", changeToken:" + changeToken);
+                logger.debug("At end of getFolderStatus. Found files:" + currentSearch.size() + ", changeToken:" + changeToken
+                        + ", highestModSeq:" + result.highestModSeq);
             }
             return result;
         }
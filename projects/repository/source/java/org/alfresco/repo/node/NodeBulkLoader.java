@@ -72,7 +72,20 @@ public interface NodeBulkLoader
      * @param nodeIds           the nodes that will be cached.
      */
     public void cacheNodesById(List<Long> nodeIds);
-    
+
+    /**
+     * Register nodes that are about to be visited in the given order.  Nothing is loaded
+     * immediately; instead, the first time one of the nodes is visited within the current
+     * transaction, the data for it and the next window of registered nodes is pre-cached.
+     * Nodes registered more than once are visited in the order of the latest registration.
+     *
+     * @param nodeRefs          the nodes in the order in which they will be visited
+     * @return                  <tt>true</tt> if the nodes were registered or <tt>false</tt> if read-ahead
+     *                          is not active, in which case the client may choose to {@link #cacheNodes(List) cache}
+     *                          the nodes up front
+     */
+    public boolean readAheadNodes(List<NodeRef> nodeRefs);
+
     /**
      * <b>FOR TESTING ONLY: </b>Clears out node cache data
      */
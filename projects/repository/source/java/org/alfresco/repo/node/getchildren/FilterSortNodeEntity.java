@@ -62,6 +62,21 @@ public class FilterSortNodeEntity
 
     private Boolean isPrimary;
     
+    // Keyset paging parameters
+    private String sortColumn;
+    private boolean sortAscending;
+    private boolean folderSort;
+    private boolean folderSortAscending;
+    private List<Long> folderTypeQNameIds;
+    private String seekSortValue;
+    private Integer seekFolderSortValue;
+    private Long seekNodeId;
+    private Integer limit;
+    
+    // Keyset paging results
+    private String sortValue;
+    private Integer folderSortValue;
+    
     /**
      * Default constructor
      */
@@ -258,4 +273,121 @@ public class FilterSortNodeEntity
     {
         this.isPrimary = isPrimary;
     }
+
+    // Keyset paging parameters
+
+    /**
+     * @return              the column to sort by when keyset paging or <tt>null</tt> if not keyset paging
+     */
+    public String getSortColumn()
+    {
+        return sortColumn;
+    }
+
+    public void setSortColumn(String sortColumn)
+    {
+        this.sortColumn = sortColumn;
+    }
+
+    public boolean isSortAscending()
+    {
+        return sortAscending;
+    }
+
+    public void setSortAscending(boolean sortAscending)
+    {
+        this.sortAscending = sortAscending;
+    }
+
+    /**
+     * @return              <tt>true</tt> if folders are to be sorted apart from other nodes, ahead of the sort column
+     */
+    public boolean isFolderSort()
+    {
+        return folderSort;
+    }
+
+    public void setFolderSort(boolean folderSort)
+    {
+        this.folderSort = folderSort;
+    }
+
+    public boolean isFolderSortAscending()
+    {
+        return folderSortAscending;
+    }
+
+    public void setFolderSortAscending(boolean folderSortAscending)
+    {
+        this.folderSortAscending = folderSortAscending;
+    }
+
+    public List<Long> getFolderTypeQNameIds()
+    {
+        return folderTypeQNameIds;
+    }
+
+    public void setFolderTypeQNameIds(List<Long> folderTypeQNameIds)
+    {
+        this.folderTypeQNameIds = folderTypeQNameIds;
+    }
+
+    public String getSeekSortValue()
+    {
+        return seekSortValue;
+    }
+
+    public Integer getSeekFolderSortValue()
+    {
+        return seekFolderSortValue;
+    }
+
+    public Long getSeekNodeId()
+    {
+        return seekNodeId;
+    }
+
+    /**
+     * Only return the rows that sort after the given row
+     * 
+     * @param row           a row previously returned by the query
+     */
+    public void setSeek(FilterSortNodeEntity row)
+    {
+        this.seekSortValue = row.getSortValue();
+        this.seekFolderSortValue = row.getFolderSortValue();
+        this.seekNodeId = row.getId();
+    }
+
+    public Integer getLimit()
+    {
+        return limit;
+    }
+
+    public void setLimit(Integer limit)
+    {
+        this.limit = limit;
+    }
+
+    // Keyset paging results
+
+    public String getSortValue()
+    {
+        return sortValue;
+    }
+
+    public void setSortValue(String sortValue)
+    {
+        this.sortValue = sortValue;
+    }
+
+    public Integer getFolderSortValue()
+    {
+        return folderSortValue;
+    }
+
+    public void setFolderSortValue(Integer folderSortValue)
+    {
+        this.folderSortValue = folderSortValue;
+    }
 }
\ No newline at end of file
@@ -89,6 +89,15 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
     private static final String QUERY_NAMESPACE = "alfresco.node";
     private static final String QUERY_SELECT_GET_CHILDREN_WITH_PROPS = "select_GetChildrenCannedQueryWithProps";
     private static final String QUERY_SELECT_GET_CHILDREN_WITHOUT_PROPS = "select_GetChildrenCannedQueryWithoutProps";
+    private static final String QUERY_SELECT_GET_CHILDREN_KEYSET = "select_GetChildrenCannedQueryKeyset";
+    
+    // note: the sort columns supported by the keyset query
+    private static final String SORT_COLUMN_NAME = "name";
+    private static final String SORT_COLUMN_CREATED = "created";
+    private static final String SORT_COLUMN_MODIFIED = "modified";
+    
+    private static final int KEYSET_MIN_BATCH_SIZE = 100;
+    private static final int KEYSET_MAX_BATCH_SIZE = 256 * 4;
     
     public static final int MAX_FILTER_SORT_PROPS = 3;
     
@@ -109,6 +118,8 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
     protected NodeService nodeService;
     
     private boolean applyPostQueryPermissions = false; // if true, the permissions will be applied post-query (else should be applied as part of the "queryAndFilter")
+    private boolean keysetPagingEnabled = false;
+    private boolean keysetPaged = false; // if true, the results were sorted by the DB and permissions were applied as part of the "queryAndFilter"
     
     public GetChildrenCannedQuery(
             NodeDAO nodeDAO,
@@ -142,6 +153,33 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         }
     }
     
+    /**
+     * Allow the results to be sorted by the database and fetched page by page, seeking past the last row
+     * of the previous page, rather than loading and sorting all the children.  Rows are then checked for
+     * permissions as they are fetched, until there are enough results.
+     * <p>
+     * This is only done for sorts on <b>cm:name</b>, <b>cm:created</b> or <b>cm:modified</b>, optionally
+     * preceded by {@link #SORT_QNAME_NODE_IS_FOLDER folders first (or last)}.  Any other sort is done in memory.
+     * Note that the database collation (of the lower case name) applies and that dates are sorted by their
+     * persisted ISO 8601 string, which is chronological as long as the server time zone offset is unchanged.
+     * 
+     * @param keysetPagingEnabled       <tt>true</tt> to allow the database to sort and page the results
+     */
+    public void setKeysetPagingEnabled(boolean keysetPagingEnabled)
+    {
+        this.keysetPagingEnabled = keysetPagingEnabled;
+    }
+    
+    /**
+     * Override to allow children to be sorted by {@link #SORT_QNAME_NODE_IS_FOLDER} in the database.
+     * 
+     * @return              the types of the nodes that are folders or <tt>null</tt> if this query does not distinguish them
+     */
+    protected Set<QName> getFolderTypeQNames()
+    {
+        return null;
+    }
+    
     protected FilterSortChildQueryCallback getFilterSortChildQuery(final List<FilterSortNode> children, final List<FilterProp> filterProps, GetChildrenCannedQueryParams paramBean)
     {
         Set<QName> inclusiveAspects = paramBean.getInclusiveAspects();
@@ -294,7 +332,13 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
 	            params.setPattern(pattern);
 	        }
 	        
-	        if (filterSortPropCnt > 0)
+	        if (keysetPagingEnabled && setKeysetSortParams(sortPairs, params))
+	        {
+	            // sorted by the DB - note: permissions are applied during result handling to allow early cutoff
+	            keysetPaged = true;
+	            result = queryKeyset(params, filterProps, paramBean, getKeysetRequestedCount(parameters));
+	        }
+	        else if (filterSortPropCnt > 0)
 	        {
 	            // filtered and/or sorted - note: permissions will be applied post query
 	            final List<FilterSortNode> children = new ArrayList<FilterSortNode>(100);
@@ -342,13 +386,138 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         {
 	        if (start != null)
 	        {
-	            logger.debug("Base query "+(filterSortPropCnt > 0 ? "(sort=y, perms=n)" : "(sort=n, perms=y)")+": "+result.size()+" in "+(System.currentTimeMillis()-start)+" msecs");
+	            logger.debug("Base query "+(keysetPaged ? "(sort=db, perms=y)" : (filterSortPropCnt > 0 ? "(sort=y, perms=n)" : "(sort=n, perms=y)"))+": "+result.size()+" in "+(System.currentTimeMillis()-start)+" msecs");
 	        }
         }
         
         return result;
     }
     
+    /**
+     * Set the keyset sort parameters, if the requested sort can be done by the DB
+     * 
+     * @return              <tt>true</tt> if the results can be sorted by the DB
+     */
+    private boolean setKeysetSortParams(List<Pair<QName, SortOrder>> sortPairs, FilterSortNodeEntity params)
+    {
+        if (sortPairs.isEmpty())
+        {
+            return false;
+        }
+        
+        int idx = 0;
+        List<Long> folderTypeQNameIds = null;
+        boolean folderSortAscending = false;
+        if (sortPairs.get(0).getFirst().equals(SORT_QNAME_NODE_IS_FOLDER))
+        {
+            Set<QName> folderTypeQNames = getFolderTypeQNames();
+            if (folderTypeQNames == null)
+            {
+                return false;
+            }
+            // note: if no folder types are in use then there is nothing to sort them by
+            Set<Long> ids = qnameDAO.convertQNamesToIds(folderTypeQNames, false);
+            if (ids.size() > 0)
+            {
+                folderTypeQNameIds = new ArrayList<Long>(ids);
+                folderSortAscending = (sortPairs.get(0).getSecond() == SortOrder.ASCENDING);
+            }
+            idx++;
+        }
+        if (sortPairs.size() != idx + 1)
+        {
+            return false;
+        }
+        
+        QName sortQName = sortPairs.get(idx).getFirst();
+        String sortColumn;
+        if (sortQName.equals(ContentModel.PROP_NAME))
+        {
+            // note: the name must be the first property fetched with the node
+            Long nameQNameId = getQNameId(ContentModel.PROP_NAME);
+            if (nameQNameId == null || !nameQNameId.equals(params.getProp1qnameId()))
+            {
+                return false;
+            }
+            sortColumn = SORT_COLUMN_NAME;
+        }
+        else if (sortQName.equals(ContentModel.PROP_CREATED))
+        {
+            sortColumn = SORT_COLUMN_CREATED;
+        }
+        else if (sortQName.equals(ContentModel.PROP_MODIFIED))
+        {
+            sortColumn = SORT_COLUMN_MODIFIED;
+        }
+        else
+        {
+            return false;
+        }
+        
+        params.setSortColumn(sortColumn);
+        params.setSortAscending(sortPairs.get(idx).getSecond() == SortOrder.ASCENDING);
+        params.setFolderSort(folderTypeQNameIds != null);
+        params.setFolderSortAscending(folderSortAscending);
+        params.setFolderTypeQNameIds(folderTypeQNameIds);
+        return true;
+    }
+    
+    /**
+     * @return              the number of permitted results to find - as for post-query permission checks
+     */
+    private int getKeysetRequestedCount(CannedQueryParameters parameters)
+    {
+        int requestedCount = parameters.getResultsRequired();
+        int requestTotalCountMax = parameters.getTotalResultCountMax();
+        return (((requestTotalCountMax > 0) && (requestTotalCountMax > requestedCount)) ? requestTotalCountMax : requestedCount);
+    }
+    
+    /**
+     * Fetch the children sorted by the DB, batch by batch, applying permissions until there are enough results
+     */
+    private List<NodeRef> queryKeyset(FilterSortNodeEntity params, List<FilterProp> filterProps, GetChildrenCannedQueryParams paramBean, int requestedCount)
+    {
+        List<NodeRef> result = new ArrayList<NodeRef>(Math.min(1000, requestedCount));
+        int batchSize = Math.min(Math.max(requestedCount, KEYSET_MIN_BATCH_SIZE), KEYSET_MAX_BATCH_SIZE);
+        int batches = 0;
+        while (true)
+        {
+            List<FilterSortNode> children = new ArrayList<FilterSortNode>(batchSize);
+            FilterSortChildQueryCallback callback = getFilterSortChildQuery(children, filterProps, paramBean);
+            KeysetResultHandler resultHandler = new KeysetResultHandler(new FilterSortResultHandler(callback));
+            params.setLimit(batchSize);
+            cannedQueryDAO.executeQuery(QUERY_NAMESPACE, QUERY_SELECT_GET_CHILDREN_KEYSET, params, 0, batchSize, resultHandler);
+            resultHandler.done();
+            batches++;
+            
+            List<NodeRef> nodeRefs = new ArrayList<NodeRef>(children.size());
+            for (FilterSortNode child : children)
+            {
+                nodeRefs.add(child.getNodeRef());
+            }
+            for (NodeRef nodeRef : applyPostQueryPermissions(nodeRefs, requestedCount - result.size()))
+            {
+                result.add(tenantService.getBaseName(nodeRef));
+            }
+            
+            if ((result.size() >= requestedCount) || (resultHandler.getCount() < batchSize))
+            {
+                break;
+            }
+            // next batch
+            params.setSeek(resultHandler.getLast());
+            batchSize = Math.min(batchSize * 2, KEYSET_MAX_BATCH_SIZE);
+        }
+        
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Keyset query: "+result.size()+" of "+requestedCount+" in "+batches+" batch(es)");
+        }
+        
+        // permissions have been applied
+        return PermissionCheckedValueMixin.create(result);
+    }
+    
     // Set filter/sort props (between 0 and 3)
     private int setFilterSortParams(List<QName> filterSortProps, FilterSortNodeEntity params)
     {
@@ -628,7 +797,7 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
     @Override
     protected boolean isApplyPostQueryPermissions()
     {
-        return applyPostQueryPermissions; // true if sorted (if unsorted then permissions are applied as part of the query impl)
+        return applyPostQueryPermissions && !keysetPaged; // true if sorted in memory (if unsorted or sorted by the DB then permissions are applied as part of the query impl)
     }
     
     @Override
@@ -636,7 +805,7 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
     {
         Long start = (logger.isDebugEnabled() ? System.currentTimeMillis() : null);
         
-        int requestTotalCountMax = getParameters().getTotalResultCountMax();
+        int requestTotalCountMax = parameters.getTotalResultCountMax();
         int maxChecks = (((requestTotalCountMax > 0) && (requestTotalCountMax > requestedCount)) ? requestTotalCountMax : requestedCount);
         int cnt = results.size();
         
@@ -659,7 +828,11 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
     {
         Long start = (logger.isTraceEnabled() ? System.currentTimeMillis() : null);
         
-        nodeDAO.cacheNodes(nodeRefs);
+        // Only the nodes that actually get visited need to be loaded when read-ahead is active
+        if (!nodeDAO.readAheadNodes(nodeRefs))
+        {
+            nodeDAO.cacheNodes(nodeRefs);
+        }
         
         if (start != null)
         {
@@ -887,6 +1060,43 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         }
     }
     
+    /**
+     * Passes the rows on, keeping track of the last one so that the next batch can seek past it
+     */
+    private class KeysetResultHandler implements CannedQueryDAO.ResultHandler<FilterSortNodeEntity>
+    {
+        private final FilterSortResultHandler resultHandler;
+        private FilterSortNodeEntity last;
+        private int count;
+        
+        private KeysetResultHandler(FilterSortResultHandler resultHandler)
+        {
+            this.resultHandler = resultHandler;
+        }
+        
+        public boolean handleResult(FilterSortNodeEntity result)
+        {
+            last = result;
+            count++;
+            return resultHandler.handleResult(result);
+        }
+        
+        public void done()
+        {
+            resultHandler.done();
+        }
+        
+        public FilterSortNodeEntity getLast()
+        {
+            return last;
+        }
+        
+        public int getCount()
+        {
+            return count;
+        }
+    }
+    
     protected class FilterSortNode
     {
         private NodeRef nodeRef;
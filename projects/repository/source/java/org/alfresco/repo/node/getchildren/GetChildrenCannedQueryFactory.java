@@ -71,6 +71,8 @@ public class GetChildrenCannedQueryFactory extends AbstractCannedQueryFactory<No
     
     protected MethodSecurityBean<NodeRef> methodSecurity;
     
+    protected boolean keysetPagingEnabled = false;
+    
     public void setDictionaryService(DictionaryService dictionaryService)
     {
         this.dictionaryService = dictionaryService;
@@ -111,6 +113,14 @@ public class GetChildrenCannedQueryFactory extends AbstractCannedQueryFactory<No
         this.nodeService = nodeService;
     }
     
+    /**
+     * @see GetChildrenCannedQuery#setKeysetPagingEnabled(boolean)
+     */
+    public void setKeysetPagingEnabled(boolean keysetPagingEnabled)
+    {
+        this.keysetPagingEnabled = keysetPagingEnabled;
+    }
+    
     public void setMethodSecurity(MethodSecurityBean<NodeRef> methodSecurity)
     {
         this.methodSecurity = methodSecurity;
@@ -121,7 +131,9 @@ public class GetChildrenCannedQueryFactory extends AbstractCannedQueryFactory<No
     {
         NodePropertyHelper nodePropertyHelper = new NodePropertyHelper(dictionaryService, qnameDAO, localeDAO, contentDataDAO);
         
-        return (CannedQuery<NodeRef>) new GetChildrenCannedQuery(nodeDAO, qnameDAO, cannedQueryDAO, nodePropertyHelper, tenantService, nodeService, methodSecurity, parameters);
+        GetChildrenCannedQuery cq = new GetChildrenCannedQuery(nodeDAO, qnameDAO, cannedQueryDAO, nodePropertyHelper, tenantService, nodeService, methodSecurity, parameters);
+        cq.setKeysetPagingEnabled(keysetPagingEnabled);
+        return (CannedQuery<NodeRef>) cq;
     }
     
     /**
@@ -27,13 +27,19 @@ package org.alfresco.repo.policy;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
  * Simple Map of Binding to Behaviour with observer support.
+ * <p>
+ * The map is copy-on-write: readers see an immutable snapshot without locking, while changes
+ * (which are rare and must be serialised by the caller) publish a new snapshot before the
+ * observers are notified.
  * 
  * @author David Caruana
  *
@@ -41,20 +47,20 @@ import java.util.Map;
  */
 /*package*/ class BehaviourMap<B extends BehaviourBinding>
 {
-	/**
-	 * The count of behaviours
-	 */
-	int size = 0;
-	
     /**
-     * The map of bindings to behaviour
+     * The map of bindings to behaviour (immutable snapshot)
      */
-    private Map<B, List<BehaviourDefinition<B>>> index = new HashMap<B, List<BehaviourDefinition<B>>>();
+    private volatile Map<B, List<BehaviourDefinition<B>>> index = Collections.emptyMap();
+    
+    /**
+     * The count of behaviours
+     */
+    private volatile int size = 0;
     
     /**
      * The list of registered observers
      */
-    private List<BehaviourChangeObserver<B>> observers = new ArrayList<BehaviourChangeObserver<B>>();
+    private List<BehaviourChangeObserver<B>> observers = new CopyOnWriteArrayList<BehaviourChangeObserver<B>>();
     
 
     /**
@@ -66,20 +72,14 @@ import java.util.Map;
     {
         B binding = behaviourDefinition.getBinding();
         List<BehaviourDefinition<B>> existing = index.get(binding);
-        if (existing == null)
-        {
-        	List<BehaviourDefinition<B>> behaviourList = new ArrayList<BehaviourDefinition<B>>();
-        	behaviourList.add(behaviourDefinition);
-        	index.put(binding, behaviourList);
-        	size++;
-        }
-        else
+        if (existing == null || !existing.contains(behaviourDefinition))
         {
-        	if (!existing.contains(behaviourDefinition))
-        	{
-        		existing.add(behaviourDefinition);
-        		size++;
-        	}
+            List<BehaviourDefinition<B>> behaviourList = (existing == null)
+                    ? new ArrayList<BehaviourDefinition<B>>(1)
+                    : new ArrayList<BehaviourDefinition<B>>(existing);
+            behaviourList.add(behaviourDefinition);
+            publish(binding, behaviourList);
+            size++;
         }
         
         for (BehaviourChangeObserver<B> listener : observers)
@@ -100,7 +100,9 @@ import java.util.Map;
         List<BehaviourDefinition<B>> existing = index.get(binding);
         if (existing != null && existing.contains(behaviourDefinition))
         {
-            existing.remove(behaviourDefinition);
+            List<BehaviourDefinition<B>> behaviourList = new ArrayList<BehaviourDefinition<B>>(existing);
+            behaviourList.remove(behaviourDefinition);
+            publish(binding, behaviourList);
             size--;
 
             for (BehaviourChangeObserver<B> listener : observers)
@@ -110,12 +112,29 @@ import java.util.Map;
         }
     } 
     
+    /**
+     * Replace the snapshot with a copy holding the given behaviours for the binding
+     */
+    private void publish(B binding, List<BehaviourDefinition<B>> behaviourList)
+    {
+        Map<B, List<BehaviourDefinition<B>>> newIndex = new HashMap<B, List<BehaviourDefinition<B>>>(index);
+        if (behaviourList.isEmpty())
+        {
+            newIndex.remove(binding);
+        }
+        else
+        {
+            newIndex.put(binding, Collections.unmodifiableList(behaviourList));
+        }
+        index = newIndex;
+    }
+    
     
     /**
      * Gets a Behaviour from the Map
      * 
      * @param binding  the binding
-     * @return  the behaviour
+     * @return  the behaviours (unmodifiable) or <tt>null</tt> if there are none
      */
     public List<BehaviourDefinition<B>> get(B binding)
     {
@@ -130,14 +149,15 @@ import java.util.Map;
      */
     public Collection<BehaviourDefinition<B>> getAll()
     {
-    	List<BehaviourDefinition<B>> allBehaviours = new ArrayList<BehaviourDefinition<B>>(size);
-    	for (List<BehaviourDefinition<B>> behaviours : index.values())
-    	{
-    		allBehaviours.addAll(behaviours);
-    	}
+        Map<B, List<BehaviourDefinition<B>>> snapshot = index;
+        List<BehaviourDefinition<B>> allBehaviours = new ArrayList<BehaviourDefinition<B>>(size);
+        for (List<BehaviourDefinition<B>> behaviours : snapshot.values())
+        {
+            allBehaviours.addAll(behaviours);
+        }
         return allBehaviours;
     }
-
+    
     
     /**
      * Gets the count of bound behaviours
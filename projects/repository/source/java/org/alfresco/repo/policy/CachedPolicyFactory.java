@@ -25,20 +25,23 @@
  */
 package org.alfresco.repo.policy;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.alfresco.api.AlfrescoPublicApi;
-import org.alfresco.util.LockHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 
 /**
  * Policy Factory with caching support.
+ * <p>
+ * The caches are immutable dispatch tables that are replaced on change (copy-on-write), so that
+ * finding the policy for a binding is a volatile read and a map lookup.  Policies are resolved
+ * outside of any lock and are only added to a table if the bound behaviours have not changed
+ * in the meantime.
  *
  * @author David Caruana
  *
@@ -54,26 +57,28 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
     // Behaviour Filter
     private BehaviourFilter behaviourFilter = null;
     
-    // Cache Lock
-    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); 
+    // Guards changes to the caches
+    private final Object writeLock = new Object();
+    
+    // Incremented whenever bound behaviours change
+    private volatile long version = 0L;
 
     /**
      * Cache for a single Policy interface (keyed by Binding)
      */
-    private Map<B, P> singleCache = new HashMap<B, P>();
+    private volatile Map<B, P> singleCache = Collections.emptyMap();
     
     /**
      * Cache for a collection of Policy interfaces (keyed by Binding)
      */
-    private Map<B, Collection<P>> listCache = new HashMap<B, Collection<P>>();
-
-    // Try lock timeout (MNT-11371)
-    private long tryLockTimeout;
+    private volatile Map<B, Collection<P>> listCache = Collections.emptyMap();
 
 
+    /**
+     * @deprecated      the caches no longer use locks that can time out
+     */
     public void setTryLockTimeout(long tryLockTimeout)
     {
-        this.tryLockTimeout = tryLockTimeout;
     }
 
 
@@ -94,14 +99,12 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
         {
             public void addition(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCaches(binding);
             }
 
             public void removal(B binding, Behaviour behaviour)
             {
-                clearCache("aggregate delegate", singleCache, binding);
-                clearCache("delegate collection", listCache, binding);
+                clearCaches(binding);
             }
         });
     }
@@ -116,41 +119,28 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
             return super.create(binding);
         }
         
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy from cache in 'CachedPolicyFactory.create()'");
-        try
-        {
-            P policyInterface = singleCache.get(binding);
-            if (policyInterface != null)
-            {
-                return policyInterface;
-            }
-        }
-        finally
+        P policyInterface = singleCache.get(binding);
+        if (policyInterface != null)
         {
-            lock.readLock().unlock();
+            return policyInterface;
         }
         
         // There wasn't one
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting new policy to cache in 'CachedPolicyFactory.create()'");
-        try
+        long createVersion = version;
+        policyInterface = super.create(binding);
+        synchronized (writeLock)
         {
-            P policyInterface = singleCache.get(binding);
-            if (policyInterface != null)
+            if (createVersion == version)
             {
-                return policyInterface;
+                Map<B, P> newCache = new HashMap<B, P>(singleCache);
+                newCache.put(binding, policyInterface);
+                singleCache = newCache;
+                
+                if (logger.isDebugEnabled())
+                    logger.debug("Cached delegate interface " + policyInterface + " for " + binding + " and policy " + getPolicyClass());
             }
-            policyInterface = super.create(binding);
-            singleCache.put(binding, policyInterface);
-            
-            if (logger.isDebugEnabled())
-                logger.debug("Cached delegate interface " + policyInterface + " for " + binding + " and policy " + getPolicyClass());
-            
-            return policyInterface;
-        }
-        finally
-        {
-            lock.writeLock().unlock();
         }
+        return policyInterface;
     }
     
 
@@ -163,40 +153,43 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
             return super.createList(binding);
         }
         
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting policy list from cache in 'CachedPolicyFactory.createList()'");
-        try
+        Collection<P> policyInterfaces = listCache.get(binding);
+        if (policyInterfaces != null)
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
-            if (policyInterfaces != null)
-            {
-                return policyInterfaces;
-            }
-        }
-        finally
-        {
-            lock.readLock().unlock();
+            return policyInterfaces;
         }
         
         // There wasn't one
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting policy list to cache in 'CachedPolicyFactory.createList()'");
-        try
+        long createVersion = version;
+        policyInterfaces = super.createList(binding);
+        synchronized (writeLock)
         {
-            Collection<P> policyInterfaces = listCache.get(binding);
-            if (policyInterfaces != null)
+            if (createVersion == version)
             {
-                return policyInterfaces;
-            }
-            policyInterfaces = super.createList(binding);
-            listCache.put(binding, policyInterfaces);
+                Map<B, Collection<P>> newCache = new HashMap<B, Collection<P>>(listCache);
+                newCache.put(binding, policyInterfaces);
+                listCache = newCache;
     
-            if (logger.isDebugEnabled())
-                logger.debug("Cached delegate interface collection " + policyInterfaces + " for " + binding + " and policy " + getPolicyClass());
-            
-            return policyInterfaces;
+                if (logger.isDebugEnabled())
+                    logger.debug("Cached delegate interface collection " + policyInterfaces + " for " + binding + " and policy " + getPolicyClass());
+            }
         }
-        finally
+        return policyInterfaces;
+    }
+    
+    /**
+     * Clear entries in both caches based on binding changes.  Policies being resolved
+     * concurrently will not be cached.
+     * 
+     * @param binding  the changed binding or <tt>null</tt> to clear all entries
+     */
+    private void clearCaches(B binding)
+    {
+        synchronized (writeLock)
         {
-            lock.writeLock().unlock();
+            version++;
+            singleCache = clearCache("aggregate delegate", singleCache, binding);
+            listCache = clearCache("delegate collection", listCache, binding);
         }
     }
     
@@ -206,65 +199,43 @@ public class CachedPolicyFactory<B extends BehaviourBinding, P extends Policy> e
      * @param cacheDescription  description of cache to clear
      * @param cache  the cache to clear
      * @param binding  the binding
+     * @return  the new cache
      */
-    private void clearCache(String cacheDescription, Map<B, ?> cache, B binding)
+    private <V> Map<B, V> clearCache(String cacheDescription, Map<B, V> cache, B binding)
     {
         if (binding == null)
         {
-            LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "clearing policy cache in 'CachedPolicyFactory.clearCache()'");
-            try
-            {
-                // A specific binding has not been provided, so clear all entries
-                cache.clear();
-                
-                if (logger.isDebugEnabled() && cache.isEmpty() == false)
-                    logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
-            }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
+            // A specific binding has not been provided, so clear all entries
+            if (logger.isDebugEnabled() && cache.isEmpty() == false)
+                logger.debug("Cleared " + cacheDescription + " cache (all class bindings) for policy " + getPolicyClass());
+            
+            return Collections.emptyMap();
         }
-        else
+        
+        // A specific binding has been provided.  An entry is removed if the binding
+        // in the cache is equal or derived from the changed binding. 
+        Map<B, V> newCache = null;
+        for (B cachedBinding : cache.keySet())
         {
-            // A specific binding has been provided.  Build a list of entries
-            // that require removal.  An entry is removed if the binding in the
-            // list is equal or derived from the changed binding. 
-            Collection<B> invalidBindings = new ArrayList<B>();
-            for (B cachedBinding : cache.keySet())
+            // Determine if binding is equal or derived from changed binding
+            BehaviourBinding generalisedBinding = cachedBinding;
+            while(generalisedBinding != null)
             {
-                // Determine if binding is equal or derived from changed binding
-                BehaviourBinding generalisedBinding = cachedBinding;
-                while(generalisedBinding != null)
+                if (generalisedBinding.equals(binding))
                 {
-                    if (generalisedBinding.equals(binding))
+                    if (newCache == null)
                     {
-                        invalidBindings.add(cachedBinding);
-                        break;
+                        newCache = new HashMap<B, V>(cache);
                     }
-                    generalisedBinding = generalisedBinding.generaliseBinding();
-                }
-            }
-
-            // Remove all invalid bindings
-            if (invalidBindings.size() > 0)
-            {
-                LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "removing invalid policy bindings from cache in 'CachedPolicyFactory.clearCache()'");
-                try
-                {
-                    for (B invalidBinding : invalidBindings)
-                    {
-                        cache.remove(invalidBinding);
-                        
-                        if (logger.isDebugEnabled())
-                            logger.debug("Cleared " + cacheDescription + " cache for " + invalidBinding + " and policy " + getPolicyClass());
-                    }
-                }
-                finally
-                {
-                    lock.writeLock().unlock();
+                    newCache.remove(cachedBinding);
+                    
+                    if (logger.isDebugEnabled())
+                        logger.debug("Cleared " + cacheDescription + " cache for " + cachedBinding + " and policy " + getPolicyClass());
+                    break;
                 }
+                generalisedBinding = generalisedBinding.generaliseBinding();
             }
         }
+        return (newCache == null) ? cache : newCache;
     }
 }
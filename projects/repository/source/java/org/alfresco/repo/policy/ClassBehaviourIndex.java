@@ -28,26 +28,25 @@ package org.alfresco.repo.policy;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
-import org.alfresco.util.LockHelper;
 
 
 /**
  * Class (Type/Aspect) oriented index of bound behaviours
  * 
  * Note: Uses Class hierarchy to derive bindings.
+ * <p>
+ * Lookups read the copy-on-write {@link BehaviourMap behaviour maps} without locking.  Changes
+ * are serialised on the index.
  * 
  * @author David Caruana
  *
  */
 /*package*/ class ClassBehaviourIndex<B extends ClassBehaviourBinding> implements BehaviourIndex<B>
 {
-    // Lock
-    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    
     // Map of class bindings  
     private BehaviourMap<B> classMap = new BehaviourMap<B>();
     
@@ -55,20 +54,11 @@ import org.alfresco.util.LockHelper;
     private BehaviourMap<ServiceBehaviourBinding> serviceMap = new BehaviourMap<ServiceBehaviourBinding>();
     
     // List of registered observers
-    private List<BehaviourChangeObserver<B>> observers = new ArrayList<BehaviourChangeObserver<B>>();
+    private List<BehaviourChangeObserver<B>> observers = new CopyOnWriteArrayList<BehaviourChangeObserver<B>>();
 
     // Behaviour Filter
     private BehaviourFilter filter = null;
 
-    // Try lock timeout (MNT-11371)
-    private long tryLockTimeout;
-
-
-    public void setTryLockTimeout(long tryLockTimeout)
-    {
-        this.tryLockTimeout = tryLockTimeout;
-    }
-
     /**
      * Construct.
      */
@@ -94,25 +84,6 @@ import org.alfresco.util.LockHelper;
             }
         });
 
-        this.classMap.addChangeObserver(new BehaviourChangeObserver<B>()
-        {
-            public void addition(B binding, Behaviour behaviour)
-            {
-                for (BehaviourChangeObserver<B> listener : observers)
-                {
-                    listener.addition(binding, behaviour);
-                }
-            }
-
-            public void removal(B binding, Behaviour behaviour)
-            {
-                for (BehaviourChangeObserver<B> listener : observers)
-                {
-                    listener.removal(binding, behaviour);
-                }
-            }
-        });
-
         // Observe service binding changes and propagate to our own observers
         this.serviceMap.addChangeObserver(new BehaviourChangeObserver<ServiceBehaviourBinding>()
         {
@@ -142,19 +113,10 @@ import org.alfresco.util.LockHelper;
     @Override
     public Collection<BehaviourDefinition> getAll()
     {
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "getting all behavior definitions in 'ClassBehaviourIndex.getAll()'");
-        
-        try
-        {
-            List<BehaviourDefinition> all = new ArrayList<BehaviourDefinition>(classMap.size() + serviceMap.size());
-            all.addAll(classMap.getAll());
-            all.addAll(serviceMap.getAll());
-            return all;
-        }
-        finally
-        {
-            lock.readLock().unlock();
-        }
+        List<BehaviourDefinition> all = new ArrayList<BehaviourDefinition>(classMap.size() + serviceMap.size());
+        all.addAll(classMap.getAll());
+        all.addAll(serviceMap.getAll());
+        return all;
     }
     
 
@@ -162,36 +124,27 @@ import org.alfresco.util.LockHelper;
     @SuppressWarnings("unchecked")
     public Collection<BehaviourDefinition> find(B binding)
     {
-        LockHelper.tryLock(lock.readLock(), tryLockTimeout, "searching behavior definitions list in 'ClassBehaviourIndex.find()'");
-        
-        try
-        {
-            List<BehaviourDefinition> behaviours = new ArrayList<BehaviourDefinition>();
+        List<BehaviourDefinition> behaviours = new ArrayList<BehaviourDefinition>();
 
-            // Find class behaviour by scanning up the class hierarchy
-            List<BehaviourDefinition<B>> behaviour = null;
+        // Find class behaviour by scanning up the class hierarchy
+        List<BehaviourDefinition<B>> behaviour = null;
 
-            if (isEnabled(binding))
+        if (isEnabled(binding))
+        {
+            while (binding != null)
             {
-                while (binding != null)
+                behaviour = classMap.get(binding);
+                if (behaviour != null)
                 {
-                    behaviour = classMap.get(binding);
-                    if (behaviour != null)
-                    {
-                        behaviours.addAll(0, behaviour); // note: list base/generalised before extended/specific
-                    }
-                    binding = (B)binding.generaliseBinding();
+                    behaviours.addAll(0, behaviour); // note: list base/generalised before extended/specific
                 }
+                binding = (B)binding.generaliseBinding();
             }
-            // Append all service-level behaviours
-            behaviours.addAll(serviceMap.getAll());
-            
-            return behaviours;
-        }
-        finally
-        {
-            lock.readLock().unlock();
         }
+        // Append all service-level behaviours
+        behaviours.addAll(serviceMap.getAll());
+        
+        return behaviours;
     }
 
     @Override
@@ -213,17 +166,9 @@ import org.alfresco.util.LockHelper;
      * 
      * @param behaviour  the class bound behaviour
      */
-    public void putClassBehaviour(BehaviourDefinition<B> behaviour)
+    public synchronized void putClassBehaviour(BehaviourDefinition<B> behaviour)
     {
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting behavior definition in 'ClassBehaviourIndex.putClassBehavior()'");
-        try
-        {
-            classMap.put(behaviour);
-        }
-        finally
-        {
-            lock.writeLock().unlock();
-        }
+        classMap.put(behaviour);
     }
 
     
@@ -232,17 +177,9 @@ import org.alfresco.util.LockHelper;
      * 
      * @param behaviour  the service bound behaviour
      */
-    public void putServiceBehaviour(BehaviourDefinition<ServiceBehaviourBinding> behaviour)
+    public synchronized void putServiceBehaviour(BehaviourDefinition<ServiceBehaviourBinding> behaviour)
     {
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "putting behavior definition in 'ClassBehaviourIndex.putServiceBehavior()'");
-        try
-        {
-            serviceMap.put(behaviour);
-        }
-        finally
-        {
-            lock.writeLock().unlock();
-        }
+        serviceMap.put(behaviour);
     }
 
     /**
@@ -250,17 +187,9 @@ import org.alfresco.util.LockHelper;
      * 
      * @param behaviour BehaviourDefinition<B>
      */
-    public void removeClassBehaviour(BehaviourDefinition<B> behaviour)
+    public synchronized void removeClassBehaviour(BehaviourDefinition<B> behaviour)
     {
-        LockHelper.tryLock(lock.writeLock(), tryLockTimeout, "removing behavior definition in 'ClassBehaviourIndex.removeClassBehavior()'");
-        try
-        {
-            classMap.remove(behaviour);
-        }
-        finally
-        {
-            lock.writeLock().unlock();
-        }
+        classMap.remove(behaviour);
     }
 
     private boolean isEnabled(B binding)
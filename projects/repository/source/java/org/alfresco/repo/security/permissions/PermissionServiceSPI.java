@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.security.permissions;
 
+import java.util.BitSet;
+import java.util.List;
 import java.util.Set;
 
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -158,4 +160,16 @@ public interface PermissionServiceSPI extends PermissionService
      * @return - the node permission entry
      */
     public NodePermissionEntry getSetPermissions(StoreRef storeRef);
+    
+    /**
+     * Optimised read permission evaluation for a batch of nodes.  The result is the same as calling
+     * {@link #hasReadPermission(NodeRef)} for each node but nodes sharing an ACL are evaluated
+     * together, so the cost depends on the number of distinct ACLs rather than the number of nodes.
+     * 
+     * @param nodeRefs the nodes to check
+     * @return a bitmap with the bit at each index set if the node at the same index of the list may be read
+     * 
+     * @since 5.2
+     */
+    public BitSet hasReadPermissions(List<NodeRef> nodeRefs);
 }
@@ -26,7 +26,9 @@
 package org.alfresco.repo.security.permissions.impl;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -1205,9 +1207,113 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
         // any dynamic authorities other than those defined in the default permissions model with full
         // control or read permission force hasPermission check
+        if(isForceHasPermission())
+        {
+            return hasPermission(nodeRef, PermissionService.READ);
+        }
+
+        Long aclID = nodeService.getNodeAclId(nodeRef);
+        if(aclID == null)
+        {
+            // ACLID is null - need to call default permissions evaluation
+            // This will end up calling the old-style ACL code that walks up the ACL tree
+            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
+        }
+        else
+        {
+            status = (canRead(aclID) == AccessStatus.ALLOWED ||
+                    adminRead() == AccessStatus.ALLOWED ||
+                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+        }
+
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Each distinct ACL is evaluated once against the current user's authorisations.
+     * Only nodes whose ACL denies read are checked individually for ownership.
+     */
+    @Override
+    @Extend(traitAPI = PermissionServiceTrait.class, extensionAPI = PermissionServiceExtension.class)
+    public BitSet hasReadPermissions(List<NodeRef> nodeRefs)
+    {
+        int size = nodeRefs.size();
+        BitSet readable = new BitSet(size);
+
+        String runAsUser = AuthenticationUtil.getRunAsUser();
+        boolean systemUser = (runAsUser != null && AuthenticationUtil.isRunAsUserTheSystemUser());
+        if (runAsUser != null && !systemUser && isForceHasPermission())
+        {
+            for (int i = 0; i < size; i++)
+            {
+                if (hasReadPermission(nodeRefs.get(i)) == AccessStatus.ALLOWED)
+                {
+                    readable.set(i);
+                }
+            }
+            return readable;
+        }
+        boolean adminRead = (runAsUser != null && !systemUser && adminRead() == AccessStatus.ALLOWED);
+
+        Map<Long, Boolean> aclReadable = new HashMap<Long, Boolean>(64);
+        for (int i = 0; i < size; i++)
+        {
+            // The same rules as for a single node check
+            NodeRef nodeRef = nodeRefs.get(i);
+            if (nodeRef == null || !nodeService.exists(nodeRef))
+            {
+                readable.set(i);
+                continue;
+            }
+            if (runAsUser == null)
+            {
+                continue;
+            }
+            if (systemUser)
+            {
+                readable.set(i);
+                continue;
+            }
+            Long aclID = nodeService.getNodeAclId(nodeRef);
+            if (aclID == null)
+            {
+                if (hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ)) == AccessStatus.ALLOWED)
+                {
+                    readable.set(i);
+                }
+                continue;
+            }
+            Boolean canRead = aclReadable.get(aclID);
+            if (canRead == null)
+            {
+                canRead = (canRead(aclID) == AccessStatus.ALLOWED);
+                aclReadable.put(aclID, canRead);
+            }
+            if (canRead || adminRead || ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED)
+            {
+                readable.set(i);
+            }
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Bulk read check of " + size + " nodes evaluated " + aclReadable.size() + " ACLs: " + readable.cardinality() + " readable");
+        }
+        return readable;
+    }
+
+    /**
+     * Any dynamic authorities other than those defined in the default permissions model with full
+     * control or read permission force the full hasPermission check.  The answer is held for the
+     * transaction.
+     */
+    private boolean isForceHasPermission()
+    {
         Boolean forceHasPermission = (Boolean)AlfrescoTransactionSupport.getResource("forceHasPermission");
         if(forceHasPermission == null)
         {
+            forceHasPermission = Boolean.FALSE;
             for(DynamicAuthority dynamicAuthority : dynamicAuthorities)
             {
                 String authority = dynamicAuthority.getAuthority();
@@ -1225,27 +1331,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             }
             AlfrescoTransactionSupport.bindResource("forceHasPermission", forceHasPermission);            
         }
-
-        if(forceHasPermission == Boolean.TRUE)
-        {
-            return hasPermission(nodeRef, PermissionService.READ);
-        }
-
-        Long aclID = nodeService.getNodeAclId(nodeRef);
-        if(aclID == null)
-        {
-            // ACLID is null - need to call default permissions evaluation
-            // This will end up calling the old-style ACL code that walks up the ACL tree
-            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
-        }
-        else
-        {
-            status = (canRead(aclID) == AccessStatus.ALLOWED ||
-                    adminRead() == AccessStatus.ALLOWED ||
-                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
-        }
-
-        return status;
+        return forceHasPermission.booleanValue();
     }
 
     protected AccessStatus adminRead()
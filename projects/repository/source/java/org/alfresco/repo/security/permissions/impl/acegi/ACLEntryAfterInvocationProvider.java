@@ -52,6 +52,7 @@ import org.alfresco.repo.security.permissions.PermissionCheckCollection;
 import org.alfresco.repo.security.permissions.PermissionCheckValue;
 import org.alfresco.repo.security.permissions.PermissionCheckedCollection.PermissionCheckedCollectionMixin;
 import org.alfresco.repo.security.permissions.PermissionCheckedValue;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
 import org.alfresco.repo.security.permissions.impl.SimplePermissionReference;
 import org.alfresco.service.cmr.repository.AssociationRef;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -85,6 +86,8 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
 
     private static final String AFTER_ACL_PARENT = "AFTER_ACL_PARENT";
 
+    private static final int MIN_BULK_READ_BATCH_SIZE = 32;
+
     private PermissionService permissionService;
 
     private NamespacePrefixResolver nspr;
@@ -101,6 +104,7 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
 
 	private boolean optimisePermissionsCheck;
 	private int optimisePermissionsBulkFetchSize;
+    private boolean optimiseCollectionPermissionsCheck = false;
     private boolean anyDenyDenies = false;
     private boolean postProcessDenies = false;
     /**
@@ -529,6 +533,16 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
     	this.optimisePermissionsBulkFetchSize = optimisePermissionsBulkFetchSize;
     }
 
+    /**
+     * Use the bulk read check, which works like {@link PermissionService#hasReadPermission(NodeRef)}, for returned
+     * collections as well as result sets.  Off by default: unlike the full <tt>Read</tt> check collections otherwise
+     * get, it ignores node types and aspects.  Canned queries therefore only benefit when this is switched on.
+     */
+    public void setOptimiseCollectionPermissionsCheck(boolean optimiseCollectionPermissionsCheck)
+    {
+        this.optimiseCollectionPermissionsCheck = optimiseCollectionPermissionsCheck;
+    }
+
     public void setAnyDenyDenies(boolean anyDenyDenies)
     {
         this.anyDenyDenies = anyDenyDenies;
@@ -538,6 +552,54 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
     {
         this.postProcessDenies = postProcessDenies;
     }
+
+    /**
+     * @return the permission service if read permissions can be evaluated in bulk, otherwise <tt>null</tt>
+     */
+    private PermissionServiceSPI getBulkPermissionService()
+    {
+        if (optimisePermissionsCheck && permissionService instanceof PermissionServiceSPI)
+        {
+            return (PermissionServiceSPI) permissionService;
+        }
+        return null;
+    }
+
+    /**
+     * Work out how many results to check for read permission in one go.  The batch is no larger than
+     * the bulk fetch size and, when only a few more results are wanted, not much larger than required.
+     * 
+     * @param remaining         the number of results left to check
+     * @param checksRemaining   the number of permission checks left before cut-off
+     * @param maxSize           the maximum number of results required or <tt>null</tt>
+     * @param included          the number of results already included
+     */
+    private int getBulkReadBatchSize(int remaining, int checksRemaining, Integer maxSize, int included)
+    {
+        int batchSize = Math.max(optimisePermissionsBulkFetchSize, 1);
+        if (maxSize != null)
+        {
+            int wanted = maxSize.intValue() - included + 1;
+            batchSize = Math.min(batchSize, Math.max(wanted, MIN_BULK_READ_BATCH_SIZE));
+        }
+        batchSize = Math.min(batchSize, Math.min(remaining, checksRemaining));
+        return Math.max(batchSize, 1);
+    }
+
+    /**
+     * @return <tt>true</tt> if all the definitions are read checks on the returned nodes themselves
+     */
+    private boolean isNodeReadCheckOnly(List<ConfigAttributeDefintion> supportedDefinitions)
+    {
+        for (ConfigAttributeDefintion cad : supportedDefinitions)
+        {
+            if (!cad.typeString.equals(AFTER_ACL_NODE) || !PermissionService.READ.equals(cad.required.getName()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
     
 	private ResultSet decide(Authentication authentication, Object object, ConfigAttributeDefinition config, ResultSet returnedObject) throws AccessDeniedException
     {
@@ -629,6 +691,12 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         boolean oldBulkFetch = returnedObject.setBulkFetch(true);
         int oldFetchSize = returnedObject.setBulkFetchSize(optimisePermissionsBulkFetchSize);
 
+        // evaluate read permissions a batch at a time, if supported
+        PermissionServiceSPI bulkPermissionService = getBulkPermissionService();
+        BitSet readable = null;
+        int batchStart = 0;
+        int batchEnd = 0;
+
         try
         {
            for (int i = 0; i < returnedObject.length(); i++)
@@ -659,7 +727,25 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                    filteringResultSet.setIncluded(i, false);
                }
    
-               if (filteringResultSet.getIncluded(i) && permissionService.hasReadPermission(nodeRef) == AccessStatus.DENIED)
+               if (filteringResultSet.getIncluded(i) && bulkPermissionService != null)
+               {
+                   if (i >= batchEnd)
+                   {
+                       batchStart = i;
+                       batchEnd = i + getBulkReadBatchSize(returnedObject.length() - i, maxChecks - i, maxSize, filteringResultSet.length());
+                       List<NodeRef> batch = new ArrayList<NodeRef>(batchEnd - batchStart);
+                       for (int j = batchStart; j < batchEnd; j++)
+                       {
+                           batch.add(returnedObject.getNodeRef(j));
+                       }
+                       readable = bulkPermissionService.hasReadPermissions(batch);
+                   }
+                   if (!readable.get(i - batchStart))
+                   {
+                       filteringResultSet.setIncluded(i, false);
+                   }
+               }
+               else if (filteringResultSet.getIncluded(i) && permissionService.hasReadPermission(nodeRef) == AccessStatus.DENIED)
                {
                    filteringResultSet.setIncluded(i, false);
                }
@@ -895,6 +981,16 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         // Keep values explicitly
         List<Object> keepValues = new ArrayList<Object>(returnedObject.size());
         
+        // Read checks on the nodes themselves can be evaluated a batch at a time, if enabled for collections
+        PermissionServiceSPI bulkPermissionService = (optimiseCollectionPermissionsCheck && isNodeReadCheckOnly(supportedDefinitions))
+                ? getBulkPermissionService() : null;
+        Object[] values = (bulkPermissionService == null) ? null : returnedObject.toArray();
+        Integer maxSize = (targetResultCount < Integer.MAX_VALUE) ? Integer.valueOf((int) targetResultCount) : null;
+        List<NodeRef> batchNodeRefs = null;
+        BitSet readable = null;
+        int batchStart = 0;
+        int batchEnd = 0;
+        
         for (Object nextObject : returnedObject)
         {
             // if the maximum result size or time has been exceeded, then we have to remove only
@@ -927,88 +1023,80 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
             }
             
             boolean allowed = true;
-            for (ConfigAttributeDefintion cad : supportedDefinitions)
+            if (bulkPermissionService != null)
             {
-                NodeRef testNodeRef = null;
-                if (cad.typeString.equals(AFTER_ACL_NODE))
+                if (count >= batchEnd)
                 {
-                    if (StoreRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = nodeService.getRootNode((StoreRef) nextObject);
-                    }
-                    else if (NodeRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = (NodeRef) nextObject;
-                    }
-                    else if (ChildAssociationRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = ((ChildAssociationRef) nextObject).getChildRef();
-                    }
-                    else if (Pair.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = (NodeRef) ((Pair)nextObject).getSecond();
-                    }
-                    else if (PermissionCheckValue.class.isAssignableFrom(nextObject.getClass()))
+                    batchStart = count;
+                    batchEnd = count + getBulkReadBatchSize(values.length - count, maxPermissionChecks - count, maxSize, keepValues.size());
+                    batchNodeRefs = new ArrayList<NodeRef>(batchEnd - batchStart);
+                    for (int j = batchStart; j < batchEnd; j++)
                     {
-                        testNodeRef = ((PermissionCheckValue) nextObject).getNodeRef();
-                    }
-                    else if (AssociationRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = ((AssociationRef) nextObject).getTargetRef();
-                    }
-                    else
-                    {
-                        throw new ACLEntryVoterException("The specified parameter is not recognized: " + nextObject.getClass());
+                        batchNodeRefs.add(getTestNodeRef(values[j]));
                     }
+                    readable = bulkPermissionService.hasReadPermissions(batchNodeRefs);
                 }
-                else if (cad.typeString.equals(AFTER_ACL_PARENT))
+                // Unfiltered nodes are allowed regardless
+                allowed = readable.get(count - batchStart) || isUnfiltered(batchNodeRefs.get(count - batchStart));
+            }
+            else
+            {
+                for (ConfigAttributeDefintion cad : supportedDefinitions)
                 {
-                    if (StoreRef.class.isAssignableFrom(nextObject.getClass()))
+                    NodeRef testNodeRef = null;
+                    if (cad.typeString.equals(AFTER_ACL_NODE))
                     {
-                        // Will be allowed
-                        testNodeRef = null;
+                        testNodeRef = getTestNodeRef(nextObject);
                     }
-                    else if (NodeRef.class.isAssignableFrom(nextObject.getClass()))
+                    else if (cad.typeString.equals(AFTER_ACL_PARENT))
                     {
-                        testNodeRef = nodeService.getPrimaryParent((NodeRef) nextObject).getParentRef();
+                        if (StoreRef.class.isAssignableFrom(nextObject.getClass()))
+                        {
+                            // Will be allowed
+                            testNodeRef = null;
+                        }
+                        else if (NodeRef.class.isAssignableFrom(nextObject.getClass()))
+                        {
+                            testNodeRef = nodeService.getPrimaryParent((NodeRef) nextObject).getParentRef();
+                        }
+                        else if (ChildAssociationRef.class.isAssignableFrom(nextObject.getClass()))
+                        {
+                            testNodeRef = ((ChildAssociationRef) nextObject).getParentRef();
+                        }
+                        else if (AssociationRef.class.isAssignableFrom(nextObject.getClass()))
+                        {
+                            testNodeRef = ((AssociationRef) nextObject).getSourceRef();
+                        }
+                        else if (Pair.class.isAssignableFrom(nextObject.getClass()))
+                        {
+                            testNodeRef = (NodeRef) ((Pair)nextObject).getSecond();
+                        }
+                        else if (PermissionCheckValue.class.isAssignableFrom(nextObject.getClass()))
+                        {
+                            NodeRef nodeRef = ((PermissionCheckValue) nextObject).getNodeRef();
+                            testNodeRef = nodeService.getPrimaryParent(nodeRef).getParentRef();
+                        }
+                        else
+                        {
+                            throw new ACLEntryVoterException("The specified parameter is recognized: " + nextObject.getClass());
+                        }
                     }
-                    else if (ChildAssociationRef.class.isAssignableFrom(nextObject.getClass()))
+                    
+                    if (log.isDebugEnabled())
                     {
-                        testNodeRef = ((ChildAssociationRef) nextObject).getParentRef();
+                        log.debug("\t" + cad.typeString + " test on " + testNodeRef + " from " + nextObject.getClass().getName());
                     }
-                    else if (AssociationRef.class.isAssignableFrom(nextObject.getClass()))
+                    
+                    if (isUnfiltered(testNodeRef))      // Null allows
                     {
-                        testNodeRef = ((AssociationRef) nextObject).getSourceRef();
+                        continue;                       // Continue to next ConfigAttributeDefintion
                     }
-                    else if (Pair.class.isAssignableFrom(nextObject.getClass()))
+                    
+                    if (allowed && (testNodeRef != null) && (permissionService.hasPermission(testNodeRef, cad.required.toString()) == AccessStatus.DENIED))
                     {
-                        testNodeRef = (NodeRef) ((Pair)nextObject).getSecond();
+                        allowed = false;
+                        break;                          // No point evaluating more ConfigAttributeDefintions
                     }
-                    else if (PermissionCheckValue.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        NodeRef nodeRef = ((PermissionCheckValue) nextObject).getNodeRef();
-                        testNodeRef = nodeService.getPrimaryParent(nodeRef).getParentRef();
-                    }
-                    else
-                    {
-                        throw new ACLEntryVoterException("The specified parameter is recognized: " + nextObject.getClass());
-                    }
-                }
-                
-                if (log.isDebugEnabled())
-                {
-                    log.debug("\t" + cad.typeString + " test on " + testNodeRef + " from " + nextObject.getClass().getName());
-                }
-                
-                if (isUnfiltered(testNodeRef))      // Null allows
-                {
-                    continue;                       // Continue to next ConfigAttributeDefintion
-                }
-                
-                if (allowed && (testNodeRef != null) && (permissionService.hasPermission(testNodeRef, cad.required.toString()) == AccessStatus.DENIED))
-                {
-                    allowed = false;
-                    break;                          // No point evaluating more ConfigAttributeDefintions
                 }
             }
             
@@ -1043,6 +1131,41 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         return PermissionCheckedCollectionMixin.create(returnedObject, cutoff, checksRemaining, sizeOriginal);
     }
 
+    /**
+     * @return the node to check for {@link #AFTER_ACL_NODE} definitions
+     */
+    private NodeRef getTestNodeRef(Object nextObject)
+    {
+        if (StoreRef.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return nodeService.getRootNode((StoreRef) nextObject);
+        }
+        else if (NodeRef.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return (NodeRef) nextObject;
+        }
+        else if (ChildAssociationRef.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return ((ChildAssociationRef) nextObject).getChildRef();
+        }
+        else if (Pair.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return (NodeRef) ((Pair)nextObject).getSecond();
+        }
+        else if (PermissionCheckValue.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return ((PermissionCheckValue) nextObject).getNodeRef();
+        }
+        else if (AssociationRef.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return ((AssociationRef) nextObject).getTargetRef();
+        }
+        else
+        {
+            throw new ACLEntryVoterException("The specified parameter is not recognized: " + nextObject.getClass());
+        }
+    }
+
     @SuppressWarnings("rawtypes")
     private Object[] decide(Authentication authentication, Object object, ConfigAttributeDefinition config, Object[] returnedObject) throws AccessDeniedException
     {
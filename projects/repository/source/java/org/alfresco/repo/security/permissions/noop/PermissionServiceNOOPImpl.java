@@ -25,8 +25,10 @@
  */
 package org.alfresco.repo.security.permissions.noop;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.alfresco.repo.security.permissions.NodePermissionEntry;
@@ -284,6 +286,14 @@ public class PermissionServiceNOOPImpl implements PermissionServiceSPI
         return AccessStatus.ALLOWED;
     }
 
+    @Override
+    public BitSet hasReadPermissions(List<NodeRef> nodeRefs)
+    {
+        BitSet readable = new BitSet(nodeRefs.size());
+        readable.set(0, nodeRefs.size());
+        return readable;
+    }
+
     @Override
 	public Set<String> getAuthorisations()
 	{
@@ -33,6 +33,7 @@ import java.util.Map;
 import org.alfresco.repo.content.ContentLimitProvider;
 import org.alfresco.repo.content.ContentLimitProvider.NoLimitProvider;
 import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.filestore.DeduplicatingFileContentStore;
 import org.alfresco.repo.content.filestore.FileContentStore;
 import org.springframework.context.ApplicationContext;
 
@@ -42,6 +43,7 @@ import org.springframework.context.ApplicationContext;
 public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentStore
 {
     private ContentLimitProvider contentLimitProvider = new NoLimitProvider();
+    private boolean deduplicateContent;
     
     /**
      * Sets a new {@link ContentLimitProvider} which will provide a maximum filesize for content.
@@ -51,6 +53,17 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
         this.contentLimitProvider = contentLimitProvider;
     }
     
+    /**
+     * Store each unique content stream only once per tenant.
+     * 
+     * @see DeduplicatingFileContentStore
+     * @since 5.2
+     */
+    public void setDeduplicateContent(boolean deduplicateContent)
+    {
+        this.deduplicateContent = deduplicateContent;
+    }
+    
     protected ContentStore initContentStore(ApplicationContext ctx, String contentRoot)
     {
     	Map<String, Serializable> extendedEventParams = new HashMap<String, Serializable>();
@@ -59,7 +72,15 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
     	    extendedEventParams.put("Tenant", tenantService.getCurrentUserDomain());
     	}
 
-        FileContentStore fileContentStore = new FileContentStore(ctx, new File(contentRoot), extendedEventParams);
+        FileContentStore fileContentStore = null;
+        if (deduplicateContent)
+        {
+            fileContentStore = new DeduplicatingFileContentStore(ctx, new File(contentRoot), null, extendedEventParams);
+        }
+        else
+        {
+            fileContentStore = new FileContentStore(ctx, new File(contentRoot), extendedEventParams);
+        }
         
         // Set the content filesize limiter if there is one.
         if (this.contentLimitProvider != null)
@@ -26,6 +26,7 @@
 
 package org.alfresco.repo.virtual.bundle;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -421,6 +422,12 @@ public class VirtualPermissionServiceExtension extends
         return getTrait().hasReadPermission(nodeRef);
     }
 
+    @Override
+    public BitSet hasReadPermissions(List<NodeRef> nodeRefs)
+    {
+        return getTrait().hasReadPermissions(nodeRefs);
+    }
+
     @Override
     public Set<String> getReaders(Long aclId)
     {
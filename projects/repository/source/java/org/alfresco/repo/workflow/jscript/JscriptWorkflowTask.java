@@ -28,6 +28,7 @@ package org.alfresco.repo.workflow.jscript;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -252,7 +253,7 @@ public class JscriptWorkflowTask extends BaseScopableProcessorExtension implemen
     {
         // look for content nodes or links to content
         // NOTE: folders within workflow packages are ignored for now
-        Collection<QName> allowedTypes = dictionaryService.getSubTypes(ContentModel.TYPE_CONTENT, true);
+        Collection<QName> allowedTypes = new HashSet<QName>(dictionaryService.getSubTypes(ContentModel.TYPE_CONTENT, true));
         allowedTypes.addAll(dictionaryService.getSubTypes(ApplicationModel.TYPE_FILELINK, true));
         return allowedTypes;
     }
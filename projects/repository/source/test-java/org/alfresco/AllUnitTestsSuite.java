@@ -53,16 +53,26 @@ public class AllUnitTestsSuite extends TestSuite
         suite.addTest(new JUnit4TestAdapter(org.alfresco.filesys.config.ServerConfigurationBeanTest.class));
         suite.addTestSuite(org.alfresco.filesys.repo.CIFSContentComparatorTest.class);
         suite.addTestSuite(org.alfresco.filesys.repo.rules.ShuffleTest.class);
+        suite.addTestSuite(org.alfresco.repo.action.FileActionQueueStoreTest.class);
+        suite.addTestSuite(org.alfresco.repo.action.AttributeActionQueueStoreTest.class);
+        suite.addTestSuite(org.alfresco.repo.action.DurableAsynchronousActionExecutionQueueImplTest.class);
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.activities.ActivityServiceImplSiteMembersFeedTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.activities.feed.FeedTaskProcessorTest.class));
         suite.addTestSuite(org.alfresco.repo.admin.Log4JHierarchyInitTest.class);
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.attributes.PropTablesCleanupJobTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.DefaultCacheFactoryTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.DefaultSimpleCacheTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.OffHeapSimpleCacheTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.HotKeyRecorderTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.CompactKeySetTest.class));
         suite.addTestSuite(org.alfresco.repo.cache.lookup.EntityLookupCacheTest.class);
+        suite.addTestSuite(org.alfresco.repo.cache.lookup.DenseIdLookupCacheTest.class);
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.calendar.CalendarHelpersTest.class));
         suite.addTestSuite(org.alfresco.repo.dictionary.RepoDictionaryDAOTest.class);
         suite.addTestSuite(org.alfresco.repo.forms.processor.node.FieldProcessorTest.class);
         suite.addTestSuite(org.alfresco.repo.forms.processor.workflow.TaskFormProcessorTest.class);
         suite.addTestSuite(org.alfresco.repo.forms.processor.workflow.WorkflowFormProcessorTest.class);
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.imap.ContentSharedInputStreamTest.class));
         suite.addTestSuite(org.alfresco.repo.invitation.site.InviteSenderTest.class);
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.lock.LockUtilsTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.lock.mem.LockStoreImplTest.class));
@@ -0,0 +1,410 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.attributes.DuplicateAttributeException;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.EqualsHelper;
+import org.alfresco.util.GUID;
+
+/**
+ * Tests the claims, deduplication and in-memory index of the {@link AttributeActionQueueStore}
+ * against an in-memory {@link AttributeService}.
+ * 
+ * @since 5.2
+ */
+public class AttributeActionQueueStoreTest extends TestCase
+{
+    private static final String QUEUE_NAME = "AttributeActionQueueStoreTest";
+    private static final String SERVER_ID = "server1";
+    private static final String OTHER_SERVER_ID = "server2";
+    
+    private InMemoryAttributeService attributeService;
+    private TransactionService transactionService;
+    private AttributeActionQueueStore store;
+    private long queuedTime;
+    
+    @Override
+    public void setUp() throws Exception
+    {
+        attributeService = new InMemoryAttributeService();
+        transactionService = createTransactionService();
+        store = new AttributeActionQueueStore(transactionService, attributeService, QUEUE_NAME, 60000L, 60000L);
+        queuedTime = System.currentTimeMillis();
+    }
+    
+    /**
+     * @return          a transaction service that runs callbacks directly
+     */
+    static TransactionService createTransactionService()
+    {
+        RetryingTransactionHelper txnHelper = new RetryingTransactionHelper()
+        {
+            @Override
+            public <R> R doInTransaction(RetryingTransactionCallback<R> cb, boolean readOnly, boolean requiresNew)
+            {
+                try
+                {
+                    return cb.execute();
+                }
+                catch (RuntimeException e)
+                {
+                    throw e;
+                }
+                catch (Throwable e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        TransactionService transactionService = mock(TransactionService.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+        return transactionService;
+    }
+    
+    private QueuedAction createEntry(String serverId, String actionName, int priority, NodeRef nodeRef)
+    {
+        Map<String, Serializable> parameterValues = new HashMap<String, Serializable>();
+        parameterValues.put("param", "a");
+        ActionImpl action = new ActionImpl(null, GUID.generate(), actionName, parameterValues);
+        action.setRunAsUser("admin");
+        // Keep the queue order deterministic
+        return new QueuedAction(GUID.generate(), serverId, priority, queuedTime++, action, nodeRef, true, null);
+    }
+    
+    private QueuedAction createEntry(String actionName, int priority)
+    {
+        return createEntry(SERVER_ID, actionName, priority, createNodeRef());
+    }
+    
+    private NodeRef createNodeRef()
+    {
+        return new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, GUID.generate());
+    }
+    
+    public void testPendingInPriorityOrder() throws Exception
+    {
+        QueuedAction low = createEntry("create-thumbnail", -10);
+        QueuedAction normal1 = createEntry("mail", 0);
+        QueuedAction high = createEntry("script", 10);
+        QueuedAction normal2 = createEntry("mail", 0);
+        assertTrue(store.add(low));
+        assertTrue(store.add(normal1));
+        assertTrue(store.add(high));
+        assertTrue(store.add(normal2));
+        
+        List<QueuedAction> pending = store.getPending(10);
+        assertEquals(Arrays.asList(high, normal1, normal2, low), pending);
+        assertEquals(2, store.getPending(2).size());
+        assertEquals(4, store.getPendingCount());
+        
+        // A fresh read from the database gives the same order
+        AttributeActionQueueStore restarted = new AttributeActionQueueStore(transactionService, attributeService, QUEUE_NAME, 60000L);
+        assertEquals(pending, restarted.getPending(10));
+    }
+    
+    public void testClaimIsExclusiveAndReleasesDeduplicationKey() throws Exception
+    {
+        NodeRef nodeRef = createNodeRef();
+        QueuedAction first = createEntry(SERVER_ID, "create-thumbnail", 0, nodeRef);
+        QueuedAction identical = createEntry(SERVER_ID, "create-thumbnail", 0, nodeRef);
+        assertTrue(store.add(first));
+        assertFalse("An identical entry is pending", store.add(identical));
+        
+        AttributeActionQueueStore otherServer = new AttributeActionQueueStore(transactionService, attributeService, QUEUE_NAME, 60000L);
+        assertTrue(store.claim(first, SERVER_ID));
+        assertFalse("An entry can only be claimed once", otherServer.claim(first, OTHER_SERVER_ID));
+        assertEquals(0, store.getPendingCount());
+        assertEquals(0, otherServer.getPendingCount());
+        
+        // Once the first is underway, the same work may be queued again
+        assertTrue(store.add(identical));
+        
+        store.remove(first);
+        assertFalse("A removed entry cannot be claimed", store.claim(first, SERVER_ID));
+        assertFalse(attributeService.exists(AttributeActionQueueStore.KEY_CLAIM, QUEUE_NAME, first.getId()));
+        assertFalse(attributeService.exists(AttributeActionQueueStore.KEY_ENTRY, QUEUE_NAME, first.getId()));
+    }
+    
+    public void testEntriesOfOtherServersAreSeenOnResync() throws Exception
+    {
+        AttributeActionQueueStore otherServer = new AttributeActionQueueStore(transactionService, attributeService, QUEUE_NAME, 60000L, 0L);
+        assertEquals(0, otherServer.getPendingCount());
+        
+        QueuedAction entry = createEntry("mail", 0);
+        store.add(entry);
+        assertEquals(Arrays.asList(entry), otherServer.getPending(10));
+    }
+    
+    public void testAbandonedClaimIsTakenOver() throws Exception
+    {
+        AttributeActionQueueStore failedServer = new AttributeActionQueueStore(transactionService, attributeService, QUEUE_NAME, 100L, 0L);
+        AttributeActionQueueStore survivingServer = new AttributeActionQueueStore(transactionService, attributeService, QUEUE_NAME, 100L, 0L);
+        QueuedAction entry = createEntry(OTHER_SERVER_ID, "mail", 0, createNodeRef());
+        failedServer.add(entry);
+        assertTrue(failedServer.claim(entry, OTHER_SERVER_ID));
+        assertEquals("A live claim hides the entry", 0, survivingServer.getPendingCount());
+        assertFalse(survivingServer.claim(entry, SERVER_ID));
+        
+        // A renewed claim is still live
+        Thread.sleep(60);
+        failedServer.renewClaim(entry, OTHER_SERVER_ID);
+        Thread.sleep(60);
+        assertFalse(survivingServer.claim(entry, SERVER_ID));
+        
+        // The server stops renewing its claim
+        Thread.sleep(150);
+        assertEquals(Arrays.asList(entry), survivingServer.getPending(10));
+        assertTrue(survivingServer.claim(entry, SERVER_ID));
+        assertFalse("The claim has changed hands", failedServer.claim(entry, OTHER_SERVER_ID));
+    }
+    
+    public void testReleaseClaims() throws Exception
+    {
+        QueuedAction entry = createEntry("mail", 0);
+        QueuedAction other = createEntry(OTHER_SERVER_ID, "mail", 0, createNodeRef());
+        store.add(entry);
+        store.add(other);
+        store.claim(entry, SERVER_ID);
+        store.claim(other, OTHER_SERVER_ID);
+        assertEquals(0, store.getPendingCount());
+        
+        assertEquals(1, store.releaseClaims(SERVER_ID));
+        assertEquals(Arrays.asList(entry), store.getPending(10));
+        assertTrue(store.claim(entry, SERVER_ID));
+    }
+    
+    /**
+     * The index is rebuilt without holding its lock, and changes made meanwhile are not lost
+     */
+    public void testResyncDoesNotBlockOtherCallers() throws Exception
+    {
+        final AttributeActionQueueStore resyncing = new AttributeActionQueueStore(transactionService, attributeService, QUEUE_NAME, 60000L, 0L);
+        QueuedAction claimedDuringResync = createEntry("mail", 0);
+        assertTrue(resyncing.add(claimedDuringResync));
+        
+        attributeService.pauseEntryQuery();
+        final List<QueuedAction> resynced = new ArrayList<QueuedAction>();
+        Thread resyncThread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                resynced.addAll(resyncing.getPending(10));
+            }
+        };
+        resyncThread.start();
+        try
+        {
+            assertTrue(attributeService.awaitEntryQuery());
+            
+            // The claims were read before the pause, so the entry claimed now is read as pending
+            assertEquals(1, resyncing.getPendingCount());
+            assertTrue(resyncing.claim(claimedDuringResync, SERVER_ID));
+            QueuedAction addedDuringResync = createEntry("script", 5);
+            assertTrue(resyncing.add(addedDuringResync));
+            assertEquals(Arrays.asList(addedDuringResync), resyncing.getPending(10));
+            
+            attributeService.resumeEntryQuery();
+            resyncThread.join(5000);
+            assertFalse(resyncThread.isAlive());
+            assertEquals(Arrays.asList(addedDuringResync), resynced);
+            assertEquals(Arrays.asList(addedDuringResync), resyncing.getPending(10));
+        }
+        finally
+        {
+            attributeService.resumeEntryQuery();
+        }
+    }
+    
+    /**
+     * Holds attributes in memory.  A query for queue entries can be paused to simulate a slow database.
+     */
+    static class InMemoryAttributeService implements AttributeService
+    {
+        private final Map<List<Serializable>, Serializable> attributes = new LinkedHashMap<List<Serializable>, Serializable>();
+        private volatile CountDownLatch entryQueryStarted;
+        private volatile CountDownLatch entryQueryResumed;
+        
+        void pauseEntryQuery()
+        {
+            entryQueryStarted = new CountDownLatch(1);
+            entryQueryResumed = new CountDownLatch(1);
+        }
+        
+        boolean awaitEntryQuery() throws InterruptedException
+        {
+            return entryQueryStarted.await(5, TimeUnit.SECONDS);
+        }
+        
+        void resumeEntryQuery()
+        {
+            CountDownLatch resumed = entryQueryResumed;
+            entryQueryResumed = null;
+            if (resumed != null)
+            {
+                resumed.countDown();
+            }
+        }
+        
+        private static List<Serializable> key(Serializable... keys)
+        {
+            List<Serializable> key = new ArrayList<Serializable>(Arrays.asList(keys));
+            while (key.size() < 3)
+            {
+                key.add(null);
+            }
+            return key;
+        }
+        
+        private static boolean matches(List<Serializable> key, Serializable... keys)
+        {
+            for (int i = 0; i < keys.length; i++)
+            {
+                if (!EqualsHelper.nullSafeEquals(key.get(i), keys[i]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public synchronized boolean exists(Serializable... keys)
+        {
+            return attributes.containsKey(key(keys));
+        }
+        
+        @Override
+        public synchronized Serializable getAttribute(Serializable... keys)
+        {
+            return attributes.get(key(keys));
+        }
+        
+        @Override
+        public void getAttributes(AttributeQueryCallback callback, Serializable... keys)
+        {
+            CountDownLatch resumed = entryQueryResumed;
+            if (resumed != null && AttributeActionQueueStore.KEY_ENTRY.equals(keys[0]))
+            {
+                entryQueryStarted.countDown();
+                try
+                {
+                    resumed.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            Map<List<Serializable>, Serializable> results = new LinkedHashMap<List<Serializable>, Serializable>();
+            synchronized (this)
+            {
+                for (Map.Entry<List<Serializable>, Serializable> attribute : attributes.entrySet())
+                {
+                    if (matches(attribute.getKey(), keys))
+                    {
+                        results.put(attribute.getKey(), attribute.getValue());
+                    }
+                }
+            }
+            long id = 0L;
+            for (Map.Entry<List<Serializable>, Serializable> result : results.entrySet())
+            {
+                Serializable[] resultKeys = result.getKey().toArray(new Serializable[3]);
+                if (!callback.handleAttribute(id++, result.getValue(), resultKeys))
+                {
+                    break;
+                }
+            }
+        }
+        
+        @Override
+        public synchronized void setAttribute(Serializable value, Serializable... keys)
+        {
+            attributes.put(key(keys), value);
+        }
+        
+        @Override
+        public synchronized void createAttribute(Serializable value, Serializable... keys)
+        {
+            List<Serializable> key = key(keys);
+            if (attributes.containsKey(key))
+            {
+                throw new DuplicateAttributeException(key.get(0), key.get(1), key.get(2), null);
+            }
+            attributes.put(key, value);
+        }
+        
+        @Override
+        public void updateOrCreateAttribute(
+                Serializable keyBefore1, Serializable keyBefore2, Serializable keyBefore3,
+                Serializable keyAfter1, Serializable keyAfter2, Serializable keyAfter3)
+        {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public synchronized void removeAttribute(Serializable... keys)
+        {
+            attributes.remove(key(keys));
+        }
+        
+        @Override
+        public synchronized void removeAttributes(Serializable... keys)
+        {
+            Iterator<List<Serializable>> iterator = attributes.keySet().iterator();
+            while (iterator.hasNext())
+            {
+                if (matches(iterator.next(), keys))
+                {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.rule.RuleServiceImpl;
+import org.alfresco.service.cmr.action.Action;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests the dispatcher of the {@link DurableAsynchronousActionExecutionQueueImpl}: priorities, concurrency limits,
+ * deduplication and taking over the actions of a failed server.  The actions themselves are not executed.
+ * 
+ * @since 5.2
+ */
+public class DurableAsynchronousActionExecutionQueueImplTest extends TestCase
+{
+    private static final String QUEUE_ID = "DurableQueueTest";
+    private static final String SERVER_ID = "server1";
+    private static final String OTHER_SERVER_ID = "server2";
+    private static final String BLOCKER = "blocker";
+    
+    private ApplicationContext applicationContext;
+    private File journalDirectory;
+    private ThreadPoolExecutor threadPoolExecutor;
+    private RecordingQueue queue;
+    private final CountDownLatch blockerStarted = new CountDownLatch(1);
+    private final CountDownLatch blockerReleased = new CountDownLatch(1);
+    
+    @Override
+    public void setUp() throws Exception
+    {
+        // The queue looks for the rules executed by the current transaction
+        TransactionSynchronizationManager.initSynchronization();
+        applicationContext = mock(ApplicationContext.class);
+        journalDirectory = new File(TempFileProvider.getTempDir(), "DurableQueueTest-" + System.nanoTime());
+    }
+    
+    @Override
+    public void tearDown() throws Exception
+    {
+        blockerReleased.countDown();
+        if (queue != null)
+        {
+            queue.onApplicationEvent(new ContextClosedEvent(applicationContext));
+        }
+        if (threadPoolExecutor != null)
+        {
+            threadPoolExecutor.shutdownNow();
+        }
+        File[] queueDirectories = journalDirectory.listFiles();
+        if (queueDirectories != null)
+        {
+            for (File queueDirectory : queueDirectories)
+            {
+                for (File file : queueDirectory.listFiles())
+                {
+                    file.delete();
+                }
+                queueDirectory.delete();
+            }
+        }
+        journalDirectory.delete();
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+    
+    private RecordingQueue createQueue(String mode, int threads)
+    {
+        threadPoolExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        queue = new RecordingQueue();
+        queue.setActionServiceImpl(mock(ActionServiceImpl.class));
+        queue.setPolicyComponent(mock(PolicyComponent.class));
+        queue.setThreadPoolExecutor(threadPoolExecutor);
+        queue.setId(QUEUE_ID);
+        queue.setMode(mode);
+        queue.setJournalDirectory(journalDirectory.getPath());
+        queue.setServerId(SERVER_ID);
+        queue.setPollIntervalMs(50L);
+        queue.setApplicationContext(applicationContext);
+        return queue;
+    }
+    
+    private void start()
+    {
+        queue.init();
+        queue.onApplicationEvent(new ContextRefreshedEvent(applicationContext));
+    }
+    
+    private static NodeRef createNodeRef()
+    {
+        return new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, GUID.generate());
+    }
+    
+    private static ActionImpl createAction(String actionName)
+    {
+        Map<String, Serializable> parameterValues = new HashMap<String, Serializable>();
+        parameterValues.put("param", "a");
+        ActionImpl action = new ActionImpl(null, GUID.generate(), actionName, parameterValues);
+        action.setRunAsUser("admin");
+        return action;
+    }
+    
+    private void queueAction(String actionName, NodeRef nodeRef)
+    {
+        queue.executeAction(null, createAction(actionName), nodeRef, false, null);
+    }
+    
+    /**
+     * Occupies the only thread until {@link #blockerReleased} is counted down
+     */
+    private void queueBlocker() throws InterruptedException
+    {
+        queueAction(BLOCKER, createNodeRef());
+        assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+    }
+    
+    private void waitForExecutions(int count) throws InterruptedException
+    {
+        for (int i = 0; i < 250 && queue.getCompletedCount() < count; i++)
+        {
+            Thread.sleep(20);
+        }
+        assertEquals(count, queue.getCompletedCount());
+    }
+    
+    public void testHighestPriorityRunsFirst() throws Exception
+    {
+        createQueue("FILE", 1);
+        Map<String, Integer> priorities = new HashMap<String, Integer>();
+        priorities.put("script", 10);
+        priorities.put("create-thumbnail", -10);
+        queue.setPriorities(priorities);
+        start();
+        
+        queueBlocker();
+        queueAction("create-thumbnail", createNodeRef());
+        queueAction("mail", createNodeRef());
+        queueAction("script", createNodeRef());
+        queueAction("mail", createNodeRef());
+        assertEquals(4, queue.getQueueDepth());
+        
+        blockerReleased.countDown();
+        waitForExecutions(5);
+        assertEquals(Arrays.asList(BLOCKER, "script", "mail", "mail", "create-thumbnail"), queue.getExecuted());
+        assertEquals(0, queue.getQueueDepth());
+    }
+    
+    public void testConcurrencyLimitPerActionType() throws Exception
+    {
+        createQueue("FILE", 4);
+        queue.setConcurrencyLimits(Collections.singletonMap("create-thumbnail", 1));
+        queue.setDurationMs(100L);
+        start();
+        
+        for (int i = 0; i < 4; i++)
+        {
+            queueAction("create-thumbnail", createNodeRef());
+        }
+        queueAction("mail", createNodeRef());
+        queueAction("mail", createNodeRef());
+        
+        waitForExecutions(6);
+        assertEquals("Only one thumbnail may run at a time", 1, queue.getMaxRunning("create-thumbnail"));
+        assertTrue("Other actions are not held up by the thumbnails", queue.getMaxRunning(null) > 1);
+        assertTrue(queue.getMaxRunning(null) <= 4);
+    }
+    
+    public void testIdenticalPendingActionsAreDropped() throws Exception
+    {
+        createQueue("FILE", 1);
+        start();
+        
+        queueBlocker();
+        NodeRef nodeRef = createNodeRef();
+        queueAction("create-thumbnail", nodeRef);
+        queueAction("create-thumbnail", nodeRef);
+        queueAction("create-thumbnail", createNodeRef());
+        assertEquals(1, queue.getDuplicateCount());
+        assertEquals(2, queue.getQueueDepth());
+        
+        blockerReleased.countDown();
+        waitForExecutions(3);
+        assertEquals(Arrays.asList(BLOCKER, "create-thumbnail", "create-thumbnail"), queue.getExecuted());
+    }
+    
+    public void testActionsOfFailedServerAreTakenOver() throws Exception
+    {
+        AttributeActionQueueStoreTest.InMemoryAttributeService attributeService = new AttributeActionQueueStoreTest.InMemoryAttributeService();
+        createQueue("DATABASE", 2);
+        queue.setAttributeService(attributeService);
+        queue.setTransactionService(AttributeActionQueueStoreTest.createTransactionService());
+        queue.setStealDelayMs(50L);
+        queue.setClaimTimeoutMs(200L);
+        
+        // The other server queued two actions and was executing one of them when it failed
+        AttributeActionQueueStore failedServer = new AttributeActionQueueStore(
+                AttributeActionQueueStoreTest.createTransactionService(), attributeService, QUEUE_ID, 200L);
+        long queuedTime = System.currentTimeMillis() - 60000L;
+        QueuedAction waiting = new QueuedAction(GUID.generate(), OTHER_SERVER_ID, 0, queuedTime, createAction("mail"),
+                createNodeRef(), false, null);
+        QueuedAction interrupted = new QueuedAction(GUID.generate(), OTHER_SERVER_ID, 0, queuedTime, createAction("script"),
+                createNodeRef(), false, null);
+        assertTrue(failedServer.add(waiting));
+        assertTrue(failedServer.add(interrupted));
+        long failureTime = System.currentTimeMillis();
+        assertTrue(failedServer.claim(interrupted, OTHER_SERVER_ID));
+        
+        start();
+        waitForExecutions(2);
+        assertTrue("The claim was taken over before it expired", System.currentTimeMillis() - failureTime >= 200L);
+        assertEquals(2, queue.getStolenCount());
+        assertTrue(queue.getExecuted().containsAll(Arrays.asList("mail", "script")));
+        assertFalse(attributeService.exists(AttributeActionQueueStore.KEY_ENTRY, QUEUE_ID, waiting.getId()));
+        assertFalse(attributeService.exists(AttributeActionQueueStore.KEY_ENTRY, QUEUE_ID, interrupted.getId()));
+        assertEquals(0, queue.getQueueDepth());
+    }
+    
+    /**
+     * Records the actions instead of executing them
+     */
+    private class RecordingQueue extends DurableAsynchronousActionExecutionQueueImpl
+    {
+        private final List<String> executed = new ArrayList<String>();
+        private final Map<String, Integer> running = new HashMap<String, Integer>();
+        private final Map<String, Integer> maxRunning = new HashMap<String, Integer>();
+        private long durationMs;
+        
+        private void setDurationMs(long durationMs)
+        {
+            this.durationMs = durationMs;
+        }
+        
+        private synchronized List<String> getExecuted()
+        {
+            return new ArrayList<String>(executed);
+        }
+        
+        /**
+         * @param actionType    the action type, or <tt>null</tt> for all types
+         */
+        private synchronized int getMaxRunning(String actionType)
+        {
+            Integer max = maxRunning.get(actionType);
+            return max == null ? 0 : max;
+        }
+        
+        private synchronized void started(String actionType)
+        {
+            executed.add(actionType);
+            for (String key : new String[] {actionType, null})
+            {
+                Integer count = running.get(key);
+                count = count == null ? 1 : count + 1;
+                running.put(key, count);
+                Integer max = maxRunning.get(key);
+                if (max == null || count > max)
+                {
+                    maxRunning.put(key, count);
+                }
+            }
+        }
+        
+        private synchronized void finished(String actionType)
+        {
+            running.put(actionType, running.get(actionType) - 1);
+            running.put(null, running.get(null) - 1);
+        }
+        
+        @Override
+        protected boolean runAction(RuntimeActionService actionService, Action action, NodeRef actionedUponNodeRef,
+                boolean checkConditions, Set<String> actionChain, Set<RuleServiceImpl.ExecutedRuleData> executedRules)
+        {
+            String actionType = action.getActionDefinitionName();
+            started(actionType);
+            try
+            {
+                if (BLOCKER.equals(actionType))
+                {
+                    blockerStarted.countDown();
+                    blockerReleased.await(10, TimeUnit.SECONDS);
+                }
+                else if (durationMs > 0)
+                {
+                    Thread.sleep(durationMs);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                finished(actionType);
+            }
+            return true;
+        }
+    }
+}
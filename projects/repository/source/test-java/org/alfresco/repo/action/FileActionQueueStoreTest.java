@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.action;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+
+/**
+ * Tests the ordering, deduplication and journalling of the {@link FileActionQueueStore}.
+ * 
+ * @since 5.2
+ */
+public class FileActionQueueStoreTest extends TestCase
+{
+    private static final String SERVER_ID = "server1";
+    
+    private File directory;
+    private FileActionQueueStore store;
+    private long queuedTime;
+    
+    @Override
+    public void setUp() throws Exception
+    {
+        directory = new File(TempFileProvider.getTempDir(), "FileActionQueueStoreTest-" + System.nanoTime());
+        store = new FileActionQueueStore(directory);
+        store.init();
+        queuedTime = System.currentTimeMillis();
+    }
+    
+    @Override
+    public void tearDown() throws Exception
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+    
+    private QueuedAction createEntry(String actionName, int priority, NodeRef nodeRef, String parameterValue)
+    {
+        Map<String, Serializable> parameterValues = new HashMap<String, Serializable>();
+        parameterValues.put("param", parameterValue);
+        ActionImpl action = new ActionImpl(null, GUID.generate(), actionName, parameterValues);
+        action.setRunAsUser("admin");
+        // Keep the queue order deterministic
+        return new QueuedAction(GUID.generate(), SERVER_ID, priority, queuedTime++, action, nodeRef, true, null);
+    }
+    
+    private NodeRef createNodeRef()
+    {
+        return new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, GUID.generate());
+    }
+    
+    public void testPendingInPriorityOrder() throws Exception
+    {
+        QueuedAction low = createEntry("create-thumbnail", -10, createNodeRef(), "a");
+        QueuedAction normal1 = createEntry("mail", 0, createNodeRef(), "a");
+        QueuedAction high = createEntry("script", 10, createNodeRef(), "a");
+        QueuedAction normal2 = createEntry("mail", 0, createNodeRef(), "a");
+        assertTrue(store.add(low));
+        assertTrue(store.add(normal1));
+        assertTrue(store.add(high));
+        assertTrue(store.add(normal2));
+        
+        List<QueuedAction> pending = store.getPending(10);
+        assertEquals(4, pending.size());
+        assertEquals(high, pending.get(0));
+        assertEquals(normal1, pending.get(1));
+        assertEquals(normal2, pending.get(2));
+        assertEquals(low, pending.get(3));
+        
+        assertEquals(2, store.getPending(2).size());
+        assertEquals(4, store.getPendingCount());
+    }
+    
+    public void testClaimAndRemove() throws Exception
+    {
+        QueuedAction entry = createEntry("mail", 0, createNodeRef(), "a");
+        store.add(entry);
+        assertTrue(store.claim(entry, SERVER_ID));
+        assertFalse("An entry can only be claimed once", store.claim(entry, "server2"));
+        assertEquals(0, store.getPendingCount());
+        assertTrue(store.getPending(10).isEmpty());
+        
+        store.remove(entry);
+        assertFalse(store.claim(entry, SERVER_ID));
+        assertEquals(0, directory.listFiles().length);
+    }
+    
+    public void testIdenticalPendingActionsAreDropped() throws Exception
+    {
+        NodeRef nodeRef = createNodeRef();
+        QueuedAction first = createEntry("create-thumbnail", 0, nodeRef, "doclib");
+        QueuedAction identical = createEntry("create-thumbnail", 0, nodeRef, "doclib");
+        QueuedAction otherParameter = createEntry("create-thumbnail", 0, nodeRef, "imgpreview");
+        QueuedAction otherNode = createEntry("create-thumbnail", 0, createNodeRef(), "doclib");
+        assertEquals(first.getDeduplicationKey(), identical.getDeduplicationKey());
+        
+        assertTrue(store.add(first));
+        assertFalse(store.add(identical));
+        assertTrue(store.add(otherParameter));
+        assertTrue(store.add(otherNode));
+        assertEquals(3, store.getPendingCount());
+        
+        // Once the first is underway, the same work may be queued again
+        assertTrue(store.claim(first, SERVER_ID));
+        assertTrue(store.add(identical));
+    }
+    
+    public void testEntriesSurviveRestart() throws Exception
+    {
+        QueuedAction executed = createEntry("mail", 0, createNodeRef(), "a");
+        QueuedAction interrupted = createEntry("mail", 0, createNodeRef(), "b");
+        QueuedAction waiting = createEntry("script", 5, createNodeRef(), "c");
+        store.add(executed);
+        store.add(interrupted);
+        store.add(waiting);
+        store.claim(executed, SERVER_ID);
+        store.remove(executed);
+        store.claim(interrupted, SERVER_ID);
+        
+        FileActionQueueStore restarted = new FileActionQueueStore(directory);
+        restarted.init();
+        List<QueuedAction> pending = restarted.getPending(10);
+        assertEquals(2, pending.size());
+        assertEquals(waiting, pending.get(0));
+        assertEquals(interrupted, pending.get(1));
+        assertEquals("c", pending.get(0).getAction().getParameterValue("param"));
+        assertEquals(waiting.getActionedUponNodeRef(), pending.get(0).getActionedUponNodeRef());
+        assertFalse("Deduplication keys must be restored", restarted.add(createEntry("script", 5, waiting.getActionedUponNodeRef(), "c")));
+    }
+    
+    public void testReleaseClaims() throws Exception
+    {
+        QueuedAction entry = createEntry("mail", 0, createNodeRef(), "a");
+        store.add(entry);
+        store.claim(entry, SERVER_ID);
+        assertEquals(1, store.releaseClaims(SERVER_ID));
+        assertEquals(1, store.getPendingCount());
+        assertTrue(store.claim(entry, SERVER_ID));
+    }
+    
+    public void testUnreadableFilesAreSetAside() throws Exception
+    {
+        File bad = new File(directory, GUID.generate() + ".action");
+        try (FileOutputStream os = new FileOutputStream(bad))
+        {
+            os.write(new byte[] {1, 2, 3});
+        }
+        FileActionQueueStore restarted = new FileActionQueueStore(directory);
+        restarted.init();
+        assertEquals(0, restarted.getPendingCount());
+        assertFalse(bad.exists());
+        assertTrue(new File(bad.getPath() + ".bad").exists());
+    }
+}
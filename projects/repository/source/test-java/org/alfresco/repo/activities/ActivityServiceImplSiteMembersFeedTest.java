@@ -0,0 +1,331 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.activities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.alfresco.query.PagingRequest;
+import org.alfresco.query.PagingResults;
+import org.alfresco.repo.domain.activities.ActivitiesDAO;
+import org.alfresco.repo.domain.activities.ActivityFeedDAO;
+import org.alfresco.repo.domain.activities.ActivityFeedEntity;
+import org.alfresco.repo.domain.activities.FeedControlDAO;
+import org.alfresco.repo.domain.activities.FeedControlEntity;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.cmr.security.PersonService;
+import org.alfresco.service.cmr.site.SiteInfo;
+import org.alfresco.service.cmr.site.SiteService;
+import org.alfresco.util.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests the merging of the activities of large sites, stored once for all site members, into user feeds
+ * by {@link ActivityServiceImpl}.
+ * 
+ * @since 5.2
+ */
+public class ActivityServiceImplSiteMembersFeedTest
+{
+    private static final String USER = "bob";
+    private static final String SITE1 = "site1";
+    private static final String SITE2 = "site2";
+    private static final String DOCLIB = "documentlibrary";
+    private static final NodeRef READABLE = new NodeRef("workspace://SpacesStore/readable");
+    private static final NodeRef UNREADABLE = new NodeRef("workspace://SpacesStore/unreadable");
+    
+    private static final Answer<String> FIRST_ARG = new Answer<String>()
+    {
+        @Override
+        public String answer(InvocationOnMock invocation) throws Throwable
+        {
+            return (String) invocation.getArguments()[0];
+        }
+    };
+    
+    private ActivityFeedDAO feedDAO;
+    private FeedControlDAO feedControlDAO;
+    private SiteService siteService;
+    private PermissionService permissionService;
+    private ActivityServiceImpl activityService;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+        
+        feedDAO = mock(ActivityFeedDAO.class);
+        feedControlDAO = mock(FeedControlDAO.class);
+        siteService = mock(SiteService.class);
+        permissionService = mock(PermissionService.class);
+        NodeService nodeService = mock(NodeService.class);
+        
+        TenantService tenantService = mock(TenantService.class);
+        when(tenantService.getName(anyString())).thenAnswer(FIRST_ARG);
+        when(tenantService.getBaseName(anyString())).thenAnswer(FIRST_ARG);
+        when(tenantService.getBaseNameUser(anyString())).thenAnswer(FIRST_ARG);
+        when(tenantService.getCurrentUserDomain()).thenReturn(TenantService.DEFAULT_DOMAIN);
+        when(tenantService.getDomain(anyString())).thenReturn(TenantService.DEFAULT_DOMAIN);
+        
+        SiteInfo site1 = mock(SiteInfo.class);
+        when(site1.getShortName()).thenReturn(SITE1);
+        when(siteService.listSites(USER)).thenReturn(Collections.singletonList(site1));
+        when(siteService.isMember(SITE1, USER)).thenReturn(true);
+        when(siteService.isMember(SITE2, USER)).thenReturn(false);
+        
+        when(nodeService.exists(any(NodeRef.class))).thenReturn(true);
+        when(permissionService.hasPermission(any(NodeRef.class), anyString())).thenReturn(AccessStatus.ALLOWED);
+        when(permissionService.hasPermission(UNREADABLE, PermissionService.READ)).thenReturn(AccessStatus.DENIED);
+        
+        when(feedControlDAO.selectFeedControls(USER)).thenReturn(new ArrayList<FeedControlEntity>());
+        
+        activityService = new ActivityServiceImpl();
+        activityService.setFeedDAO(feedDAO);
+        activityService.setFeedControlDAO(feedControlDAO);
+        activityService.setSiteService(siteService);
+        activityService.setPermissionService(permissionService);
+        activityService.setNodeService(nodeService);
+        activityService.setTenantService(tenantService);
+        activityService.setAuthorityService(mock(AuthorityService.class));
+        activityService.setPersonService(mock(PersonService.class));
+        activityService.setLargeSiteMemberThreshold(10);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+    
+    private static ActivityFeedEntity feed(long id, String feedUserId, String postUserId, String siteNetwork, String appTool, long postTime, NodeRef nodeRef)
+    {
+        ActivityFeedEntity feed = new ActivityFeedEntity();
+        feed.setId(id);
+        feed.setFeedUserId(feedUserId);
+        feed.setPostUserId(postUserId);
+        feed.setSiteNetwork(siteNetwork);
+        feed.setAppTool(appTool);
+        feed.setActivityType("org.alfresco.documentlibrary.file-added");
+        feed.setActivitySummary(nodeRef == null ? "{}" : "{\"nodeRef\":\"" + nodeRef + "\"}");
+        feed.setPostDate(new Date(postTime));
+        return feed;
+    }
+    
+    private static ActivityFeedEntity membersFeed(long id, String siteNetwork, String appTool, long postTime, NodeRef nodeRef)
+    {
+        return feed(id, ActivityFeedEntity.getSiteMembersFeedUserId(siteNetwork), "alice", siteNetwork, appTool, postTime, nodeRef);
+    }
+    
+    private void setUserFeed(ActivityFeedEntity... entries) throws Exception
+    {
+        when(feedDAO.selectUserFeedEntries(eq(USER), anyString(), anyBoolean(), anyBoolean(), anyLong(), anyInt()))
+            .thenReturn(new ArrayList<ActivityFeedEntity>(Arrays.asList(entries)));
+        when(feedDAO.selectUserFeedEntries(eq(USER), (String) isNull(), anyBoolean(), anyBoolean(), anyLong(), anyInt()))
+            .thenReturn(new ArrayList<ActivityFeedEntity>(Arrays.asList(entries)));
+    }
+    
+    private void setSiteMembersFeed(String siteNetwork, ActivityFeedEntity... entries) throws Exception
+    {
+        when(feedDAO.selectUserFeedEntries(ActivityFeedEntity.getSiteMembersFeedUserId(siteNetwork), siteNetwork, false, false, -1L, 100))
+            .thenReturn(Arrays.asList(entries));
+    }
+    
+    private static List<Long> ids(List<ActivityFeedEntity> feeds)
+    {
+        List<Long> ids = new ArrayList<Long>(feeds.size());
+        for (ActivityFeedEntity feed : feeds)
+        {
+            ids.add(feed.getId());
+        }
+        return ids;
+    }
+    
+    @Test
+    public void testOnlyReadableEntriesOfMemberSitesAreMerged() throws Exception
+    {
+        setUserFeed(feed(1, USER, "carol", SITE1, DOCLIB, 100, null));
+        setSiteMembersFeed(SITE1,
+                           membersFeed(3, SITE1, DOCLIB, 300, UNREADABLE),
+                           membersFeed(2, SITE1, DOCLIB, 200, READABLE));
+        setSiteMembersFeed(SITE2, membersFeed(4, SITE2, DOCLIB, 400, READABLE));
+        
+        List<ActivityFeedEntity> feeds = activityService.getUserFeedEntries(USER, null, false, false, -1);
+        assertEquals(Arrays.asList(2L, 1L), ids(feeds));
+        assertEquals(USER, feeds.get(0).getFeedUserId());
+        
+        // The user is not a member of site 2, so its activities are never read
+        verify(feedDAO, never()).selectUserFeedEntries(eq(ActivityFeedEntity.getSiteMembersFeedUserId(SITE2)), anyString(), anyBoolean(), anyBoolean(), anyLong(), anyInt());
+        
+        // Not even when asking for the feed of that site
+        feeds = activityService.getUserFeedEntries(USER, SITE2, false, false, -1);
+        assertEquals(Arrays.asList(1L), ids(feeds));
+    }
+    
+    @Test
+    public void testFeedControlsSuppressMergedEntries() throws Exception
+    {
+        setUserFeed();
+        setSiteMembersFeed(SITE1,
+                           membersFeed(3, SITE1, "calendar", 300, null),
+                           membersFeed(2, SITE1, DOCLIB, 200, READABLE));
+        
+        // Opt out of the document library across sites
+        FeedControlEntity appToolControl = new FeedControlEntity(USER);
+        appToolControl.setSiteNetwork(ActivitiesDAO.KEY_ACTIVITY_NULL_VALUE);
+        appToolControl.setAppTool(DOCLIB);
+        when(feedControlDAO.selectFeedControls(USER)).thenReturn(Collections.singletonList(appToolControl));
+        assertEquals(Arrays.asList(3L), ids(activityService.getUserFeedEntries(USER, null, false, false, -1)));
+        
+        // Opt out of the whole site
+        FeedControlEntity siteControl = new FeedControlEntity(USER);
+        siteControl.setSiteNetwork(SITE1);
+        when(feedControlDAO.selectFeedControls(USER)).thenReturn(Collections.singletonList(siteControl));
+        assertTrue(activityService.getUserFeedEntries(USER, null, false, false, -1).isEmpty());
+    }
+    
+    @Test
+    public void testExcludeThisUserAndOtherUsers() throws Exception
+    {
+        setUserFeed();
+        setSiteMembersFeed(SITE1,
+                           feed(3, ActivityFeedEntity.getSiteMembersFeedUserId(SITE1), USER, SITE1, DOCLIB, 300, null),
+                           membersFeed(2, SITE1, DOCLIB, 200, null));
+        
+        assertEquals(Arrays.asList(2L), ids(activityService.getUserFeedEntries(USER, null, true, false, -1)));
+        assertEquals(Arrays.asList(3L), ids(activityService.getUserFeedEntries(USER, null, false, true, -1)));
+    }
+    
+    @Test
+    public void testPagingAcrossMergedFeeds() throws Exception
+    {
+        // The user's own entries and the site members feed alternate in time
+        final List<ActivityFeedEntity> userFeed = Arrays.asList(
+                feed(10, USER, "carol", SITE1, DOCLIB, 1000, null),
+                feed(12, USER, "carol", SITE1, DOCLIB, 800, null),
+                feed(14, USER, "carol", SITE1, DOCLIB, 600, null));
+        setSiteMembersFeed(SITE1,
+                           membersFeed(11, SITE1, DOCLIB, 900, null),
+                           membersFeed(13, SITE1, DOCLIB, 700, null),
+                           membersFeed(15, SITE1, DOCLIB, 500, null));
+        when(feedDAO.selectPagedUserFeedEntries(eq(USER), eq(TenantService.DEFAULT_DOMAIN), (String) isNull(), eq(false), eq(false), anyLong(), any(PagingRequest.class)))
+            .thenAnswer(new Answer<PagingResults<ActivityFeedEntity>>()
+            {
+                @Override
+                public PagingResults<ActivityFeedEntity> answer(InvocationOnMock invocation) throws Throwable
+                {
+                    long minFeedId = (Long) invocation.getArguments()[5];
+                    PagingRequest pagingRequest = (PagingRequest) invocation.getArguments()[6];
+                    List<ActivityFeedEntity> selected = new ArrayList<ActivityFeedEntity>();
+                    for (ActivityFeedEntity feed : userFeed)
+                    {
+                        if (feed.getId() >= minFeedId)
+                        {
+                            selected.add(feed.copyFor(USER));
+                        }
+                    }
+                    int from = Math.min(pagingRequest.getSkipCount(), selected.size());
+                    int to = Math.min(from + pagingRequest.getMaxItems(), selected.size());
+                    return page(selected.subList(from, to), to < selected.size());
+                }
+            });
+        
+        PagingResults<ActivityFeedEntity> results = activityService.getPagedUserFeedEntries(USER, null, false, false, -1, new PagingRequest(0, 2));
+        assertEquals(Arrays.asList(10L, 11L), ids(results.getPage()));
+        assertTrue(results.hasMoreItems());
+        
+        results = activityService.getPagedUserFeedEntries(USER, null, false, false, -1, new PagingRequest(2, 2));
+        assertEquals(Arrays.asList(12L, 13L), ids(results.getPage()));
+        assertTrue(results.hasMoreItems());
+        
+        results = activityService.getPagedUserFeedEntries(USER, null, false, false, -1, new PagingRequest(4, 2));
+        assertEquals(Arrays.asList(14L, 15L), ids(results.getPage()));
+        assertFalse(results.hasMoreItems());
+        
+        // The minimum feed id applies to both feeds
+        results = activityService.getPagedUserFeedEntries(USER, null, false, false, 12, new PagingRequest(0, 10));
+        assertEquals(Arrays.asList(12L, 13L, 14L, 15L), ids(results.getPage()));
+        assertFalse(results.hasMoreItems());
+    }
+    
+    private static PagingResults<ActivityFeedEntity> page(List<ActivityFeedEntity> page, final boolean hasMoreItems)
+    {
+        final List<ActivityFeedEntity> entries = new ArrayList<ActivityFeedEntity>(page);
+        return new PagingResults<ActivityFeedEntity>()
+        {
+            @Override
+            public List<ActivityFeedEntity> getPage()
+            {
+                return entries;
+            }
+            
+            @Override
+            public boolean hasMoreItems()
+            {
+                return hasMoreItems;
+            }
+            
+            @Override
+            public Pair<Integer, Integer> getTotalResultCount()
+            {
+                return new Pair<Integer, Integer>(null, null);
+            }
+            
+            @Override
+            public String getQueryExecutionId()
+            {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.activities.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.repo.admin.SysAdminParams;
+import org.alfresco.repo.domain.activities.ActivityFeedEntity;
+import org.alfresco.repo.domain.activities.ActivityPostEntity;
+import org.alfresco.repo.domain.activities.FeedControlEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the recipients of the feed entries generated by {@link FeedTaskProcessor}, in particular the single
+ * site members feed entry of the activities of large sites.
+ * 
+ * @since 5.2
+ */
+public class FeedTaskProcessorTest
+{
+    private static final String SITE = "site1";
+    
+    private TestFeedTaskProcessor feedTaskProcessor;
+    private RepoCtx ctx;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        feedTaskProcessor = new TestFeedTaskProcessor();
+        feedTaskProcessor.siteMembers = new HashSet<String>(Arrays.asList("alice", "bob", "carol"));
+        feedTaskProcessor.followers = new HashSet<String>(Arrays.asList("bob", "dave"));
+        ctx = new RepoCtx(mock(SysAdminParams.class), "/service");
+    }
+    
+    private Set<String> process(String postUserId) throws Exception
+    {
+        ActivityPostEntity post = new ActivityPostEntity();
+        post.setId(1L);
+        post.setUserId(postUserId);
+        post.setSiteNetwork(SITE);
+        post.setActivityType("org.alfresco.documentlibrary.file-added");
+        post.setActivityData("{\"title\":\"test\"}");
+        post.setAppTool("documentlibrary");
+        post.setPostDate(new Date());
+        feedTaskProcessor.posts = Collections.singletonList(post);
+        feedTaskProcessor.inserted.clear();
+        
+        feedTaskProcessor.process(0, 0, 1, ctx);
+        
+        Set<String> feedUserIds = new HashSet<String>();
+        for (ActivityFeedEntity feed : feedTaskProcessor.inserted)
+        {
+            // note: the site feed has no feed user
+            assertTrue(feedUserIds.add(feed.getFeedUserId() == null ? "" : feed.getFeedUserId()));
+        }
+        return feedUserIds;
+    }
+    
+    @Test
+    public void testEntryPerMemberWhenThresholdNotSet() throws Exception
+    {
+        assertEquals(new HashSet<String>(Arrays.asList("", "alice", "bob", "carol", "dave")), process("alice"));
+    }
+    
+    @Test
+    public void testEntryPerMemberUpToThreshold() throws Exception
+    {
+        feedTaskProcessor.setLargeSiteMemberThreshold(3);
+        assertEquals(new HashSet<String>(Arrays.asList("", "alice", "bob", "carol", "dave")), process("alice"));
+    }
+    
+    @Test
+    public void testSiteMembersFeedAboveThreshold() throws Exception
+    {
+        feedTaskProcessor.setLargeSiteMemberThreshold(2);
+        
+        // The poster and the follower bob are members, hence read the site members feed.  The follower dave is not.
+        String siteMembersFeedUserId = ActivityFeedEntity.getSiteMembersFeedUserId(SITE);
+        assertEquals(new HashSet<String>(Arrays.asList("", siteMembersFeedUserId, "dave")), process("alice"));
+        
+        // A poster who is not a member still gets an entry of their own
+        assertEquals(new HashSet<String>(Arrays.asList("", siteMembersFeedUserId, "dave", "erin")), process("erin"));
+    }
+    
+    @Test
+    public void testFeedControlsDoNotApplyToSiteMembersFeed() throws Exception
+    {
+        feedTaskProcessor.setLargeSiteMemberThreshold(2);
+        
+        // Everybody opted out of the site: the site members feed entry is filtered when it is read
+        FeedControlEntity siteControl = new FeedControlEntity();
+        siteControl.setSiteNetwork(SITE);
+        feedTaskProcessor.feedControls = Collections.singletonList(siteControl);
+        
+        assertEquals(new HashSet<String>(Arrays.asList("", ActivityFeedEntity.getSiteMembersFeedUserId(SITE))), process("alice"));
+    }
+    
+    private static class TestFeedTaskProcessor extends FeedTaskProcessor
+    {
+        private List<ActivityPostEntity> posts;
+        private Set<String> siteMembers;
+        private Set<String> followers;
+        private List<FeedControlEntity> feedControls = Collections.emptyList();
+        private final List<ActivityFeedEntity> inserted = new ArrayList<ActivityFeedEntity>();
+        
+        @Override
+        public void startTransaction() throws SQLException
+        {
+        }
+        
+        @Override
+        public void commitTransaction() throws SQLException
+        {
+        }
+        
+        @Override
+        public void rollbackTransaction() throws SQLException
+        {
+        }
+        
+        @Override
+        public void endTransaction() throws SQLException
+        {
+        }
+        
+        @Override
+        public List<ActivityPostEntity> selectPosts(ActivityPostEntity selector) throws SQLException
+        {
+            return posts;
+        }
+        
+        @Override
+        public List<FeedControlEntity> selectUserFeedControls(String userId) throws SQLException
+        {
+            return feedControls;
+        }
+        
+        @Override
+        public long insertFeedEntry(ActivityFeedEntity feed) throws SQLException
+        {
+            inserted.add(feed);
+            return inserted.size();
+        }
+        
+        @Override
+        public int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException
+        {
+            return 1;
+        }
+        
+        @Override
+        protected Set<String> getSiteMembers(RepoCtx ctx, String siteId, String tenantDomain) throws Exception
+        {
+            return new HashSet<String>(siteMembers);
+        }
+        
+        @Override
+        protected Set<String> getFollowers(String userId, String tenantDomain) throws Exception
+        {
+            return new HashSet<String>(followers);
+        }
+        
+        @Override
+        protected boolean canReadSite(RepoCtx ctx, String siteIdIn, String connectedUser, String tenantDomain) throws Exception
+        {
+            return true;
+        }
+        
+        @Override
+        protected boolean canRead(RepoCtx ctx, String connectedUser, Map<String, Object> model) throws Exception
+        {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.TempFileProvider;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests the queueing, backpressure and journalling of the {@link AuditEntryWriter}.  Batches are
+ * recorded rather than persisted so that the tests do not depend on an audit application.
+ * 
+ * @since 5.2
+ */
+public class AuditEntryWriterTest extends TestCase
+{
+    private static ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+    
+    private TransactionService transactionService;
+    private AuditDAO auditDAO;
+    private File spillDirectory;
+    private List<RecordingAuditEntryWriter> writers;
+    
+    @Override
+    public void setUp() throws Exception
+    {
+        ServiceRegistry serviceRegistry = (ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY);
+        transactionService = serviceRegistry.getTransactionService();
+        auditDAO = (AuditDAO) ctx.getBean("auditDAO");
+        spillDirectory = new File(TempFileProvider.getTempDir(), "AuditEntryWriterTest-" + System.nanoTime());
+        writers = new ArrayList<RecordingAuditEntryWriter>();
+    }
+    
+    @Override
+    public void tearDown() throws Exception
+    {
+        for (RecordingAuditEntryWriter writer : writers)
+        {
+            writer.onShutdown(null);
+        }
+        File[] files = spillDirectory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        spillDirectory.delete();
+    }
+    
+    private RecordingAuditEntryWriter createWriter(String mode, int queueCapacity)
+    {
+        RecordingAuditEntryWriter writer = new RecordingAuditEntryWriter();
+        writer.setAuditDAO(auditDAO);
+        writer.setTransactionService(transactionService);
+        writer.setMode(mode);
+        writer.setQueueCapacity(queueCapacity);
+        writer.setBatchSize(10);
+        writer.setOfferTimeoutMs(10L);
+        writer.setShutdownTimeoutMs(5000L);
+        writer.setSpillDirectory(spillDirectory.getPath());
+        writer.init();
+        writers.add(writer);
+        return writer;
+    }
+    
+    /**
+     * Record the given number of entries in a new transaction
+     */
+    private void audit(final AuditEntryWriter writer, final int count, final boolean rollback)
+    {
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                for (int i = 0; i < count; i++)
+                {
+                    Map<String, Serializable> values = Collections.<String, Serializable>singletonMap("/test/value", i);
+                    assertNull("Asynchronous writes have no ID", writer.createAuditEntry(1L, System.currentTimeMillis(), "bob", values));
+                }
+                // Nothing is queued before the commit
+                assertEquals(0, writer.getQueueDepth());
+                if (rollback)
+                {
+                    throw new RuntimeException("Rollback");
+                }
+                return null;
+            }
+        };
+        RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        txnHelper.setMaxRetries(0);
+        try
+        {
+            txnHelper.doInTransaction(callback);
+        }
+        catch (RuntimeException e)
+        {
+            if (!rollback)
+            {
+                throw e;
+            }
+        }
+    }
+    
+    private void waitForWrites(RecordingAuditEntryWriter writer, int count) throws Exception
+    {
+        for (int i = 0; i < 100 && writer.getWrittenEntryCount() < count; i++)
+        {
+            Thread.sleep(50L);
+        }
+        assertEquals(count, writer.getWrittenEntryCount());
+    }
+    
+    public void testSynchronousModeIsDefault()
+    {
+        AuditEntryWriter writer = new AuditEntryWriter();
+        writer.setAuditDAO(auditDAO);
+        writer.setTransactionService(transactionService);
+        writer.init();
+        assertFalse(writer.isAsynchronous());
+        assertEquals(AuditEntryWriter.Mode.SYNCHRONOUS.name(), writer.getMode());
+    }
+    
+    public void testQueuedOnCommitOnly() throws Exception
+    {
+        RecordingAuditEntryWriter writer = createWriter("ASYNCHRONOUS", 100);
+        audit(writer, 5, true);
+        assertEquals("Rolled back entries must not be queued", 0, writer.getQueueDepth());
+        
+        audit(writer, 5, false);
+        assertEquals(5, writer.getQueueDepth());
+        assertTrue(writer.getQueueLagMs() >= 0L);
+        
+        writer.onBootstrap(null);
+        waitForWrites(writer, 5);
+        assertEquals(0, writer.getQueueDepth());
+        assertEquals(5, writer.getRecordedEntryCount());
+        assertEquals(0L, writer.getDroppedEntryCount());
+    }
+    
+    public void testBatching() throws Exception
+    {
+        RecordingAuditEntryWriter writer = createWriter("ASYNCHRONOUS", 100);
+        audit(writer, 25, false);
+        writer.onBootstrap(null);
+        waitForWrites(writer, 25);
+        for (List<AuditEntryWriter.PendingAuditEntry> batch : writer.batches)
+        {
+            assertTrue("Batch too large: " + batch.size(), batch.size() <= 10);
+        }
+        assertTrue(writer.batches.size() >= 3);
+    }
+    
+    public void testBackpressureWritesInCaller() throws Exception
+    {
+        RecordingAuditEntryWriter writer = createWriter("ASYNCHRONOUS", 2);
+        audit(writer, 5, false);
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(3L, writer.getCallerWrittenEntryCount());
+        assertEquals(3, writer.getRecordedEntryCount());
+    }
+    
+    public void testBackpressureWaitsOncePerTransaction() throws Exception
+    {
+        RecordingAuditEntryWriter writer = createWriter("ASYNCHRONOUS", 2);
+        writer.setOfferTimeoutMs(500L);
+        long start = System.currentTimeMillis();
+        audit(writer, 10, false);
+        long elapsed = System.currentTimeMillis() - start;
+        // Waiting for each of the 8 entries that don't fit would take at least 4 seconds
+        assertTrue("Waited too long for queue space: " + elapsed + "ms", elapsed < 2000L);
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(8L, writer.getCallerWrittenEntryCount());
+    }
+    
+    public void testOverflowIsJournalledAndReplayed() throws Exception
+    {
+        RecordingAuditEntryWriter writer = createWriter("ASYNCHRONOUS_SPILL", 2);
+        audit(writer, 5, false);
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(3L, writer.getSpilledEntryCount());
+        assertEquals(0, writer.getRecordedEntryCount());
+        
+        // Stopping spills the queue, too
+        writer.onShutdown(null);
+        assertEquals(5L, writer.getSpilledEntryCount());
+        
+        // A new writer finds the journal and replays it
+        RecordingAuditEntryWriter restarted = createWriter("ASYNCHRONOUS_SPILL", 2);
+        assertEquals(5L, restarted.getSpilledEntryCount());
+        restarted.onBootstrap(null);
+        waitForWrites(restarted, 5);
+        assertEquals(0L, restarted.getSpilledEntryCount());
+        assertEquals(5, restarted.getRecordedEntryCount());
+    }
+    
+    public void testFailedBatchIsJournalled() throws Exception
+    {
+        RecordingAuditEntryWriter writer = createWriter("ASYNCHRONOUS_SPILL", 100);
+        writer.failures = 1;
+        audit(writer, 3, false);
+        writer.onBootstrap(null);
+        // The batch fails once, is journalled and then written from the journal
+        waitForWrites(writer, 3);
+        assertEquals(0L, writer.getSpilledEntryCount());
+        assertEquals(0L, writer.getDroppedEntryCount());
+    }
+    
+    /**
+     * Records batches instead of writing them
+     */
+    private static class RecordingAuditEntryWriter extends AuditEntryWriter
+    {
+        private final List<List<PendingAuditEntry>> batches = Collections.synchronizedList(new ArrayList<List<PendingAuditEntry>>());
+        private volatile int failures;
+        
+        @Override
+        protected void writeBatch(List<PendingAuditEntry> batch)
+        {
+            if (failures > 0)
+            {
+                failures--;
+                throw new RuntimeException("Simulated failure");
+            }
+            batches.add(new ArrayList<PendingAuditEntry>(batch));
+        }
+        
+        private int getRecordedEntryCount()
+        {
+            int count = 0;
+            synchronized (batches)
+            {
+                for (List<PendingAuditEntry> batch : batches)
+                {
+                    count += batch.size();
+                }
+            }
+            return count;
+        }
+    }
+}
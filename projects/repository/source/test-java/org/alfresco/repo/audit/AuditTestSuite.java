@@ -48,6 +48,7 @@ public class AuditTestSuite extends TestSuite
         suite.addTestSuite(AuditBootstrapTest.class);
         suite.addTestSuite(AuditComponentTest.class);
         suite.addTestSuite(UserAuditFilterTest.class);
+        suite.addTestSuite(AuditEntryWriterTest.class);
         suite.addTestSuite(AuditMethodInterceptorTest.class);
         
         suite.addTest(new JUnit4TestAdapter(PropertyAuditFilterTest.class));
@@ -593,6 +593,54 @@ public class CacheTest extends TestCase
         }
     }
     
+    /**
+     * Overrun a small transactional cache and check that the dropped updates are spilled:
+     * the shared cache must not be cleared but must not keep the stale values, either.
+     */
+    public void testMaxSizeSpill() throws Exception
+    {
+        TransactionalCache.putSharedCacheValue(backingCache, "unrelated", "unrelated", null);
+        for (int i = 0; i < 20; i++)
+        {
+            TransactionalCache.putSharedCacheValue(backingCache, "spill-" + i, "old-" + i, null);
+        }
+        final long spillsAtStart = cacheStats.count("transactionalCache", OpType.SPILL);
+        final long overflowsAtStart = cacheStats.count("transactionalCache", OpType.OVERFLOW);
+        
+        transactionalCache.setMaxCacheSize(10);
+        TransactionService transactionService = serviceRegistry.getTransactionService();
+        UserTransaction txn = transactionService.getUserTransaction();
+        try
+        {
+            txn.begin();
+            for (int i = 0; i < 20; i++)
+            {
+                transactionalCache.put("spill-" + i, "new-" + i);
+            }
+            // The first updates were spilled and must not be served from the shared cache
+            assertNull("Spilled value must not be read from the shared cache", transactionalCache.get("spill-0"));
+            assertEquals("new-19", transactionalCache.get("spill-19"));
+            txn.commit();
+        }
+        finally
+        {
+            try { txn.rollback(); } catch (Throwable ee) {}
+            transactionalCache.setMaxCacheSize(200000);
+        }
+        
+        assertEquals("The shared cache must not be cleared", "unrelated", TransactionalCache.getSharedCacheValue(backingCache, "unrelated", null));
+        for (int i = 0; i < 10; i++)
+        {
+            assertFalse("Spilled key must be removed from the shared cache", backingCache.contains("spill-" + i));
+        }
+        for (int i = 10; i < 20; i++)
+        {
+            assertEquals("new-" + i, TransactionalCache.getSharedCacheValue(backingCache, "spill-" + i, null));
+        }
+        assertEquals(10, cacheStats.count("transactionalCache", OpType.SPILL) - spillsAtStart);
+        assertEquals(0, cacheStats.count("transactionalCache", OpType.OVERFLOW) - overflowsAtStart);
+    }
+    
     /** Execute the callback and ensure that the backing cache is left with the expected value */
     private void executeAndCheck(
             RetryingTransactionCallback<Object> callback,
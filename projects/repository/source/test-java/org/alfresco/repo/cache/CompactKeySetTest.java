@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.alfresco.repo.cache.lookup.CacheRegionKey;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link CompactKeySet} class.
+ */
+public class CompactKeySetTest
+{
+    private CompactKeySet keys;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        keys = new CompactKeySet();
+    }
+    
+    private Set<Serializable> iterated()
+    {
+        Set<Serializable> result = new HashSet<Serializable>();
+        for (Serializable key : keys)
+        {
+            assertTrue("Duplicate key in iteration: " + key, result.add(key));
+        }
+        return result;
+    }
+    
+    @Test
+    public void mixedKeys()
+    {
+        Set<Serializable> expected = new HashSet<Serializable>();
+        expected.add(1L);
+        expected.add(Long.MIN_VALUE);
+        expected.add(new CacheRegionKey("A", 1L));
+        expected.add(new CacheRegionKey("B", 1L));
+        expected.add(new CacheRegionKey("A", "text"));
+        expected.add("text");
+        for (Serializable key : expected)
+        {
+            assertTrue(keys.add(key));
+            assertFalse("Key added twice", keys.add(key));
+        }
+        assertEquals(expected.size(), keys.size());
+        for (Serializable key : expected)
+        {
+            assertTrue("Key not found: " + key, keys.contains(key));
+        }
+        assertFalse(keys.contains(2L));
+        assertFalse(keys.contains(new CacheRegionKey("C", 1L)));
+        assertEquals(expected, iterated());
+        
+        assertTrue(keys.remove(new CacheRegionKey("A", 1L)));
+        assertFalse(keys.remove(new CacheRegionKey("A", 1L)));
+        assertTrue(keys.remove(Long.MIN_VALUE));
+        assertEquals(expected.size() - 2, keys.size());
+        assertTrue(keys.contains(new CacheRegionKey("B", 1L)));
+        
+        keys.clear();
+        assertTrue(keys.isEmpty());
+        assertFalse(keys.iterator().hasNext());
+    }
+    
+    /**
+     * Compare with a regular set over many random additions and removals so that the
+     * tables resize and removals have to shift colliding entries.
+     */
+    @Test
+    public void behavesLikeHashSet()
+    {
+        Random random = new Random(42L);
+        Set<Serializable> expected = new HashSet<Serializable>();
+        for (int i = 0; i < 20000; i++)
+        {
+            Long value = Long.valueOf(random.nextInt(2000) * 1024L);
+            Serializable key = random.nextBoolean() ? value : new CacheRegionKey("R", value);
+            if (random.nextInt(3) == 0)
+            {
+                assertEquals(expected.remove(key), keys.remove(key));
+            }
+            else
+            {
+                assertEquals(expected.add(key), keys.add(key));
+            }
+            assertEquals(expected.size(), keys.size());
+        }
+        for (Serializable key : expected)
+        {
+            assertTrue("Key not found: " + key, keys.contains(key));
+        }
+        assertEquals(expected, iterated());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link HotKeyRecorder} class.
+ */
+public class HotKeyRecorderTest
+{
+    private HotKeyRecorder<Long> recorder;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        recorder = new HotKeyRecorder<Long>();
+        recorder.setSampleRate(1);
+    }
+    
+    private void record(long key, int times)
+    {
+        for (int i = 0; i < times; i++)
+        {
+            recorder.record(key);
+        }
+    }
+    
+    @Test
+    public void hottestKeysComeFirst()
+    {
+        record(1L, 1);
+        record(2L, 5);
+        record(3L, 3);
+        assertEquals(Arrays.asList(2L, 3L, 1L), recorder.getHottest(10));
+        assertEquals(Arrays.asList(2L, 3L), recorder.getHottest(2));
+    }
+    
+    @Test
+    public void keyCountIsBounded()
+    {
+        recorder.setMaxKeys(2);
+        record(1L, 1);
+        record(2L, 1);
+        record(3L, 10);
+        assertEquals(2, recorder.size());
+        // Keys already tracked keep counting
+        record(1L, 2);
+        assertEquals(Long.valueOf(1L), recorder.getHottest(1).get(0));
+    }
+    
+    @Test
+    public void decayDropsColdKeys()
+    {
+        record(1L, 1);
+        record(2L, 4);
+        recorder.decay();
+        assertEquals(Collections.singletonList(2L), recorder.getHottest(10));
+        recorder.decay();
+        recorder.decay();
+        assertEquals(0, recorder.size());
+    }
+    
+    @Test
+    public void disabledRecorderIgnoresAccesses()
+    {
+        recorder.setEnabled(false);
+        record(1L, 10);
+        assertEquals(0, recorder.size());
+    }
+}
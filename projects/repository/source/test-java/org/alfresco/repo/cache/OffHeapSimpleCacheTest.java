@@ -0,0 +1,293 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests for the {@link OffHeapSimpleCache} class.
+ */
+public class OffHeapSimpleCacheTest extends SimpleCacheTestBase<OffHeapSimpleCache<Integer, String>>
+{
+    @Override
+    protected OffHeapSimpleCache<Integer, String> createCache()
+    {
+        return new OffHeapSimpleCache<Integer, String>(
+                64 * 1024, 4,
+                100, true,
+                0, 0,
+                new OffHeapValueSerializer(),
+                getClass().getName());
+    }
+    
+    @Test
+    public void boundedSizeCache() throws Exception
+    {
+        // A single segment keeps the eviction order predictable; only the LAST 3 items are kept
+        cache = new OffHeapSimpleCache<Integer, String>(64 * 1024, 1, 3, true, 0, 0, new OffHeapValueSerializer(), "boundedSizeCache");
+        
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        cache.put(4, "4");
+        cache.put(5, "5");
+        
+        assertNull(cache.get(1));
+        assertFalse(cache.contains(1));
+        assertNull(cache.get(2));
+        assertFalse(cache.contains(2));
+        
+        assertEquals("3", cache.get(3));
+        assertEquals("4", cache.get(4));
+        assertEquals("5", cache.get(5));
+        assertEquals(3, cache.getSize());
+    }
+    
+    @Test
+    public void readEntriesGetASecondChance() throws Exception
+    {
+        cache = new OffHeapSimpleCache<Integer, String>(64 * 1024, 1, 3, true, 0, 0, new OffHeapValueSerializer(), "readEntriesGetASecondChance");
+        
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        assertEquals("1", cache.get(1));
+        cache.put(4, "4");
+        
+        // 1 has been read, so 2 is evicted in its place
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(3));
+        assertTrue(cache.contains(4));
+        
+        // 1 has not been read since it was written again
+        cache.put(5, "5");
+        cache.put(6, "6");
+        cache.put(7, "7");
+        assertFalse(cache.contains(1));
+        assertEquals(3, cache.getSize());
+    }
+    
+    @Test
+    public void boundedBytesCache() throws Exception
+    {
+        cache = new OffHeapSimpleCache<Integer, String>(4096, 1, 0, false, 0, 0, new OffHeapValueSerializer(), "boundedBytesCache");
+        char[] chars = new char[500];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        for (int i = 0; i < 100; i++)
+        {
+            cache.put(i, value);
+        }
+        assertTrue("Cache must stay within its byte limit", cache.getUsedBytes() <= cache.getMaxBytes());
+        assertTrue("Old entries must have been evicted", cache.getEvictionCount() > 0);
+        assertFalse(cache.contains(0));
+        assertEquals(value, cache.get(99));
+        
+        // A value that cannot fit into a segment is not cached at all
+        char[] large = new char[8192];
+        cache.put(1000, new String(large));
+        assertFalse(cache.contains(1000));
+        assertEquals(1, cache.getRejectionCount());
+    }
+    
+    @Test
+    public void replacingValueUpdatesEntry()
+    {
+        cache.put(1, "first");
+        cache.put(1, "second");
+        assertEquals("second", cache.get(1));
+        assertEquals(1, cache.getSize());
+        assertEquals(Collections.singleton(1), new HashSet<Integer>(cache.getKeys()));
+    }
+    
+    @Test
+    public void expiresAfterTTL() throws Exception
+    {
+        cache = new OffHeapSimpleCache<Integer, String>(64 * 1024, 1, 0, false, 1, 0, new OffHeapValueSerializer(), "expiresAfterTTL");
+        cache.put(1, "1");
+        assertEquals("1", cache.get(1));
+        Thread.sleep(1100L);
+        assertNull(cache.get(1));
+        assertFalse(cache.contains(1));
+    }
+    
+    @Test
+    public void valuesSurviveRoundTrip()
+    {
+        OffHeapValueSerializer serializer = new OffHeapValueSerializer();
+        
+        Set<QName> aspects = new HashSet<QName>();
+        aspects.add(ContentModel.ASPECT_AUDITABLE);
+        aspects.add(ContentModel.ASPECT_TITLED);
+        Object aspectsCopy = serializer.deserialize(serializer.serialize(Collections.unmodifiableSet(aspects)));
+        assertEquals(aspects, aspectsCopy);
+        try
+        {
+            ((Set<?>) aspectsCopy).clear();
+            fail("Unmodifiable sets must remain unmodifiable");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Expected
+        }
+        
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_NAME, "Test");
+        properties.put(ContentModel.PROP_NODE_DBID, 123L);
+        properties.put(ContentModel.PROP_CREATED, new Date());
+        properties.put(ContentModel.PROP_NODE_REF, new NodeRef("workspace://SpacesStore/abc"));
+        properties.put(ContentModel.PROP_LOCALE, Locale.FRANCE);
+        properties.put(ContentModel.PROP_DESCRIPTION, null);
+        assertEquals(properties, serializer.deserialize(serializer.serialize(properties)));
+        
+        // Transactional caches rely on value holders retaining their identity
+        ValueHolder<String> holder = new ValueHolder<String>("value", 42);
+        Object holderCopy = serializer.deserialize(serializer.serialize(holder));
+        assertEquals(holder, holderCopy);
+        assertEquals("value", ((ValueHolder<?>) holderCopy).getValue());
+        assertFalse(holder.equals(new ValueHolder<String>("value", 43)));
+    }
+    
+    @Test
+    public void collectionClassesSurviveRoundTrip()
+    {
+        OffHeapValueSerializer serializer = new OffHeapValueSerializer();
+        
+        Set<QName> sortedAspects = new TreeSet<QName>();
+        sortedAspects.add(ContentModel.ASPECT_TITLED);
+        sortedAspects.add(ContentModel.ASPECT_AUDITABLE);
+        Object sortedAspectsCopy = serializer.deserialize(serializer.serialize(sortedAspects));
+        assertEquals(TreeSet.class, sortedAspectsCopy.getClass());
+        assertEquals(sortedAspects, sortedAspectsCopy);
+        
+        Map<QName, Serializable> sortedProperties = new TreeMap<QName, Serializable>();
+        sortedProperties.put(ContentModel.PROP_NAME, "Test");
+        Object sortedPropertiesCopy = serializer.deserialize(serializer.serialize(sortedProperties));
+        assertEquals(TreeMap.class, sortedPropertiesCopy.getClass());
+        assertEquals(sortedProperties, sortedPropertiesCopy);
+        
+        // Linked collections and unmodifiable views keep their iteration order
+        Map<QName, Serializable> orderedProperties = new LinkedHashMap<QName, Serializable>();
+        Set<QName> orderedAspects = new LinkedHashSet<QName>();
+        for (int i = 20; i > 0; i--)
+        {
+            QName qname = QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "name" + i);
+            orderedProperties.put(qname, i);
+            orderedAspects.add(qname);
+        }
+        Object orderedPropertiesCopy = serializer.deserialize(serializer.serialize(orderedProperties));
+        assertEquals(LinkedHashMap.class, orderedPropertiesCopy.getClass());
+        assertEquals(new ArrayList<QName>(orderedProperties.keySet()),
+                new ArrayList<QName>(((Map<?, ?>) orderedPropertiesCopy).keySet()));
+        Set<QName> unmodifiableAspects = Collections.unmodifiableSet(orderedAspects);
+        Object unmodifiableAspectsCopy = serializer.deserialize(serializer.serialize(unmodifiableAspects));
+        assertEquals(unmodifiableAspects.getClass(), unmodifiableAspectsCopy.getClass());
+        Iterator<?> copyIterator = ((Set<?>) unmodifiableAspectsCopy).iterator();
+        for (QName qname : orderedAspects)
+        {
+            assertEquals(qname, copyIterator.next());
+        }
+    }
+    
+    @Test
+    public void statisticsOfAllThreadsArePublished() throws Exception
+    {
+        InMemoryCacheStatistics cacheStatistics = new InMemoryCacheStatistics();
+        cacheStatistics.setApplicationContext(Mockito.mock(ApplicationContext.class));
+        cache = new OffHeapSimpleCache<Integer, String>(64 * 1024, 1, 0, false, 0, 0, new OffHeapValueSerializer(), "statisticsOfAllThreadsArePublished");
+        cache.setCacheStatistics(cacheStatistics);
+        
+        cache.put(1, "1");
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                cache.get(1);
+                cache.get(2);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        
+        // The next operation after the interval publishes what every thread did
+        Thread.sleep(OffHeapSimpleCache.STATS_PUBLISH_INTERVAL_MS + 100L);
+        cache.get(1);
+        assertEquals(1, cacheStatistics.count("statisticsOfAllThreadsArePublished", OpType.PUT));
+        assertEquals(2, cacheStatistics.count("statisticsOfAllThreadsArePublished", OpType.GET_HIT));
+        assertEquals(1, cacheStatistics.count("statisticsOfAllThreadsArePublished", OpType.GET_MISS));
+    }
+    
+    @Test
+    public void factoryCreatesOffHeapCache()
+    {
+        Properties properties = new Properties();
+        properties.setProperty("cache.offHeapCache.maxItems", "10");
+        properties.setProperty("cache.offHeapCache.eviction-policy", "LRU");
+        properties.setProperty("cache.offHeapCache.offHeap.enabled", "true");
+        properties.setProperty("cache.offHeapCache.offHeap.maxBytes", "2m");
+        properties.setProperty("cache.offHeapCache.offHeap.segments", "2");
+        DefaultCacheFactory<Integer, String> cacheFactory = new DefaultCacheFactory<Integer, String>();
+        cacheFactory.setProperties(properties);
+        
+        cache = (OffHeapSimpleCache<Integer, String>) cacheFactory.createCache("cache.offHeapCache");
+        assertEquals("cache.offHeapCache", cache.getCacheName());
+        assertEquals(2 * 1024 * 1024, cache.getMaxBytes());
+        assertEquals(2, cache.getSegmentCount());
+        assertEquals(10, cache.getMaxItems());
+        assertTrue(cache.isUseMaxItems());
+    }
+}
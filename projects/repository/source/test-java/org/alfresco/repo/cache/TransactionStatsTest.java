@@ -99,4 +99,20 @@ public class TransactionStatsTest
         assertEquals(1000, stats.getTimings(OpType.REMOVE).getMean(), 0.01d);
         assertEquals(1750, stats.getTimings(OpType.CLEAR).getMean(), 0.01d);
     }
+
+    @Test
+    public void canAddTotalsToRecordedOps()
+    {
+        TransactionStats stats = new TransactionStats();
+        stats.record(0, 1000, OpType.GET_HIT);
+        stats.add(OpType.GET_HIT, 4, 6000);
+        stats.add(OpType.PUT, 2, 500);
+        
+        assertEquals(5, stats.getCount(OpType.GET_HIT));
+        assertEquals(7000, stats.getTotalTime(OpType.GET_HIT), 0.01d);
+        assertEquals(2, stats.getCount(OpType.PUT));
+        assertEquals(500, stats.getTotalTime(OpType.PUT), 0.01d);
+        assertEquals(0, stats.getCount(OpType.REMOVE));
+        assertEquals(0, stats.getTotalTime(OpType.REMOVE), 0.01d);
+    }
 }
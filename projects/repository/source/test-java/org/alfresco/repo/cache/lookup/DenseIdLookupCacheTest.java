@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.lookup;
+
+import junit.framework.TestCase;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests the {@link DenseIdLookupCache}.
+ * 
+ * @since 5.2
+ */
+public class DenseIdLookupCacheTest extends TestCase
+{
+    private DenseIdLookupCache<String> cache;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        cache = new DenseIdLookupCache<String>(1000);
+    }
+
+    public void testLookupAgainstEmpty() throws Exception
+    {
+        assertNull(cache.getValue(0L));
+        assertNull(cache.getValue(999L));
+        assertNull(cache.getValue(-1L));
+        assertNull(cache.getId("AAA"));
+    }
+
+    public void testLookupsInBothDirections() throws Exception
+    {
+        cache.put(1L, "AAA");
+        cache.put(700L, "BBB");
+        assertEquals("AAA", cache.getValue(1L));
+        assertEquals("BBB", cache.getValue(700L));
+        assertNull(cache.getValue(2L));
+        assertEquals(Long.valueOf(1L), cache.getId("AAA"));
+        assertEquals(Long.valueOf(700L), cache.getId("BBB"));
+        assertEquals(2, cache.size());
+    }
+
+    public void testLookupsByIdOnly() throws Exception
+    {
+        cache.putValue(5L, "AAA");
+        assertEquals("AAA", cache.getValue(5L));
+        assertNull("Lookups by value must not have been recorded", cache.getId("AAA"));
+    }
+
+    public void testIdsOutOfRangeAreNotCached() throws Exception
+    {
+        cache.put(1000L, "AAA");
+        cache.put(1001L, "BBB");
+        cache.put(-5L, "CCC");
+        assertEquals("AAA", cache.getValue(1000L));
+        assertNull(cache.getValue(1001L));
+        assertNull(cache.getId("BBB"));
+        assertNull(cache.getId("CCC"));
+    }
+
+    public void testLookupsByValueNotRecordedInReadWriteTransaction() throws Exception
+    {
+        TransactionSynchronizationManager.initSynchronization();
+        try
+        {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+            cache.put(1L, "AAA");
+            assertEquals("AAA", cache.getValue(1L));
+            assertNull("A value from a read-write transaction must not be looked up by value", cache.getId("AAA"));
+
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+            cache.put(1L, "AAA");
+            assertEquals(Long.valueOf(1L), cache.getId("AAA"));
+        }
+        finally
+        {
+            TransactionSynchronizationManager.clear();
+        }
+    }
+
+    public void testClear() throws Exception
+    {
+        cache.put(1L, "AAA");
+        cache.clear();
+        assertNull(cache.getValue(1L));
+        assertNull(cache.getId("AAA"));
+        cache.put(1L, "BBB");
+        assertEquals("BBB", cache.getValue(1L));
+        assertEquals(Long.valueOf(1L), cache.getId("BBB"));
+    }
+}
@@ -32,6 +32,7 @@ import java.util.TreeMap;
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 
+import org.alfresco.repo.cache.HotKeyRecorder;
 import org.alfresco.repo.cache.MemoryCache;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAO;
@@ -84,6 +85,23 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         }
     }
     
+    public void testKeyRecorder() throws Exception
+    {
+        HotKeyRecorder<Long> recorder = new HotKeyRecorder<Long>();
+        recorder.setSampleRate(1);
+        entityLookupCacheA.setKeyRecorder(recorder);
+        
+        Long idA = entityLookupCacheA.getOrCreateByValue(new TestValue("AAA")).getFirst();
+        Long idB = entityLookupCacheA.getOrCreateByValue(new TestValue("BBB")).getFirst();
+        assertEquals("Lookups by value must not be recorded", 0, recorder.size());
+        
+        entityLookupCacheA.getByKey(idA);
+        entityLookupCacheA.getByKey(idB);
+        entityLookupCacheA.getByKey(idB);
+        assertEquals(2, recorder.size());
+        assertEquals(idB, recorder.getHottest(1).get(0));
+    }
+    
     public void testLookupAgainstEmpty() throws Exception
     {
         TestValue value = new TestValue("AAA");
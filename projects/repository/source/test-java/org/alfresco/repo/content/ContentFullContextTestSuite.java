@@ -30,6 +30,7 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import org.alfresco.repo.content.cleanup.ContentStoreCleanerTest;
+import org.alfresco.repo.content.filestore.DeduplicatingFileContentStoreTest;
 import org.alfresco.repo.content.filestore.FileContentStoreTest;
 import org.alfresco.repo.content.filestore.NoRandomAccessFileContentStoreTest;
 import org.alfresco.repo.content.filestore.ReadOnlyFileContentStoreTest;
@@ -59,6 +60,7 @@ public class ContentFullContextTestSuite extends TestSuite
         suite.addTest(new JUnit4TestAdapter(FileContentStoreTest.class));
         suite.addTest(new JUnit4TestAdapter(NoRandomAccessFileContentStoreTest.class));
         suite.addTest(new JUnit4TestAdapter(ReadOnlyFileContentStoreTest.class));
+        suite.addTest(new JUnit4TestAdapter(DeduplicatingFileContentStoreTest.class));
         suite.addTestSuite(ContentStoreReplicatorTest.class);
         suite.addTest(new JUnit4TestAdapter(ReplicatingContentStoreTest.class));
         suite.addTestSuite(ContentDataTest.class);
@@ -34,6 +34,7 @@ import org.alfresco.repo.content.metadata.HtmlMetadataExtracterTest;
 import org.alfresco.repo.content.metadata.MP3MetadataExtracterTest;
 import org.alfresco.repo.content.metadata.MailMetadataExtracterTest;
 import org.alfresco.repo.content.metadata.MetadataExtracterLimitsTest;
+import org.alfresco.repo.content.metadata.MetadataExtracterSchedulerTest;
 import org.alfresco.repo.content.metadata.OfficeMetadataExtracterTest;
 import org.alfresco.repo.content.metadata.OpenDocumentMetadataExtracterTest;
 import org.alfresco.repo.content.metadata.OpenOfficeMetadataExtracterTest;
@@ -113,6 +114,7 @@ public class ContentMinimalContextTestSuite extends TestSuite
        
        // Metadata tests
        suite.addTest(new JUnit4TestAdapter(MetadataExtracterLimitsTest.class));
+       suite.addTest(new JUnit4TestAdapter(MetadataExtracterSchedulerTest.class));
        suite.addTestSuite( DWGMetadataExtracterTest.class );
        suite.addTestSuite( HtmlMetadataExtracterTest.class );
        suite.addTestSuite( MailMetadataExtracterTest.class );
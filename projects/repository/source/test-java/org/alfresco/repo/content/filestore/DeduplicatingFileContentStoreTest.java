@@ -0,0 +1,192 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import org.alfresco.repo.content.AbstractWritableContentStoreTest;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.TempFileProvider;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the file-based store that deduplicates identical content.
+ * 
+ * @see org.alfresco.repo.content.filestore.DeduplicatingFileContentStore
+ * 
+ * @since 5.2
+ */
+@Category(OwnJVMTestsCategory.class)
+public class DeduplicatingFileContentStoreTest extends AbstractWritableContentStoreTest
+{
+    private DeduplicatingFileContentStore store;
+    
+    @Before
+    public void before() throws Exception
+    {
+        // create a store that uses a subdirectory of the temp directory
+        File tempDir = TempFileProvider.getTempDir();
+        store = new DeduplicatingFileContentStore(ctx,
+                tempDir.getAbsolutePath() +
+                File.separatorChar +
+                getName() + "-" + System.currentTimeMillis());
+        // Do not need super class's transactions
+    }
+    
+    @After
+    public void after()
+    {
+        // Do not need super class's transactions
+    }
+
+    @Override
+    protected ContentStore getStore()
+    {
+        return store;
+    }
+    
+    private String write(String content)
+    {
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(content);
+        return writer.getContentUrl();
+    }
+    
+    private int getLinkCount(File file) throws Exception
+    {
+        return ((Number) Files.getAttribute(file.toPath(), "unix:nlink")).intValue();
+    }
+    
+    @Test
+    public void testIdenticalContentIsStoredOnce() throws Exception
+    {
+        Assume.assumeTrue(store.isDeduplicating());
+        
+        String contentUrlA = write("Some shared content");
+        String contentUrlB = write("Some shared content");
+        String contentUrlC = write("Some other content");
+        assertFalse(contentUrlA.equals(contentUrlB));
+        
+        File fileA = store.makeFile(contentUrlA);
+        File fileB = store.makeFile(contentUrlB);
+        File fileC = store.makeFile(contentUrlC);
+        assertTrue("Identical content must share a blob", Files.isSameFile(fileA.toPath(), fileB.toPath()));
+        assertFalse("Different content must not share a blob", Files.isSameFile(fileA.toPath(), fileC.toPath()));
+        // Two URLs and the blob itself
+        assertEquals(3, getLinkCount(fileA));
+        assertEquals(2, getLinkCount(fileC));
+        
+        assertEquals("Some shared content", store.getReader(contentUrlB).getContentString());
+    }
+    
+    @Test
+    public void testBlobIsDeletedWithLastReference() throws Exception
+    {
+        Assume.assumeTrue(store.isDeduplicating());
+        
+        String contentUrlA = write("Content to delete");
+        String contentUrlB = write("Content to delete");
+        String digest = DeduplicatingFileContentWriter.digest(store.makeFile(contentUrlA));
+        File blobFile = store.getBlobFile(digest);
+        assertTrue("Blob not created", blobFile.exists());
+        
+        assertTrue(store.delete(contentUrlA));
+        assertFalse(store.exists(contentUrlA));
+        assertTrue("Blob is still referenced", blobFile.exists());
+        assertEquals("Content to delete", store.getReader(contentUrlB).getContentString());
+        
+        assertTrue(store.delete(contentUrlB));
+        assertFalse("Blob is no longer referenced", blobFile.exists());
+    }
+    
+    @Test
+    public void testDigestIsRecordedWithBlob() throws Exception
+    {
+        Assume.assumeTrue(store.isDeduplicating());
+        
+        String contentUrlA = write("Content with a recorded digest");
+        String contentUrlB = write("Content with a recorded digest");
+        File fileA = store.makeFile(contentUrlA);
+        String digest = DeduplicatingFileContentWriter.digest(fileA);
+        // Every link shares the attribute of the blob
+        byte[] recorded = (byte[]) Files.getAttribute(store.makeFile(contentUrlB).toPath(), "user:alfresco.digest");
+        assertEquals(digest, new String(recorded, "US-ASCII"));
+        
+        // The blob is released using the recorded digest, whatever the content of the file
+        File blobFile = store.getBlobFile(digest);
+        assertTrue(store.delete(contentUrlB));
+        Files.write(fileA.toPath(), "Changed behind the store's back".getBytes("UTF-8"));
+        assertTrue(store.delete(contentUrlA));
+        assertFalse("Blob is no longer referenced", blobFile.exists());
+    }
+    
+    @Test
+    public void testDigestAfterRandomAccess() throws Exception
+    {
+        Assume.assumeTrue(store.isDeduplicating());
+        
+        String contentUrlA = write("ABCDEF");
+        // Write the same content out of sequence
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        FileChannel channel = writer.getFileChannel(true);
+        channel.write(ByteBuffer.wrap("DEF".getBytes("UTF-8")), 3L);
+        channel.write(ByteBuffer.wrap("ABC".getBytes("UTF-8")), 0L);
+        channel.close();
+        String contentUrlB = writer.getContentUrl();
+        
+        assertTrue("Identical content must share a blob",
+                Files.isSameFile(store.makeFile(contentUrlA).toPath(), store.makeFile(contentUrlB).toPath()));
+    }
+    
+    @Test
+    public void testPurgeUnreferencedBlobs() throws Exception
+    {
+        Assume.assumeTrue(store.isDeduplicating());
+        
+        String contentUrl = write("Orphaned content");
+        File file = store.makeFile(contentUrl);
+        File blobFile = store.getBlobFile(DeduplicatingFileContentWriter.digest(file));
+        // Remove the URL file behind the store's back
+        assertTrue(file.delete());
+        assertTrue(blobFile.exists());
+        
+        assertEquals(1, store.purgeUnreferencedBlobs());
+        assertFalse(blobFile.exists());
+    }
+}
@@ -26,6 +26,8 @@
 package org.alfresco.repo.content.filestore;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.nio.ByteBuffer;
 import java.util.Locale;
 
@@ -273,6 +275,69 @@ public class FileContentStoreTest extends AbstractWritableContentStoreTest
         assertTrue("Stream close not detected", writer.isClosed());
     }
     
+    /**
+     * Content from a file or a plain <code>FileInputStream</code> is transferred from the file channel,
+     * starting at the current position of the stream.
+     */
+    @Test
+    public void testPutContentFromFile() throws Exception
+    {
+        File file = TempFileProvider.createTempFile(getName(), ".txt");
+        FileOutputStream os = new FileOutputStream(file);
+        os.write("0123456789".getBytes("UTF-8"));
+        os.close();
+        try
+        {
+            ContentWriter writer = getWriter();
+            writer.putContent(file);
+            assertTrue("Channel close not detected", writer.isClosed());
+            assertEquals("0123456789", writer.getReader().getContentString());
+            
+            FileInputStream is = new FileInputStream(file);
+            assertEquals(4L, is.skip(4L));
+            writer = getWriter();
+            writer.putContent(is);
+            assertEquals("456789", writer.getReader().getContentString());
+            assertEquals(6L, writer.getSize());
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+    
+    /**
+     * Writing a file with a configured {@link ContentLimitProvider limit} fails before anything is transferred.
+     */
+    @Test
+    public void testPutFileWithSizeLimit() throws Exception
+    {
+        File file = TempFileProvider.createTempFile(getName(), ".txt");
+        FileOutputStream os = new FileOutputStream(file);
+        os.write("This will exceed the short limit.".getBytes("UTF-8"));
+        os.close();
+        try
+        {
+            FileContentWriter writer = (FileContentWriter) getWriter();
+            writer.setContentLimitProvider(new SimpleFixedLimitProvider(3));
+            try
+            {
+                writer.putContent(file);
+                fail("Expected exception not thrown.");
+            }
+            catch (ContentLimitViolationException clvx)
+            {
+                // expected
+            }
+            assertTrue("Channel close not detected", writer.isClosed());
+            assertEquals(0L, writer.getSize());
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+    
     /**
      * Test for MNT-12301 case.
      */
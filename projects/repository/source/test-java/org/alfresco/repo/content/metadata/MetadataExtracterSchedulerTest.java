@@ -0,0 +1,441 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the admission control of the {@link MetadataExtracterScheduler}.
+ * 
+ * @since 5.2
+ */
+public class MetadataExtracterSchedulerTest
+{
+    private static final String PDF = "application/pdf";
+    private static final String TEXT = "text/plain";
+
+    private MetadataExtracterScheduler scheduler;
+
+    @After
+    public void tearDown()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+        }
+    }
+
+    private MetadataExtracterScheduler createScheduler(int poolSize, int memoryBudgetMB, long admissionTimeoutMs)
+    {
+        scheduler = new MetadataExtracterScheduler();
+        scheduler.setName("MetadataExtracterSchedulerTest");
+        scheduler.setPoolSize(poolSize);
+        scheduler.setMemoryBudgetMB(memoryBudgetMB);
+        scheduler.setAdmissionTimeoutMs(admissionTimeoutMs);
+        scheduler.init();
+        return scheduler;
+    }
+
+    private static MetadataExtracterLimits limits(long timeoutMs, int maxConcurrentExtractionsCount)
+    {
+        MetadataExtracterLimits limits = new MetadataExtracterLimits();
+        limits.setTimeoutMs(timeoutMs);
+        limits.setMaxConcurrentExtractionsCount(maxConcurrentExtractionsCount);
+        return limits;
+    }
+
+    /**
+     * An extraction that records how many extractions (of the same kind) run at the same time.
+     */
+    private static class CountingWork implements Callable<String>
+    {
+        private final AtomicInteger current;
+        private final AtomicInteger max;
+        private final long durationMs;
+
+        private CountingWork(AtomicInteger current, AtomicInteger max, long durationMs)
+        {
+            this.current = current;
+            this.max = max;
+            this.durationMs = durationMs;
+        }
+
+        @Override
+        public String call() throws Exception
+        {
+            int now = current.incrementAndGet();
+            synchronized (max)
+            {
+                if (now > max.get())
+                {
+                    max.set(now);
+                }
+            }
+            try
+            {
+                Thread.sleep(durationMs);
+            }
+            finally
+            {
+                current.decrementAndGet();
+            }
+            return "done";
+        }
+    }
+
+    /**
+     * Runs each of the extractions from its own thread and waits for them all.
+     * 
+     * @return the failures
+     */
+    private List<Throwable> runConcurrently(final List<Callable<String>> works, final List<String> mimetypes,
+            final long contentSize, final MetadataExtracterLimits limits) throws InterruptedException
+    {
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < works.size(); i++)
+        {
+            final Callable<String> work = works.get(i);
+            final String mimetype = mimetypes.get(i);
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        assertEquals("done", scheduler.execute(work, mimetype, contentSize, limits));
+                    }
+                    catch (Throwable e)
+                    {
+                        synchronized (failures)
+                        {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join(10000);
+        }
+        return failures;
+    }
+
+    @Test
+    public void testPoolSizeBoundsConcurrency() throws Exception
+    {
+        createScheduler(2, 0, -1);
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        List<Callable<String>> works = new ArrayList<Callable<String>>();
+        List<String> mimetypes = new ArrayList<String>();
+        for (int i = 0; i < 6; i++)
+        {
+            works.add(new CountingWork(current, max, 100));
+            mimetypes.add(TEXT);
+        }
+
+        List<Throwable> failures = runConcurrently(works, mimetypes, 1024, null);
+
+        assertTrue("Unexpected failures: " + failures, failures.isEmpty());
+        assertEquals("Only poolSize extractions may run at the same time", 2, max.get());
+        assertEquals(6, scheduler.getExtractionCount());
+        assertEquals(0, scheduler.getRunningCount());
+        assertTrue(scheduler.getAverageWaitMs() > 0);
+        assertTrue(scheduler.getMaxExtractionMs() >= 100);
+    }
+
+    @Test
+    public void testMimetypeConcurrencyLimit() throws Exception
+    {
+        createScheduler(4, 0, -1);
+        AtomicInteger currentPdf = new AtomicInteger();
+        AtomicInteger maxPdf = new AtomicInteger();
+        AtomicInteger currentText = new AtomicInteger();
+        AtomicInteger maxText = new AtomicInteger();
+        List<Callable<String>> works = new ArrayList<Callable<String>>();
+        List<String> mimetypes = new ArrayList<String>();
+        for (int i = 0; i < 3; i++)
+        {
+            works.add(new CountingWork(currentPdf, maxPdf, 100));
+            mimetypes.add(PDF);
+            works.add(new CountingWork(currentText, maxText, 100));
+            mimetypes.add(TEXT + i);
+        }
+
+        List<Throwable> failures = runConcurrently(works, mimetypes, 1024, limits(-1, 1));
+
+        assertTrue("Unexpected failures: " + failures, failures.isEmpty());
+        assertEquals("Only one PDF may be extracted at a time", 1, maxPdf.get());
+        assertTrue("Other mimetypes are not held up by the PDFs", maxText.get() > 1);
+    }
+
+    @Test
+    public void testMemoryWeightedAdmission() throws Exception
+    {
+        createScheduler(4, 1, -1);
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        List<Callable<String>> works = new ArrayList<Callable<String>>();
+        List<String> mimetypes = new ArrayList<String>();
+        for (int i = 0; i < 3; i++)
+        {
+            works.add(new CountingWork(current, max, 100));
+            mimetypes.add(PDF);
+        }
+
+        // Two 600KB documents do not fit in 1MB
+        List<Throwable> failures = runConcurrently(works, mimetypes, 600 * 1024, null);
+
+        assertTrue("Unexpected failures: " + failures, failures.isEmpty());
+        assertEquals(1, max.get());
+        assertEquals(1024, scheduler.getAvailableMemoryKB());
+
+        // ... but three 300KB documents do
+        current.set(0);
+        max.set(0);
+        failures = runConcurrently(works, mimetypes, 300 * 1024, null);
+        assertTrue("Unexpected failures: " + failures, failures.isEmpty());
+        assertEquals(3, max.get());
+    }
+
+    @Test
+    public void testTimeoutKeepsCapacityUntilFinished() throws Exception
+    {
+        createScheduler(1, 1, -1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        Callable<String> stubborn = new Callable<String>()
+        {
+            @Override
+            public String call() throws Exception
+            {
+                // Ignores interrupts, like some parsers do
+                while (true)
+                {
+                    try
+                    {
+                        finish.await();
+                        return "done";
+                    }
+                    catch (InterruptedException e)
+                    {
+                        // keep going
+                    }
+                }
+            }
+        };
+
+        try
+        {
+            scheduler.execute(stubborn, PDF, 1024 * 1024, limits(100, -1));
+            fail("The extraction should have timed out");
+        }
+        catch (TimeoutException e)
+        {
+            // expected
+        }
+        assertEquals(1, scheduler.getTimeoutCount());
+        assertEquals("The timed out extraction is still running", 1, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getAvailableMemoryKB());
+
+        finish.countDown();
+        for (int i = 0; i < 100 && scheduler.getRunningCount() > 0; i++)
+        {
+            Thread.sleep(20);
+        }
+        assertEquals(0, scheduler.getRunningCount());
+        assertEquals(1024, scheduler.getAvailableMemoryKB());
+    }
+
+    /**
+     * Starts an extraction that holds its thread until <tt>finish</tt> is counted down.
+     */
+    private Thread holdThread(final CountDownLatch started, final CountDownLatch finish)
+    {
+        Thread holder = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    scheduler.execute(new Callable<String>()
+                    {
+                        @Override
+                        public String call() throws Exception
+                        {
+                            started.countDown();
+                            finish.await();
+                            return "done";
+                        }
+                    }, TEXT, 1024, null);
+                }
+                catch (Exception e)
+                {
+                    // ignore
+                }
+            }
+        };
+        holder.start();
+        return holder;
+    }
+
+    @Test
+    public void testTimeoutStartsWhenExtractionRuns() throws Exception
+    {
+        createScheduler(1, 0, -1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        Thread holder = holdThread(started, finish);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Queues behind the holder for longer than its own timeout
+        Thread releaser = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(300);
+                }
+                catch (InterruptedException e)
+                {
+                    // release early
+                }
+                finish.countDown();
+            }
+        };
+        releaser.start();
+        assertEquals("done", scheduler.execute(new CountingWork(new AtomicInteger(), new AtomicInteger(), 50), PDF, 1024,
+                limits(200, -1)));
+        assertEquals(0, scheduler.getTimeoutCount());
+        assertTrue(scheduler.getMaxWaitMs() >= 200);
+
+        releaser.join(5000);
+        holder.join(5000);
+    }
+
+    @Test
+    public void testAdmissionTimeoutWhilstQueued() throws Exception
+    {
+        createScheduler(1, 1, 100);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        Thread holder = holdThread(started, finish);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        try
+        {
+            scheduler.execute(new CountingWork(current, max, 0), PDF, 1024, limits(5000, -1));
+            fail("There should not have been a thread");
+        }
+        catch (TimeoutException e)
+        {
+            // expected
+        }
+        assertEquals(1, scheduler.getAdmissionTimeoutCount());
+        assertEquals(0, scheduler.getTimeoutCount());
+        assertEquals("The queued extraction gave back its capacity", 1023, scheduler.getAvailableMemoryKB());
+
+        finish.countDown();
+        holder.join(5000);
+        assertEquals("The cancelled extraction never ran", 0, max.get());
+        assertEquals(1024, scheduler.getAvailableMemoryKB());
+    }
+
+    @Test
+    public void testAdmissionTimeout() throws Exception
+    {
+        createScheduler(2, 1, 100);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        Thread holder = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    scheduler.execute(new Callable<String>()
+                    {
+                        @Override
+                        public String call() throws Exception
+                        {
+                            started.countDown();
+                            finish.await();
+                            return "done";
+                        }
+                    }, PDF, 1024 * 1024, null);
+                }
+                catch (Exception e)
+                {
+                    // ignore
+                }
+            }
+        };
+        holder.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try
+        {
+            scheduler.execute(new CountingWork(new AtomicInteger(), new AtomicInteger(), 0), PDF, 1024, null);
+            fail("There should not have been any capacity");
+        }
+        catch (TimeoutException e)
+        {
+            // expected
+        }
+        assertEquals(1, scheduler.getAdmissionTimeoutCount());
+        assertEquals(0, scheduler.getWaitingCount());
+
+        finish.countDown();
+        holder.join(5000);
+        assertEquals("done", scheduler.execute(new CountingWork(new AtomicInteger(), new AtomicInteger(), 0), PDF, 1024, null));
+    }
+}
@@ -29,6 +29,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -40,12 +41,16 @@ import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
 import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
 import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.Path;
 import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.test_category.OwnJVMTestsCategory;
@@ -335,6 +340,223 @@ public class NodeDAOTest extends TestCase
         txnHelper.doInTransaction(callback, true);
     }
     
+    public void testReadAheadNodes() throws Throwable
+    {
+        final AbstractNodeDAOImpl nodeDAOImpl = (AbstractNodeDAOImpl) ctx.getBean("nodeDAO.org.hibernate.dialect.Dialect");
+        Long minNodeId = nodeDAO.getMinNodeId();
+        final List<Long> nodeIds = new ArrayList<Long>(1000);
+        for (long i = 0; i < 1000; i++)
+        {
+            nodeIds.add(Long.valueOf(minNodeId.longValue() + i));
+        }
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                nodeDAO.clear();
+                List<NodeRef> nodeRefs = new ArrayList<NodeRef>(nodeIds.size());
+                for (Long nodeId : nodeIds)
+                {
+                    Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeId);
+                    if (nodePair != null)
+                    {
+                        nodeRefs.add(nodePair.getSecond());
+                    }
+                }
+                nodeDAO.clear();
+                if (!nodeDAO.readAheadNodes(nodeRefs))
+                {
+                    return null;                // Read-ahead is switched off
+                }
+                int windowSize = nodeDAOImpl.getReadAheadWindowSize();
+                int size = nodeRefs.size();
+                // Visit from the middle of the list, then from the start
+                List<Integer> visitOrder = new ArrayList<Integer>(size);
+                for (int i = 0; i < size; i++)
+                {
+                    visitOrder.add((i + size / 2) % size);
+                }
+                // A visit to a node that is not prefetched yet loads it and the next nodes not visited or loaded yet
+                Set<Integer> prefetched = new HashSet<Integer>();
+                Set<Integer> visited = new HashSet<Integer>();
+                NodeReadAheadStatistics stats = nodeDAOImpl.getReadAheadStatistics();
+                for (int index : visitOrder)
+                {
+                    long missesBefore = stats.getMisses();
+                    long hitsBefore = stats.getHits();
+                    Long nodeId = nodeDAO.getNodePair(nodeRefs.get(index)).getFirst();
+                    nodeDAO.getNodeProperties(nodeId);
+                    nodeDAO.getNodeAspects(nodeId);
+                    visited.add(index);
+                    if (prefetched.contains(index))
+                    {
+                        assertEquals("Node " + index + " should have been prefetched", hitsBefore + 1, stats.getHits());
+                        assertEquals(missesBefore, stats.getMisses());
+                    }
+                    else
+                    {
+                        assertEquals("Node " + index + " should not have been prefetched", missesBefore + 1, stats.getMisses());
+                        assertEquals(hitsBefore, stats.getHits());
+                        int windowNodes = 1;
+                        for (int next = index + 1; next < size && windowNodes < windowSize; next++)
+                        {
+                            if (!visited.contains(next) && prefetched.add(next))
+                            {
+                                windowNodes++;
+                            }
+                        }
+                    }
+                }
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, true);
+    }
+    
+    /**
+     * Only the first nodes of a list longer than the limit are registered for read-ahead
+     */
+    public void testReadAheadNodesLimit() throws Throwable
+    {
+        final AbstractNodeDAOImpl nodeDAOImpl = (AbstractNodeDAOImpl) ctx.getBean("nodeDAO.org.hibernate.dialect.Dialect");
+        final Long minNodeId = nodeDAO.getMinNodeId();
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                List<NodeRef> nodeRefs = new ArrayList<NodeRef>(100);
+                for (long i = 0; i < 1000 && nodeRefs.size() < 100; i++)
+                {
+                    Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(minNodeId.longValue() + i);
+                    if (nodePair != null)
+                    {
+                        nodeRefs.add(nodePair.getSecond());
+                    }
+                }
+                nodeDAO.clear();
+                NodeReadAheadStatistics stats = nodeDAOImpl.getReadAheadStatistics();
+                long registeredBefore = stats.getRegisteredNodes();
+                if (!nodeDAO.readAheadNodes(nodeRefs))
+                {
+                    return null;                // Read-ahead is switched off
+                }
+                assertEquals(Math.min(nodeRefs.size(), 50), stats.getRegisteredNodes() - registeredBefore);
+                if (nodeRefs.size() > 50)
+                {
+                    // A node past the limit is neither a hit nor a miss
+                    long visitsBefore = stats.getHits() + stats.getMisses();
+                    Long nodeId = nodeDAO.getNodePair(nodeRefs.get(nodeRefs.size() - 1)).getFirst();
+                    nodeDAO.getNodeProperties(nodeId);
+                    assertEquals(visitsBefore, stats.getHits() + stats.getMisses());
+                }
+                return null;
+            }
+        };
+        nodeDAOImpl.setReadAheadMaxNodes(50);
+        try
+        {
+            txnHelper.doInTransaction(callback, true);
+        }
+        finally
+        {
+            nodeDAOImpl.setReadAheadMaxNodes(10000);
+        }
+    }
+    
+    /**
+     * Check that cached primary paths follow moves, including repeated moves within one transaction
+     */
+    public void testPrimaryPathCache() throws Throwable
+    {
+        final AbstractNodeDAOImpl nodeDAOImpl = (AbstractNodeDAOImpl) ctx.getBean("nodeDAO.org.hibernate.dialect.Dialect");
+        final NodeService nodeService = (NodeService) ctx.getBean("nodeService");
+        AuthenticationUtil.setRunAsUserSystem();
+        // Build root/A/B/C and root/D
+        final NodeRef[] nodeRefs = txnHelper.doInTransaction(new RetryingTransactionCallback<NodeRef[]>()
+        {
+            public NodeRef[] execute() throws Throwable
+            {
+                StoreRef storeRef = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, "NodeDAOTest-" + System.currentTimeMillis());
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                NodeRef[] created = new NodeRef[5];
+                created[0] = rootNodeRef;
+                for (int i = 1; i < 5; i++)
+                {
+                    NodeRef parentNodeRef = (i == 4 || i == 1) ? rootNodeRef : created[i - 1];
+                    created[i] = nodeService.createNode(
+                            parentNodeRef,
+                            ContentModel.ASSOC_CHILDREN,
+                            QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "node" + i),
+                            ContentModel.TYPE_FOLDER).getChildRef();
+                }
+                return created;
+            }
+        });
+        final NodeRef nodeRefA = nodeRefs[1];
+        final NodeRef nodeRefB = nodeRefs[2];
+        final NodeRef nodeRefC = nodeRefs[3];
+        final NodeRef nodeRefD = nodeRefs[4];
+        
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                Pair<Long, NodeRef> nodePairC = nodeDAO.getNodePair(nodeRefC);
+                Path path = nodeDAO.getPaths(nodePairC, true).get(0);
+                assertPath(path, nodeRefA, nodeRefB, nodeRefC);
+                PrimaryPathCache primaryPathCache = nodeDAOImpl.getPrimaryPathCache();
+                if (primaryPathCache != null)
+                {
+                    Long storeId = nodeDAO.getStore(nodeRefC.getStoreRef()).getFirst();
+                    assertNotNull("Path was not cached", primaryPathCache.get(storeId, nodePairC.getFirst()));
+                }
+                assertEquals(path, nodeDAO.getPaths(nodePairC, true).get(0));
+                List<Path> paths = nodeDAO.getPaths(nodePairC, false);
+                assertEquals(1, paths.size());
+                assertEquals(path, paths.get(0));
+                return null;
+            }
+        }, true);
+        
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                Pair<Long, NodeRef> nodePairC = nodeDAO.getNodePair(nodeRefC);
+                nodeService.moveNode(nodeRefB, nodeRefD, ContentModel.ASSOC_CHILDREN, QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "node2"));
+                assertPath(nodeDAO.getPaths(nodePairC, true).get(0), nodeRefD, nodeRefB, nodeRefC);
+                // The node is already part of this transaction when moved again
+                nodeService.moveNode(nodeRefB, nodeRefs[0], ContentModel.ASSOC_CHILDREN, QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "node2"));
+                assertPath(nodeDAO.getPaths(nodePairC, true).get(0), nodeRefB, nodeRefC);
+                return null;
+            }
+        });
+        
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                Pair<Long, NodeRef> nodePairC = nodeDAO.getNodePair(nodeRefC);
+                assertPath(nodeDAO.getPaths(nodePairC, true).get(0), nodeRefB, nodeRefC);
+                assertPath(nodeDAO.getPaths(nodePairC, true).get(0), nodeRefB, nodeRefC);
+                return null;
+            }
+        }, true);
+    }
+    
+    /**
+     * Check the nodes below the store root on a path
+     */
+    private static void assertPath(Path path, NodeRef ... nodeRefs)
+    {
+        assertEquals("Incorrect path: " + path, nodeRefs.length + 1, path.size());
+        for (int i = 0; i < nodeRefs.length; i++)
+        {
+            NodeRef childRef = ((Path.ChildAssocElement) path.get(i + 1)).getRef().getChildRef();
+            assertEquals("Incorrect path: " + path, nodeRefs[i], childRef);
+        }
+    }
+    
     /**
      * Ensure that the {@link NodeEntity} values cached as root nodes are valid instances.
      * <p/>
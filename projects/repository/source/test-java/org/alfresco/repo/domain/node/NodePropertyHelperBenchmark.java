@@ -0,0 +1,306 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.MemoryCache;
+import org.alfresco.repo.dictionary.CompiledModelsCache;
+import org.alfresco.repo.dictionary.DictionaryBootstrap;
+import org.alfresco.repo.dictionary.DictionaryComponent;
+import org.alfresco.repo.dictionary.DictionaryDAOImpl;
+import org.alfresco.repo.domain.locale.AbstractLocaleDAOImpl;
+import org.alfresco.repo.domain.locale.LocaleEntity;
+import org.alfresco.repo.domain.qname.AbstractQNameDAOImpl;
+import org.alfresco.repo.domain.qname.NamespaceEntity;
+import org.alfresco.repo.domain.qname.QNameEntity;
+import org.alfresco.repo.tenant.SingleTServiceImpl;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.GUID;
+import org.alfresco.util.ThreadPoolExecutorFactoryBean;
+import org.alfresco.util.cache.DefaultAsynchronouslyRefreshedCacheRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the conversion of persisted node properties to their public form by the
+ * {@link NodePropertyHelper}, which resolves the QName and locale of every property row.  The
+ * DAOs are backed by in-memory "tables" and the shared caches are plain in-memory caches, so
+ * the figures show the cost of the conversion and the ID lookups alone.
+ * <p>
+ * Not part of any test suite.  Run with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.alfresco.repo.domain.node.NodePropertyHelperBenchmark
+ * </pre>
+ * 
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NodePropertyHelperBenchmark
+{
+    private NodePropertyHelper helper;
+    private Map<NodePropertyKey, NodePropertyValue> persistedProperties;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        TenantService tenantService = new SingleTServiceImpl();
+        DictionaryDAOImpl dictionaryDAO = new DictionaryDAOImpl();
+        dictionaryDAO.setTenantService(tenantService);
+        CompiledModelsCache compiledModelsCache = new CompiledModelsCache();
+        compiledModelsCache.setDictionaryDAO(dictionaryDAO);
+        compiledModelsCache.setTenantService(tenantService);
+        compiledModelsCache.setRegistry(new DefaultAsynchronouslyRefreshedCacheRegistry());
+        ThreadPoolExecutorFactoryBean threadPoolfactory = new ThreadPoolExecutorFactoryBean();
+        threadPoolfactory.afterPropertiesSet();
+        compiledModelsCache.setThreadPoolExecutor((ThreadPoolExecutor) threadPoolfactory.getObject());
+        dictionaryDAO.setDictionaryRegistryCache(compiledModelsCache);
+        dictionaryDAO.init();
+
+        DictionaryBootstrap bootstrap = new DictionaryBootstrap();
+        List<String> bootstrapModels = new ArrayList<String>();
+        bootstrapModels.add("alfresco/model/dictionaryModel.xml");
+        bootstrapModels.add("alfresco/model/systemModel.xml");
+        bootstrapModels.add("alfresco/model/contentModel.xml");
+        bootstrap.setModels(bootstrapModels);
+        bootstrap.setDictionaryDAO(dictionaryDAO);
+        bootstrap.setTenantService(tenantService);
+        bootstrap.bootstrap();
+
+        DictionaryComponent dictionary = new DictionaryComponent();
+        dictionary.setDictionaryDAO(dictionaryDAO);
+
+        InMemoryQNameDAO qnameDAO = new InMemoryQNameDAO();
+        qnameDAO.setNamespaceCache(new MemoryCache<Long, String>());
+        qnameDAO.setQnameCache(new MemoryCache<Long, QName>());
+        InMemoryLocaleDAO localeDAO = new InMemoryLocaleDAO();
+        localeDAO.setLocaleEntityCache(new MemoryCache<Long, String>());
+        helper = new NodePropertyHelper(dictionary, qnameDAO, localeDAO, null);
+
+        // The properties of a typical document, including a residual multi-valued property
+        MLText title = new MLText();
+        title.addValue(Locale.ENGLISH, "Title");
+        title.addValue(Locale.FRENCH, "Titre");
+        title.addValue(Locale.GERMAN, "Titel");
+        List<String> keywords = new ArrayList<String>();
+        keywords.add("alpha");
+        keywords.add("beta");
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_NAME, "document.txt");
+        properties.put(ContentModel.PROP_TITLE, title);
+        properties.put(ContentModel.PROP_DESCRIPTION, new MLText(Locale.ENGLISH, "Description"));
+        properties.put(ContentModel.PROP_AUTHOR, "Author");
+        properties.put(ContentModel.PROP_CREATOR, "admin");
+        properties.put(ContentModel.PROP_CREATED, new Date());
+        properties.put(ContentModel.PROP_MODIFIER, "admin");
+        properties.put(ContentModel.PROP_MODIFIED, new Date());
+        properties.put(ContentModel.PROP_VERSION_LABEL, "1.0");
+        properties.put(ContentModel.PROP_AUTO_VERSION, Boolean.TRUE);
+        properties.put(ContentModel.PROP_LOCALE, Locale.ENGLISH);
+        properties.put(ContentModel.PROP_NODE_UUID, GUID.generate());
+        properties.put(ContentModel.PROP_NODE_DBID, Long.valueOf(12345L));
+        properties.put(ContentModel.PROP_STORE_PROTOCOL, "workspace");
+        properties.put(ContentModel.PROP_STORE_IDENTIFIER, "SpacesStore");
+        properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "keywords"), (Serializable) keywords);
+        persistedProperties = helper.convertToPersistentProperties(properties);
+        // Resolve everything once so that no lookup reaches the "tables"
+        helper.convertToPublicProperties(persistedProperties);
+    }
+
+    @Benchmark
+    public Map<QName, Serializable> convertToPublicProperties()
+    {
+        return helper.convertToPublicProperties(persistedProperties);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Map<QName, Serializable> convertToPublicPropertiesConcurrently()
+    {
+        return helper.convertToPublicProperties(persistedProperties);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .include(NodePropertyHelperBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * QName DAO backed by in-memory "tables"
+     */
+    private static class InMemoryQNameDAO extends AbstractQNameDAOImpl
+    {
+        private final List<NamespaceEntity> namespaces = new ArrayList<NamespaceEntity>();
+        private final List<QNameEntity> qnames = new ArrayList<QNameEntity>();
+
+        @Override
+        protected synchronized NamespaceEntity findNamespaceEntityById(Long id)
+        {
+            return (id < namespaces.size()) ? namespaces.get(id.intValue()) : null;
+        }
+
+        @Override
+        protected synchronized NamespaceEntity findNamespaceEntityByUri(String uri)
+        {
+            for (NamespaceEntity entity : namespaces)
+            {
+                if (entity.getUriSafe().equals(uri))
+                {
+                    return entity;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected synchronized NamespaceEntity createNamespaceEntity(String uri)
+        {
+            NamespaceEntity entity = new NamespaceEntity();
+            entity.setId(Long.valueOf(namespaces.size()));
+            entity.setUriSafe(uri);
+            namespaces.add(entity);
+            return entity;
+        }
+
+        @Override
+        protected int updateNamespaceEntity(NamespaceEntity entity, String uri)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected synchronized QNameEntity findQNameEntityById(Long id)
+        {
+            return (id < qnames.size()) ? qnames.get(id.intValue()) : null;
+        }
+
+        @Override
+        protected synchronized QNameEntity findQNameEntityByNamespaceAndLocalName(Long nsId, String localName)
+        {
+            for (QNameEntity entity : qnames)
+            {
+                if (entity.getNamespaceId().equals(nsId) && entity.getLocalNameSafe().equals(localName))
+                {
+                    return entity;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected synchronized QNameEntity createQNameEntity(Long nsId, String localName)
+        {
+            QNameEntity entity = new QNameEntity();
+            entity.setId(Long.valueOf(qnames.size()));
+            entity.setNamespaceId(nsId);
+            entity.setLocalNameSafe(localName);
+            qnames.add(entity);
+            return entity;
+        }
+
+        @Override
+        protected int updateQNameEntity(QNameEntity entity, Long nsId, String localName)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected int deleteQNameEntity(QNameEntity entity)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Locale DAO backed by an in-memory "table"
+     */
+    private static class InMemoryLocaleDAO extends AbstractLocaleDAOImpl
+    {
+        private final List<LocaleEntity> locales = new ArrayList<LocaleEntity>();
+
+        @Override
+        protected synchronized LocaleEntity getLocaleEntity(Long id)
+        {
+            return (id < locales.size()) ? locales.get(id.intValue()) : null;
+        }
+
+        @Override
+        protected synchronized LocaleEntity getLocaleEntity(String locale)
+        {
+            for (LocaleEntity entity : locales)
+            {
+                if (entity.getLocaleStr().equals(locale))
+                {
+                    return entity;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected synchronized LocaleEntity createLocaleEntity(String locale)
+        {
+            LocaleEntity entity = new LocaleEntity();
+            entity.setId(Long.valueOf(locales.size()));
+            entity.setLocaleStr(locale);
+            locales.add(entity);
+            return entity;
+        }
+    }
+}
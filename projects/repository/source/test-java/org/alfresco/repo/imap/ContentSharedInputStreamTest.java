@@ -0,0 +1,94 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.imap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Properties;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.filestore.FileContentWriter;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ContentSharedInputStream
+ * @since 5.2
+ */
+public class ContentSharedInputStreamTest
+{
+    private static final String HEADERS = "Subject: Test\r\nMessage-ID: <1@alfresco.org>\r\n\r\n";
+    private static final String BODY = "Line 1\r\nLine 2\r\n";
+    
+    private FileContentReader reader;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        File file = TempFileProvider.createTempFile(getClass().getSimpleName(), ".eml");
+        new FileContentWriter(file).putContent(HEADERS + BODY);
+        reader = new FileContentReader(file);
+    }
+    
+    @Test
+    public void testNewStreams() throws Exception
+    {
+        ContentSharedInputStream is = new ContentSharedInputStream(reader);
+        assertEquals(HEADERS.length() + BODY.length(), is.available());
+        byte[] headers = new byte[HEADERS.length()];
+        new DataInputStream(is).readFully(headers);
+        assertEquals(HEADERS, new String(headers, "US-ASCII"));
+        assertEquals(HEADERS.length(), is.getPosition());
+        
+        InputStream body = is.newStream(is.getPosition(), -1);
+        assertEquals(BODY.length(), body.available());
+        assertEquals(BODY, IOUtils.toString(body, "US-ASCII"));
+        assertEquals(-1, body.read());
+        
+        InputStream line = ((ContentSharedInputStream) is.newStream(HEADERS.length(), -1)).newStream(0, 6);
+        assertEquals("Line 1", IOUtils.toString(line, "US-ASCII"));
+        is.close();
+    }
+    
+    @Test
+    public void testMessageBodyIsReadFromContent() throws Exception
+    {
+        MimeMessage message = new MimeMessage(Session.getDefaultInstance(new Properties()), new ContentSharedInputStream(reader));
+        assertEquals("Test", message.getSubject());
+        assertEquals(BODY.length(), message.getSize());
+        // The body can be read more than once
+        assertEquals(BODY, IOUtils.toString(message.getRawInputStream(), "US-ASCII"));
+        assertEquals(BODY, IOUtils.toString(message.getRawInputStream(), "US-ASCII"));
+    }
+}
@@ -29,10 +29,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.imap.AlfrescoImapConst.ImapViewMode;
+import org.alfresco.repo.imap.ImapService.FolderStatus;
 import org.alfresco.repo.management.subsystems.ChildApplicationContextFactory;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.model.FileFolderService;
@@ -236,6 +239,39 @@ public class ImapServiceImplCacheTest extends TestCase
         
     }
     
+    public void testFolderStatusIsUpdatedIncrementally() throws Exception
+    {
+        FileInfo localRootFolder = fileFolderService.create(testImapFolderNodeRef, "modSeqTest", ContentModel.TYPE_FOLDER);
+        NodeRef folderRef = localRootFolder.getNodeRef();
+        createTestContent(localRootFolder, 3);
+        
+        FolderStatus status = imapService.getFolderStatus(USER_NAME, folderRef, ImapViewMode.MIXED);
+        assertEquals(3, status.messageCount);
+        assertTrue("The messages have no MODSEQ", status.highestModSeq > 0);
+        assertEquals(0, status.getUidsChangedSince(status.highestModSeq).length);
+        assertSame("The folder status wasn't cached", status, imapService.getFolderStatus(USER_NAME, folderRef, ImapViewMode.MIXED));
+        
+        // Change one of the messages
+        Map.Entry<Long, FileInfo> first = status.search.firstEntry();
+        nodeService.setProperty(first.getValue().getNodeRef(), ContentModel.PROP_TITLE, "Changed");
+        
+        FolderStatus newStatus = imapService.getFolderStatus(USER_NAME, folderRef, ImapViewMode.MIXED);
+        assertNotSame("The folder status wasn't refreshed", status, newStatus);
+        assertEquals(3, newStatus.messageCount);
+        assertTrue(newStatus.highestModSeq > status.highestModSeq);
+        long[] changedUids = newStatus.getUidsChangedSince(status.highestModSeq);
+        assertEquals(1, changedUids.length);
+        assertEquals(first.getKey().longValue(), changedUids[0]);
+        assertEquals(newStatus.highestModSeq, newStatus.getModSeq(first.getKey()));
+        assertEquals(-1L, newStatus.getModSeq(-1L));
+        // What was read for the unchanged messages is reused
+        Map.Entry<Long, FileInfo> last = status.search.lastEntry();
+        assertSame(last.getValue(), newStatus.search.get(last.getKey()));
+        assertEquals(status.unseenCount, newStatus.unseenCount);
+        
+        fileFolderService.delete(folderRef);
+    }
+    
     private List<FileInfo> createTestContent(FileInfo parent, int count)
     {
         List<FileInfo> result = new ArrayList<FileInfo>(count);
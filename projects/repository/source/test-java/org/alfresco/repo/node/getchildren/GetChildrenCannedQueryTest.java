@@ -747,6 +747,69 @@ public class GetChildrenCannedQueryTest extends TestCase
         }
     }
     
+    public void testKeysetPaging() throws Exception
+    {
+        NodeRef parentNodeRef = getOrCreateParentTestFolder("GetChildrenCannedQueryTest-"+TEST_RUN_ID);
+        
+        List<List<Pair<QName, Boolean>>> sorts = new ArrayList<List<Pair<QName, Boolean>>>(4);
+        sorts.add(Collections.singletonList(new Pair<QName, Boolean>(ContentModel.PROP_NAME, true)));
+        sorts.add(Collections.singletonList(new Pair<QName, Boolean>(ContentModel.PROP_MODIFIED, false)));
+        sorts.add(Arrays.asList(
+                new Pair<QName, Boolean>(GetChildrenCannedQuery.SORT_QNAME_NODE_IS_FOLDER, false),
+                new Pair<QName, Boolean>(ContentModel.PROP_NAME, false)));
+        sorts.add(Arrays.asList(
+                new Pair<QName, Boolean>(GetChildrenCannedQuery.SORT_QNAME_NODE_IS_FOLDER, true),
+                new Pair<QName, Boolean>(ContentModel.PROP_CREATED, true)));
+        
+        GetChildrenCannedQueryFactory getChildrenCannedQueryFactory = (GetChildrenCannedQueryFactory)cannedQueryRegistry.getNamedObject(CQ_FACTORY_NAME);
+        for (List<Pair<QName, Boolean>> sortProps : sorts)
+        {
+            List<NodeRef> sortedInMemory = list(parentNodeRef, -1, -1, 0, null, null, sortProps).getPage();
+            assertTrue(sortedInMemory.size() > 3);
+            
+            List<NodeRef> sortedByDB = null;
+            List<NodeRef> pagedByDB = new ArrayList<NodeRef>(sortedInMemory.size());
+            getChildrenCannedQueryFactory.setKeysetPagingEnabled(true);
+            try
+            {
+                sortedByDB = list(parentNodeRef, -1, -1, 0, null, null, sortProps).getPage();
+                
+                int pageSize = 3;
+                for (int skipCount = 0; ; skipCount += pageSize)
+                {
+                    PagingResults<NodeRef> results = list(parentNodeRef, skipCount, pageSize, 0, null, null, sortProps);
+                    pagedByDB.addAll(results.getPage());
+                    if (! results.hasMoreItems())
+                    {
+                        break;
+                    }
+                }
+            }
+            finally
+            {
+                getChildrenCannedQueryFactory.setKeysetPagingEnabled(false);
+            }
+            
+            // note: the DB collation and the order of equal values may differ from the in-memory sort
+            assertEquals(new HashSet<NodeRef>(sortedInMemory), new HashSet<NodeRef>(sortedByDB));
+            assertEquals(sortedByDB, pagedByDB);
+            
+            if (sortProps.size() > 1)
+            {
+                // folders first (or last)
+                boolean folderSeen = false;
+                boolean fileAfterFolder = false;
+                for (NodeRef nodeRef : sortedByDB)
+                {
+                    boolean isFolder = dictionaryService.isSubClass(nodeService.getType(nodeRef), ContentModel.TYPE_FOLDER);
+                    folderSeen = folderSeen || isFolder;
+                    fileAfterFolder = fileAfterFolder || (folderSeen && ! isFolder);
+                }
+                assertEquals(sortProps.get(0).getSecond().booleanValue(), ! fileAfterFolder);
+            }
+        }
+    }
+    
     public void testPermissions() throws Exception
     {
         AuthenticationUtil.setFullyAuthenticatedUser(TEST_USER);
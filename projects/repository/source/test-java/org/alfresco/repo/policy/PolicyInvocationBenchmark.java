@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.policy;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.dictionary.CompiledModelsCache;
+import org.alfresco.repo.dictionary.DictionaryBootstrap;
+import org.alfresco.repo.dictionary.DictionaryComponent;
+import org.alfresco.repo.dictionary.DictionaryDAOImpl;
+import org.alfresco.repo.tenant.SingleTServiceImpl;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.ThreadPoolExecutorFactoryBean;
+import org.alfresco.util.cache.DefaultAsynchronouslyRefreshedCacheRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of policy dispatch throughput through the {@link PolicyComponentImpl}: resolving
+ * the bound behaviours for a class (or set of classes) and invoking them.  The concurrent variants
+ * run with 64 threads to show contention on the dispatch path.
+ * <p>
+ * Not part of any test suite.  Run with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.alfresco.repo.policy.PolicyInvocationBenchmark
+ * </pre>
+ * 
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PolicyInvocationBenchmark
+{
+    private static final String TEST_MODEL = "org/alfresco/repo/policy/policycomponenttest_model.xml";
+    private static final String TEST_NAMESPACE = "http://www.alfresco.org/test/policycomponenttest/1.0";
+    private static final QName BASE_TYPE = QName.createQName(TEST_NAMESPACE, "base");
+    private static final QName FILE_TYPE = QName.createQName(TEST_NAMESPACE, "file");
+    private static final QName TEST_ASPECT = QName.createQName(TEST_NAMESPACE, "aspect");
+    private static final QName POLICY_NAME = QName.createQName(TEST_NAMESPACE, "test");
+
+    private ClassPolicyDelegate<BenchmarkClassPolicy> delegate;
+    private Set<QName> nodeClasses;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        TenantService tenantService = new SingleTServiceImpl();
+        DictionaryDAOImpl dictionaryDAO = new DictionaryDAOImpl();
+        dictionaryDAO.setTenantService(tenantService);
+        CompiledModelsCache compiledModelsCache = new CompiledModelsCache();
+        compiledModelsCache.setDictionaryDAO(dictionaryDAO);
+        compiledModelsCache.setTenantService(tenantService);
+        compiledModelsCache.setRegistry(new DefaultAsynchronouslyRefreshedCacheRegistry());
+        ThreadPoolExecutorFactoryBean threadPoolfactory = new ThreadPoolExecutorFactoryBean();
+        threadPoolfactory.afterPropertiesSet();
+        compiledModelsCache.setThreadPoolExecutor((ThreadPoolExecutor) threadPoolfactory.getObject());
+        dictionaryDAO.setDictionaryRegistryCache(compiledModelsCache);
+        dictionaryDAO.init();
+
+        DictionaryBootstrap bootstrap = new DictionaryBootstrap();
+        List<String> bootstrapModels = new ArrayList<String>();
+        bootstrapModels.add("alfresco/model/dictionaryModel.xml");
+        bootstrapModels.add("alfresco/model/systemModel.xml");
+        bootstrapModels.add(TEST_MODEL);
+        bootstrap.setModels(bootstrapModels);
+        bootstrap.setDictionaryDAO(dictionaryDAO);
+        bootstrap.setTenantService(tenantService);
+        bootstrap.bootstrap();
+
+        DictionaryComponent dictionary = new DictionaryComponent();
+        dictionary.setDictionaryDAO(dictionaryDAO);
+        PolicyComponent policyComponent = new PolicyComponentImpl(dictionary);
+
+        // Behaviours at several levels of the hierarchy, as for a typical node operation
+        delegate = policyComponent.registerClassPolicy(BenchmarkClassPolicy.class);
+        BenchmarkBehaviours behaviours = new BenchmarkBehaviours();
+        policyComponent.bindClassBehaviour(POLICY_NAME, BASE_TYPE, new JavaBehaviour(behaviours, "onBase"));
+        policyComponent.bindClassBehaviour(POLICY_NAME, FILE_TYPE, new JavaBehaviour(behaviours, "onFile"));
+        policyComponent.bindClassBehaviour(POLICY_NAME, TEST_ASPECT, new JavaBehaviour(behaviours, "onAspect"));
+
+        nodeClasses = new HashSet<QName>();
+        nodeClasses.add(FILE_TYPE);
+        nodeClasses.add(TEST_ASPECT);
+    }
+
+    @Benchmark
+    public String invokeClassPolicy()
+    {
+        return delegate.get(FILE_TYPE).test("value");
+    }
+
+    @Benchmark
+    public String invokeClassPolicyForNodeClasses()
+    {
+        return delegate.get(nodeClasses).test("value");
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String invokeClassPolicyConcurrently()
+    {
+        return delegate.get(FILE_TYPE).test("value");
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String invokeClassPolicyForNodeClassesConcurrently()
+    {
+        return delegate.get(nodeClasses).test("value");
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .include(PolicyInvocationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    public interface BenchmarkClassPolicy extends ClassPolicy
+    {
+        static String NAMESPACE = TEST_NAMESPACE;
+        public String test(String argument);
+    }
+
+    public static class BenchmarkBehaviours
+    {
+        public String onBase(String argument)
+        {
+            return argument;
+        }
+
+        public String onFile(String argument)
+        {
+            return argument;
+        }
+
+        public String onAspect(String argument)
+        {
+            return argument;
+        }
+    }
+}
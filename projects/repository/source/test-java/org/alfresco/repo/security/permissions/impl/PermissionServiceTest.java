@@ -27,6 +27,7 @@ package org.alfresco.repo.security.permissions.impl;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -370,6 +371,54 @@ public class PermissionServiceTest extends AbstractPermissionTest
         assertTrue(permissionService.hasReadPermission(four) == AccessStatus.DENIED);
     }
 
+    /*
+     * Tests that the bulk read check gives the same answers as the single node check
+     */
+    public void testBulkReadPermissions()
+    {
+        runAs("admin");
+
+        NodeRef one = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}one"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setPermission(one, "andy", PermissionService.READ, true);
+        NodeRef two = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}two"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setPermission(two, "andy", PermissionService.READ, false);
+        NodeRef three = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}three"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setInheritParentPermissions(three, false);
+
+        // Many nodes sharing a few ACLs
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>();
+        for (NodeRef parent : new NodeRef[] {one, two, three})
+        {
+            nodeRefs.add(parent);
+            for (int i = 0; i < 5; i++)
+            {
+                nodeRefs.add(nodeService.createNode(parent, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}child" + i), ContentModel.TYPE_FOLDER).getChildRef());
+            }
+        }
+        // Nodes that do not exist and nulls are allowed
+        nodeRefs.add(new NodeRef(rootNodeRef.getStoreRef(), "missing"));
+        nodeRefs.add(null);
+
+        for (String user : new String[] {"andy", "admin"})
+        {
+            runAs(user);
+            BitSet readable = permissionService.hasReadPermissions(nodeRefs);
+            for (int i = 0; i < nodeRefs.size(); i++)
+            {
+                boolean expected = permissionService.hasReadPermission(nodeRefs.get(i)) == AccessStatus.ALLOWED;
+                assertEquals("Mismatch for " + user + " on " + nodeRefs.get(i), expected, readable.get(i));
+            }
+        }
+
+        runAs("andy");
+        BitSet readable = permissionService.hasReadPermissions(nodeRefs);
+        assertTrue(readable.get(0));
+        assertFalse(readable.get(6));
+        assertFalse(readable.get(12));
+        assertTrue(readable.get(18));
+        assertTrue(readable.get(19));
+    }
+
     /*
      * Tests that the current user is contained in the current authorisations set
      */
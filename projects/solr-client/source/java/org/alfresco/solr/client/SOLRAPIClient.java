@@ -45,10 +45,13 @@ import org.alfresco.httpclient.AlfrescoHttpClient;
 import org.alfresco.httpclient.AuthenticationException;
 import org.alfresco.httpclient.GetRequest;
 import org.alfresco.httpclient.PostRequest;
+import org.alfresco.httpclient.Request;
 import org.alfresco.httpclient.Response;
 import org.alfresco.repo.dictionary.M2Model;
 import org.alfresco.repo.dictionary.NamespaceDAO;
 import org.alfresco.repo.index.shard.ShardState;
+import org.alfresco.repo.index.stream.TrackingStreamFormat;
+import org.alfresco.repo.index.stream.TrackingStreamReader;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
@@ -100,16 +103,21 @@ public class SOLRAPIClient
     private static final String GET_METADATA_URL = "api/solr/metadata";
     private static final String GET_NODES_URL = "api/solr/nodes";
     private static final String GET_CONTENT = "api/solr/textContent";
+    private static final String GET_CONTENTS = "api/solr/textContents";
     private static final String GET_MODEL = "api/solr/model";
     private static final String GET_MODELS_DIFF = "api/solr/modelsdiff";
 
     private static final String CHECKSUM_HEADER = "XAlfresco-modelChecksum";
+    
+    /** the most nodes that the repository returns the text content of in one request */
+    public static final int MAX_TEXT_CONTENTS_NODE_IDS = 100;
 
     private AlfrescoHttpClient repositoryHttpClient;
     private SOLRDeserializer deserializer;
     private DictionaryService dictionaryService;
     private JsonFactory jsonFactory;
     private NamespaceDAO namespaceDAO;
+    private boolean binaryTracking = true;
 
     public SOLRAPIClient(AlfrescoHttpClient repositoryHttpClient,
             DictionaryService dictionaryService,
@@ -122,6 +130,29 @@ public class SOLRAPIClient
         this.jsonFactory = new JsonFactory();
     }
     
+    /**
+     * @param binaryTracking        <tt>true</tt> (default) to ask the repository for transactions and node metadata in the
+     *                              {@link TrackingStreamFormat binary tracking format}; the client falls back to JSON
+     *                              when the repository does not support it
+     */
+    public void setBinaryTracking(boolean binaryTracking)
+    {
+        this.binaryTracking = binaryTracking;
+    }
+    
+    /**
+     * Ask for the binary tracking format, if enabled, ahead of JSON
+     */
+    private void setAcceptHeader(Request req)
+    {
+        if (binaryTracking)
+        {
+            Map<String, String> headers = new HashMap<String, String>(1, 1.0f);
+            headers.put("Accept", TrackingStreamFormat.MIMETYPE + ", application/json");
+            req.setHeaders(headers);
+        }
+    }
+    
     /**
      * Get the ACL ChangeSets
      * 
@@ -476,6 +507,7 @@ public class SOLRAPIClient
         url.append(args);
         
         GetRequest req = new GetRequest(url.toString());
+        setAcceptHeader(req);
         Response response = null;
         List<Transaction> transactions = new ArrayList<Transaction>();
         Long maxTxnCommitTime = null;
@@ -487,6 +519,23 @@ public class SOLRAPIClient
             {
                 throw new AlfrescoRuntimeException("GetTransactions return status is " + response.getStatus());
             }
+            
+            if (TrackingStreamFormat.isContentType(response.getHeader("Content-Type")))
+            {
+                TrackingStreamReader reader = new TrackingStreamReader(response.getContentAsStream(), TrackingStreamFormat.TYPE_TRANSACTIONS);
+                while (reader.nextRecord())
+                {
+                    Transaction txn = new Transaction();
+                    txn.setId(reader.readLong());
+                    txn.setCommitTimeMs(reader.readLong());
+                    txn.setUpdates(reader.readLong());
+                    txn.setDeletes(reader.readLong());
+                    transactions.add(txn);
+                }
+                maxTxnCommitTime = reader.readNullableLong();
+                maxTxnIdOnServer = reader.readNullableLong();
+                return new Transactions(transactions, maxTxnCommitTime, maxTxnIdOnServer);
+            }
 
             Reader reader = new BufferedReader(new InputStreamReader(response.getContentAsStream(), "UTF-8"));
             JsonParser parser = jsonFactory.createJsonParser(reader);
@@ -850,6 +899,7 @@ public class SOLRAPIClient
         body.put("maxResults", maxResults);
 
         PostRequest req = new PostRequest(url.toString(), body.toString(), "application/json");
+        setAcceptHeader(req);
         Response response = null;
         JSONObject json = null;
         try
@@ -859,6 +909,11 @@ public class SOLRAPIClient
             {
                 throw new AlfrescoRuntimeException("GetNodeMetaData return status is " + response.getStatus());
             }
+            
+            if (TrackingStreamFormat.isContentType(response.getHeader("Content-Type")))
+            {
+                return readNodesMetaData(new TrackingStreamReader(response.getContentAsStream(), TrackingStreamFormat.TYPE_NODES_METADATA));
+            }
         
             Reader reader = new BufferedReader(new InputStreamReader(response.getContentAsStream(), "UTF-8"));
             json = new JSONObject(new JSONTokener(reader));
@@ -1051,6 +1106,160 @@ public class SOLRAPIClient
         return nodes;
     }
     
+    /**
+     * Decode node metadata sent in the binary tracking format, as written by the <tt>api/solr/metadata</tt> web script
+     */
+    private List<NodeMetaData> readNodesMetaData(TrackingStreamReader reader) throws IOException, JSONException
+    {
+        // QNames are sent as symbols, so each distinct one only needs to be resolved once
+        Map<String, QName> qnames = new HashMap<String, QName>(256);
+        List<NodeMetaData> nodes = new ArrayList<NodeMetaData>();
+        while (reader.nextRecord())
+        {
+            NodeMetaData metaData = new NodeMetaData();
+            metaData.setId(reader.readLong());
+            int fields = reader.readInt();
+            if ((fields & TrackingStreamFormat.FIELD_TENANT_DOMAIN) != 0)
+            {
+                metaData.setTenantDomain(reader.readSymbol());
+            }
+            if ((fields & TrackingStreamFormat.FIELD_NODE_REF) != 0)
+            {
+                metaData.setNodeRef(new NodeRef(reader.readString()));
+            }
+            if ((fields & TrackingStreamFormat.FIELD_TYPE) != 0)
+            {
+                metaData.setType(readQName(reader, qnames));
+            }
+            if ((fields & TrackingStreamFormat.FIELD_ACL_ID) != 0)
+            {
+                metaData.setAclId(reader.readLong());
+            }
+            if ((fields & TrackingStreamFormat.FIELD_TXN_ID) != 0)
+            {
+                metaData.setTxnId(reader.readLong());
+            }
+            if ((fields & TrackingStreamFormat.FIELD_PROPERTIES) != 0)
+            {
+                int count = reader.readInt();
+                Map<QName, PropertyValue> properties = new HashMap<QName, PropertyValue>(count * 2);
+                for (int i = 0; i < count; i++)
+                {
+                    QName propQName = readQName(reader, qnames);
+                    int kind = reader.readInt();
+                    String text = reader.readString();
+                    Object propValueObj = (kind == TrackingStreamFormat.PROPERTY_TEXT) ? text : new JSONTokener(text).nextValue();
+                    PropertyDefinition propertyDef = dictionaryService.getProperty(propQName);
+                    properties.put(propQName, getPropertyValue(propertyDef, propValueObj));
+                }
+                metaData.setProperties(properties);
+            }
+            if ((fields & TrackingStreamFormat.FIELD_ASPECTS) != 0)
+            {
+                int count = reader.readInt();
+                Set<QName> aspects = new HashSet<QName>(count * 2);
+                for (int i = 0; i < count; i++)
+                {
+                    aspects.add(readQName(reader, qnames));
+                }
+                metaData.setAspects(aspects);
+            }
+            if ((fields & TrackingStreamFormat.FIELD_PATHS) != 0)
+            {
+                int count = reader.readInt();
+                List<Pair<String, QName>> paths = new ArrayList<Pair<String, QName>>(count);
+                for (int i = 0; i < count; i++)
+                {
+                    String pathValue = reader.readString();
+                    paths.add(new Pair<String, QName>(pathValue, readQName(reader, qnames)));
+                }
+                metaData.setPaths(paths);
+            }
+            if ((fields & TrackingStreamFormat.FIELD_ANCESTORS) != 0)
+            {
+                int count = reader.readInt();
+                HashSet<NodeRef> ancestors = new HashSet<NodeRef>(count * 2);
+                for (int i = 0; i < count; i++)
+                {
+                    ancestors.add(new NodeRef(reader.readString()));
+                }
+                metaData.setAncestors(ancestors);
+            }
+            if ((fields & TrackingStreamFormat.FIELD_NAME_PATHS) != 0)
+            {
+                int count = reader.readInt();
+                List<List<String>> namePaths = new ArrayList<List<String>>(count);
+                for (int i = 0; i < count; i++)
+                {
+                    int elements = reader.readInt();
+                    List<String> namePath = new ArrayList<String>(elements);
+                    for (int j = 0; j < elements; j++)
+                    {
+                        namePath.add(reader.readString());
+                    }
+                    namePaths.add(namePath);
+                }
+                metaData.setNamePaths(namePaths);
+            }
+            if ((fields & TrackingStreamFormat.FIELD_PARENT_ASSOCS) != 0)
+            {
+                metaData.setParentAssocs(readChildAssocs(reader));
+                Long parentAssocsCrc = reader.readNullableLong();
+                if (parentAssocsCrc != null)
+                {
+                    metaData.setParentAssocsCrc(parentAssocsCrc);
+                }
+            }
+            if ((fields & TrackingStreamFormat.FIELD_CHILD_ASSOCS) != 0)
+            {
+                metaData.setChildAssocs(readChildAssocs(reader));
+            }
+            if ((fields & TrackingStreamFormat.FIELD_CHILD_IDS) != 0)
+            {
+                int count = reader.readInt();
+                List<Long> childIds = new ArrayList<Long>(count);
+                for (int i = 0; i < count; i++)
+                {
+                    childIds.add(reader.readLong());
+                }
+                metaData.setChildIds(childIds);
+            }
+            if ((fields & TrackingStreamFormat.FIELD_OWNER) != 0)
+            {
+                metaData.setOwner(reader.readSymbol());
+            }
+            nodes.add(metaData);
+        }
+        return nodes;
+    }
+    
+    private QName readQName(TrackingStreamReader reader, Map<String, QName> qnames) throws IOException
+    {
+        String value = reader.readSymbol();
+        if (value == null)
+        {
+            return null;
+        }
+        QName qname = qnames.get(value);
+        if (qname == null)
+        {
+            qname = deserializer.deserializeValue(QName.class, value);
+            qnames.put(value, qname);
+        }
+        return qname;
+    }
+    
+    private List<ChildAssociationRef> readChildAssocs(TrackingStreamReader reader) throws IOException
+    {
+        int count = reader.readInt();
+        List<ChildAssociationRef> assocs = new ArrayList<ChildAssociationRef>(count);
+        for (int i = 0; i < count; i++)
+        {
+            assocs.add(new ChildAssociationRef(reader.readString()));
+        }
+        return assocs;
+    }
+    
     public GetTextContentResponse getTextContent(Long nodeId, QName propertyQName, Long modifiedSince) throws AuthenticationException, IOException
     {
         StringBuilder url = new StringBuilder(128);
@@ -1104,6 +1313,49 @@ public class SOLRAPIClient
         return new GetTextContentResponse(response);
     }
     
+    /**
+     * Get the text content of several nodes in one request.  The response must be
+     * {@link GetTextContentsResponse#release() released} once it has been read.
+     * 
+     * @param nodeIds                       the IDs of the nodes
+     * @param propertyQName                 the content property (optional, defaults to <b>cm:content</b>)
+     * @return                              the text content of each node in the order requested
+     */
+    public GetTextContentsResponse getTextContents(List<Long> nodeIds, QName propertyQName) throws AuthenticationException, IOException, JSONException
+    {
+        JSONObject body = new JSONObject();
+        JSONArray jsonNodeIds = new JSONArray();
+        for (Long nodeId : nodeIds)
+        {
+            jsonNodeIds.put(nodeId);
+        }
+        body.put("nodeIds", jsonNodeIds);
+        if (propertyQName != null)
+        {
+            body.put("propertyQName", propertyQName.toString());
+        }
+        
+        PostRequest req = new PostRequest(GET_CONTENTS, body.toString(), "application/json");
+        Response response = repositoryHttpClient.sendRequest(req);
+        try
+        {
+            if (response.getStatus() != HttpStatus.SC_OK)
+            {
+                throw new AlfrescoRuntimeException("GetTextContents return status is " + response.getStatus());
+            }
+            GetTextContentsResponse textContents = new GetTextContentsResponse(response);
+            response = null;
+            return textContents;
+        }
+        finally
+        {
+            if (response != null)
+            {
+                response.release();
+            }
+        }
+    }
+    
     public AlfrescoModel getModel(QName modelName) throws AuthenticationException, IOException, JSONException
     {
         // If the model is new to the SOLR side the prefix will be unknown so we can not generate prefixes for the request!
@@ -1534,6 +1786,77 @@ public class SOLRAPIClient
         }
     }
 
+    /**
+     * The text content of several nodes, read node by node as it arrives
+     */
+    public static class GetTextContentsResponse extends SOLRResponse
+    {
+        private final TrackingStreamReader reader;
+        private long nodeId;
+        private SolrApiContentStatus status;
+        private String transformException;
+        private Long transformDuration;
+        private InputStream content;
+        
+        public GetTextContentsResponse(Response response) throws IOException
+        {
+            super(response);
+            this.reader = new TrackingStreamReader(response.getContentAsStream(), TrackingStreamFormat.TYPE_TEXT_CONTENTS);
+        }
+        
+        /**
+         * Move on to the next node; any content of the current node that has not been read is skipped
+         * 
+         * @return                  <tt>false</tt> if there are no more nodes
+         */
+        public boolean next() throws IOException
+        {
+            if (!reader.nextRecord())
+            {
+                return false;
+            }
+            nodeId = reader.readLong();
+            status = SolrApiContentStatus.getStatus(reader.readSymbol());
+            transformException = reader.readString();
+            transformDuration = reader.readNullableLong();
+            content = reader.readBytes();
+            return true;
+        }
+        
+        public long getNodeId()
+        {
+            return nodeId;
+        }
+        
+        public SolrApiContentStatus getStatus()
+        {
+            return status;
+        }
+        
+        public String getTransformException()
+        {
+            return transformException;
+        }
+        
+        public Long getTransformDuration()
+        {
+            return transformDuration;
+        }
+        
+        /**
+         * @return                  the text of the current node (UTF-8) or <tt>null</tt> if there is none
+         */
+        public InputStream getContent()
+        {
+            return content;
+        }
+        
+        public void release()
+        {
+            response.release();
+        }
+    }
+
     public void close()
     {
        repositoryHttpClient.close();
@@ -161,6 +161,7 @@ public class SOLRAPIClientFactory
             socketTimeout = Integer.parseInt(props.getProperty("alfresco.socketTimeout", "60000"));
 
             client = new SOLRAPIClient(getRepoClient(keyResourceLoader), dictionaryService, namespaceDAO);
+            client.setBinaryTracking(Boolean.parseBoolean(props.getProperty("alfresco.binaryTracking", "true")));
             setCachedClient(alfrescoHost, alfrescoPort, alfrescoPortSSL, client);
         }
 
@@ -60,6 +60,12 @@ public class TrackerStats
     ConcurrentHashMap<String, IncrementalStats> elapsedAclTimes = new ConcurrentHashMap<String, IncrementalStats>();
     
     ConcurrentHashMap<String, IncrementalStats> elapsedContentTimes = new ConcurrentHashMap<String, IncrementalStats>();
+    
+    ConcurrentHashMap<String, IncrementalStats> txFetchTimes = new ConcurrentHashMap<String, IncrementalStats>();
+    
+    ConcurrentHashMap<String, IncrementalStats> nodeFetchTimes = new ConcurrentHashMap<String, IncrementalStats>();
+    
+    ConcurrentHashMap<String, IncrementalStats> nodeMetaDataFetchTimes = new ConcurrentHashMap<String, IncrementalStats>();
 
     private InformationServerCollectionProvider infoSrv;
     
@@ -153,6 +159,30 @@ public class TrackerStats
         return aggregateResults(nodeTimes);
     }
 
+    /**
+     * @return the time taken to fetch each transaction from the repository
+     */
+    public SimpleStats getTxFetchTimes()
+    {
+        return aggregateResults(txFetchTimes);
+    }
+
+    /**
+     * @return the time taken to fetch each node of a transaction from the repository
+     */
+    public SimpleStats getNodeFetchTimes()
+    {
+        return aggregateResults(nodeFetchTimes);
+    }
+
+    /**
+     * @return the time taken to fetch the metadata of each node from the repository
+     */
+    public SimpleStats getNodeMetaDataFetchTimes()
+    {
+        return aggregateResults(nodeMetaDataFetchTimes);
+    }
+
     /**
      * @return the txDocs
      */
@@ -915,6 +945,52 @@ public class TrackerStats
         
     }
     
+    /**
+     * @param txCount the number of transactions fetched
+     * @param time long
+     */
+    public void addTxFetchTime(int txCount, long time)
+    {
+        addMeanTimes(txFetchTimes, txCount, time);
+    }
+    
+    /**
+     * @param nodeCount the number of nodes fetched
+     * @param time long
+     */
+    public void addNodeFetchTime(int nodeCount, long time)
+    {
+        addMeanTimes(nodeFetchTimes, nodeCount, time);
+    }
+    
+    /**
+     * @param nodeCount the number of nodes whose metadata was fetched
+     * @param time long
+     */
+    public void addNodeMetaDataFetchTime(int nodeCount, long time)
+    {
+        addMeanTimes(nodeMetaDataFetchTimes, nodeCount, time);
+    }
+    
+    private void addMeanTimes(ConcurrentHashMap<String, IncrementalStats> all, int count, long time)
+    {
+        if(count < 1)
+        {
+            return;
+        }
+        IncrementalStats stats = all.get(Thread.currentThread().getName());
+        if (stats == null)
+        {
+            stats = new IncrementalStats(TIME_SCALE, 50, this.infoSrv);
+            all.put(Thread.currentThread().getName(), stats);
+        }
+        long meanTime = time / count;
+        for(int i = 0; i < count; i++)
+        {
+            stats.add(meanTime);
+        }
+    }
+    
     /**
      * @param size int
      */
@@ -980,6 +1056,9 @@ public class TrackerStats
         txDocs.clear();
         docTransformationTimes.clear();
         nodeTimes.clear();
+        txFetchTimes.clear();
+        nodeFetchTimes.clear();
+        nodeMetaDataFetchTimes.clear();
     }
 
  
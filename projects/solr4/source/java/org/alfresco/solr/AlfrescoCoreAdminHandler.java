@@ -1190,6 +1190,8 @@ public class AlfrescoCoreAdminHandler extends CoreAdminHandler
         coreSummary.add("ModelTracker Active", modelTrkrState.isRunning());
         coreSummary.add("ContentTracker Active", contentTrkrState.isRunning());
         coreSummary.add("MetadataTracker Active", metadataTrkrState.isRunning());
+        coreSummary.add("MetadataTracker Pipelined", metaTrkr.isPipelined());
+        coreSummary.add("MetadataTracker Pending Fetches", metaTrkr.getPendingFetchCount());
         coreSummary.add("AclTracker Active", aclTrkrState.isRunning());
 
         // TX
@@ -1230,6 +1232,12 @@ public class AlfrescoCoreAdminHandler extends CoreAdminHandler
                     srv.getTrackerStats().getAclTimes().getNamedList(detail, hist, values));
         coreSummary.add("Node index time (ms)",
                     srv.getTrackerStats().getNodeTimes().getNamedList(detail, hist, values));
+        coreSummary.add("Tx fetch time (ms)",
+                    srv.getTrackerStats().getTxFetchTimes().getNamedList(detail, hist, values));
+        coreSummary.add("Node fetch time (ms)",
+                    srv.getTrackerStats().getNodeFetchTimes().getNamedList(detail, hist, values));
+        coreSummary.add("Node metadata fetch time (ms)",
+                    srv.getTrackerStats().getNodeMetaDataFetchTimes().getNamedList(detail, hist, values));
         coreSummary.add("Docs/Tx", srv.getTrackerStats().getTxDocs().getNamedList(detail, hist, values));
         coreSummary.add("Doc Transformation time (ms)", srv.getTrackerStats().getDocTransformationTimes()
                     .getNamedList(detail, hist, values));
@@ -119,6 +119,8 @@ public interface InformationServer extends InformationServerCollectionProvider
 
     void updateContentToIndexAndCache(long dbId, String tenant) throws Exception;
 
+    void updateContentToIndexAndCache(List<TenantAclIdDbId> docs) throws Exception;
+
     void addCommonNodeReportInfo(NodeReport nodeReport);
 
     void addFTSStatusCounts(NamedList<Object> ihr);
@@ -89,6 +89,7 @@ import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -142,10 +143,14 @@ import org.alfresco.solr.client.NodeMetaDataParameters;
 import org.alfresco.solr.client.PropertyValue;
 import org.alfresco.solr.client.SOLRAPIClient;
 import org.alfresco.solr.client.SOLRAPIClient.GetTextContentResponse;
+import org.alfresco.solr.client.SOLRAPIClient.GetTextContentsResponse;
+import org.alfresco.solr.client.SOLRAPIClient.SolrApiContentStatus;
 import org.alfresco.solr.client.StringPropertyValue;
 import org.alfresco.solr.client.Transaction;
 import org.alfresco.solr.content.SolrContentStore;
 import org.alfresco.solr.content.SolrContentUrlBuilder;
+import org.alfresco.solr.query.DocValuesCache;
+import org.alfresco.solr.query.ReaderSetSegmentCache;
 import org.alfresco.solr.tracker.IndexHealthReport;
 import org.alfresco.solr.tracker.TrackerStats;
 import org.alfresco.util.ISO9075;
@@ -310,6 +315,9 @@ public class SolrInformationServer implements InformationServer
 
         contentStreamLimit = Integer.parseInt(p.getProperty("alfresco.contentStreamLimit", "10000000"));
         
+        ReaderSetSegmentCache.configure(core.getName(),
+                    Long.parseLong(p.getProperty("alfresco.readerSetSegmentCache.maxBytes", Long.toString(ReaderSetSegmentCache.DEFAULT_MAX_BYTES))));
+        
         // build base URL - host and port have to come from configuration.
         
         Properties props = AlfrescoSolrDataModel.getCommonConfig();
@@ -920,6 +928,8 @@ public class SolrInformationServer implements InformationServer
                     coreSummary.add("/alfrescoPathCache", infoMBean.getStatistics());
                 }
             }
+            coreSummary.add("/alfrescoReaderSetSegmentCache", ReaderSetSegmentCache.getInstance(core.getName()).getStatistics());
+            coreSummary.add("/alfrescoDocValuesCache", DocValuesCache.getStatistics());
 
             // Adds detailed stats for each registered searcher
             int searcherIndex = 0;
@@ -1951,7 +1961,9 @@ public class SolrInformationServer implements InformationServer
                 {
                     NodeMetaDataParameters nmdp = new NodeMetaDataParameters();
                     nmdp.setNodeIds(unknownNodeIds);
+                    long start = System.nanoTime();
                     nodeMetaDatas.addAll(repositoryClient.getNodesMetaData(nmdp, Integer.MAX_VALUE));
+                    this.trackerStats.addNodeMetaDataFetchTime(unknownNodeIds.size(), System.nanoTime() - start);
                 }
                 
                 for (NodeMetaData nodeMetaData : nodeMetaDatas)
@@ -1991,7 +2003,9 @@ public class SolrInformationServer implements InformationServer
                 nmdp.setNodeIds(nodeIds);
 
                 // Fetches bulk metadata
+                long fetchStart = System.nanoTime();
                 List<NodeMetaData> nodeMetaDatas =  repositoryClient.getNodesMetaData(nmdp, Integer.MAX_VALUE);
+                this.trackerStats.addNodeMetaDataFetchTime(nodeIds.size(), System.nanoTime() - fetchStart);
 
                 NEXT_NODE: for (NodeMetaData nodeMetaData : nodeMetaDatas)
                 {
@@ -2462,7 +2476,8 @@ public class SolrInformationServer implements InformationServer
     }
 
     private void addContentPropertyMetadata(SolrInputDocument doc, QName propertyQName, 
-                AlfrescoSolrDataModel.ContentFieldType type, GetTextContentResponse textContentResponse)
+                AlfrescoSolrDataModel.ContentFieldType type, SolrApiContentStatus status, String transformException,
+                Long transformDuration)
     {
         IndexedField indexedField = AlfrescoSolrDataModel.getInstance().getIndexedFieldForContentPropertyMetadata(
                     propertyQName, type);
@@ -2472,13 +2487,13 @@ public class SolrInformationServer implements InformationServer
             switch(type)
             {
             case TRANSFORMATION_EXCEPTION:
-                doc.addField(fieldInstance.getField(), textContentResponse.getTransformException());
+                doc.addField(fieldInstance.getField(), transformException);
                 break;
             case TRANSFORMATION_STATUS:
-                doc.addField(fieldInstance.getField(), textContentResponse.getStatus());
+                doc.addField(fieldInstance.getField(), status);
                 break;
             case TRANSFORMATION_TIME:
-                doc.addField(fieldInstance.getField(), textContentResponse.getTransformDuration());
+                doc.addField(fieldInstance.getField(), transformDuration);
                 break;
                 // Skips the ones that require the ContentPropertyValue
                 default:
@@ -2611,36 +2626,67 @@ public class SolrInformationServer implements InformationServer
             request = getLocalSolrQueryRequest();
             processor = this.core.getUpdateProcessingChain(null).createProcessor(request, new SolrQueryResponse()); 
 
-            SolrInputDocument doc = retrieveDocFromSolrContentStore(tenant, dbId);
-            if (doc == null)
+            SolrInputDocument doc = retrieveOrRecreateDoc(processor, request, tenant, dbId);
+            if (doc != null)
             {
-                log.warn("There is no cached doc in the Solr content store with tenant [" + tenant + "] and dbId ["
-                        + dbId + "].\n"
-                        + "This should only happen if the content has been removed from the Solr content store.\n"
-                        + "Recreating cached doc ... ");
-                doc = recreateSolrDoc(dbId, tenant);
-                
-                // if we did not build it again it has been deleted
-                // We do the delete here to avoid doing this again if it for some reason persists in teh index
-                // This is a work around for ACE-3228/ACE-3258 and the way stores are expunged when deleting a tenant
-                if(doc == null)
+                addContentToDoc(doc, dbId);
+                addCleanDoc(processor, request, tenant, dbId, doc);
+            }
+        }
+        finally
+        {
+            if(processor != null) {processor.finish();}
+            if(request != null) {request.close();}
+        }
+    }
+    
+    @Override
+    public void updateContentToIndexAndCache(List<TenantAclIdDbId> docs) throws Exception
+    {
+        SolrQueryRequest request = null;
+        UpdateRequestProcessor processor = null;
+        try
+        {
+            request = getLocalSolrQueryRequest();
+            processor = this.core.getUpdateProcessingChain(null).createProcessor(request, new SolrQueryResponse()); 
+
+            // Groups the nodes by content property, so that the text of each group is fetched in one request
+            Map<Long, TenantAclIdDbId> dbIdDocs = new LinkedHashMap<Long, TenantAclIdDbId>(docs.size() * 2);
+            Map<Long, SolrInputDocument> solrDocs = new HashMap<Long, SolrInputDocument>(docs.size() * 2);
+            Map<QName, Map<Long, String>> localesByProperty = new HashMap<QName, Map<Long, String>>();
+            for (TenantAclIdDbId doc : docs)
+            {
+                if (solrDocs.containsKey(doc.dbId))
                 {
-                    deleteNode(processor, request, dbId);
+                    continue;
+                }
+                SolrInputDocument solrDoc = retrieveOrRecreateDoc(processor, request, doc.tenant, doc.dbId);
+                if (solrDoc == null)
+                {
+                    continue;
+                }
+                dbIdDocs.put(doc.dbId, doc);
+                solrDocs.put(doc.dbId, solrDoc);
+                for (Entry<QName, String> contentProperty : getContentPropertyLocales(solrDoc).entrySet())
+                {
+                    Map<Long, String> locales = localesByProperty.get(contentProperty.getKey());
+                    if (locales == null)
+                    {
+                        locales = new HashMap<Long, String>();
+                        localesByProperty.put(contentProperty.getKey(), locales);
+                    }
+                    locales.put(doc.dbId, contentProperty.getValue());
                 }
             }
-
-            if (doc != null)
+            
+            for (Entry<QName, Map<Long, String>> entry : localesByProperty.entrySet())
             {
-                addContentToDoc(doc, dbId);
-                // Marks as clean since the doc's content is now up to date
-                markFTSStatus(doc, FTSStatus.Clean);
-                storeDocOnSolrContentStore(tenant, dbId, doc);
-
-                // Add to index
-                AddUpdateCommand addDocCmd = new AddUpdateCommand(request);
-                addDocCmd.overwrite = true;
-                addDocCmd.solrDoc = doc;
-                processor.processAdd(addDocCmd);
+                addContentPropertyToDocsUsingAlfrescoRepository(solrDocs, entry.getKey(), entry.getValue());
+            }
+            
+            for (TenantAclIdDbId doc : dbIdDocs.values())
+            {
+                addCleanDoc(processor, request, doc.tenant, doc.dbId, solrDocs.get(doc.dbId));
             }
         }
         finally
@@ -2649,6 +2695,46 @@ public class SolrInformationServer implements InformationServer
             if(request != null) {request.close();}
         }
     }
+    
+    /**
+     * @return              the cached doc, recreated if need be, or <tt>null</tt> if the node has been deleted
+     */
+    private SolrInputDocument retrieveOrRecreateDoc(UpdateRequestProcessor processor, SolrQueryRequest request,
+                String tenant, long dbId) throws IOException, AuthenticationException, JSONException
+    {
+        SolrInputDocument doc = retrieveDocFromSolrContentStore(tenant, dbId);
+        if (doc == null)
+        {
+            log.warn("There is no cached doc in the Solr content store with tenant [" + tenant + "] and dbId ["
+                    + dbId + "].\n"
+                    + "This should only happen if the content has been removed from the Solr content store.\n"
+                    + "Recreating cached doc ... ");
+            doc = recreateSolrDoc(dbId, tenant);
+            
+            // if we did not build it again it has been deleted
+            // We do the delete here to avoid doing this again if it for some reason persists in teh index
+            // This is a work around for ACE-3228/ACE-3258 and the way stores are expunged when deleting a tenant
+            if(doc == null)
+            {
+                deleteNode(processor, request, dbId);
+            }
+        }
+        return doc;
+    }
+    
+    private void addCleanDoc(UpdateRequestProcessor processor, SolrQueryRequest request, String tenant, long dbId,
+                SolrInputDocument doc) throws IOException
+    {
+        // Marks as clean since the doc's content is now up to date
+        markFTSStatus(doc, FTSStatus.Clean);
+        storeDocOnSolrContentStore(tenant, dbId, doc);
+
+        // Add to index
+        AddUpdateCommand addDocCmd = new AddUpdateCommand(request);
+        addDocCmd.overwrite = true;
+        addDocCmd.solrDoc = doc;
+        processor.processAdd(addDocCmd);
+    }
 
     private SolrInputDocument recreateSolrDoc(long dbId, String tenant) throws AuthenticationException, IOException,
             JSONException
@@ -2689,18 +2775,30 @@ public class SolrInformationServer implements InformationServer
     private void addContentToDoc(SolrInputDocument doc, long dbId) throws UnsupportedEncodingException,
             AuthenticationException, IOException
     {
-        Collection<String> fieldNames = doc.deepCopy().getFieldNames();
-        for (String fieldName : fieldNames)
+        for (Entry<QName, String> contentProperty : getContentPropertyLocales(doc).entrySet())
+        {
+            addContentPropertyToDocUsingAlfrescoRepository(doc, contentProperty.getKey(), dbId, contentProperty.getValue());
+        }
+    }
+    
+    /**
+     * @return              the locale of each content property of the doc
+     */
+    private static Map<QName, String> getContentPropertyLocales(SolrInputDocument doc)
+    {
+        Map<QName, String> contentPropertyLocales = new LinkedHashMap<QName, String>(4);
+        for (String fieldName : doc.getFieldNames())
         {
             if (fieldName.startsWith(AlfrescoSolrDataModel.CONTENT_S_LOCALE_PREFIX))
             {
                 String locale = String.valueOf(doc.getFieldValue(fieldName));
                 String qNamePart = fieldName.substring(AlfrescoSolrDataModel.CONTENT_S_LOCALE_PREFIX.length());
                 QName propertyQName = QName.createQName(qNamePart);
-                addContentPropertyToDocUsingAlfrescoRepository(doc, propertyQName, dbId, locale);
+                contentPropertyLocales.put(propertyQName, locale);
             }
             // Could update multi content but it is broken ....
         }
+        return contentPropertyLocales;
     }
     
     private void addContentPropertyToDocUsingAlfrescoRepository(SolrInputDocument doc,
@@ -2712,23 +2810,10 @@ public class SolrInformationServer implements InformationServer
         // Expensive call to be done with ContentTracker
         GetTextContentResponse response = repositoryClient.getTextContent(dbId, propertyQName, null);
         
-        addContentPropertyMetadata(doc, propertyQName, AlfrescoSolrDataModel.ContentFieldType.TRANSFORMATION_STATUS,
-                response);
-        addContentPropertyMetadata(doc, propertyQName, AlfrescoSolrDataModel.ContentFieldType.TRANSFORMATION_EXCEPTION,
-                response);
-        addContentPropertyMetadata(doc, propertyQName, AlfrescoSolrDataModel.ContentFieldType.TRANSFORMATION_TIME,
-                response);
-
-        InputStream ris = response.getContent();
-        String textContent = "";
+        String textContent;
         try
         {
-            if (ris != null)
-            {
-                // Get and copy content
-                byte[] bytes = FileCopyUtils.copyToByteArray(new BoundedInputStream(ris, contentStreamLimit));
-                textContent = new String(bytes, "UTF8");
-            }
+            textContent = readTextContent(response.getContent());
         }
         finally
         {
@@ -2739,6 +2824,76 @@ public class SolrInformationServer implements InformationServer
         long end = System.nanoTime();
         this.getTrackerStats().addDocTransformationTime(end - start);
         
+        addTextContentToDoc(doc, propertyQName, locale, response.getStatus(), response.getTransformException(),
+                response.getTransformDuration(), textContent);
+    }
+    
+    /**
+     * Fetch the text of a content property of several docs in one request
+     * 
+     * @param docs          the docs by DB ID
+     * @param locales       the locale of the content property by DB ID, for the docs that have the property
+     */
+    private void addContentPropertyToDocsUsingAlfrescoRepository(Map<Long, SolrInputDocument> docs,
+                QName propertyQName, Map<Long, String> locales) 
+                            throws AuthenticationException, IOException, JSONException
+    {
+        long start = System.nanoTime();
+        
+        // Expensive call to be done with ContentTracker
+        GetTextContentsResponse response = repositoryClient.getTextContents(new ArrayList<Long>(locales.keySet()), propertyQName);
+        try
+        {
+            while (response.next())
+            {
+                long dbId = response.getNodeId();
+                String textContent = readTextContent(response.getContent());
+                
+                // The text of each node arrives once it has been transformed
+                long end = System.nanoTime();
+                this.getTrackerStats().addDocTransformationTime(end - start);
+                start = end;
+                
+                SolrInputDocument doc = docs.get(dbId);
+                if (doc != null)
+                {
+                    addTextContentToDoc(doc, propertyQName, locales.get(dbId), response.getStatus(),
+                            response.getTransformException(), response.getTransformDuration(), textContent);
+                }
+            }
+        }
+        finally
+        {
+            // release the response only when the content has been read
+            response.release();
+        }
+    }
+    
+    /**
+     * @param ris           the text (UTF-8) or <tt>null</tt>
+     * @return              the text, up to the content stream limit
+     */
+    private String readTextContent(InputStream ris) throws IOException
+    {
+        if (ris == null)
+        {
+            return "";
+        }
+        // Get and copy content
+        byte[] bytes = FileCopyUtils.copyToByteArray(new BoundedInputStream(ris, contentStreamLimit));
+        return new String(bytes, "UTF8");
+    }
+    
+    private void addTextContentToDoc(SolrInputDocument doc, QName propertyQName, String locale,
+                SolrApiContentStatus status, String transformException, Long transformDuration, String textContent)
+    {
+        addContentPropertyMetadata(doc, propertyQName, AlfrescoSolrDataModel.ContentFieldType.TRANSFORMATION_STATUS,
+                status, transformException, transformDuration);
+        addContentPropertyMetadata(doc, propertyQName, AlfrescoSolrDataModel.ContentFieldType.TRANSFORMATION_EXCEPTION,
+                status, transformException, transformDuration);
+        addContentPropertyMetadata(doc, propertyQName, AlfrescoSolrDataModel.ContentFieldType.TRANSFORMATION_TIME,
+                status, transformException, transformDuration);
+        
         StringBuilder builder = new StringBuilder(textContent.length() + 16);
         builder.append("\u0000").append(locale).append("\u0000");
         builder.append(textContent);
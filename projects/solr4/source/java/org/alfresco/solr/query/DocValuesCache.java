@@ -23,16 +23,23 @@
  * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
  * #L%
  */
-
 package org.alfresco.solr.query;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.WeakHashMap;
-import java.util.Map;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.NumericDocValues;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 
 /**
@@ -40,63 +47,200 @@ import org.apache.lucene.index.NumericDocValues;
  * possible access to numeric docValues. The DocValuesCache can be used instead of the Direct DocValues format which also
  * provides uncompressed in-memory docValues. The DocValuesCache can be used in situations when it is not
  * practical to re-index to use Direct docValues.
+ * <p>
+ * The values are held per segment core, which is weakly referenced, in an int array unless a value needs a long.
+ * Each field is loaded once per segment: threads that want a field that is being loaded wait for it, while
+ * all other lookups go ahead without any locking.
  **/
 
 public class DocValuesCache
 {
-    private static Map<String, WeakHashMap<Object, NumericDocValues>> cache = new HashMap();
+    /** Segment core key to the values of each field (a segment without values for a field maps it to {@link #NO_VALUES}) */
+    private static final Cache<Object, ConcurrentMap<String, FieldValues>> cache = CacheBuilder.newBuilder().weakKeys().build();
+    private static final FieldValues NO_VALUES = FieldValues.loaded(null);
+    
+    private static final AtomicLong loads = new AtomicLong();
+    private static final AtomicLong loadTimeNanos = new AtomicLong();
 
-    public static synchronized NumericDocValues getNumericDocValues(String field, AtomicReader reader) throws IOException
+    public static NumericDocValues getNumericDocValues(String field, AtomicReader reader) throws IOException
     {
-        WeakHashMap<Object, NumericDocValues> fieldCache = cache.get(field);
-
-        if(fieldCache == null)
+        ConcurrentMap<String, FieldValues> segmentCache;
+        try
         {
-            fieldCache = new WeakHashMap();
-            cache.put(field, fieldCache);
+            segmentCache = cache.get(reader.getCoreCacheKey(), new Callable<ConcurrentMap<String, FieldValues>>()
+            {
+                @Override
+                public ConcurrentMap<String, FieldValues> call()
+                {
+                    return new ConcurrentHashMap<String, FieldValues>(4);
+                }
+            });
+        }
+        catch (ExecutionException e)
+        {
+            // The map creation can't fail
+            throw new IllegalStateException(e.getCause());
         }
 
-        Object cacheKey = reader.getCoreCacheKey();
-        NumericDocValues cachedValues = fieldCache.get(cacheKey);
-
-        if(cachedValues == null)
+        FieldValues fieldValues = segmentCache.get(field);
+        if (fieldValues == null)
         {
-            NumericDocValues fieldValues = reader.getNumericDocValues(field);
-            if(fieldValues == null)
+            FieldValues loading = new FieldValues();
+            fieldValues = segmentCache.putIfAbsent(field, loading);
+            if (fieldValues == null)
             {
-                return null;
+                // This thread loads the values, any others wait for them
+                fieldValues = loading;
+                try
+                {
+                    loading.load(field, reader);
+                }
+                catch (IOException | RuntimeException | Error e)
+                {
+                    // Let the next lookup try again
+                    segmentCache.remove(field, loading);
+                    loading.fail(e);
+                    throw e;
+                }
+                if (loading.values == null)
+                {
+                    segmentCache.replace(field, loading, NO_VALUES);
+                }
             }
-            else
+        }
+        return fieldValues.get();
+    }
+    
+    /**
+     * @return                  the number of segments and fields cached, the memory they use and the time spent loading
+     */
+    public static NamedList<Object> getStatistics()
+    {
+        long segments = 0;
+        long fields = 0;
+        long sizeInBytes = 0;
+        for (ConcurrentMap<String, FieldValues> segmentCache : cache.asMap().values())
+        {
+            segments++;
+            for (FieldValues fieldValues : segmentCache.values())
             {
-                int maxDoc = reader.maxDoc();
-                boolean longs = false;
-                int[] intValues = new int[maxDoc]; //Always start off with an int array.
-                SettableDocValues settableValues = new IntValues(intValues);
+                SettableDocValues values = fieldValues.values;
+                if (values != null)
+                {
+                    fields++;
+                    sizeInBytes += values.ramBytesUsed();
+                }
+            }
+        }
+        NamedList<Object> stats = new SimpleOrderedMap<Object>();
+        stats.add("segments", segments);
+        stats.add("fields", fields);
+        stats.add("sizeInBytes", sizeInBytes);
+        stats.add("loads", loads.get());
+        stats.add("loadTimeMs", loadTimeNanos.get() / 1000000L);
+        return stats;
+    }
 
-                for(int i=0; i<maxDoc; i++)
+    /**
+     * The values of one field of one segment, once they are loaded
+     */
+    private static class FieldValues
+    {
+        private volatile boolean done;
+        private volatile SettableDocValues values;
+        /** written before {@link #done}, so it is visible to any thread that has seen the load finish */
+        private volatile Throwable failure;
+        
+        /**
+         * @return                  values that are already loaded, so lookups never wait for them
+         */
+        private static FieldValues loaded(SettableDocValues values)
+        {
+            FieldValues fieldValues = new FieldValues();
+            fieldValues.values = values;
+            fieldValues.done = true;
+            return fieldValues;
+        }
+        
+        private void load(String field, AtomicReader reader) throws IOException
+        {
+            long start = System.nanoTime();
+            try
+            {
+                NumericDocValues fieldValues = reader.getNumericDocValues(field);
+                if(fieldValues != null)
                 {
-                    long value = fieldValues.get(i);
-                    if(value > Integer.MAX_VALUE && !longs)
+                    int maxDoc = reader.maxDoc();
+                    boolean longs = false;
+                    int[] intValues = new int[maxDoc]; //Always start off with an int array.
+                    SettableDocValues settableValues = new IntValues(intValues);
+
+                    for(int i=0; i<maxDoc; i++)
                     {
-                        longs = true;
-                        settableValues = new LongValues(intValues);
-                    }
+                        long value = fieldValues.get(i);
+                        if((value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) && !longs)
+                        {
+                            longs = true;
+                            settableValues = new LongValues(intValues);
+                        }
 
-                    settableValues.set(i, value);
+                        settableValues.set(i, value);
+                    }
+                    values = settableValues;
                 }
-                fieldCache.put(cacheKey, settableValues);
-                return settableValues;
+            }
+            finally
+            {
+                loads.incrementAndGet();
+                loadTimeNanos.addAndGet(System.nanoTime() - start);
+            }
+            synchronized (this)
+            {
+                done = true;
+                notifyAll();
             }
         }
-        else
+        
+        private synchronized void fail(Throwable e)
         {
-            return cachedValues;
+            failure = e;
+            done = true;
+            notifyAll();
+        }
+        
+        private NumericDocValues get() throws IOException
+        {
+            if (!done)
+            {
+                synchronized (this)
+                {
+                    while (!done)
+                    {
+                        try
+                        {
+                            wait();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while waiting for doc values to load");
+                        }
+                    }
+                }
+            }
+            if (failure != null)
+            {
+                throw new IOException("Failed to load doc values", failure);
+            }
+            return values;
         }
     }
 
     private static abstract class SettableDocValues extends NumericDocValues
     {
         public abstract void set(int index, long value);
+        
+        public abstract long ramBytesUsed();
     }
 
     private static class IntValues extends SettableDocValues
@@ -116,6 +260,11 @@ public class DocValuesCache
         public long get(int index) {
             return values[index];
         }
+        
+        public long ramBytesUsed()
+        {
+            return values.length * 4L;
+        }
     }
 
     private static class LongValues extends SettableDocValues
@@ -125,8 +274,11 @@ public class DocValuesCache
         public LongValues(int[] ivalues)
         {
             values = new long[ivalues.length];
-            //TODO: Validate to you can copy an int[] into a long[].
-            System.arraycopy(ivalues, 0, values, 0, ivalues.length);
+            // Widens the values set so far
+            for (int i = 0; i < ivalues.length; i++)
+            {
+                values[i] = ivalues[i];
+            }
         }
 
         public void set(int index, long value)
@@ -138,5 +290,10 @@ public class DocValuesCache
         {
             return values[index];
         }
+        
+        public long ramBytesUsed()
+        {
+            return values.length * 8L;
+        }
     }
-}
\ No newline at end of file
+}
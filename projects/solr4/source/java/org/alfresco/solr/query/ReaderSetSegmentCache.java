@@ -0,0 +1,444 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+package org.alfresco.solr.query;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alfresco.repo.search.adaptor.lucene.QueryConstants;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+/**
+ * The ReaderSetSegmentCache holds, per index segment, what is needed to work out the documents that a set of
+ * authorities can read.  There is one cache per core.
+ * <p>
+ * Entries are keyed by the core of the segment, so they survive commits and new searchers: only segments
+ * that are new to the searcher need to be read.  For each segment the cache holds:
+ * <ul>
+ *   <li>the documents of each ACL ID, which does not depend on the authorities and is built once per segment</li>
+ *   <li>per set of authorities, the ACL docs of the segment that the authorities can read, and their ACL IDs</li>
+ * </ul>
+ * The documents of a segment never change, apart from deletions: deleted ACL docs are skipped when the entries
+ * are used, and deleted documents are filtered out by the searcher anyway.
+ * <p>
+ * The cache is bounded by its approximate size in bytes, least recently used segments first out.  Segments that
+ * are merged away are dropped along with their core.
+ * 
+ * @since 5.2
+ */
+public class ReaderSetSegmentCache
+{
+    /** the default size of the cache of a core, in bytes */
+    public static final long DEFAULT_MAX_BYTES = 256L*1024L*1024L;
+    
+    private static final ConcurrentHashMap<String, ReaderSetSegmentCache> instances = new ConcurrentHashMap<String, ReaderSetSegmentCache>();
+    
+    private final long maxBytes;
+    private final Map<Object, Segment> segments = new WeakHashMap<Object, Segment>();
+    private long clock;
+    private long hits;
+    private long misses;
+    
+    /**
+     * Replace the cache of the core, e.g. when the core is (re)loaded.
+     * 
+     * @param coreName          the name of the core
+     * @param maxBytes          the approximate maximum size of the cache (0 to disable the cache)
+     */
+    public static void configure(String coreName, long maxBytes)
+    {
+        instances.put(coreName, new ReaderSetSegmentCache(maxBytes));
+    }
+    
+    /**
+     * @param coreName          the name of the core
+     * @return                  the cache of the core, with the default size if it has not been configured
+     */
+    public static ReaderSetSegmentCache getInstance(String coreName)
+    {
+        ReaderSetSegmentCache cache = instances.get(coreName);
+        if (cache == null)
+        {
+            cache = new ReaderSetSegmentCache(DEFAULT_MAX_BYTES);
+            ReaderSetSegmentCache existing = instances.putIfAbsent(coreName, cache);
+            if (existing != null)
+            {
+                cache = existing;
+            }
+        }
+        return cache;
+    }
+    
+    /**
+     * @param maxBytes          the approximate maximum size of the cache (0 to disable the cache)
+     */
+    public ReaderSetSegmentCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * @param reader            the segment
+     * @return                  <tt>true</tt> if the documents of each ACL ID of the segment can be cached
+     */
+    public boolean isCacheable(AtomicReader reader)
+    {
+        return AclPostings.estimateSizeInBytes(reader.maxDoc()) <= maxBytes;
+    }
+    
+    /**
+     * @param reader            the segment
+     * @return                  the documents of each ACL ID of the segment or <tt>null</tt> if they need to be read
+     */
+    public synchronized AclPostings getAclPostings(AtomicReader reader)
+    {
+        Segment segment = segments.get(reader.getCoreCacheKey());
+        AclPostings postings = (segment == null ? null : segment.postings);
+        count(segment, postings != null);
+        return postings;
+    }
+    
+    /**
+     * @param reader            the segment
+     * @param postings          the documents of each ACL ID of the segment
+     */
+    public synchronized void putAclPostings(AtomicReader reader, AclPostings postings)
+    {
+        Segment segment = makeRoom(reader, postings.sizeInBytes());
+        if (segment != null && segment.postings == null)
+        {
+            segment.postings = postings;
+            segment.sizeInBytes += postings.sizeInBytes();
+        }
+    }
+    
+    /**
+     * @param reader            the segment
+     * @param authorities       the authorities, as given to the query
+     * @return                  the ACL docs of the segment that the authorities can read or <tt>null</tt> if they
+     *                          need to be found
+     */
+    public synchronized ReadableAcls getReadableAcls(AtomicReader reader, String authorities)
+    {
+        Segment segment = segments.get(reader.getCoreCacheKey());
+        ReadableAcls acls = (segment == null ? null : segment.readableAcls.get(authorities));
+        count(segment, acls != null);
+        return acls;
+    }
+    
+    /**
+     * @param reader            the segment
+     * @param authorities       the authorities, as given to the query
+     * @param acls              the ACL docs of the segment that the authorities can read
+     */
+    public synchronized void putReadableAcls(AtomicReader reader, String authorities, ReadableAcls acls)
+    {
+        long sizeInBytes = acls.sizeInBytes() + (authorities.length() * 2L);
+        Segment segment = makeRoom(reader, sizeInBytes);
+        if (segment != null && segment.readableAcls.put(authorities, acls) == null)
+        {
+            segment.sizeInBytes += sizeInBytes;
+        }
+    }
+    
+    private void count(Segment segment, boolean hit)
+    {
+        if (hit)
+        {
+            hits++;
+            segment.lastUsed = ++clock;
+        }
+        else
+        {
+            misses++;
+        }
+    }
+    
+    /**
+     * Evict the least recently used segments until there is room for the given number of bytes.
+     * 
+     * @return                  the entry of the segment or <tt>null</tt> if the bytes can't be cached
+     */
+    private Segment makeRoom(AtomicReader reader, long sizeInBytes)
+    {
+        if (sizeInBytes > maxBytes)
+        {
+            return null;
+        }
+        long cacheSize = getSizeInBytes();
+        while (cacheSize + sizeInBytes > maxBytes && !segments.isEmpty())
+        {
+            Object eldestKey = null;
+            Segment eldest = null;
+            for (Map.Entry<Object, Segment> entry : segments.entrySet())
+            {
+                if (eldest == null || entry.getValue().lastUsed < eldest.lastUsed)
+                {
+                    eldestKey = entry.getKey();
+                    eldest = entry.getValue();
+                }
+            }
+            segments.remove(eldestKey);
+            cacheSize -= eldest.sizeInBytes;
+        }
+        Object cacheKey = reader.getCoreCacheKey();
+        Segment segment = segments.get(cacheKey);
+        if (segment == null)
+        {
+            segment = new Segment();
+            segments.put(cacheKey, segment);
+        }
+        segment.lastUsed = ++clock;
+        return segment;
+    }
+    
+    private long getSizeInBytes()
+    {
+        long sizeInBytes = 0;
+        for (Segment segment : segments.values())
+        {
+            sizeInBytes += segment.sizeInBytes;
+        }
+        return sizeInBytes;
+    }
+    
+    /**
+     * @return                  the hits, misses, hit ratio, number of entries and their approximate size
+     */
+    public synchronized NamedList<Object> getStatistics()
+    {
+        long entries = 0;
+        for (Segment segment : segments.values())
+        {
+            entries += (segment.postings == null ? 0 : 1) + segment.readableAcls.size();
+        }
+        long lookups = hits + misses;
+        NamedList<Object> stats = new SimpleOrderedMap<Object>();
+        stats.add("lookups", lookups);
+        stats.add("hits", hits);
+        stats.add("hitratio", lookups > 0 ? (float) hits / lookups : 0.0f);
+        stats.add("segments", segments.size());
+        stats.add("size", entries);
+        stats.add("sizeInBytes", getSizeInBytes());
+        stats.add("maxBytes", maxBytes);
+        return stats;
+    }
+    
+    private static class Segment
+    {
+        private AclPostings postings;
+        private final Map<String, ReadableAcls> readableAcls = new HashMap<String, ReadableAcls>();
+        private long sizeInBytes;
+        private long lastUsed;
+    }
+    
+    /**
+     * The documents of each ACL ID of a segment, as one array of documents grouped by ACL ID.
+     */
+    public static class AclPostings
+    {
+        private final long[] aclIds;
+        private final int[] starts;
+        private final int[] docs;
+        
+        private AclPostings(long[] aclIds, int[] starts, int[] docs)
+        {
+            this.aclIds = aclIds;
+            this.starts = starts;
+            this.docs = docs;
+        }
+        
+        private static long estimateSizeInBytes(int maxDoc)
+        {
+            return maxDoc * 4L;
+        }
+        
+        /**
+         * Read the ACL IDs of all the documents of the segment.
+         */
+        public static AclPostings build(AtomicReader reader) throws IOException
+        {
+            int maxDoc = reader.maxDoc();
+            NumericDocValues fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, reader);
+            if (fieldValues == null)
+            {
+                return new AclPostings(new long[0], new int[] { 0 }, new int[0]);
+            }
+            
+            // Count the documents of each ACL ID, then lay them out in ACL ID order
+            Map<Long, int[]> counts = new HashMap<Long, int[]>();
+            for (int i = 0; i < maxDoc; i++)
+            {
+                Long aclId = Long.valueOf(fieldValues.get(i));
+                int[] count = counts.get(aclId);
+                if (count == null)
+                {
+                    counts.put(aclId, new int[] { 1 });
+                }
+                else
+                {
+                    count[0]++;
+                }
+            }
+            long[] aclIds = new long[counts.size()];
+            int idx = 0;
+            for (Long aclId : counts.keySet())
+            {
+                aclIds[idx++] = aclId;
+            }
+            Arrays.sort(aclIds);
+            int[] starts = new int[aclIds.length + 1];
+            for (int a = 0; a < aclIds.length; a++)
+            {
+                int[] count = counts.get(aclIds[a]);
+                starts[a + 1] = starts[a] + count[0];
+                // From now on the next position to fill
+                count[0] = starts[a];
+            }
+            int[] docs = new int[maxDoc];
+            for (int i = 0; i < maxDoc; i++)
+            {
+                int[] next = counts.get(Long.valueOf(fieldValues.get(i)));
+                docs[next[0]++] = i;
+            }
+            return new AclPostings(aclIds, starts, docs);
+        }
+        
+        /**
+         * Set the documents with one of the given ACL IDs.
+         * 
+         * @param readableAclIds    the sorted ACL IDs
+         * @param bits              the documents of the whole index
+         * @param docBase           the first document of the segment in the whole index
+         */
+        public void addDocs(long[] readableAclIds, FixedBitSet bits, int docBase)
+        {
+            for (long aclId : readableAclIds)
+            {
+                int a = Arrays.binarySearch(aclIds, aclId);
+                if (a >= 0)
+                {
+                    for (int d = starts[a]; d < starts[a + 1]; d++)
+                    {
+                        bits.set(docBase + docs[d]);
+                    }
+                }
+            }
+        }
+        
+        long sizeInBytes()
+        {
+            return (docs.length * 4L) + (starts.length * 4L) + (aclIds.length * 8L);
+        }
+    }
+    
+    /**
+     * The ACL docs of a segment that match a set of authorities, including any that have been deleted since.
+     */
+    public static class ReadableAcls
+    {
+        private final int[] aclDocs;
+        private final long[] aclIds;
+        
+        private ReadableAcls(int[] aclDocs, long[] aclIds)
+        {
+            this.aclDocs = aclDocs;
+            this.aclIds = aclIds;
+        }
+        
+        /**
+         * @param aclWeight         the weight of the query for the ACL docs of the authorities
+         * @param readerContext     the segment
+         */
+        public static ReadableAcls find(Weight aclWeight, AtomicReaderContext readerContext) throws IOException
+        {
+            int[] aclDocs = new int[16];
+            long[] aclIds = new long[16];
+            int size = 0;
+            Scorer scorer = aclWeight.scorer(readerContext, null);
+            NumericDocValues aclDocValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, readerContext.reader());
+            if (scorer != null && aclDocValues != null)
+            {
+                for (int doc = scorer.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = scorer.nextDoc())
+                {
+                    if (size == aclDocs.length)
+                    {
+                        aclDocs = Arrays.copyOf(aclDocs, size * 2);
+                        aclIds = Arrays.copyOf(aclIds, size * 2);
+                    }
+                    aclDocs[size] = doc;
+                    aclIds[size] = aclDocValues.get(doc);
+                    size++;
+                }
+            }
+            return new ReadableAcls(Arrays.copyOf(aclDocs, size), Arrays.copyOf(aclIds, size));
+        }
+        
+        /**
+         * @param liveDocs          the documents of the segment that have not been deleted, <tt>null</tt> for all
+         * @param aclIdsFound       the set to add the ACL IDs of the ACL docs that have not been deleted to
+         */
+        public void addAclIds(Bits liveDocs, Set<Long> aclIdsFound)
+        {
+            for (int i = 0; i < aclDocs.length; i++)
+            {
+                if (liveDocs == null || liveDocs.get(aclDocs[i]))
+                {
+                    aclIdsFound.add(aclIds[i]);
+                }
+            }
+        }
+        
+        /**
+         * Exclude the ACL docs from the results, we only want real docs that match.
+         */
+        public void clearAclDocs(FixedBitSet bits, int docBase)
+        {
+            for (int aclDoc : aclDocs)
+            {
+                bits.clear(docBase + aclDoc);
+            }
+        }
+        
+        long sizeInBytes()
+        {
+            return (aclDocs.length * 4L) + (aclIds.length * 8L);
+        }
+    }
+}
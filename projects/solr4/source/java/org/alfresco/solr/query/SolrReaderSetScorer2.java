@@ -26,7 +26,9 @@
 package org.alfresco.solr.query;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 import org.alfresco.repo.search.adaptor.lucene.QueryConstants;
 import org.alfresco.solr.cache.CacheConstants;
@@ -41,10 +43,8 @@ import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.search.BitDocSet;
-import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.SolrIndexSearcher;
-import org.apache.solr.search.WrappedQuery;
 
 public class SolrReaderSetScorer2 extends AbstractSolrCachingScorer
 {
@@ -63,54 +63,69 @@ public class SolrReaderSetScorer2 extends AbstractSolrCachingScorer
 
             String[] auths = authorities.substring(1).split(authorities.substring(0, 1));
 
-            readableDocSet = new BitDocSet(new FixedBitSet(searcher.maxDoc()));
-
             BooleanQuery bQuery = new BooleanQuery();
             for(String current : auths)
             {
                 bQuery.add(new TermQuery(new Term(QueryConstants.FIELD_READER, current)), Occur.SHOULD);
             }
-            WrappedQuery wrapped = new WrappedQuery(bQuery);
-            wrapped.setCache(false);
-
-            DocSet aclDocs = searcher.getDocSet(wrapped);
             
-            HashSet<Long> aclsFound = new HashSet<Long>(aclDocs.size());
-            NumericDocValues aclDocValues = searcher.getAtomicReader().getNumericDocValues(QueryConstants.FIELD_ACLID);
-           
-            for (DocIterator it = aclDocs.iterator(); it.hasNext(); /**/)
+            // The ACL docs that the authorities can read are only looked up in the segments that are new to the cache
+            ReaderSetSegmentCache segmentCache = ReaderSetSegmentCache.getInstance(searcher.getCore().getName());
+            List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+            ReaderSetSegmentCache.ReadableAcls[] segmentAcls = new ReaderSetSegmentCache.ReadableAcls[leaves.size()];
+            HashSet<Long> aclsFound = new HashSet<Long>();
+            Weight aclWeight = null;
+            for (int l = 0; l < leaves.size(); l++)
             {
-                int docID = it.nextDoc();
-                // Obtain the ACL ID for this ACL doc.
-                long aclID = aclDocValues.get(docID);
-                aclsFound.add(getLong(aclID));
+                AtomicReaderContext readerContext = leaves.get(l);
+                ReaderSetSegmentCache.ReadableAcls acls = segmentCache.getReadableAcls(readerContext.reader(), authorities);
+                if (acls == null)
+                {
+                    if (aclWeight == null)
+                    {
+                        aclWeight = searcher.createNormalizedWeight(bQuery);
+                    }
+                    acls = ReaderSetSegmentCache.ReadableAcls.find(aclWeight, readerContext);
+                    segmentCache.putReadableAcls(readerContext.reader(), authorities, acls);
+                }
+                acls.addAclIds(readerContext.reader().getLiveDocs(), aclsFound);
+                segmentAcls[l] = acls;
             }
          
+            FixedBitSet readableDocs = new FixedBitSet(searcher.maxDoc());
             if(aclsFound.size() > 0)
             {
-                for(AtomicReaderContext readerContext : searcher.getTopReaderContext().leaves() )
+                long[] aclIds = new long[aclsFound.size()];
+                int idx = 0;
+                for (Long aclID : aclsFound)
+                {
+                    aclIds[idx++] = aclID;
+                }
+                Arrays.sort(aclIds);
+                
+                // The documents of each ACL ID of a segment are cached whatever the authorities
+                for (int l = 0; l < leaves.size(); l++)
                 {
-                    int maxDoc = readerContext.reader().maxDoc();
-                    NumericDocValues fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, readerContext.reader());
-                    if(fieldValues != null)
+                    AtomicReaderContext readerContext = leaves.get(l);
+                    if (segmentCache.isCacheable(readerContext.reader()))
                     {
-                        for(int i = 0; i < maxDoc ; i++)
+                        ReaderSetSegmentCache.AclPostings postings = segmentCache.getAclPostings(readerContext.reader());
+                        if (postings == null)
                         {
-                            long aclID = fieldValues.get(i);
-                            Long key = getLong(aclID);
-                            if(aclsFound.contains(key))
-                            {
-                                readableDocSet.add(readerContext.docBase + i);
-                            }
+                            postings = ReaderSetSegmentCache.AclPostings.build(readerContext.reader());
+                            segmentCache.putAclPostings(readerContext.reader(), postings);
                         }
+                        postings.addDocs(aclIds, readableDocs, readerContext.docBase);
                     }
-
+                    else
+                    {
+                        addReadableSegmentDocs(readerContext, aclsFound, readableDocs);
+                    }
+                    segmentAcls[l].clearAclDocs(readableDocs, readerContext.docBase);
                 }
             }
+            readableDocSet = new BitDocSet(readableDocs);
             
-            // Exclude the ACL docs from the results, we only want real docs that match.
-            // Probably not very efficient, what we really want is remove(docID)
-            readableDocSet = readableDocSet.andNot(aclDocs);
             searcher.cacheInsert(CacheConstants.ALFRESCO_READER_CACHE, authorities, readableDocSet);
         }
         
@@ -118,4 +133,25 @@ public class SolrReaderSetScorer2 extends AbstractSolrCachingScorer
         // plus check of course, for presence in cache at start of method.
         return new SolrReaderSetScorer2(weight, readableDocSet, context, acceptDocs, searcher);
     }
+    
+    /**
+     * Set the docs of a segment with one of the given ACLs, reading the ACL IDs of all its docs.
+     */
+    private static void addReadableSegmentDocs(AtomicReaderContext readerContext, HashSet<Long> aclsFound, FixedBitSet readableDocs) throws IOException
+    {
+        int maxDoc = readerContext.reader().maxDoc();
+        NumericDocValues fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, readerContext.reader());
+        if(fieldValues != null)
+        {
+            for(int i = 0; i < maxDoc ; i++)
+            {
+                long aclID = fieldValues.get(i);
+                Long key = getLong(aclID);
+                if(aclsFound.contains(key))
+                {
+                    readableDocs.set(readerContext.docBase + i);
+                }
+            }
+        }
+    }
 }
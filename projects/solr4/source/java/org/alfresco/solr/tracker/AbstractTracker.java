@@ -303,7 +303,15 @@ public abstract class AbstractTracker implements Tracker
      */
     protected synchronized void waitForAsynchronous()
     {
-        AbstractWorkerRunnable currentRunnable = this.threadHandler.peekHeadReindexWorker();
+        waitForAsynchronous(this.threadHandler);
+    }
+    
+    /**
+     * Allows time for the tasks scheduled with the given handler to complete
+     */
+    protected synchronized void waitForAsynchronous(ThreadHandler threadHandler)
+    {
+        AbstractWorkerRunnable currentRunnable = threadHandler.peekHeadReindexWorker();
         while (currentRunnable != null)
         {
             checkShutdown();
@@ -317,7 +325,7 @@ public abstract class AbstractTracker implements Tracker
                 {
                 }
             }
-            currentRunnable = this.threadHandler.peekHeadReindexWorker();
+            currentRunnable = threadHandler.peekHeadReindexWorker();
         }
     }
 
@@ -25,6 +25,7 @@
  */
     package org.alfresco.solr.tracker;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
@@ -45,6 +46,7 @@ public class ContentTracker extends AbstractTracker implements Tracker
     protected final static Logger log = LoggerFactory.getLogger(ContentTracker.class);
     private int contentReadBatchSize;
     private int contentUpdateBatchSize;
+    private int contentFetchBatchSize;
     
 
     public ContentTracker(Properties p, SOLRAPIClient client, String coreName,
@@ -53,6 +55,13 @@ public class ContentTracker extends AbstractTracker implements Tracker
         super(p, client, coreName, informationServer);
         contentReadBatchSize = Integer.parseInt(p.getProperty("alfresco.contentReadBatchSize", "4000"));
         contentUpdateBatchSize = Integer.parseInt(p.getProperty("alfresco.contentUpdateBatchSize", "1000"));
+        // The number of docs whose text is fetched from the repository in one request (0 for one request per doc)
+        contentFetchBatchSize = Integer.parseInt(p.getProperty("alfresco.contentFetchBatchSize", "0"));
+        if (contentFetchBatchSize > SOLRAPIClient.MAX_TEXT_CONTENTS_NODE_IDS)
+        {
+            log.warn("alfresco.contentFetchBatchSize is limited to " + SOLRAPIClient.MAX_TEXT_CONTENTS_NODE_IDS + " by the repository, not " + contentFetchBatchSize);
+            contentFetchBatchSize = SOLRAPIClient.MAX_TEXT_CONTENTS_NODE_IDS;
+        }
         threadHandler = new ThreadHandler(p, coreName, "ContentTracker");
     }
     
@@ -82,11 +91,24 @@ public class ContentTracker extends AbstractTracker implements Tracker
         while (!docs.isEmpty())
         {
             int docsUpdatedSinceLastCommit = 0;
-            for (TenantAclIdDbId doc : docs)
+            for (int i = 0; i < docs.size(); )
             {
-                ContentIndexWorkerRunnable ciwr = new ContentIndexWorkerRunnable(super.threadHandler, doc, infoSrv);
-                super.threadHandler.scheduleTask(ciwr);
-                docsUpdatedSinceLastCommit ++;
+                if (contentFetchBatchSize > 0)
+                {
+                    // note: the batches are fetched concurrently, up to the number of threads of the tracker
+                    List<TenantAclIdDbId> batch = docs.subList(i, Math.min(i + contentFetchBatchSize, docs.size()));
+                    ContentBatchIndexWorkerRunnable cbiwr = new ContentBatchIndexWorkerRunnable(super.threadHandler, new ArrayList<TenantAclIdDbId>(batch), infoSrv);
+                    super.threadHandler.scheduleTask(cbiwr);
+                    docsUpdatedSinceLastCommit += batch.size();
+                    i += batch.size();
+                }
+                else
+                {
+                    ContentIndexWorkerRunnable ciwr = new ContentIndexWorkerRunnable(super.threadHandler, docs.get(i), infoSrv);
+                    super.threadHandler.scheduleTask(ciwr);
+                    docsUpdatedSinceLastCommit ++;
+                    i++;
+                }
                 
                 if (docsUpdatedSinceLastCommit >= contentUpdateBatchSize)
                 {
@@ -140,4 +162,24 @@ public class ContentTracker extends AbstractTracker implements Tracker
             this.infoServer.updateContentToIndexAndCache(doc.dbId, doc.tenant);
         }
     }
+    
+    class ContentBatchIndexWorkerRunnable extends AbstractWorkerRunnable
+    {
+        InformationServer infoServer;
+        List<TenantAclIdDbId> docs;
+
+        ContentBatchIndexWorkerRunnable(QueueHandler queueHandler, List<TenantAclIdDbId> docs, InformationServer infoServer)
+        {
+            super(queueHandler);
+            this.docs = docs;
+            this.infoServer = infoServer;
+        }
+
+        @Override
+        protected void doWork() throws Exception
+        {
+            checkShutdown();
+            this.infoServer.updateContentToIndexAndCache(docs);
+        }
+    }
 }
@@ -28,10 +28,15 @@ package org.alfresco.solr.tracker;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.httpclient.AuthenticationException;
@@ -40,6 +45,7 @@ import org.alfresco.repo.index.shard.ShardState;
 import org.alfresco.repo.index.shard.ShardStateBuilder;
 import org.alfresco.solr.AlfrescoSolrDataModel;
 import org.alfresco.solr.BoundedDeque;
+import org.alfresco.solr.IndexTrackingShutdownException;
 import org.alfresco.solr.InformationServer;
 import org.alfresco.solr.NodeReport;
 import org.alfresco.solr.TrackerState;
@@ -64,6 +70,7 @@ public class MetadataTracker extends AbstractTracker implements Tracker
     protected final static Logger log = LoggerFactory.getLogger(MetadataTracker.class);
     private static final int DEFAULT_TRANSACTION_DOCS_BATCH_SIZE = 100;
     private static final int DEFAULT_NODE_BATCH_SIZE = 10;
+    private static final int DEFAULT_PIPELINE_DEPTH = 4;
     private int transactionDocsBatchSize = DEFAULT_TRANSACTION_DOCS_BATCH_SIZE;
     private int nodeBatchSize = DEFAULT_NODE_BATCH_SIZE;
     private ConcurrentLinkedQueue<Long> transactionsToReindex = new ConcurrentLinkedQueue<Long>();
@@ -73,7 +80,16 @@ public class MetadataTracker extends AbstractTracker implements Tracker
     private ConcurrentLinkedQueue<Long> nodesToIndex = new ConcurrentLinkedQueue<Long>();
     private ConcurrentLinkedQueue<Long> nodesToPurge = new ConcurrentLinkedQueue<Long>();
     private ConcurrentLinkedQueue<String> queriesToReindex = new ConcurrentLinkedQueue<String>();
-
+    
+    /*
+     * In pipelined mode the next page of transactions and the nodes of each batch are fetched by a second
+     * pool while earlier batches are indexed.  The depth bounds the node fetches that may be outstanding.
+     */
+    private boolean pipelined = false;
+    private int pipelineDepth = DEFAULT_PIPELINE_DEPTH;
+    private ThreadHandler fetchThreadHandler;
+    private Semaphore fetchPermits;
+    private AtomicReference<Throwable> fetchFailure = new AtomicReference<Throwable>();
 
     public MetadataTracker(Properties p, SOLRAPIClient client, String coreName,
                 InformationServer informationServer)
@@ -83,6 +99,14 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         transactionDocsBatchSize = Integer.parseInt(p.getProperty("alfresco.transactionDocsBatchSize", "100"));
         nodeBatchSize = Integer.parseInt(p.getProperty("alfresco.nodeBatchSize", "10"));
         threadHandler = new ThreadHandler(p, coreName, "MetadataTracker");
+        
+        pipelined = Boolean.parseBoolean(p.getProperty("alfresco.metadata.pipeline", "false"));
+        pipelineDepth = Integer.parseInt(p.getProperty("alfresco.metadata.pipeline.depth", "" + DEFAULT_PIPELINE_DEPTH));
+        if (pipelined)
+        {
+            fetchThreadHandler = new ThreadHandler(p, coreName, "MetadataTrackerFetch");
+            fetchPermits = new Semaphore(pipelineDepth);
+        }
     }
     
     MetadataTracker()
@@ -110,6 +134,58 @@ public class MetadataTracker extends AbstractTracker implements Tracker
             trackRepository();
         }
     }
+    
+    /**
+     * @return              <tt>true</tt> if fetching from the repository overlaps with indexing
+     */
+    public boolean isPipelined()
+    {
+        return pipelined;
+    }
+    
+    /**
+     * @return              the number of node fetches that are queued or running in pipelined mode
+     */
+    public int getPendingFetchCount()
+    {
+        return pipelined ? pipelineDepth - fetchPermits.availablePermits() : 0;
+    }
+    
+    /**
+     * Waits for the pipelined fetches, which schedule indexing work of their own, before the indexing
+     */
+    @Override
+    protected synchronized void waitForAsynchronous()
+    {
+        if (pipelined)
+        {
+            waitForAsynchronous(fetchThreadHandler);
+        }
+        super.waitForAsynchronous();
+        
+        Throwable failure = fetchFailure.getAndSet(null);
+        if (failure != null)
+        {
+            // The transactions must not be recorded as indexed
+            throw new AlfrescoRuntimeException("Failed to fetch nodes for indexing", failure);
+        }
+    }
+    
+    @Override
+    public void close()
+    {
+        try
+        {
+            super.close();
+        }
+        finally
+        {
+            if (fetchThreadHandler != null)
+            {
+                fetchThreadHandler.shutDownThreadPool();
+            }
+        }
+    }
 
 
     private void trackRepository() throws IOException, AuthenticationException, JSONException, EncoderException
@@ -562,7 +638,9 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         Long startTime = fromCommitTime == null ? Long.valueOf(0L) : fromCommitTime;
         do
         {
+            long start = System.nanoTime();
             transactions = client.getTransactions(startTime, null, startTime + actualTimeStep, null, maxResults, shardstate);
+            trackerStats.addTxFetchTime(transactions.getTransactions().size(), System.nanoTime() - start);
             startTime += actualTimeStep;
             //actualTimeStep *= 2; 
             if (actualTimeStep > TIME_STEP_32_DAYS_IN_MS)
@@ -587,14 +665,24 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         TrackerState state = this.getTrackerState();
         long totalUpdatedDocs = 0;
         int docCount = 0;
+        TransactionsFetchWorkerRunnable prefetch = null;
         
         do
         {
            
 
             Long fromCommitTime = getTxFromCommitTime(txnsFound, state.getLastGoodTxCommitTimeInIndex());
-            transactions = getSomeTransactions(txnsFound, fromCommitTime, TIME_STEP_1_HR_IN_MS, 2000,
-                        state.getTimeToStopIndexing());
+            transactions = null;
+            if (prefetch != null && prefetch.isFrom(fromCommitTime))
+            {
+                transactions = prefetch.getTransactions();
+            }
+            if (transactions == null)
+            {
+                transactions = getSomeTransactions(txnsFound, fromCommitTime, TIME_STEP_1_HR_IN_MS, 2000,
+                            state.getTimeToStopIndexing());
+            }
+            prefetch = pipelined ? prefetchTransactions(txnsFound, transactions, state.getTimeToStopIndexing()) : null;
 
             setLastTxCommitTimeAndTxIdInTrackerState(transactions, state);
 
@@ -736,7 +824,6 @@ public class MetadataTracker extends AbstractTracker implements Tracker
 
     private int indexBatchOfTransactions(List<Transaction> txBatch) throws AuthenticationException, IOException, JSONException
     {
-        int nodeCount = 0;
         ArrayList<Transaction> nonEmptyTxs = new ArrayList<>(txBatch.size());
         GetNodesParameters gnp = new GetNodesParameters();
         ArrayList<Long> txIds = new ArrayList<Long>();
@@ -752,8 +839,24 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         gnp.setTransactionIds(txIds);
         gnp.setStoreProtocol(storeRef.getProtocol());
         gnp.setStoreIdentifier(storeRef.getIdentifier());
-        List<Node> nodes = client.getNodes(gnp, Integer.MAX_VALUE);
         
+        if (pipelined)
+        {
+            // Carry on with the next batch while the nodes are fetched.  The count is an estimate.
+            acquireFetchPermit();
+            this.fetchThreadHandler.scheduleTask(new NodeFetchWorkerRunnable(this.fetchThreadHandler, gnp));
+            return (int) getUpdateAndDeleteCount(nonEmptyTxs);
+        }
+        
+        long start = System.nanoTime();
+        List<Node> nodes = client.getNodes(gnp, Integer.MAX_VALUE);
+        trackerStats.addNodeFetchTime(nodes.size(), System.nanoTime() - start);
+        return scheduleNodeBatches(nodes);
+    }
+    
+    private int scheduleNodeBatches(List<Node> nodes)
+    {
+        int nodeCount = 0;
         ArrayList<Node> nodeBatch = new ArrayList<>();
         for (Node node : nodes)
         {
@@ -780,6 +883,139 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         }
         return nodeCount;
     }
+    
+    private void acquireFetchPermit()
+    {
+        try
+        {
+            while (!fetchPermits.tryAcquire(100, TimeUnit.MILLISECONDS))
+            {
+                checkShutdown();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IndexTrackingShutdownException();
+        }
+    }
+    
+    /**
+     * Start fetching the page of transactions that follows the given one, assuming that all of
+     * the given transactions will be found
+     */
+    private TransactionsFetchWorkerRunnable prefetchTransactions(BoundedDeque<Transaction> txnsFound,
+                Transactions transactions, long endTime)
+    {
+        if (transactions.getTransactions().isEmpty())
+        {
+            return null;
+        }
+        BoundedDeque<Transaction> expectedTxnsFound = new BoundedDeque<Transaction>(100);
+        for (Iterator<Transaction> it = txnsFound.getDeque().descendingIterator(); it.hasNext(); /**/)
+        {
+            expectedTxnsFound.add(it.next());
+        }
+        for (Transaction txn : transactions.getTransactions())
+        {
+            expectedTxnsFound.add(txn);
+        }
+        TransactionsFetchWorkerRunnable prefetch = new TransactionsFetchWorkerRunnable(this.fetchThreadHandler,
+                    expectedTxnsFound, endTime);
+        this.fetchThreadHandler.scheduleTask(prefetch);
+        return prefetch;
+    }
+
+    class TransactionsFetchWorkerRunnable extends AbstractWorkerRunnable
+    {
+        BoundedDeque<Transaction> txnsFound;
+        Long fromCommitTime;
+        long endTime;
+        CountDownLatch done = new CountDownLatch(1);
+        volatile Transactions transactions;
+
+        TransactionsFetchWorkerRunnable(QueueHandler queueHandler, BoundedDeque<Transaction> txnsFound, long endTime)
+        {
+            super(queueHandler);
+            this.txnsFound = txnsFound;
+            this.fromCommitTime = txnsFound.getLast().getCommitTimeMs();
+            this.endTime = endTime;
+        }
+
+        @Override
+        protected void doWork() throws Exception
+        {
+            try
+            {
+                transactions = getSomeTransactions(txnsFound, fromCommitTime, TIME_STEP_1_HR_IN_MS, 2000, endTime);
+            }
+            catch (Exception e)
+            {
+                log.warn("Failed to prefetch transactions from " + fromCommitTime + ", they will be fetched again", e);
+            }
+            finally
+            {
+                done.countDown();
+            }
+        }
+        
+        boolean isFrom(Long commitTime)
+        {
+            return fromCommitTime.equals(commitTime);
+        }
+        
+        /**
+         * @return          the transactions or <tt>null</tt> if they could not be fetched
+         */
+        Transactions getTransactions()
+        {
+            try
+            {
+                while (!done.await(100, TimeUnit.MILLISECONDS))
+                {
+                    checkShutdown();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IndexTrackingShutdownException();
+            }
+            return transactions;
+        }
+    }
+
+    class NodeFetchWorkerRunnable extends AbstractWorkerRunnable
+    {
+        GetNodesParameters gnp;
+
+        NodeFetchWorkerRunnable(QueueHandler queueHandler, GetNodesParameters gnp)
+        {
+            super(queueHandler);
+            this.gnp = gnp;
+        }
+
+        @Override
+        protected void doWork() throws Exception
+        {
+            try
+            {
+                long start = System.nanoTime();
+                List<Node> nodes = client.getNodes(gnp, Integer.MAX_VALUE);
+                trackerStats.addNodeFetchTime(nodes.size(), System.nanoTime() - start);
+                scheduleNodeBatches(nodes);
+            }
+            catch (Exception e)
+            {
+                fetchFailure.compareAndSet(null, e);
+                throw e;
+            }
+            finally
+            {
+                fetchPermits.release();
+            }
+        }
+    }
 
     class NodeIndexWorkerRunnable extends AbstractWorkerRunnable
     {
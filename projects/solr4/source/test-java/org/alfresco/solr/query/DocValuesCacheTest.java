@@ -0,0 +1,193 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterAtomicReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.apache.solr.common.util.NamedList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see DocValuesCache
+ * @since 5.2
+ */
+public class DocValuesCacheTest
+{
+    private RAMDirectory directory;
+    private DirectoryReader directoryReader;
+    private AtomicReader segment;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_CURRENT, new KeywordAnalyzer()));
+        long[][] values = { { 1L, 5L }, { -7L, Integer.MIN_VALUE - 1L }, { 3L, Integer.MAX_VALUE + 1L } };
+        for (long[] docValues : values)
+        {
+            Document doc = new Document();
+            doc.add(new NumericDocValuesField("small", docValues[0]));
+            doc.add(new NumericDocValuesField("large", docValues[1]));
+            writer.addDocument(doc);
+        }
+        writer.close();
+        directoryReader = DirectoryReader.open(directory);
+        segment = directoryReader.leaves().get(0).reader();
+    }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        directoryReader.close();
+        directory.close();
+    }
+    
+    @Test
+    public void testValuesAreLoadedOncePerSegment() throws Exception
+    {
+        NumericDocValues small = DocValuesCache.getNumericDocValues("small", segment);
+        assertEquals(1L, small.get(0));
+        assertEquals(-7L, small.get(1));
+        assertEquals(3L, small.get(2));
+        assertSame(small, DocValuesCache.getNumericDocValues("small", segment));
+        
+    }
+    
+    @Test(timeout = 10000)
+    public void testMissingFieldIsLookedUpMoreThanOnce() throws Exception
+    {
+        // The second lookup finds the cached absence of values and must not wait for a load
+        assertNull(DocValuesCache.getNumericDocValues("missing", segment));
+        assertNull(DocValuesCache.getNumericDocValues("missing", segment));
+        assertNull(DocValuesCache.getNumericDocValues("missing", segment));
+    }
+    
+    @Test
+    public void testValuesOutsideTheIntRange() throws Exception
+    {
+        NumericDocValues large = DocValuesCache.getNumericDocValues("large", segment);
+        assertEquals(5L, large.get(0));
+        assertEquals(Integer.MIN_VALUE - 1L, large.get(1));
+        assertEquals(Integer.MAX_VALUE + 1L, large.get(2));
+    }
+    
+    @Test(timeout = 10000)
+    public void testFailedLoadIsReportedToWaitingLookups() throws Exception
+    {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch failLoad = new CountDownLatch(1);
+        final AtomicReader failingSegment = new FilterAtomicReader(segment)
+        {
+            @Override
+            public NumericDocValues getNumericDocValues(String field) throws IOException
+            {
+                loading.countDown();
+                try
+                {
+                    failLoad.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Test load failure");
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            Callable<NumericDocValues> lookup = new Callable<NumericDocValues>()
+            {
+                @Override
+                public NumericDocValues call() throws Exception
+                {
+                    return DocValuesCache.getNumericDocValues("failing", failingSegment);
+                }
+            };
+            Future<NumericDocValues> loader = executor.submit(lookup);
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<NumericDocValues> waiter = executor.submit(lookup);
+            Thread.sleep(100L);
+            failLoad.countDown();
+            for (Future<NumericDocValues> future : new Future[] { loader, waiter })
+            {
+                try
+                {
+                    future.get();
+                    fail("The load failure must not be hidden from any lookup");
+                }
+                catch (ExecutionException e)
+                {
+                    assertTrue(e.getCause() instanceof IOException);
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        // The failed load is not cached
+        assertNull(DocValuesCache.getNumericDocValues("failing", segment));
+    }
+    
+    @Test
+    public void testStatisticsReportMemory() throws Exception
+    {
+        DocValuesCache.getNumericDocValues("small", segment);
+        DocValuesCache.getNumericDocValues("large", segment);
+        NamedList<Object> stats = DocValuesCache.getStatistics();
+        assertTrue((Long) stats.get("segments") >= 1L);
+        assertTrue((Long) stats.get("fields") >= 2L);
+        // At least 4 bytes per doc for the ints and 8 for the longs
+        assertTrue((Long) stats.get("sizeInBytes") >= 3 * 4L + 3 * 8L);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+package org.alfresco.solr.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.alfresco.repo.search.adaptor.lucene.QueryConstants;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.Version;
+import org.apache.solr.common.util.NamedList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ReaderSetSegmentCache
+ * @since 5.2
+ */
+public class ReaderSetSegmentCacheTest
+{
+    private RAMDirectory directory;
+    private DirectoryReader directoryReader;
+    private AtomicReaderContext segmentContext;
+    private AtomicReader segment;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_CURRENT, new KeywordAnalyzer()));
+        // An ACL doc readable by GROUP_A and docs with ACLs 5, 7 and 5
+        writer.addDocument(newDoc(5L, "GROUP_A"));
+        writer.addDocument(newDoc(5L, null));
+        writer.addDocument(newDoc(7L, null));
+        writer.addDocument(newDoc(5L, null));
+        writer.close();
+        directoryReader = DirectoryReader.open(directory);
+        segmentContext = directoryReader.leaves().get(0);
+        segment = segmentContext.reader();
+    }
+    
+    private Document newDoc(long aclId, String reader)
+    {
+        Document doc = new Document();
+        doc.add(new NumericDocValuesField(QueryConstants.FIELD_ACLID, aclId));
+        if (reader != null)
+        {
+            doc.add(new StringField(QueryConstants.FIELD_READER, reader, Store.NO));
+        }
+        return doc;
+    }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        directoryReader.close();
+        directory.close();
+    }
+    
+    @Test
+    public void testAclPostings() throws Exception
+    {
+        ReaderSetSegmentCache.AclPostings postings = ReaderSetSegmentCache.AclPostings.build(segment);
+        
+        FixedBitSet docs = new FixedBitSet(segment.maxDoc() + 10);
+        postings.addDocs(new long[] { 5L }, docs, 10);
+        assertEquals(3, docs.cardinality());
+        assertTrue(docs.get(10));
+        assertTrue(docs.get(11));
+        assertTrue(docs.get(13));
+        
+        docs = new FixedBitSet(segment.maxDoc());
+        postings.addDocs(new long[] { 1L, 6L, 7L }, docs, 0);
+        assertEquals(1, docs.cardinality());
+        assertTrue(docs.get(2));
+    }
+    
+    @Test
+    public void testReadableAcls() throws Exception
+    {
+        Weight aclWeight = new IndexSearcher(directoryReader).createNormalizedWeight(new TermQuery(new Term(QueryConstants.FIELD_READER, "GROUP_A")));
+        ReaderSetSegmentCache.ReadableAcls acls = ReaderSetSegmentCache.ReadableAcls.find(aclWeight, segmentContext);
+        
+        Set<Long> aclIds = new HashSet<Long>();
+        acls.addAclIds(segment.getLiveDocs(), aclIds);
+        assertEquals(1, aclIds.size());
+        assertTrue(aclIds.contains(5L));
+        
+        FixedBitSet docs = new FixedBitSet(segment.maxDoc());
+        docs.set(0, segment.maxDoc());
+        acls.clearAclDocs(docs, 0);
+        assertFalse(docs.get(0));
+        assertEquals(3, docs.cardinality());
+        
+        // Deleted ACL docs are ignored
+        FixedBitSet liveDocs = new FixedBitSet(segment.maxDoc());
+        liveDocs.set(1, segment.maxDoc());
+        aclIds.clear();
+        acls.addAclIds(liveDocs, aclIds);
+        assertTrue(aclIds.isEmpty());
+    }
+    
+    @Test
+    public void testEntries() throws Exception
+    {
+        ReaderSetSegmentCache cache = new ReaderSetSegmentCache(1024L);
+        Weight aclWeight = new IndexSearcher(directoryReader).createNormalizedWeight(new TermQuery(new Term(QueryConstants.FIELD_READER, "GROUP_A")));
+        ReaderSetSegmentCache.ReadableAcls acls = ReaderSetSegmentCache.ReadableAcls.find(aclWeight, segmentContext);
+        ReaderSetSegmentCache.AclPostings postings = ReaderSetSegmentCache.AclPostings.build(segment);
+        
+        assertNull(cache.getReadableAcls(segment, "|GROUP_A"));
+        assertNull(cache.getAclPostings(segment));
+        cache.putReadableAcls(segment, "|GROUP_A", acls);
+        cache.putAclPostings(segment, postings);
+        assertSame(acls, cache.getReadableAcls(segment, "|GROUP_A"));
+        assertNull(cache.getReadableAcls(segment, "|GROUP_B"));
+        assertSame(postings, cache.getAclPostings(segment));
+        
+        NamedList<Object> stats = cache.getStatistics();
+        assertEquals(5L, stats.get("lookups"));
+        assertEquals(2L, stats.get("hits"));
+        assertEquals(1, stats.get("segments"));
+        assertEquals(2L, stats.get("size"));
+    }
+    
+    @Test
+    public void testLeastRecentlyUsedSegmentsAreEvicted() throws Exception
+    {
+        RAMDirectory otherDirectory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(otherDirectory, new IndexWriterConfig(Version.LUCENE_CURRENT, new KeywordAnalyzer()));
+        writer.addDocument(newDoc(9L, null));
+        writer.close();
+        DirectoryReader otherReader = DirectoryReader.open(otherDirectory);
+        try
+        {
+            AtomicReader otherSegment = otherReader.leaves().get(0).reader();
+            ReaderSetSegmentCache.AclPostings postings = ReaderSetSegmentCache.AclPostings.build(segment);
+            ReaderSetSegmentCache.AclPostings otherPostings = ReaderSetSegmentCache.AclPostings.build(otherSegment);
+            // Room for one segment only
+            ReaderSetSegmentCache cache = new ReaderSetSegmentCache(postings.sizeInBytes() + 8L);
+            
+            cache.putAclPostings(segment, postings);
+            cache.putAclPostings(otherSegment, otherPostings);
+            assertNull(cache.getAclPostings(segment));
+            assertSame(otherPostings, cache.getAclPostings(otherSegment));
+            
+            // Too large to be cached at all
+            assertFalse(new ReaderSetSegmentCache(8L).isCacheable(segment));
+            cache = new ReaderSetSegmentCache(0L);
+            cache.putAclPostings(segment, postings);
+            assertNull(cache.getAclPostings(segment));
+        }
+        finally
+        {
+            otherReader.close();
+            otherDirectory.close();
+        }
+    }
+    
+    @Test
+    public void testOneCachePerCore()
+    {
+        ReaderSetSegmentCache cache = ReaderSetSegmentCache.getInstance("ReaderSetSegmentCacheTest-1");
+        assertSame(cache, ReaderSetSegmentCache.getInstance("ReaderSetSegmentCacheTest-1"));
+        assertNotSame(cache, ReaderSetSegmentCache.getInstance("ReaderSetSegmentCacheTest-2"));
+        
+        ReaderSetSegmentCache.configure("ReaderSetSegmentCacheTest-1", 1024L);
+        assertEquals(1024L, ReaderSetSegmentCache.getInstance("ReaderSetSegmentCacheTest-1").getStatistics().get("maxBytes"));
+        assertEquals(ReaderSetSegmentCache.DEFAULT_MAX_BYTES, ReaderSetSegmentCache.getInstance("ReaderSetSegmentCacheTest-2").getStatistics().get("maxBytes"));
+    }
+}
@@ -136,4 +136,35 @@ public class ContentTrackerTest
         
         order.verify(srv).getDocsWithUncleanContent(0 + READ_BATCH + READ_BATCH, READ_BATCH);
     }
+
+    @Test
+    public void doTrackWithContentFetchBatchUpdatesContentInBatches() throws Exception
+    {
+        doReturn("" + UPDATE_BATCH).when(props).getProperty(eq("alfresco.contentFetchBatchSize"), anyString());
+        this.contentTracker = new ContentTracker(props, repositoryClient, coreName, srv);
+        
+        List<TenantAclIdDbId> docs = new ArrayList<>();
+        List<TenantAclIdDbId> emptyList = new ArrayList<>();
+        // Adds one more than the fetch batch
+        for (int i = 0; i <= UPDATE_BATCH; i++)
+        {
+            TenantAclIdDbId doc = new TenantAclIdDbId();
+            doc.dbId = i;
+            doc.tenant = "1";
+            docs.add(doc);
+        }
+        when(this.srv.getDocsWithUncleanContent(anyInt(), anyInt()))
+                .thenReturn(docs)
+            .thenReturn(emptyList);
+        this.contentTracker.doTrack();
+        
+        InOrder order = inOrder(srv);
+        order.verify(srv).getDocsWithUncleanContent(0, READ_BATCH);
+        order.verify(srv).updateContentToIndexAndCache(docs.subList(0, UPDATE_BATCH));
+        order.verify(srv).commit();
+        order.verify(srv).updateContentToIndexAndCache(docs.subList(UPDATE_BATCH, UPDATE_BATCH + 1));
+        order.verify(srv).commit();
+        order.verify(srv).getDocsWithUncleanContent(0 + READ_BATCH, READ_BATCH);
+        verify(srv, never()).updateContentToIndexAndCache(anyLong(), anyString());
+    }
 }
@@ -127,6 +127,55 @@ public class MetadataTrackerTest
         inOrder.verify(srv).commit();
     }
 
+    @Test
+    public void doTrackPipelinedWithOneTransactionUpdatesOnce() throws AuthenticationException, IOException, JSONException, EncoderException
+    {
+        doReturn("true").when(props).getProperty("alfresco.metadata.pipeline", "false");
+        MetadataTracker pipelinedTracker = spy(new MetadataTracker(props, repositoryClient, coreName, srv));
+        assertTrue(pipelinedTracker.isPipelined());
+        
+        TrackerState state = new TrackerState();
+        state.setTimeToStopIndexing(2L);
+        when(srv.getTrackerInitialState()).thenReturn(state);
+        when(pipelinedTracker.getTrackerState()).thenReturn(state);
+
+        List<Transaction> txsList = new ArrayList<>();
+        Transaction tx = new Transaction();
+        tx.setCommitTimeMs(1L);
+        tx.setDeletes(1);
+        tx.setUpdates(1);
+        txsList.add(tx);
+        Transactions txs = mock(Transactions.class);
+        when(txs.getTransactions()).thenReturn(txsList);
+
+        // The next page is prefetched, so it must not repeat the first one forever either
+        when(repositoryClient.getTransactions(anyLong(), anyLong(), anyLong(), anyLong(), anyInt())).thenReturn(txs)
+                    .thenReturn(txs).thenReturn(mock(Transactions.class));
+        when(repositoryClient.getTransactions(anyLong(), anyLong(), anyLong(), anyLong(), anyInt(), any(ShardState.class))).thenReturn(txs)
+        .thenReturn(txs).thenReturn(mock(Transactions.class));
+
+        List<Node> nodes = new ArrayList<>();
+        Node node = new Node();
+        nodes.add(node );
+        when(repositoryClient.getNodes(any(GetNodesParameters.class), anyInt())).thenReturn(nodes);
+        
+        try
+        {
+            pipelinedTracker.doTrack();
+        }
+        finally
+        {
+            pipelinedTracker.close();
+        }
+
+        // The transaction is only recorded once its nodes have been fetched and indexed
+        InOrder inOrder = inOrder(srv);
+        inOrder.verify(srv).indexNodes(nodes, true);
+        inOrder.verify(srv).indexTransaction(tx, true);
+        inOrder.verify(srv).commit();
+        assertEquals(0, pipelinedTracker.getPendingFetchCount());
+    }
+
     @Test
     public void doTrackWithNoTransactionsDoesNothing() throws AuthenticationException, IOException, JSONException, EncoderException
     {